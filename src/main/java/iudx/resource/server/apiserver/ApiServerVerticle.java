@@ -2,6 +2,7 @@ package iudx.resource.server.apiserver;
 
 
 import static iudx.resource.server.apiserver.util.Constants.*;
+import static iudx.resource.server.apiserver.handlers.RequestBodyHandler.getRequestJson;
 import static iudx.resource.server.apiserver.util.Util.toUriFunction;
 import java.net.URI;
 import java.util.ArrayList;
@@ -10,35 +11,56 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.netty.handler.codec.http.HttpConstants;
 import io.netty.handler.codec.http.QueryStringDecoder;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
+import io.vertx.core.http.Http2Settings;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
 import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.net.JksOptions;
 import io.vertx.ext.web.Router;
+import io.vertx.serviceproxy.ServiceException;
 import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
+import io.vertx.micrometer.backends.BackendRegistries;
 import iudx.resource.server.apiserver.handlers.AuthHandler;
+import iudx.resource.server.apiserver.handlers.ConnectionMetricsHandler;
+import iudx.resource.server.apiserver.handlers.KeepAliveHandler;
+import iudx.resource.server.apiserver.handlers.LoadSheddingHandler;
+import iudx.resource.server.apiserver.handlers.RateLimitHandler;
+import iudx.resource.server.apiserver.handlers.RequestBodyHandler;
+import iudx.resource.server.apiserver.handlers.RouteMetadata;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.IdSource;
+import iudx.resource.server.apiserver.handlers.StageTimingHandler;
 import iudx.resource.server.apiserver.handlers.ValidationHandler;
 import iudx.resource.server.apiserver.management.ManagementApi;
 import iudx.resource.server.apiserver.management.ManagementApiImpl;
-import iudx.resource.server.apiserver.query.NGSILDQueryParams;
-import iudx.resource.server.apiserver.query.QueryMapper;
+import iudx.resource.server.apiserver.overload.OverloadController;
+import iudx.resource.server.apiserver.query.GeoPreprocessor;
+import iudx.resource.server.apiserver.query.QueryCompiler;
+import iudx.resource.server.apiserver.query.QueryPipeline;
+import iudx.resource.server.apiserver.ratelimit.RateLimiter;
 import iudx.resource.server.apiserver.response.ResponseType;
+import iudx.resource.server.apiserver.response.ResponseWriter;
 import iudx.resource.server.apiserver.response.RestResponse;
 import iudx.resource.server.apiserver.service.CatalogueService;
 import iudx.resource.server.apiserver.subscription.SubsType;
@@ -48,7 +70,10 @@ import iudx.resource.server.apiserver.util.RequestType;
 import iudx.resource.server.apiserver.validation.ValidationFailureHandler;
 import iudx.resource.server.apiserver.validation.ValidatorsHandlersFactory;
 import iudx.resource.server.authenticator.AuthenticationService;
+import iudx.resource.server.common.InFlight;
+import iudx.resource.server.common.LocalServices;
 import iudx.resource.server.database.archives.DatabaseService;
+import iudx.resource.server.database.archives.QueryPlan;
 import iudx.resource.server.database.latest.LatestDataService;
 import iudx.resource.server.databroker.DataBrokerService;
 
@@ -98,6 +123,8 @@ public class ApiServerVerticle extends AbstractVerticle {
   private ParamsValidator validator;
 
   private LatestDataService latestDataService;
+  private ResponseWriter responseWriter;
+  private GeoPreprocessor geoPreprocessor;
 
   /**
    * This method is used to start the Verticle. It deploys a verticle in a cluster, reads the
@@ -139,7 +166,20 @@ public class ApiServerVerticle extends AbstractVerticle {
     router.route().handler(
         CorsHandler.create("*").allowedHeaders(allowedHeaders).allowedMethods(allowedMethods));
 
+    /* Stage latencies of every request, optionally returned in a Server-Timing header. */
+    router.route().handler(StageTimingHandler.create(config().getBoolean("serverTiming", false)));
+
+    /* Requests served by the event loop of this instance, see README (event-loop affinity). */
+    Counter eventLoopRequests = eventLoopRequestCounter();
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry != null) {
+      router.route().handler(
+          ConnectionMetricsHandler.create(registry, Thread.currentThread().getName()));
+    }
     router.route().handler(requestHandler -> {
+      if (eventLoopRequests != null) {
+        eventLoopRequests.increment();
+      }
       requestHandler.response()
           .putHeader("Cache-Control", "no-cache, no-store,  must-revalidate,max-age=0")
           .putHeader("Pragma", "no-cache")
@@ -148,94 +188,197 @@ public class ApiServerVerticle extends AbstractVerticle {
       requestHandler.next();
     });
 
+    int maxRequestsPerConnection = config().getInteger("maxRequestsPerConnection", 0);
+    if (maxRequestsPerConnection > 0) {
+      router.route().handler(KeepAliveHandler.create(maxRequestsPerConnection));
+    }
+
     // router.route().handler(HeadersHandler.create());
-    router.route().handler(BodyHandler.create());
+    /* Body is read only by the routes accepting one, with a size limit per route. */
+    long bodyLimit = config().getLong(BODY_LIMIT, DEFAULT_BODY_LIMIT);
+    RequestBodyHandler bodyHandler = RequestBodyHandler.buffered(bodyLimit);
+    RequestBodyHandler queryBodyHandler =
+        RequestBodyHandler.streaming(config().getLong(QUERY_BODY_LIMIT, bodyLimit));
+    RequestBodyHandler ingestBodyHandler = RequestBodyHandler
+        .streaming(config().getLong(INGEST_BODY_LIMIT, DEFAULT_INGEST_BODY_LIMIT));
     // router.route().handler(AuthHandler.create(vertx));
 
     ValidatorsHandlersFactory validators = new ValidatorsHandlersFactory();
     ValidationFailureHandler validationsFailureHandler = new ValidationFailureHandler();
 
+    authenticator = LocalServices.createProxy(vertx, AuthenticationService.class,
+        AUTH_SERVICE_ADDRESS, AuthenticationService.createProxy(vertx, AUTH_SERVICE_ADDRESS));
+
+    /* Requests are shed by priority while the node is overloaded, before any work is done. */
+    OverloadController overloadController =
+        OverloadController.getOrCreate(vertx, config().getJsonObject("overload"));
+    overloadController.monitorEventLoop(vertx);
+    List<String> searchBackends =
+        List.of(AUTH_SERVICE_ADDRESS, DATABASE_SERVICE_ADDRESS, InFlight.ELASTICSEARCH);
+    List<String> brokerBackends = List.of(AUTH_SERVICE_ADDRESS, BROKER_SERVICE_ADDRESS);
+    LoadSheddingHandler entitiesShedding =
+        LoadSheddingHandler.create(overloadController, EndpointKind.ENTITIES, searchBackends);
+    LoadSheddingHandler latestShedding = LoadSheddingHandler.create(overloadController,
+        EndpointKind.LATEST, List.of(AUTH_SERVICE_ADDRESS, LATEST_SEARCH_ADDRESS, InFlight.REDIS));
+    LoadSheddingHandler postQueryShedding =
+        LoadSheddingHandler.create(overloadController, EndpointKind.POST_QUERY, searchBackends);
+    LoadSheddingHandler temporalShedding =
+        LoadSheddingHandler.create(overloadController, EndpointKind.TEMPORAL, searchBackends);
+    LoadSheddingHandler subscriptionShedding = LoadSheddingHandler.create(overloadController,
+        EndpointKind.SUBSCRIPTION, brokerBackends);
+    LoadSheddingHandler managementShedding = LoadSheddingHandler.create(overloadController,
+        EndpointKind.MANAGEMENT, brokerBackends);
+    LoadSheddingHandler adapterShedding =
+        LoadSheddingHandler.create(overloadController, EndpointKind.ADAPTER, brokerBackends);
+
+    /* Quotas per consumer and endpoint kind, applied once the consumer is authenticated. */
+    RateLimitHandler rateLimitHandler = RateLimitHandler
+        .create(RateLimiter.getOrCreate(vertx, config().getJsonObject("rateLimit")));
+
     /* NGSI-LD api endpoints */
     ValidationHandler entityValidationHandler = new ValidationHandler(vertx, RequestType.ENTITY);
     router.get(NGSILD_ENTITIES_URL)
+        .handler(entitiesShedding)
         .handler(entityValidationHandler)
-        .handler(AuthHandler.create(vertx)).handler(this::handleEntitiesQuery)
+        .handler(this::prepareEntitiesQuery)
+        .handler(authHandler(EndpointKind.ENTITIES, NGSILD_ENTITIES_URL, IdSource.QUERY_PARAM))
+        .handler(rateLimitHandler)
+        .handler(this::handleEntitiesQuery)
         .failureHandler(validationsFailureHandler);
 
     ValidationHandler latestValidationHandler = new ValidationHandler(vertx, RequestType.LATEST);
     router
         .get(NGSILD_ENTITIES_URL + "/:domain/:userSha/:resourceServer/:resourceGroup/:resourceName")
+        .handler(latestShedding)
         .handler(latestValidationHandler)
-        .handler(AuthHandler.create(vertx))
+        .handler(authHandler(EndpointKind.LATEST, NGSILD_ENTITIES_URL, IdSource.PATH))
+        .handler(rateLimitHandler)
         .handler(this::handleLatestEntitiesQuery).failureHandler(validationsFailureHandler);
 
     ValidationHandler postValidationHandler = new ValidationHandler(vertx, RequestType.POST);
     router.post(NGSILD_POST_QUERY_PATH).consumes(APPLICATION_JSON)
-        .handler(postValidationHandler).handler(AuthHandler.create(vertx))
+        .handler(postQueryShedding)
+        .handler(queryBodyHandler)
+        .handler(postValidationHandler)
+        .handler(this::preparePostEntitiesQuery)
+        .handler(
+            authHandler(EndpointKind.POST_QUERY, NGSILD_POST_QUERY_PATH, IdSource.BODY_ENTITIES))
+        .handler(rateLimitHandler)
         .handler(this::handlePostEntitiesQuery).failureHandler(validationsFailureHandler);
 
     ValidationHandler temporalValidationHandler =
         new ValidationHandler(vertx, RequestType.TEMPORAL);
     router.get(NGSILD_TEMPORAL_URL)
+        .handler(temporalShedding)
         .handler(temporalValidationHandler)
-        .handler(AuthHandler.create(vertx)).handler(this::handleTemporalQuery)
+        .handler(this::prepareTemporalQuery)
+        .handler(authHandler(EndpointKind.TEMPORAL, NGSILD_TEMPORAL_URL, IdSource.QUERY_PARAM))
+        .handler(rateLimitHandler)
+        .handler(this::handleTemporalQuery)
         .failureHandler(validationsFailureHandler);
 
-    router.post(NGSILD_SUBSCRIPTION_URL).handler(AuthHandler.create(vertx))
-        .handler(this::handleSubscriptions);
+    AuthHandler subscriptionAuthHandler =
+        authHandler(EndpointKind.SUBSCRIPTION, NGSILD_SUBSCRIPTION_URL, IdSource.PATH);
+    router.post(NGSILD_SUBSCRIPTION_URL).handler(subscriptionShedding)
+        .handler(bodyHandler).handler(subscriptionAuthHandler)
+        .handler(rateLimitHandler).handler(this::handleSubscriptions);
     // append sub
     router.patch(NGSILD_SUBSCRIPTION_URL + "/:domain/:userSHA/:alias")
-        .handler(AuthHandler.create(vertx)).handler(this::appendSubscription);
+        .handler(subscriptionShedding).handler(bodyHandler)
+        .handler(subscriptionAuthHandler).handler(rateLimitHandler)
+        .handler(this::appendSubscription);
     // update sub
     router.put(NGSILD_SUBSCRIPTION_URL + "/:domain/:userSHA/:alias")
-        .handler(AuthHandler.create(vertx)).handler(this::updateSubscription);
+        .handler(subscriptionShedding).handler(bodyHandler)
+        .handler(subscriptionAuthHandler).handler(rateLimitHandler)
+        .handler(this::updateSubscription);
     // get sub
     router.get(NGSILD_SUBSCRIPTION_URL + "/:domain/:userSHA/:alias")
-        .handler(AuthHandler.create(vertx)).handler(this::getSubscription);
+        .handler(subscriptionShedding).handler(subscriptionAuthHandler).handler(rateLimitHandler)
+        .handler(this::getSubscription);
     // delete sub
     router.delete(NGSILD_SUBSCRIPTION_URL + "/:domain/:userSHA/:alias")
-        .handler(AuthHandler.create(vertx)).handler(this::deleteSubscription);
+        .handler(subscriptionShedding).handler(subscriptionAuthHandler).handler(rateLimitHandler)
+        .handler(this::deleteSubscription);
 
     /* Management Api endpoints */
     // Exchange
-    router.post(IUDX_MANAGEMENT_EXCHANGE_URL).handler(AuthHandler.create(vertx))
-        .handler(this::createExchange);
-    router.delete(IUDX_MANAGEMENT_EXCHANGE_URL + "/:exId").handler(AuthHandler.create(vertx))
-        .handler(this::deleteExchange);
-    router.get(IUDX_MANAGEMENT_EXCHANGE_URL + "/:exId").handler(AuthHandler.create(vertx))
-        .handler(this::getExchangeDetails);
+    AuthHandler exchangeAuthHandler =
+        authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_EXCHANGE_URL, IdSource.PATH);
+    router.post(IUDX_MANAGEMENT_EXCHANGE_URL).handler(managementShedding)
+        .handler(bodyHandler).handler(exchangeAuthHandler)
+        .handler(rateLimitHandler).handler(this::createExchange);
+    router.delete(IUDX_MANAGEMENT_EXCHANGE_URL + "/:exId").handler(managementShedding)
+        .handler(exchangeAuthHandler)
+        .handler(rateLimitHandler).handler(this::deleteExchange);
+    router.get(IUDX_MANAGEMENT_EXCHANGE_URL + "/:exId").handler(managementShedding)
+        .handler(exchangeAuthHandler)
+        .handler(rateLimitHandler).handler(this::getExchangeDetails);
     // Queue
-    router.post(IUDX_MANAGEMENT_QUEUE_URL).handler(AuthHandler.create(vertx))
-        .handler(this::createQueue);
-    router.delete(IUDX_MANAGEMENT_QUEUE_URL + "/:queueId").handler(AuthHandler.create(vertx))
-        .handler(this::deleteQueue);
-    router.get(IUDX_MANAGEMENT_QUEUE_URL + "/:queueId").handler(AuthHandler.create(vertx))
-        .handler(this::getQueueDetails);
+    AuthHandler queueAuthHandler =
+        authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_QUEUE_URL, IdSource.PATH);
+    router.post(IUDX_MANAGEMENT_QUEUE_URL).handler(managementShedding)
+        .handler(bodyHandler).handler(queueAuthHandler)
+        .handler(rateLimitHandler).handler(this::createQueue);
+    router.delete(IUDX_MANAGEMENT_QUEUE_URL + "/:queueId").handler(managementShedding)
+        .handler(queueAuthHandler)
+        .handler(rateLimitHandler).handler(this::deleteQueue);
+    router.get(IUDX_MANAGEMENT_QUEUE_URL + "/:queueId").handler(managementShedding)
+        .handler(queueAuthHandler)
+        .handler(rateLimitHandler).handler(this::getQueueDetails);
     // bind
-    router.post(IUDX_MANAGEMENT_BIND_URL).handler(AuthHandler.create(vertx))
-        .handler(this::bindQueue2Exchange);
+    router.post(IUDX_MANAGEMENT_BIND_URL).handler(managementShedding)
+        .handler(bodyHandler)
+        .handler(authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_BIND_URL, IdSource.NONE))
+        .handler(rateLimitHandler).handler(this::bindQueue2Exchange);
     // unbind
-    router.post(IUDX_MANAGEMENT_UNBIND_URL).handler(AuthHandler.create(vertx))
-        .handler(this::unbindQueue2Exchange);
+    router.post(IUDX_MANAGEMENT_UNBIND_URL).handler(managementShedding)
+        .handler(bodyHandler)
+        .handler(authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_UNBIND_URL, IdSource.NONE))
+        .handler(rateLimitHandler).handler(this::unbindQueue2Exchange);
     // vHost
-    router.post(IUDX_MANAGEMENT_VHOST_URL).handler(AuthHandler.create(vertx))
-        .handler(this::createVHost);
-    router.delete(IUDX_MANAGEMENT_VHOST_URL + "/:vhostId").handler(AuthHandler.create(vertx))
-        .handler(this::deleteVHost);
+    AuthHandler vhostAuthHandler =
+        authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_VHOST_URL, IdSource.PATH);
+    router.post(IUDX_MANAGEMENT_VHOST_URL).handler(managementShedding)
+        .handler(bodyHandler).handler(vhostAuthHandler)
+        .handler(rateLimitHandler).handler(this::createVHost);
+    router.delete(IUDX_MANAGEMENT_VHOST_URL + "/:vhostId").handler(managementShedding)
+        .handler(vhostAuthHandler)
+        .handler(rateLimitHandler).handler(this::deleteVHost);
+    // explain, admin only
+    router.post(IUDX_MANAGEMENT_EXPLAIN_URL).consumes(APPLICATION_JSON)
+        .handler(managementShedding)
+        .handler(queryBodyHandler)
+        .handler(postValidationHandler)
+        .handler(this::preparePostEntitiesQuery)
+        .handler(authHandler(EndpointKind.MANAGEMENT, IUDX_MANAGEMENT_EXPLAIN_URL, IdSource.NONE))
+        .handler(rateLimitHandler)
+        .handler(this::handleExplainQuery).failureHandler(validationsFailureHandler);
     // adapter
-    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/register").handler(AuthHandler.create(vertx))
-        .handler(this::registerAdapter);
+    AuthHandler adapterAuthHandler =
+        authHandler(EndpointKind.ADAPTER, IUDX_MANAGEMENT_ADAPTER_URL, IdSource.PATH);
+    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/register").handler(adapterShedding)
+        .handler(bodyHandler)
+        .handler(adapterAuthHandler).handler(rateLimitHandler).handler(this::registerAdapter);
     router.delete(IUDX_MANAGEMENT_ADAPTER_URL + "/:domain/:userSHA/:resourceServer/:resourceGroup")
-        .handler(AuthHandler.create(vertx)).handler(this::deleteAdapter);
+        .handler(adapterShedding).handler(adapterAuthHandler).handler(rateLimitHandler)
+        .handler(this::deleteAdapter);
     router.get(IUDX_MANAGEMENT_ADAPTER_URL + "/:domain/:userSHA/:resourceServer/:resourceGroup")
-        .handler(AuthHandler.create(vertx)).handler(this::getAdapterDetails);
-    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/heartbeat").handler(AuthHandler.create(vertx))
-        .handler(this::publishHeartbeat);
-    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/downstreamissue").handler(AuthHandler.create(vertx))
+        .handler(adapterShedding).handler(adapterAuthHandler).handler(rateLimitHandler)
+        .handler(this::getAdapterDetails);
+    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/heartbeat").handler(adapterShedding)
+        .handler(bodyHandler)
+        .handler(adapterAuthHandler).handler(rateLimitHandler).handler(this::publishHeartbeat);
+    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/downstreamissue").handler(adapterShedding)
+        .handler(bodyHandler)
+        .handler(adapterAuthHandler).handler(rateLimitHandler)
         .handler(this::publishDownstreamIssue);
-    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/dataissue").handler(AuthHandler.create(vertx))
-        .handler(this::publishDataIssue);
-    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/entities").handler(AuthHandler.create(vertx))
+    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/dataissue").handler(adapterShedding)
+        .handler(bodyHandler)
+        .handler(adapterAuthHandler).handler(rateLimitHandler).handler(this::publishDataIssue);
+    router.post(IUDX_MANAGEMENT_ADAPTER_URL + "/entities").handler(adapterShedding)
+        .handler(ingestBodyHandler)
+        .handler(adapterAuthHandler).handler(rateLimitHandler)
         .handler(this::publishDataFromAdapter);
 
     /**
@@ -287,19 +430,34 @@ public class ApiServerVerticle extends AbstractVerticle {
       }
     }
 
-    serverOptions.setCompressionSupported(true).setCompressionLevel(5);
+    /* Server compression level, ResponseWriter skips small and fast-compresses large bodies. */
+    serverOptions.setCompressionSupported(true)
+        .setCompressionLevel(config().getInteger("compressionLevel", 5));
+    responseWriter = ResponseWriter.create(config());
+    geoPreprocessor = new GeoPreprocessor(config().getJsonObject("geoQuery"));
+    /* TCP tuning, reusePort and tcpFastOpen are applied only with native transport. */
+    serverOptions.setTcpNoDelay(config().getBoolean("tcpNoDelay", true))
+        .setTcpFastOpen(config().getBoolean("tcpFastOpen", false))
+        .setReusePort(config().getBoolean("reusePort", false))
+        .setTcpKeepAlive(config().getBoolean("tcpKeepAlive", true))
+        .setIdleTimeout(config().getInteger("idleTimeout", DEFAULT_IDLE_TIMEOUT))
+        .setIdleTimeoutUnit(TimeUnit.SECONDS);
+    configureHttp2(serverOptions);
     server = vertx.createHttpServer(serverOptions);
     server.requestHandler(router).listen(port);
 
     /* Get a handler for the Service Discovery interface. */
 
-    database = DatabaseService.createProxy(vertx, DATABASE_SERVICE_ADDRESS);
+    /* Services deployed in this JVM are invoked directly, others over the Event Bus. */
 
-    authenticator = AuthenticationService.createProxy(vertx, AUTH_SERVICE_ADDRESS);
+    database = LocalServices.createProxy(vertx, DatabaseService.class, DATABASE_SERVICE_ADDRESS,
+        DatabaseService.createProxy(vertx, DATABASE_SERVICE_ADDRESS));
 
-    databroker = DataBrokerService.createProxy(vertx, BROKER_SERVICE_ADDRESS);
+    databroker = LocalServices.createProxy(vertx, DataBrokerService.class, BROKER_SERVICE_ADDRESS,
+        DataBrokerService.createProxy(vertx, BROKER_SERVICE_ADDRESS));
 
-    latestDataService = LatestDataService.createProxy(vertx, LATEST_SEARCH_ADDRESS);
+    latestDataService = LocalServices.createProxy(vertx, LatestDataService.class,
+        LATEST_SEARCH_ADDRESS, LatestDataService.createProxy(vertx, LATEST_SEARCH_ADDRESS));
 
     managementApi = new ManagementApiImpl();
     subsService = new SubscriptionService();
@@ -309,6 +467,48 @@ public class ApiServerVerticle extends AbstractVerticle {
   }
 
 
+  /**
+   * HTTP/2 is negotiated with ALPN over TLS, clear text connections may use h2c (upgrade or prior
+   * knowledge) which the server always accepts. Settings are advertised to clients in the initial
+   * SETTINGS frame.
+   */
+  private void configureHttp2(HttpServerOptions serverOptions) {
+    boolean http2 = config().getBoolean("http2", true);
+    if (isSSL && http2) {
+      serverOptions.setUseAlpn(true)
+          .setAlpnVersions(List.of(HttpVersion.HTTP_2, HttpVersion.HTTP_1_1));
+    }
+    Http2Settings settings = new Http2Settings()
+        .setMaxConcurrentStreams(
+            config().getLong("http2MaxConcurrentStreams", DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS))
+        .setInitialWindowSize(config().getInteger("http2InitialWindowSize",
+            Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE))
+        .setHeaderTableSize(
+            config().getLong("http2HeaderTableSize", Http2Settings.DEFAULT_HEADER_TABLE_SIZE));
+    serverOptions.setInitialSettings(settings).setHttp2ConnectionWindowSize(config()
+        .getInteger("http2ConnectionWindowSize", DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE));
+    LOGGER.debug("Info: HTTP/2 " + (isSSL ? (http2 ? "h2 (ALPN)" : "disabled") : "h2c")
+        + " settings " + settings);
+  }
+
+  /**
+   * Counter of requests served by the event loop this verticle instance is bound to, null when
+   * metrics are disabled.
+   */
+  private Counter eventLoopRequestCounter() {
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry == null) {
+      return null;
+    }
+    LOGGER.info("Info: API server instance bound to " + Thread.currentThread().getName());
+    return Counter.builder(EVENT_LOOP_REQUESTS_METRIC)
+        .tag("eventLoop", Thread.currentThread().getName()).register(registry);
+  }
+
+  private AuthHandler authHandler(EndpointKind kind, String endpoint, IdSource idSource) {
+    return AuthHandler.create(authenticator, RouteMetadata.of(kind, endpoint, idSource));
+  }
+
   private void handleLatestEntitiesQuery(RoutingContext routingContext) {
     LOGGER.debug("Info:handleLatestEntitiesQuery method started.;");
     /* Handles HTTP request from client */
@@ -332,17 +532,20 @@ public class ApiServerVerticle extends AbstractVerticle {
     String id = domain + "/" + userSha + "/" + resourceServer + "/" + resourceGroup + "/"
         + resourceName;
     JsonObject json = new JsonObject();
-    Future<List<String>> filtersFuture = catalogueService.getApplicableFilters(id);
+    QueryPipeline pipeline = QueryPipeline.create(routingContext);
+    Future<List<String>> filtersFuture = pipeline.stage(QueryPipeline.STAGE_CATALOGUE,
+        () -> catalogueService.getApplicableFilters(id));
     /* HTTP request instance/host details */
     String instanceID = request.getHeader(HEADER_HOST);
     json.put(JSON_INSTANCEID, instanceID);
     json.put(JSON_ID, new JsonArray().add(id));
     json.put(JSON_SEARCH_TYPE, "latestSearch");
+    StageTimingHandler.setSearchType(routingContext, "latestSearch");
     LOGGER.debug("Info: IUDX query json;" + json);
     filtersFuture.onComplete(filtersHandler -> {
       if (filtersHandler.succeeded()) {
         json.put("applicableFilters", filtersHandler.result());
-        executeLatestSearchQuery(json, response);
+        executeLatestSearchQuery(json, request, pipeline);
       } else {
         LOGGER.error("catalogue item/group doesn't have filters.");
         handleResponse(response, ResponseType.BadRequestData,
@@ -351,6 +554,24 @@ public class ApiServerVerticle extends AbstractVerticle {
     });
   }
 
+  /**
+   * Starts the query pipeline of an NGSI-LD entities query before authentication, catalogue
+   * lookup, validation and query mapping do not depend on the token and run while it is
+   * introspected.
+   * 
+   * @param routingContext RoutingContext Object
+   */
+  private void prepareEntitiesQuery(RoutingContext routingContext) {
+    MultiMap params = getQueryParams(routingContext, routingContext.response()).get();
+    resolveIds(routingContext, params.get(ID), params.get(NGSILDQUERY_IDPATTERN),
+        params.get(NGSILDQUERY_TYPE)).onSuccess(resolvedIds -> {
+          startQueryPipeline(routingContext, params.get(ID), resolvedIds,
+              filters -> validator.validate(params, filters),
+              () -> QueryCompiler.compile(params, false, geoPreprocessor));
+          routingContext.next();
+        });
+  }
+
   /**
    * This method is used to handle all NGSI-LD queries for endpoint /ngsi-ld/v1/entities/**.
    * 
@@ -358,57 +579,30 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void handleEntitiesQuery(RoutingContext routingContext) {
     LOGGER.debug("Info:handleEntitiesQuery method started.;");
-    /* Handles HTTP request from client */
     JsonObject authInfo = (JsonObject) routingContext.data().get("authInfo");
     LOGGER.debug("authInfo : " + authInfo);
-    HttpServerRequest request = routingContext.request();
-    /* Handles HTTP response from server to client */
-    HttpServerResponse response = routingContext.response();
-    // get query paramaters
-    MultiMap params = getQueryParams(routingContext, response).get();
-    MultiMap headerParams = request.headers();
-    // validate request parameters
-    Future<Boolean> validationResult = validator.validate(params);
-    validationResult.onComplete(validationHandler -> {
-      if (validationHandler.succeeded()) {
-        // parse query params
-        NGSILDQueryParams ngsildquery = new NGSILDQueryParams(params);
-        if (isTemporalParamsPresent(ngsildquery)) {
-          RuntimeException ex =
-              new RuntimeException("Temporal parameters are not allowed in entities query.");
-          routingContext.fail(ex);
-        }
-        // create json
-        QueryMapper queryMapper = new QueryMapper();
-        JsonObject json = queryMapper.toJson(ngsildquery, false);
-        Future<List<String>> filtersFuture =
-            catalogueService.getApplicableFilters(json.getJsonArray("id").getString(0));
-        /* HTTP request instance/host details */
-        String instanceID = request.getHeader(HEADER_HOST);
-        json.put(JSON_INSTANCEID, instanceID);
-        LOGGER.debug("Info: IUDX query json;" + json);
-        /* HTTP request body as Json */
-        JsonObject requestBody = new JsonObject();
-        requestBody.put("ids", json.getJsonArray("id"));
-        filtersFuture.onComplete(filtersHandler -> {
-          if (filtersHandler.succeeded()) {
-            json.put("applicableFilters", filtersHandler.result());
-            if (json.containsKey(IUDXQUERY_OPTIONS)
-                && JSON_COUNT.equalsIgnoreCase(json.getString(IUDXQUERY_OPTIONS))) {
-              executeCountQuery(json, response);
-            } else {
-              executeSearchQuery(json, response);
-            }
-          } else {
-            LOGGER.error("catalogue item/group doesn't have filters.");
-          }
+    executeQuery(routingContext);
+  }
+
+  /**
+   * Starts the query pipeline of a post entities query before authentication.
+   * 
+   * @param routingContext routingContext
+   */
+  private void preparePostEntitiesQuery(RoutingContext routingContext) {
+    JsonObject requestJson = getRequestJson(routingContext);
+    LOGGER.debug("Info: request Json :: ;" + requestJson);
+    JsonArray entities = requestJson.getJsonArray("entities");
+    JsonObject entity = entities == null || entities.isEmpty() ? new JsonObject()
+        : entities.getJsonObject(0);
+    String id = entity.getString(ID);
+    resolveIds(routingContext, id, entity.getString(JSON_IDPATTERN),
+        entity.getString(NGSILDQUERY_TYPE)).onSuccess(resolvedIds -> {
+          startQueryPipeline(routingContext, id, resolvedIds,
+              filters -> validator.validate(requestJson, filters),
+              () -> QueryCompiler.compile(requestJson, geoPreprocessor));
+          routingContext.next();
         });
-      } else if (validationHandler.failed()) {
-        LOGGER.error("Fail: Validation failed");
-        handleResponse(response, ResponseType.BadRequestData,
-            validationHandler.cause().getMessage());
-      }
-    });
   }
 
   /**
@@ -419,43 +613,120 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   public void handlePostEntitiesQuery(RoutingContext routingContext) {
     LOGGER.debug("Info: handlePostEntitiesQuery method started.");
+    executeQuery(routingContext);
+  }
+
+  /**
+   * Resolves the idPattern and/or type of a query without id to the ids it selects, through the
+   * catalogue id trie. Resolved ids are authenticated and queried as if the request named them,
+   * the request is answered with a bad request if it selects no id or too many.
+   *
+   * @param routingContext routingContext
+   * @param id ids requested, idPattern and type are not resolved when present
+   * @param idPattern idPattern requested
+   * @param type type requested
+   * @return future of the resolved ids, empty if the request has ids
+   */
+  private Future<List<String>> resolveIds(RoutingContext routingContext, String id,
+      String idPattern, String type) {
+    if (id != null) {
+      return Future.succeededFuture(List.of());
+    }
+    Future<List<String>> resolved = idPattern == null && type == null
+        ? Future.failedFuture("id, idPattern or type is mandatory")
+        : catalogueService.resolveIds(idPattern, type);
+    return resolved.onSuccess(ids -> routingContext.put(RouteMetadata.RESOLVED_IDS,
+        String.join(",", ids))).onFailure(cause -> handleResponse(routingContext.response(),
+            ResponseType.BadRequestData, cause.getMessage()));
+  }
+
+  /**
+   * Starts the catalogue, validation and compilation stages of a query.
+   * <p>
+   * Applicable filters common to the groups of the requested ids are looked up once, validation
+   * waits on them and query compilation waits on validation. Authentication runs in the meantime as
+   * the next route handler and {@link #executeQuery(RoutingContext)} joins the pipeline once the
+   * token is verified.
+   * </p>
+   * 
+   * @param routingContext routingContext
+   * @param id ids requested
+   * @param resolvedIds ids resolved from the idPattern/type of a request without id
+   * @param validation validation of the request against its applicable filters
+   * @param compiler compiles the validated request to a query plan
+   */
+  private void startQueryPipeline(RoutingContext routingContext, String id,
+      List<String> resolvedIds, Function<Future<List<String>>, Future<Boolean>> validation,
+      Supplier<QueryPlan.Builder> compiler) {
+    QueryPipeline pipeline = QueryPipeline.create(routingContext);
+    // ids may span groups, only filters supported by every group apply.
+    List<String> ids = id == null ? resolvedIds : List.of(id.split(","));
+    Future<List<String>> filters = pipeline.stage(QueryPipeline.STAGE_CATALOGUE,
+        () -> catalogueService.getApplicableFilters(ids));
+    // validation consumes the filters future itself to report unsupported filters.
+    Future<Boolean> validated =
+        pipeline.stage(QueryPipeline.STAGE_VALIDATION, () -> validation.apply(filters));
+    pipeline.stage(QueryPipeline.STAGE_QUERY, List.of(validated, filters), () -> {
+      QueryPlan.Builder builder = compiler.get();
+      resolvedIds.forEach(builder::id);
+      QueryPlan plan = builder.instanceId(routingContext.request().getHeader(HEADER_HOST))
+          .applicableFilters(filters.result()).build();
+      LOGGER.debug("Info: IUDX query plan;" + plan);
+      return Future.succeededFuture(plan);
+    });
+  }
+
+  /**
+   * Joins the query pipeline of an authenticated request and executes the query, the request fails
+   * with the first failed stage.
+   * 
+   * @param routingContext routingContext
+   */
+  private void executeQuery(RoutingContext routingContext) {
+    HttpServerResponse response = routingContext.response();
+    QueryPipeline pipeline = QueryPipeline.get(routingContext);
+    pipeline.<QueryPlan>future(QueryPipeline.STAGE_QUERY).onComplete(queryHandler -> {
+      if (queryHandler.failed()) {
+        LOGGER.error("Fail: Bad request;" + pipeline.timings());
+        handleResponse(response, ResponseType.BadRequestData,
+            queryHandler.cause().getMessage());
+        return;
+      }
+      QueryPlan plan = queryHandler.result();
+      StageTimingHandler.setSearchType(routingContext, plan.searchType());
+      if (JSON_COUNT.equalsIgnoreCase(plan.options())) {
+        executeCountQuery(plan.toJson(), routingContext.request(), pipeline);
+      } else {
+        executeSearchQuery(plan.toJson(), routingContext.request(), pipeline);
+      }
+    });
+  }
+
+  /**
+   * Explains a post entities query, the Elasticsearch query, the indices and the estimated cost of
+   * the query are returned without running it.
+   * 
+   * @param routingContext routingContext
+   */
+  private void handleExplainQuery(RoutingContext routingContext) {
+    LOGGER.debug("Info: handleExplainQuery method started.");
     HttpServerRequest request = routingContext.request();
-    JsonObject requestJson = routingContext.getBodyAsJson();
-    LOGGER.debug("Info: request Json :: ;" + requestJson);
     HttpServerResponse response = routingContext.response();
-    MultiMap headerParams = request.headers();
-    // validate request parameters
-    Future<Boolean> validationResult = validator.validate(requestJson);
-    validationResult.onComplete(validationHandler -> {
-      if (validationHandler.succeeded()) {
-        // parse query params
-        NGSILDQueryParams ngsildquery = new NGSILDQueryParams(requestJson);
-        QueryMapper queryMapper = new QueryMapper();
-        JsonObject json = queryMapper.toJson(ngsildquery, requestJson.containsKey("temporalQ"));
-        Future<List<String>> filtersFuture =
-            catalogueService.getApplicableFilters(json.getJsonArray("id").getString(0));
-        String instanceID = request.getHeader(HEADER_HOST);
-        json.put(JSON_INSTANCEID, instanceID);
-        requestJson.put("ids", json.getJsonArray("id"));
-        LOGGER.debug("Info: IUDX query json : ;" + json);
-        filtersFuture.onComplete(filtersHandler -> {
-          if (filtersHandler.succeeded()) {
-            json.put("applicableFilters", filtersHandler.result());
-            if (json.containsKey(IUDXQUERY_OPTIONS)
-                && JSON_COUNT.equalsIgnoreCase(json.getString(IUDXQUERY_OPTIONS))) {
-              executeCountQuery(json, response);
-            } else {
-              executeSearchQuery(json, response);
-            }
-          } else {
-            LOGGER.error("catalogue item/group doesn't have filters.");
-          }
-        });
-      } else if (validationHandler.failed()) {
-        LOGGER.error("Fail: Bad request");
+    QueryPipeline pipeline = QueryPipeline.get(routingContext);
+    pipeline.<QueryPlan>future(QueryPipeline.STAGE_QUERY).onComplete(queryHandler -> {
+      if (queryHandler.failed()) {
         handleResponse(response, ResponseType.BadRequestData,
-            validationHandler.cause().getMessage());
+            queryHandler.cause().getMessage());
+        return;
       }
+      database.explainQuery(queryHandler.result().toJson(), handler -> {
+        if (handler.succeeded()) {
+          handleSuccessResponse(request, ResponseType.Ok.getCode(), handler.result());
+        } else {
+          LOGGER.error("Fail: Explain Fail");
+          processBackendResponse(response, handler.cause());
+        }
+      });
     });
   }
 
@@ -463,17 +734,24 @@ public class ApiServerVerticle extends AbstractVerticle {
    * Execute a count query in DB
    * 
    * @param json valid json query
-   * @param response
+   * @param request request answered with the result
+   * @param pipeline query pipeline of the request
    */
-  private void executeCountQuery(JsonObject json, HttpServerResponse response) {
-    database.countQuery(json, handler -> {
+  private void executeCountQuery(JsonObject json, HttpServerRequest request,
+      QueryPipeline pipeline) {
+    HttpServerResponse response = request.response();
+    pipeline.<JsonObject>stage(QueryPipeline.STAGE_DATABASE, () -> {
+      Promise<JsonObject> promise = Promise.promise();
+      database.countQuery(json, promise);
+      return promise.future();
+    }).onComplete(handler -> {
+      LOGGER.debug("Info: query stages " + pipeline.timings());
       if (handler.succeeded()) {
         LOGGER.info("Success: Count Success");
-        handleSuccessResponse(response, ResponseType.Ok.getCode(),
-            handler.result().toString());
+        handleSuccessResponse(request, ResponseType.Ok.getCode(), handler.result());
       } else if (handler.failed()) {
         LOGGER.error("Fail: Count Fail");
-        processBackendResponse(response, handler.cause().getMessage());
+        processBackendResponse(response, handler.cause());
       }
     });
   }
@@ -482,29 +760,42 @@ public class ApiServerVerticle extends AbstractVerticle {
    * Execute a search query in DB
    * 
    * @param json valid json query
-   * @param response
+   * @param request request answered with the result
+   * @param pipeline query pipeline of the request
    */
-  private void executeSearchQuery(JsonObject json, HttpServerResponse response) {
-    database.searchQuery(json, handler -> {
+  private void executeSearchQuery(JsonObject json, HttpServerRequest request,
+      QueryPipeline pipeline) {
+    HttpServerResponse response = request.response();
+    pipeline.<JsonObject>stage(QueryPipeline.STAGE_DATABASE, () -> {
+      Promise<JsonObject> promise = Promise.promise();
+      database.searchQuery(json, promise);
+      return promise.future();
+    }).onComplete(handler -> {
+      LOGGER.debug("Info: query stages " + pipeline.timings());
       if (handler.succeeded()) {
         LOGGER.info("Success: Search Success");
-        handleSuccessResponse(response, ResponseType.Ok.getCode(),
-            handler.result().toString());
+        handleSuccessResponse(request, ResponseType.Ok.getCode(), handler.result());
       } else if (handler.failed()) {
         LOGGER.error("Fail: Search Fail");
-        processBackendResponse(response, handler.cause().getMessage());
+        processBackendResponse(response, handler.cause());
       }
     });
   }
 
-  private void executeLatestSearchQuery(JsonObject json, HttpServerResponse response) {
-    latestDataService.getLatestData(json, handler -> {
+  private void executeLatestSearchQuery(JsonObject json, HttpServerRequest request,
+      QueryPipeline pipeline) {
+    HttpServerResponse response = request.response();
+    pipeline.<JsonObject>stage(QueryPipeline.STAGE_DATABASE, () -> {
+      Promise<JsonObject> promise = Promise.promise();
+      latestDataService.getLatestData(json, promise);
+      return promise.future();
+    }).onComplete(handler -> {
       if (handler.succeeded()) {
         LOGGER.info("Latest data search succeeded");
-        handleSuccessResponse(response, ResponseType.Ok.getCode(), handler.result().toString());
+        handleSuccessResponse(request, ResponseType.Ok.getCode(), handler.result());
       } else {
         LOGGER.error("Fail: Search Fail");
-        processBackendResponse(response, handler.cause().getMessage());
+        processBackendResponse(response, handler.cause());
       }
     });
   }
@@ -519,51 +810,23 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void handleTemporalQuery(RoutingContext routingContext) {
     LOGGER.debug("Info: handleTemporalQuery method started.");
-    /* Handles HTTP request from client */
-    HttpServerRequest request = routingContext.request();
-    /* Handles HTTP response from server to client */
-    HttpServerResponse response = routingContext.response();
-    /* HTTP request instance/host details */
-    String instanceID = request.getHeader(HEADER_HOST);
-    // get query parameters
-    MultiMap params = getQueryParams(routingContext, response).get();
-    MultiMap headerParams = request.headers();
-    // validate request params
-    Future<Boolean> validationResult = validator.validate(params);
-    validationResult.onComplete(validationHandler -> {
-      if (validationHandler.succeeded()) {
-        // parse query params
-        NGSILDQueryParams ngsildquery = new NGSILDQueryParams(params);
-        // create json
-        QueryMapper queryMapper = new QueryMapper();
-        JsonObject json = queryMapper.toJson(ngsildquery, true);
-        Future<List<String>> filtersFuture =
-            catalogueService.getApplicableFilters(json.getJsonArray("id").getString(0));
-        json.put(JSON_INSTANCEID, instanceID);
-        LOGGER.debug("Info: IUDX temporal json query;" + json);
-        /* HTTP request body as Json */
-        JsonObject requestBody = new JsonObject();
-        requestBody.put("ids", json.getJsonArray("id"));
-        filtersFuture.onComplete(filtersHandler -> {
-          if (filtersHandler.succeeded()) {
-            json.put("applicableFilters", filtersHandler.result());
-            if (json.containsKey(IUDXQUERY_OPTIONS)
-                && JSON_COUNT.equalsIgnoreCase(json.getString(IUDXQUERY_OPTIONS))) {
-              executeCountQuery(json, response);
-            } else {
-              executeSearchQuery(json, response);
-            }
-          } else {
-            LOGGER.error("catalogue item/group doesn't have filters.");
-          }
-        });
-      } else if (validationHandler.failed()) {
-        LOGGER.error("Fail: Bad request;");
-        handleResponse(response, ResponseType.BadRequestData,
-            validationHandler.cause().getMessage());
-      }
-    });
+    executeQuery(routingContext);
+  }
 
+  /**
+   * Starts the query pipeline of a temporal query before authentication.
+   * 
+   * @param routingContext RoutingContext object
+   */
+  private void prepareTemporalQuery(RoutingContext routingContext) {
+    MultiMap params = getQueryParams(routingContext, routingContext.response()).get();
+    resolveIds(routingContext, params.get(ID), params.get(NGSILDQUERY_IDPATTERN),
+        params.get(NGSILDQUERY_TYPE)).onSuccess(resolvedIds -> {
+          startQueryPipeline(routingContext, params.get(ID), resolvedIds,
+              filters -> validator.validate(params, filters),
+              () -> QueryCompiler.compile(params, true, geoPreprocessor));
+          routingContext.next();
+        });
   }
 
   /**
@@ -578,7 +841,7 @@ public class ApiServerVerticle extends AbstractVerticle {
     /* Handles HTTP response from server to client */
     HttpServerResponse response = routingContext.response();
     /* HTTP request body as Json */
-    JsonObject requestBody = routingContext.getBodyAsJson();
+    JsonObject requestBody = getRequestJson(routingContext);
     /* HTTP request instance/host details */
     String instanceID = request.getHeader(HEADER_HOST);
     String subHeader = request.getHeader(HEADER_OPTIONS);
@@ -601,10 +864,10 @@ public class ApiServerVerticle extends AbstractVerticle {
         if (subHandler.succeeded()) {
           LOGGER.info("Success: Handle Subscription request;");
           handleSuccessResponse(response, ResponseType.Created.getCode(),
-              subHandler.result().toString());
+              subHandler.result());
         } else {
           LOGGER.error("Fail: Handle Subscription request;");
-          processBackendResponse(response, subHandler.cause().getMessage());
+          processBackendResponse(response, subHandler.cause());
         }
       });
     } else {
@@ -626,7 +889,7 @@ public class ApiServerVerticle extends AbstractVerticle {
     String usersha = request.getParam(JSON_USERSHA);
     String alias = request.getParam(JSON_ALIAS);
     String subsId = domain + "/" + usersha + "/" + alias;
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     String instanceID = request.getHeader(HEADER_HOST);
     requestJson.put(SUBSCRIPTION_ID, subsId);
     requestJson.put(JSON_INSTANCEID, instanceID);
@@ -647,10 +910,10 @@ public class ApiServerVerticle extends AbstractVerticle {
           if (subsRequestHandler.succeeded()) {
             LOGGER.info("Success: Appending subscription");
             handleSuccessResponse(response, ResponseType.Created.getCode(),
-                subsRequestHandler.result().toString());
+                subsRequestHandler.result());
           } else {
             LOGGER.error("Fail: Appending subscription");
-            processBackendResponse(response, subsRequestHandler.cause().getMessage());
+            processBackendResponse(response, subsRequestHandler.cause());
           }
         });
       } else {
@@ -676,7 +939,7 @@ public class ApiServerVerticle extends AbstractVerticle {
     String usersha = request.getParam(JSON_USERSHA);
     String alias = request.getParam(JSON_ALIAS);
     String subsId = domain + "/" + usersha + "/" + alias;
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     String instanceID = request.getHeader(HEADER_HOST);
     String subHeader = request.getHeader(HEADER_OPTIONS);
     String subscrtiptionType =
@@ -695,10 +958,10 @@ public class ApiServerVerticle extends AbstractVerticle {
         subsReq.onComplete(subsRequestHandler -> {
           if (subsRequestHandler.succeeded()) {
             handleSuccessResponse(response, ResponseType.Created.getCode(),
-                subsRequestHandler.result().toString());
+                subsRequestHandler.result());
           } else {
             LOGGER.error("Fail: Bad request");
-            processBackendResponse(response, subsRequestHandler.cause().getMessage());
+            processBackendResponse(response, subsRequestHandler.cause());
           }
         });
       } else {
@@ -746,10 +1009,10 @@ public class ApiServerVerticle extends AbstractVerticle {
         if (subHandler.succeeded()) {
           LOGGER.info("Success: Getting subscription");
           handleSuccessResponse(response, ResponseType.Ok.getCode(),
-              subHandler.result().toString());
+              subHandler.result());
         } else {
           LOGGER.error("Fail: Bad request");
-          processBackendResponse(response, subHandler.cause().getMessage());
+          processBackendResponse(response, subHandler.cause());
         }
       });
     } else {
@@ -789,9 +1052,9 @@ public class ApiServerVerticle extends AbstractVerticle {
       subsReq.onComplete(subHandler -> {
         if (subHandler.succeeded()) {
           handleSuccessResponse(response, ResponseType.Ok.getCode(),
-              subHandler.result().toString());
+              subHandler.result());
         } else {
-          processBackendResponse(response, subHandler.cause().getMessage());
+          processBackendResponse(response, subHandler.cause());
         }
       });
     } else {
@@ -806,7 +1069,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void createExchange(RoutingContext routingContext) {
     LOGGER.debug("Info: createExchange method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     LOGGER.info("request ::: " + requestJson);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
@@ -830,10 +1093,10 @@ public class ApiServerVerticle extends AbstractVerticle {
                 if (brokerResultHandler.succeeded()) {
                   LOGGER.info("Success: Creating exchange");
                   handleSuccessResponse(response, ResponseType.Created.getCode(),
-                      brokerResultHandler.result().toString());
+                      brokerResultHandler.result());
                 } else if (brokerResultHandler.failed()) {
                   LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause());
-                  processBackendResponse(response, brokerResultHandler.cause().getMessage());
+                  processBackendResponse(response, brokerResultHandler.cause());
                 }
               });
             } else {
@@ -877,10 +1140,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Deleting exchange");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -922,10 +1185,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Getting exchange details");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -946,7 +1209,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void createQueue(RoutingContext routingContext) {
     LOGGER.debug("Info: createQueue method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -967,10 +1230,10 @@ public class ApiServerVerticle extends AbstractVerticle {
                 if (brokerResultHandler.succeeded()) {
                   LOGGER.info("Success: Creating Queue");
                   handleSuccessResponse(response, ResponseType.Created.getCode(),
-                      brokerResultHandler.result().toString());
+                      brokerResultHandler.result());
                 } else if (brokerResultHandler.failed()) {
                   LOGGER.error("Fail: Bad request" + brokerResultHandler.cause().getMessage());
-                  processBackendResponse(response, brokerResultHandler.cause().getMessage());
+                  processBackendResponse(response, brokerResultHandler.cause());
                 }
               });
             } else {
@@ -1015,10 +1278,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Deleting Queue");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -1057,10 +1320,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Getting Queue Details");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad Request;" + brokerResultHandler.cause());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else {
@@ -1081,7 +1344,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void bindQueue2Exchange(RoutingContext routingContext) {
     LOGGER.debug("Info: bindQueue2Exchange method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1098,10 +1361,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: binding queue to exchange");
               handleSuccessResponse(response, ResponseType.Created.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -1122,7 +1385,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void unbindQueue2Exchange(RoutingContext routingContext) {
     LOGGER.debug("Info: unbindQueue2Exchange method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1139,10 +1402,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Unbinding queue to exchange");
               handleSuccessResponse(response, ResponseType.Created.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -1163,7 +1426,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void createVHost(RoutingContext routingContext) {
     LOGGER.debug("Info: createVHost method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1182,10 +1445,10 @@ public class ApiServerVerticle extends AbstractVerticle {
                 if (brokerResultHandler.succeeded()) {
                   LOGGER.info("Success: Creating vhost");
                   handleSuccessResponse(response, ResponseType.Created.getCode(),
-                      brokerResultHandler.result().toString());
+                      brokerResultHandler.result());
                 } else if (brokerResultHandler.failed()) {
                   LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-                  processBackendResponse(response, brokerResultHandler.cause().getMessage());
+                  processBackendResponse(response, brokerResultHandler.cause());
                 }
               });
             } else {
@@ -1229,10 +1492,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.info("Success: Deleting vhost");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else if (brokerResultHandler.failed()) {
               LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else if (authHandler.failed()) {
@@ -1253,7 +1516,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   private void registerAdapter(RoutingContext routingContext) {
     LOGGER.debug("Info: registerAdapter method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1266,10 +1529,10 @@ public class ApiServerVerticle extends AbstractVerticle {
       if (brokerResultHandler.succeeded()) {
         LOGGER.info("Success: Registering adapter");
         handleSuccessResponse(response, ResponseType.Created.getCode(),
-            brokerResultHandler.result().toString());
+            brokerResultHandler.result());
       } else if (brokerResult.failed()) {
         LOGGER.error("Fail: Bad request" + brokerResultHandler.cause().getMessage());
-        processBackendResponse(response, brokerResultHandler.cause().getMessage());
+        processBackendResponse(response, brokerResultHandler.cause());
       }
     });
   }
@@ -1293,10 +1556,10 @@ public class ApiServerVerticle extends AbstractVerticle {
       if (brokerResultHandler.succeeded()) {
         LOGGER.info("Success: Deleting adapter");
         handleSuccessResponse(response, ResponseType.Ok.getCode(),
-            brokerResultHandler.result().toString());
+            brokerResultHandler.result());
       } else {
         LOGGER.error("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-        processBackendResponse(response, brokerResultHandler.cause().getMessage());
+        processBackendResponse(response, brokerResultHandler.cause());
       }
     });
   }
@@ -1319,9 +1582,9 @@ public class ApiServerVerticle extends AbstractVerticle {
     brokerResult.onComplete(brokerResultHandler -> {
       if (brokerResultHandler.succeeded()) {
         handleSuccessResponse(response, ResponseType.Ok.getCode(),
-            brokerResultHandler.result().toString());
+            brokerResultHandler.result());
       } else {
-        processBackendResponse(response, brokerResultHandler.cause().getMessage());
+        processBackendResponse(response, brokerResultHandler.cause());
       }
     });
 
@@ -1335,7 +1598,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   public void publishHeartbeat(RoutingContext routingContext) {
     LOGGER.debug("Info: publishHeartbeat method starts;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1351,10 +1614,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.debug("Success: Published heartbeat");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else {
               LOGGER.debug("Fail: Unauthorized;" + authHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else {
@@ -1376,7 +1639,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   public void publishDownstreamIssue(RoutingContext routingContext) {
     LOGGER.debug("Info: publishDownStreamIssue method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1393,10 +1656,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.debug("Success: published downstream issue");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else {
               LOGGER.debug("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else {
@@ -1417,7 +1680,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   public void publishDataIssue(RoutingContext routingContext) {
     LOGGER.debug("Info: publishDataIssue method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1433,10 +1696,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.debug("Success: publishing a data issue");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else {
               LOGGER.debug("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else {
@@ -1456,7 +1719,7 @@ public class ApiServerVerticle extends AbstractVerticle {
    */
   public void publishDataFromAdapter(RoutingContext routingContext) {
     LOGGER.debug("Info: publishDataFromAdapter method started;");
-    JsonObject requestJson = routingContext.getBodyAsJson();
+    JsonObject requestJson = getRequestJson(routingContext);
     HttpServerRequest request = routingContext.request();
     HttpServerResponse response = routingContext.response();
     String instanceID = request.getHeader(HEADER_HOST);
@@ -1473,10 +1736,10 @@ public class ApiServerVerticle extends AbstractVerticle {
             if (brokerResultHandler.succeeded()) {
               LOGGER.debug("Success: publishing data from adapter");
               handleSuccessResponse(response, ResponseType.Ok.getCode(),
-                  brokerResultHandler.result().toString());
+                  brokerResultHandler.result());
             } else {
               LOGGER.debug("Fail: Bad request;" + brokerResultHandler.cause().getMessage());
-              processBackendResponse(response, brokerResultHandler.cause().getMessage());
+              processBackendResponse(response, brokerResultHandler.cause());
             }
           });
         } else {
@@ -1498,8 +1761,34 @@ public class ApiServerVerticle extends AbstractVerticle {
    * @param isBodyRequired body is required or not for response
    */
 
-  private void handleSuccessResponse(HttpServerResponse response, int statusCode, String result) {
-    response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(statusCode).end(result);
+  private void handleSuccessResponse(HttpServerResponse response, int statusCode,
+      JsonObject result) {
+    responseWriter.write(response, statusCode, result);
+  }
+
+  /**
+   * Query results may be large, they are compressed according to the size of the body.
+   */
+  private void handleSuccessResponse(HttpServerRequest request, int statusCode,
+      JsonObject result) {
+    responseWriter.write(request, statusCode, result);
+  }
+
+  /**
+   * Responds with the failure of a backend service, typed failures carry the status code, other
+   * services fail with the json response as message.
+   */
+  private void processBackendResponse(HttpServerResponse response, Throwable failure) {
+    if (failure instanceof ServiceException) {
+      ResponseType responseType =
+          ResponseType.fromCode(((ServiceException) failure).failureCode());
+      if (responseType != null) {
+        LOGGER.debug("Info : " + ((ServiceException) failure).getDebugInfo());
+        handleResponse(response, responseType);
+        return;
+      }
+    }
+    processBackendResponse(response, failure.getMessage());
   }
 
   private void processBackendResponse(HttpServerResponse response, String failureMessage) {
@@ -1508,8 +1797,7 @@ public class ApiServerVerticle extends AbstractVerticle {
       JsonObject json = new JsonObject(failureMessage);
       int type = json.getInteger(JSON_TYPE);
       ResponseType responseType = ResponseType.fromCode(type);
-      response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(type)
-          .end(generateResponse(responseType).toString());
+      responseWriter.write(response, type, generateResponse(responseType));
     } catch (DecodeException ex) {
       LOGGER.error("ERROR : Expecting Json received else from backend service");
       handleResponse(response, ResponseType.BadRequestData);
@@ -1518,14 +1806,13 @@ public class ApiServerVerticle extends AbstractVerticle {
   }
 
   private void handleResponse(HttpServerResponse response, ResponseType responseType) {
-    response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(responseType.getCode())
-        .end(generateResponse(responseType).toString());
+    responseWriter.write(response, responseType.getCode(), generateResponse(responseType));
   }
 
   private void handleResponse(HttpServerResponse response, ResponseType responseType,
       String message) {
-    response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(responseType.getCode())
-        .end(generateResponse(responseType, message).toString());
+    responseWriter.write(response, responseType.getCode(),
+        generateResponse(responseType, message));
   }
 
   private JsonObject generateResponse(ResponseType responseType) {
@@ -1581,9 +1868,7 @@ public class ApiServerVerticle extends AbstractVerticle {
         queryParams.add(entry.getKey(), entry.getValue());
       }
     } catch (IllegalArgumentException ex) {
-      response.putHeader(CONTENT_TYPE, APPLICATION_JSON)
-          .setStatusCode(ResponseType.BadRequestData.getCode())
-          .end(generateResponse(ResponseType.BadRequestData, MSG_BAD_QUERY).toString());
+      handleResponse(response, ResponseType.BadRequestData, MSG_BAD_QUERY);
 
 
     }
@@ -1594,13 +1879,6 @@ public class ApiServerVerticle extends AbstractVerticle {
   public void stop() {
     LOGGER.info("Stopping the API server");
   }
-
-  private boolean isTemporalParamsPresent(NGSILDQueryParams ngsildquery) {
-    return ngsildquery.getTemporalRelation().getTemprel() != null
-        || ngsildquery.getTemporalRelation().getTime() != null
-        || ngsildquery.getTemporalRelation().getEndTime() != null;
-
-  }
 }
 
 
@@ -45,6 +45,7 @@ public class ParamsValidator {
     validParams.add(NGSILDQUERY_TYPE);
     validParams.add(NGSILDQUERY_ID);
     validParams.add(NGSILDQUERY_IDPATTERN);
+    validParams.add(JSON_IDPATTERN);
     validParams.add(NGSILDQUERY_ATTRIBUTE);
     validParams.add(NGSILDQUERY_Q);
     validParams.add(NGSILDQUERY_GEOREL);
@@ -63,6 +64,8 @@ public class ParamsValidator {
     validParams.add(NGSILDQUERY_TIME_PROPERTY);
     validParams.add(NGSILDQUERY_FROM);
     validParams.add(NGSILDQUERY_SIZE);
+    validParams.add(NGSILDQUERY_LASTN);
+    validParams.add(JSON_LASTN);
 
     // for IUDX count query
     validParams.add(IUDXQUERY_OPTIONS);
@@ -111,9 +114,23 @@ public class ParamsValidator {
    * @return Future future JsonObject
    */
   public Future<Boolean> validate(MultiMap paramsMap) {
+    if (!validateParams(paramsMap)) {
+      return Future.failedFuture(MSG_BAD_QUERY);
+    }
+    return validate(paramsMap, catalogueService.getApplicableFilters(paramsMap.get("id")));
+  }
+
+  /**
+   * validate request parameters against applicable filters already looked up by the caller.
+   * 
+   * @param paramsMap map of request parameters
+   * @param filtersFuture applicable filters of the requested id
+   * @return Future future JsonObject
+   */
+  public Future<Boolean> validate(MultiMap paramsMap, Future<List<String>> filtersFuture) {
     Promise<Boolean> promise = Promise.promise();
     if (validateParams(paramsMap)) {
-      isValidQueryWithFilters(paramsMap).onComplete(handler -> {
+      isValidQueryWithFilters(paramsMap, filtersFuture).onComplete(handler -> {
         if (handler.succeeded()) {
           // validation for geometry and coordinates.
           String geom = paramsMap.get(NGSILDQUERY_GEOMETRY);
@@ -142,6 +159,17 @@ public class ParamsValidator {
    * @return Future future JsonObject
    */
   public Future<Boolean> validate(JsonObject requestJson) {
+    return validate(requestJson, null);
+  }
+
+  /**
+   * validate request parameters against applicable filters already looked up by the caller.
+   * 
+   * @param requestJson of request parameters
+   * @param filtersFuture applicable filters of the requested id, looked up if null
+   * @return Future future JsonObject
+   */
+  public Future<Boolean> validate(JsonObject requestJson, Future<List<String>> filtersFuture) {
     Promise<Boolean> promise = Promise.promise();
     MultiMap paramsMap = MultiMap.caseInsensitiveMultiMap();
 
@@ -192,7 +220,9 @@ public class ParamsValidator {
                 ? isValidDistance(georelArray[1])
                 : isValidDistance(null));
 
-    validate(paramsMap).onComplete(handler -> {
+    Future<List<String>> filters = filtersFuture != null ? filtersFuture
+        : catalogueService.getApplicableFilters(paramsMap.get("id"));
+    validate(paramsMap, filters).onComplete(handler -> {
       if (handler.succeeded() && !validations1) {
         promise.complete(true);
       } else {
@@ -203,9 +233,9 @@ public class ParamsValidator {
   }
 
 
-  private Future<Boolean> isValidQueryWithFilters(MultiMap paramsMap) {
+  private Future<Boolean> isValidQueryWithFilters(MultiMap paramsMap,
+      Future<List<String>> filtersFuture) {
     Promise<Boolean> promise = Promise.promise();
-    Future<List<String>> filtersFuture = catalogueService.getApplicableFilters(paramsMap.get("id"));
     filtersFuture.onComplete(handler -> {
       if (handler.succeeded()) {
         List<String> filters = filtersFuture.result();
@@ -265,7 +295,7 @@ public class ParamsValidator {
     } else if (geom.equalsIgnoreCase("bbox")) {
       // NOTE : since bbox is not completely supported by jts2geojson, an alternative to check 2
       // coordinates and validate as a linestring
-      String[] bboxEdges = coordinates.replaceAll("\\[", "").replaceAll("\\]", "").split(",");
+      String[] bboxEdges = coordinates.replace("[", "").replace("]", "").split(",");
       if (bboxEdges.length != 4) {
         return false;
       }
@@ -1,12 +1,11 @@
 package iudx.resource.server.apiserver.handlers;
 
+import static iudx.resource.server.apiserver.handlers.RouteMetadata.ROUTE_METADATA;
 import static iudx.resource.server.apiserver.util.Constants.*;
-import java.util.List;
 import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import io.vertx.core.Handler;
-import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -17,43 +16,43 @@ import iudx.resource.server.authenticator.AuthenticationService;
 
 /**
  * IUDX Authentication handler to authenticate token passed in HEADER
- * 
- *
+ * <p>
+ * A handler is created per route with the {@link RouteMetadata} of that route, the endpoint and
+ * id of a request are resolved from the metadata without matching the request path.
+ * </p>
  */
 public class AuthHandler implements Handler<RoutingContext> {
 
   private static final Logger LOGGER = LogManager.getLogger(AuthHandler.class);
 
-  private static final String AUTH_SERVICE_ADDRESS = "iudx.rs.authentication.service";
   private final String AUTH_INFO = "authInfo";
-  private final List<String> noAuthRequired = bypassEndpoint;
-  private static AuthenticationService authenticator;
-  private HttpServerRequest request;
-  
-  public static AuthHandler create(Vertx vertx) {
-    authenticator = AuthenticationService.createProxy(vertx, AUTH_SERVICE_ADDRESS);
-    return new AuthHandler();
+  private final AuthenticationService authenticator;
+  private final RouteMetadata routeMetadata;
+
+  private AuthHandler(AuthenticationService authenticator, RouteMetadata routeMetadata) {
+    this.authenticator = authenticator;
+    this.routeMetadata = routeMetadata;
+  }
+
+  public static AuthHandler create(AuthenticationService authenticator,
+      RouteMetadata routeMetadata) {
+    return new AuthHandler(authenticator, routeMetadata);
   }
 
   @Override
   public void handle(RoutingContext context) {
-    request = context.request();
-    JsonObject requestJson = context.getBodyAsJson();
-    
-    if(requestJson == null) {
-      requestJson = new JsonObject();
+    context.put(ROUTE_METADATA, routeMetadata);
+    HttpServerRequest request = context.request();
+    JsonObject body = RequestBodyHandler.getRequestJson(context);
+    if (body == null) {
+      body = new JsonObject();
     }
-    
+
     LOGGER.debug("Info : path " + request.path());
-    // bypassing auth for RDocs
-    if (noAuthRequired.contains(request.path())) {
-      context.next();
-      return;
-    }
 
     String token = request.headers().get(HEADER_TOKEN);
-    final String path = getNormalizedPath(request.path());
-    final String method = context.request().method().toString();
+    final String path = routeMetadata.endpoint();
+    final String method = request.method().toString();
 
     if (token == null)
       token = "public";
@@ -61,19 +60,21 @@ public class AuthHandler implements Handler<RoutingContext> {
     JsonObject authInfo =
         new JsonObject().put(API_ENDPOINT, path).put(HEADER_TOKEN, token).put(API_METHOD, method);
 
-    LOGGER.debug("Info :" + context.request().path());
-    LOGGER.debug("Info :" + context.request().path().split("/").length);
-    String id = getId(context.request().path(), path, context);
+    String id = routeMetadata.extractId(context, body);
     authInfo.put(ID, id);
-    JsonArray ids=new JsonArray();
-    String[] idArray=id.split(",");
-    for(String i:idArray) {
+    JsonArray ids = new JsonArray();
+    String[] idArray = id.split(",");
+    for (String i : idArray) {
       ids.add(i);
     }
-    requestJson.put(IDS,ids);
-    
+    // access checks read the body (adapter group, subscription entities), the shared body is
+    // copied so that it is not modified.
+    JsonObject requestJson = body.copy().put(IDS, ids);
+
     LOGGER.debug("request" + requestJson);
+    long start = System.nanoTime();
     authenticator.tokenInterospect(requestJson, authInfo, authHandler -> {
+      StageTimingHandler.record(context, StageTimingHandler.STAGE_AUTH, start);
       if (authHandler.succeeded()) {
         LOGGER.debug("Auth info : " + authHandler.result());
         context.data().put(AUTH_INFO, authHandler.result());
@@ -109,92 +110,4 @@ public class AuthHandler implements Handler<RoutingContext> {
     return new JsonObject().put(JSON_TYPE, HttpStatus.SC_NOT_FOUND)
         .put(JSON_TITLE, "Not Found").put(JSON_DETAIL, "Resource Not Found");
   }
-
-  /**
-   * extract id from path param
-   * 
-   * @param ctx current routing context
-   * @param forPath endpoint called for
-   * @return id extraced fro path if present
-   */
-  private String getId(String path, String forPath, RoutingContext context) {
-    String id = "";
-    switch (forPath) {
-      case NGSILD_SUBSCRIPTION_URL: {
-        id = path.replaceAll(NGSILD_SUBSCRIPTION_URL + "/", "");
-        break;
-      }
-      case IUDX_MANAGEMENT_ADAPTER_URL: {
-        id = path.replaceAll(IUDX_MANAGEMENT_ADAPTER_URL + "/", "");
-        break;
-      }
-      case IUDX_MANAGEMENT_EXCHANGE_URL: {
-        id = path.replaceAll(IUDX_MANAGEMENT_EXCHANGE_URL + "/", "");
-        break;
-      }
-      case IUDX_MANAGEMENT_QUEUE_URL: {
-        id = path.replaceAll(IUDX_MANAGEMENT_QUEUE_URL + "/", "");
-        break;
-      }
-      case IUDX_MANAGEMENT_VHOST_URL: {
-        id = path.replaceAll(IUDX_MANAGEMENT_VHOST_URL + "/", "");
-        break;
-      }
-      case NGSILD_ENTITIES_URL: {
-        if (path.split("/").length == 9) {
-          id = path.replaceAll(NGSILD_ENTITIES_URL + "/", "");
-          break;
-        } else {
-          id = request.getParam("id");
-          break;
-        }
-      }
-      case NGSILD_TEMPORAL_URL: {
-        id = request.getParam("id");
-        break;
-      }
-      case NGSILD_POST_QUERY_PATH: {
-        JsonObject body = context.getBodyAsJson();
-        id = body.getJsonArray("entities").getJsonObject(0).getString("id");
-        break;
-      }
-      default: {
-        id = "";
-      }
-    }
-    return id;
-  }
-
-  /**
-   * get normalized path without id as path param.
-   * 
-   * @param url complete path from request
-   * @return path without id.
-   */
-  private String getNormalizedPath(String url) {
-    LOGGER.debug("URL : " + url);
-    String path = null;
-    if (url.matches(ENTITITES_URL_REGEX)) {
-      path = NGSILD_ENTITIES_URL;
-    } else if (url.matches(TEMPORAL_URL_REGEX)) {
-      path = NGSILD_TEMPORAL_URL;
-    } else if (url.matches(POST_QUERY_URL_REGEX)) {
-      path = NGSILD_POST_QUERY_PATH;
-    } else if (url.matches(SUBSCRIPTION_URL_REGEX)) {
-      path = NGSILD_SUBSCRIPTION_URL;
-    } else if (url.matches(ADAPTER_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_ADAPTER_URL;
-    } else if (url.matches(EXCHANGE_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_EXCHANGE_URL;
-    } else if (url.matches(QUEUE_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_QUEUE_URL;
-    } else if (url.matches(VHOST_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_VHOST_URL;
-    } else if (url.matches(BIND_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_BIND_URL;
-    } else if (url.matches(UNBIND_URL_REGEX)) {
-      path = IUDX_MANAGEMENT_UNBIND_URL;
-    }
-    return path;
-  }
 }
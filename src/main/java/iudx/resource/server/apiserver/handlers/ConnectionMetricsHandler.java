@@ -0,0 +1,108 @@
+package iudx.resource.server.apiserver.handlers;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.impl.ConnectionBase;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Connection and stream metrics of the API server per HTTP version.
+ * <p>
+ * Meters (tags version, eventLoop):
+ * <ul>
+ * <li><i>iudx.rs.http.connections</i> connections opened</li>
+ * <li><i>iudx.rs.http.connections.active</i> connections currently open</li>
+ * <li><i>iudx.rs.http.streams</i> requests served, one stream per request on HTTP/2</li>
+ * <li><i>iudx.rs.http.streams.active</i> requests in progress, concurrent streams on HTTP/2</li>
+ * </ul>
+ * The ratio of streams to connections of HTTP/2 shows how much multiplexing saves in
+ * connections (and TLS handshakes) compared to HTTP/1.1.
+ * </p>
+ * <p>
+ * A handler instance must be used by the router of a single verticle instance, connections are
+ * tracked on its event loop without synchronization. Meters are shared by the instances running
+ * on the same event loop. Closed connections are observed through the close future of the
+ * connection, which takes any number of listeners, so the close handler of the connection is left
+ * to the application.
+ * </p>
+ */
+public final class ConnectionMetricsHandler implements Handler<RoutingContext> {
+
+  private static final String CONNECTIONS = "iudx.rs.http.connections";
+  private static final String STREAMS = "iudx.rs.http.streams";
+  // registry and event loop -> meters, gauges are registered once per event loop.
+  private static final Map<String, Map<HttpVersion, Meters>> SHARED_METERS =
+      new ConcurrentHashMap<>();
+
+  private final Map<HttpConnection, HttpVersion> connections = new WeakHashMap<>();
+  private final Map<HttpVersion, Meters> meters;
+
+  private ConnectionMetricsHandler(MeterRegistry registry, String eventLoop) {
+    meters = SHARED_METERS.computeIfAbsent(System.identityHashCode(registry) + "/" + eventLoop,
+        key -> {
+          Map<HttpVersion, Meters> versions = new EnumMap<>(HttpVersion.class);
+          for (HttpVersion version : HttpVersion.values()) {
+            versions.put(version, new Meters(registry, version, eventLoop));
+          }
+          return versions;
+        });
+  }
+
+  /**
+   * @param registry meter registry
+   * @param eventLoop name of the event loop of the verticle instance using the handler
+   */
+  public static ConnectionMetricsHandler create(MeterRegistry registry, String eventLoop) {
+    return new ConnectionMetricsHandler(registry, eventLoop);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    HttpServerRequest request = context.request();
+    Meters versionMeters = meters.get(request.version());
+    HttpConnection connection = request.connection();
+    if (connection instanceof ConnectionBase && !connections.containsKey(connection)) {
+      connections.put(connection, request.version());
+      versionMeters.connections.increment();
+      versionMeters.activeConnections.incrementAndGet();
+      ((ConnectionBase) connection).closeFuture().onComplete(v -> {
+        if (connections.remove(connection) != null) {
+          versionMeters.activeConnections.decrementAndGet();
+        }
+      });
+    }
+    versionMeters.streams.increment();
+    versionMeters.activeStreams.incrementAndGet();
+    context.addEndHandler(v -> versionMeters.activeStreams.decrementAndGet());
+    context.next();
+  }
+
+  private static final class Meters {
+    private final Counter connections;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final Counter streams;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private Meters(MeterRegistry registry, HttpVersion version, String eventLoop) {
+      String versionTag = version.alpnName();
+      connections = Counter.builder(CONNECTIONS).tag("version", versionTag)
+          .tag("eventLoop", eventLoop).register(registry);
+      Gauge.builder(CONNECTIONS + ".active", activeConnections, AtomicInteger::get)
+          .tag("version", versionTag).tag("eventLoop", eventLoop).register(registry);
+      streams = Counter.builder(STREAMS).tag("version", versionTag).tag("eventLoop", eventLoop)
+          .register(registry);
+      Gauge.builder(STREAMS + ".active", activeStreams, AtomicInteger::get)
+          .tag("version", versionTag).tag("eventLoop", eventLoop).register(registry);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static iudx.resource.server.apiserver.util.Constants.HEADER_CONNECTION;
+import java.util.Map;
+import java.util.WeakHashMap;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpConnection;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Limits the number of requests served over one HTTP/1.x keep-alive connection.
+ * <p>
+ * Once a connection has served the configured number of requests its last response carries
+ * <i>Connection: close</i> and the connection is closed after the response is written, so long
+ * lived clients are periodically re-balanced across the API server instances sharing the port.
+ * </p>
+ * <p>
+ * A handler instance must be used by the router of a single verticle instance, connections are
+ * counted on its event loop without synchronization.
+ * </p>
+ */
+public final class KeepAliveHandler implements Handler<RoutingContext> {
+
+  private final int maxRequests;
+  private final Map<HttpConnection, Integer> requestCounts = new WeakHashMap<>();
+
+  private KeepAliveHandler(int maxRequests) {
+    this.maxRequests = maxRequests;
+  }
+
+  /**
+   * @param maxRequests maximum requests per connection
+   */
+  public static KeepAliveHandler create(int maxRequests) {
+    return new KeepAliveHandler(maxRequests);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    HttpConnection connection = context.request().connection();
+    if (connection != null && context.request().version() != HttpVersion.HTTP_2) {
+      int count = requestCounts.merge(connection, 1, Integer::sum);
+      if (count >= maxRequests) {
+        requestCounts.remove(connection);
+        context.response().putHeader(HEADER_CONNECTION, "close");
+        context.addBodyEndHandler(v -> connection.close());
+      }
+    }
+    context.next();
+  }
+}
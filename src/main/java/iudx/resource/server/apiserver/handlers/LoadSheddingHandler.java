@@ -0,0 +1,106 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static iudx.resource.server.apiserver.util.Constants.*;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+import iudx.resource.server.apiserver.overload.OverloadController;
+import iudx.resource.server.apiserver.overload.OverloadController.Priority;
+import iudx.resource.server.apiserver.response.ResponseType;
+import iudx.resource.server.apiserver.response.RestResponse;
+
+/**
+ * Rejects requests of a route with 503 and Retry-After while the {@link OverloadController} sheds
+ * their priority.
+ * <p>
+ * Must be the first handler of a route so a shed request costs neither body reading nor
+ * authentication. The priority follows the endpoint kind, latest data is kept longest and
+ * temporal queries whose time window exceeds <i>largeTemporalWindowHours</i> (or is open ended)
+ * are shed first.
+ * </p>
+ */
+public final class LoadSheddingHandler implements Handler<RoutingContext> {
+
+  private final OverloadController controller;
+  private final EndpointKind kind;
+  private final List<String> backends;
+
+  private LoadSheddingHandler(OverloadController controller, EndpointKind kind,
+      List<String> backends) {
+    this.controller = controller;
+    this.kind = kind;
+    this.backends = backends;
+  }
+
+  /**
+   * @param controller overload controller
+   * @param kind endpoint kind of the route
+   * @param backends service addresses and backends the route depends on
+   */
+  public static LoadSheddingHandler create(OverloadController controller, EndpointKind kind,
+      List<String> backends) {
+    return new LoadSheddingHandler(controller, kind, backends);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    if (!controller.isEnabled() || controller.shed(priority(context.request()), backends) == null) {
+      context.next();
+      return;
+    }
+    ResponseType type = ResponseType.ServiceUnavailable;
+    context.response().putHeader(HEADER_RETRY_AFTER, String.valueOf(controller.retryAfterSeconds()))
+        .putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(type.getCode())
+        .end(new RestResponse.Builder().withType(type.getCode()).withTitle(type.getMessage())
+            .withMessage(MSG_OVERLOADED).build().toJsonString());
+  }
+
+  private Priority priority(HttpServerRequest request) {
+    switch (kind) {
+      case LATEST:
+        return Priority.CRITICAL;
+      case ENTITIES:
+        return Priority.SEARCH;
+      case TEMPORAL:
+        return isLargeWindow(request) ? Priority.BULK : Priority.TEMPORAL;
+      case POST_QUERY:
+        return Priority.TEMPORAL;
+      default:
+        return Priority.CONTROL;
+    }
+  }
+
+  /**
+   * Width of the time window of a temporal query, malformed times are left to validation.
+   */
+  private boolean isLargeWindow(HttpServerRequest request) {
+    String timerel = request.getParam(NGSILDQUERY_TIMEREL);
+    String time = request.getParam(NGSILDQUERY_TIME);
+    if (timerel == null || time == null) {
+      return false;
+    }
+    try {
+      ZonedDateTime start = ZonedDateTime.parse(time);
+      ZonedDateTime end;
+      if ("before".equalsIgnoreCase(timerel)) {
+        return true;
+      } else if ("after".equalsIgnoreCase(timerel)) {
+        end = ZonedDateTime.now(start.getZone());
+      } else {
+        String endtime = request.getParam(NGSILDQUERY_ENDTIME);
+        if (endtime == null) {
+          return false;
+        }
+        end = ZonedDateTime.parse(endtime);
+      }
+      return Duration.between(start, end).toMillis() > controller.largeTemporalWindowMillis();
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+}
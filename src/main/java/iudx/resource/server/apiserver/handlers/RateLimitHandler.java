@@ -0,0 +1,78 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static iudx.resource.server.apiserver.util.Constants.*;
+import static iudx.resource.server.authenticator.Constants.JSON_PUBLIC_CONSUMER;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import iudx.resource.server.apiserver.ratelimit.RateLimiter;
+import iudx.resource.server.apiserver.ratelimit.RateLimiter.Decision;
+import iudx.resource.server.apiserver.response.ResponseType;
+import iudx.resource.server.apiserver.response.RestResponse;
+
+/**
+ * Applies the request quota of the consumer to an authenticated request.
+ * <p>
+ * Must follow {@link AuthHandler} on a route, the consumer is taken from <i>authInfo</i> and the
+ * endpoint kind from the {@link RouteMetadata} of the route. Requests of the public token are
+ * limited per client address. Every limited response carries X-RateLimit-Limit,
+ * X-RateLimit-Remaining and X-RateLimit-Reset headers, a rejected request is answered with 429
+ * and Retry-After.
+ * </p>
+ */
+public final class RateLimitHandler implements Handler<RoutingContext> {
+
+  private static final Logger LOGGER = LogManager.getLogger(RateLimitHandler.class);
+
+  private final RateLimiter rateLimiter;
+
+  private RateLimitHandler(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  public static RateLimitHandler create(RateLimiter rateLimiter) {
+    return new RateLimitHandler(rateLimiter);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    RouteMetadata routeMetadata = RouteMetadata.get(context);
+    if (!rateLimiter.isEnabled() || routeMetadata == null) {
+      context.next();
+      return;
+    }
+    rateLimiter.acquire(consumer(context), routeMetadata.kind()).onComplete(handler -> {
+      if (handler.failed() || handler.result() == null) {
+        context.next();
+        return;
+      }
+      Decision decision = handler.result();
+      HttpServerResponse response = context.response();
+      response.putHeader(HEADER_RATE_LIMIT, String.valueOf(decision.limit()))
+          .putHeader(HEADER_RATE_LIMIT_REMAINING, String.valueOf(decision.remaining()))
+          .putHeader(HEADER_RATE_LIMIT_RESET, String.valueOf(decision.reset()));
+      if (decision.allowed()) {
+        context.next();
+        return;
+      }
+      LOGGER.error("Fail: rate limit exceeded for " + routeMetadata);
+      ResponseType type = ResponseType.TooManyRequests;
+      response.putHeader(HEADER_RETRY_AFTER, String.valueOf(decision.retryAfter()))
+          .putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(type.getCode())
+          .end(new RestResponse.Builder().withType(type.getCode()).withTitle(type.getMessage())
+              .withMessage(MSG_RATE_LIMITED).build().toJsonString());
+    });
+  }
+
+  private String consumer(RoutingContext context) {
+    JsonObject authInfo = context.get("authInfo");
+    String consumer = authInfo == null ? null : authInfo.getString(JSON_CONSUMER);
+    if (consumer == null || JSON_PUBLIC_CONSUMER.equals(consumer)) {
+      return "address:" + context.request().remoteAddress().host();
+    }
+    return consumer;
+  }
+}
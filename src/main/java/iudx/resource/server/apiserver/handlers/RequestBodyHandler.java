@@ -0,0 +1,244 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static iudx.resource.server.apiserver.util.Constants.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.ext.web.RoutingContext;
+import iudx.resource.server.apiserver.response.ResponseType;
+import iudx.resource.server.apiserver.response.RestResponse;
+
+/**
+ * Route scoped handler reading a json request body with a size limit.
+ * <p>
+ * The body is parsed once and the resulting {@link JsonObject} is stored in the
+ * {@link RoutingContext} under {@link #REQUEST_JSON}, later handlers read it with
+ * {@link #getRequestJson(RoutingContext)} instead of parsing the body again. A request declaring
+ * a Content-Length above the limit is rejected with 413 before any byte of the body is read, a
+ * request exceeding the limit while it is read is rejected as soon as the limit is crossed.
+ * </p>
+ * <p>
+ * A {@link #buffered(long)} handler collects the body and parses it at the end of the request, the
+ * raw body stays available from {@link RoutingContext#getBody()}. A {@link #streaming(long)}
+ * handler feeds every chunk to a {@link JsonParser} as it arrives, the raw body is never held as a
+ * whole and malformed json is rejected at the first invalid byte.
+ * </p>
+ * <p>
+ * The handler must be the first handler of its route, before any asynchronous handler.
+ * </p>
+ */
+public final class RequestBodyHandler implements Handler<RoutingContext> {
+
+  private static final Logger LOGGER = LogManager.getLogger(RequestBodyHandler.class);
+
+  public static final String REQUEST_JSON = "requestJson";
+
+  private final long bodyLimit;
+  private final boolean streaming;
+
+  private RequestBodyHandler(long bodyLimit, boolean streaming) {
+    this.bodyLimit = bodyLimit;
+    this.streaming = streaming;
+  }
+
+  /**
+   * @param bodyLimit maximum body size in bytes
+   * @return handler buffering the body before parsing it
+   */
+  public static RequestBodyHandler buffered(long bodyLimit) {
+    return new RequestBodyHandler(bodyLimit, false);
+  }
+
+  /**
+   * @param bodyLimit maximum body size in bytes
+   * @return handler parsing the body incrementally, the body must be a json object
+   */
+  public static RequestBodyHandler streaming(long bodyLimit) {
+    return new RequestBodyHandler(bodyLimit, true);
+  }
+
+  /**
+   * @return json body of the request, null if the route has no body handler or body is empty
+   */
+  public static JsonObject getRequestJson(RoutingContext context) {
+    return context.get(REQUEST_JSON);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    HttpServerRequest request = context.request();
+    String contentLength = request.getHeader(HEADER_CONTENT_LENGTH);
+    if (contentLength != null && isAboveLimit(contentLength)) {
+      LOGGER.error("Fail: request body of " + contentLength + " bytes above limit " + bodyLimit);
+      reject(context, ResponseType.RequestEntityTooLarge,
+          "request body exceeds " + bodyLimit + " bytes");
+      return;
+    }
+    if (streaming) {
+      new StreamingBody(context).read();
+    } else {
+      new BufferedBody(context).read();
+    }
+  }
+
+  private boolean isAboveLimit(String contentLength) {
+    try {
+      return Long.parseLong(contentLength.trim()) > bodyLimit;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reading of one request body, tracks the bytes received and stops at the first failure.
+   */
+  private abstract class Body {
+    protected final RoutingContext context;
+    private long received;
+    private boolean failed;
+
+    Body(RoutingContext context) {
+      this.context = context;
+    }
+
+    void read() {
+      HttpServerRequest request = context.request();
+      request.handler(chunk -> {
+        if (failed) {
+          return;
+        }
+        received += chunk.length();
+        if (received > bodyLimit) {
+          LOGGER.error("Fail: request body above limit " + bodyLimit);
+          fail(ResponseType.RequestEntityTooLarge, "request body exceeds " + bodyLimit + " bytes");
+          return;
+        }
+        onChunk(chunk);
+      });
+      request.exceptionHandler(e -> {
+        if (!failed) {
+          failed = true;
+          context.fail(e);
+        }
+      });
+      request.endHandler(v -> {
+        if (!failed) {
+          onEnd();
+        }
+      });
+    }
+
+    void fail(ResponseType type, String message) {
+      if (!failed) {
+        failed = true;
+        reject(context, type, message);
+      }
+    }
+
+    void complete(JsonObject json) {
+      if (json != null) {
+        context.put(REQUEST_JSON, json);
+      }
+      context.next();
+    }
+
+    abstract void onChunk(Buffer chunk);
+
+    abstract void onEnd();
+  }
+
+  private final class BufferedBody extends Body {
+    private final Buffer body = Buffer.buffer();
+
+    BufferedBody(RoutingContext context) {
+      super(context);
+    }
+
+    @Override
+    void onChunk(Buffer chunk) {
+      body.appendBuffer(chunk);
+    }
+
+    @Override
+    void onEnd() {
+      context.setBody(body);
+      if (body.length() == 0) {
+        complete(null);
+        return;
+      }
+      JsonObject json;
+      try {
+        json = body.toJsonObject();
+      } catch (DecodeException | ClassCastException e) {
+        LOGGER.error("Fail: invalid json body " + e.getMessage());
+        fail(ResponseType.BadRequestData, MSG_INVALID_JSON_BODY);
+        return;
+      }
+      complete(json);
+    }
+  }
+
+  private final class StreamingBody extends Body {
+    private final JsonParser parser = JsonParser.newParser().objectValueMode();
+    private JsonObject json;
+
+    StreamingBody(RoutingContext context) {
+      super(context);
+      parser.handler(event -> {
+        if (event.type() == JsonEventType.VALUE && event.isObject() && json == null) {
+          json = event.objectValue();
+        } else {
+          fail(ResponseType.BadRequestData, MSG_INVALID_JSON_BODY);
+        }
+      });
+      parser.exceptionHandler(e -> {
+        LOGGER.error("Fail: invalid json body " + e.getMessage());
+        fail(ResponseType.BadRequestData, MSG_INVALID_JSON_BODY);
+      });
+    }
+
+    @Override
+    void onChunk(Buffer chunk) {
+      parser.handle(chunk);
+    }
+
+    @Override
+    void onEnd() {
+      parser.end();
+      if (json == null) {
+        fail(ResponseType.BadRequestData, MSG_INVALID_JSON_BODY);
+        return;
+      }
+      complete(json);
+    }
+  }
+
+  private void reject(RoutingContext context, ResponseType type, String message) {
+    HttpServerRequest request = context.request();
+    HttpServerResponse response = context.response();
+    if (response.ended()) {
+      return;
+    }
+    String payload = new RestResponse.Builder().withType(type.getCode())
+        .withTitle(type.getMessage()).withMessage(message).build().toJsonString();
+    boolean closeConnection = !request.isEnded() && request.version() != HttpVersion.HTTP_2;
+    if (closeConnection) {
+      // rest of the body is not read, connection can not be reused.
+      response.putHeader(HEADER_CONNECTION, "close");
+    }
+    response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(type.getCode()).end(payload)
+        .onComplete(v -> {
+          if (closeConnection) {
+            request.connection().close();
+          }
+        });
+  }
+}
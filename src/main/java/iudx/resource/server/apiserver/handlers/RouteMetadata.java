@@ -0,0 +1,115 @@
+package iudx.resource.server.apiserver.handlers;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Route level metadata resolved once while building the router.
+ * <p>
+ * Every authenticated route carries its endpoint kind, the normalized endpoint sent to
+ * authentication service and how the requested id is extracted, so request handling never has to
+ * match the request path. The metadata is stored in the {@link RoutingContext} under
+ * {@link #ROUTE_METADATA} for later handlers.
+ * </p>
+ */
+public final class RouteMetadata {
+
+  public static final String ROUTE_METADATA = "routeMetadata";
+  /** comma separated ids an idPattern/type query was resolved to. */
+  public static final String RESOLVED_IDS = "resolvedIds";
+
+  /**
+   * Kind of endpoint a route belongs to.
+   */
+  public enum EndpointKind {
+    ENTITIES, LATEST, TEMPORAL, POST_QUERY, SUBSCRIPTION, ADAPTER, MANAGEMENT
+  }
+
+  /**
+   * Where the id requested by a route is present.
+   */
+  public enum IdSource {
+    /** no id. */
+    NONE,
+    /** remaining request path after the endpoint. */
+    PATH,
+    /** <i>id</i> query parameter. */
+    QUERY_PARAM,
+    /** id of first entity in <i>entities</i> array of request body. */
+    BODY_ENTITIES
+  }
+
+  private final EndpointKind kind;
+  private final String endpoint;
+  private final IdSource idSource;
+
+  private RouteMetadata(EndpointKind kind, String endpoint, IdSource idSource) {
+    this.kind = kind;
+    this.endpoint = endpoint;
+    this.idSource = idSource;
+  }
+
+  public static RouteMetadata of(EndpointKind kind, String endpoint, IdSource idSource) {
+    return new RouteMetadata(kind, endpoint, idSource);
+  }
+
+  public EndpointKind kind() {
+    return kind;
+  }
+
+  /**
+   * @return normalized endpoint (path without id)
+   */
+  public String endpoint() {
+    return endpoint;
+  }
+
+  public IdSource idSource() {
+    return idSource;
+  }
+
+  /**
+   * extract id requested in current request.
+   *
+   * @param context current routing context
+   * @param body parsed request body (may be empty)
+   * @return id extracted from path, query param or body, ids resolved from an idPattern/type
+   *         query if the request has none, empty if route has no id
+   */
+  public String extractId(RoutingContext context, JsonObject body) {
+    String id = requestedId(context, body);
+    String resolvedIds = context.get(RESOLVED_IDS);
+    return id.isEmpty() && resolvedIds != null ? resolvedIds : id;
+  }
+
+  private String requestedId(RoutingContext context, JsonObject body) {
+    switch (idSource) {
+      case PATH: {
+        String path = context.request().path();
+        return path.length() > endpoint.length() + 1 ? path.substring(endpoint.length() + 1)
+            : path;
+      }
+      case QUERY_PARAM: {
+        String id = context.request().getParam("id");
+        return id == null ? "" : id;
+      }
+      case BODY_ENTITIES: {
+        JsonArray entities = body.getJsonArray("entities");
+        return entities == null || entities.isEmpty() ? ""
+            : entities.getJsonObject(0).getString("id", "");
+      }
+      default:
+        return "";
+    }
+  }
+
+  public static RouteMetadata get(RoutingContext context) {
+    return context.get(ROUTE_METADATA);
+  }
+
+  @Override
+  public String toString() {
+    return kind + " " + endpoint;
+  }
+}
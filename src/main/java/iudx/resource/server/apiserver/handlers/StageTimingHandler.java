@@ -0,0 +1,131 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static iudx.resource.server.apiserver.util.Constants.HEADER_SERVER_TIMING;
+import static iudx.resource.server.apiserver.util.Constants.JSON_SEARCH_TYPE;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+import iudx.resource.server.apiserver.query.QueryPipeline;
+import iudx.resource.server.common.StageTimers;
+
+/**
+ * Collects the stage durations of a request.
+ * <p>
+ * Route handlers record their stages with {@link #record(RoutingContext, String, long)}, the
+ * stages of the {@link QueryPipeline} of the request are picked up from the pipeline itself. Once
+ * the response is written all stages, together with the <i>response</i> stage (writing of the
+ * response), are published to the {@link StageTimers} tagged with the endpoint of the route and
+ * the search type of the query (see {@link #setSearchType(RoutingContext, String)}).
+ * </p>
+ * <p>
+ * With <i>serverTiming</i> enabled the stages finished before the response headers are sent are
+ * also returned in a <i>Server-Timing</i> header (e.g. <code>auth;dur=12.3, database;dur=48.1,
+ * total;dur=63.0</code>) for debugging, it exposes internal timings and is disabled by default.
+ * </p>
+ */
+public final class StageTimingHandler implements Handler<RoutingContext> {
+
+  public static final String STAGE_TIMINGS = "stageTimings";
+  public static final String STAGE_REQUEST_VALIDATION = "requestValidation";
+  public static final String STAGE_AUTH = "auth";
+  public static final String STAGE_RESPONSE = "response";
+
+  private final boolean serverTiming;
+
+  private StageTimingHandler(boolean serverTiming) {
+    this.serverTiming = serverTiming;
+  }
+
+  /**
+   * @param serverTiming whether to return stage durations in a Server-Timing header
+   */
+  public static StageTimingHandler create(boolean serverTiming) {
+    return new StageTimingHandler(serverTiming);
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    long start = System.nanoTime();
+    Map<String, Long> timings = new LinkedHashMap<>();
+    context.put(STAGE_TIMINGS, timings);
+    long[] headersEnd = new long[1];
+    context.addHeadersEndHandler(v -> {
+      headersEnd[0] = System.nanoTime();
+      if (serverTiming) {
+        context.response().putHeader(HEADER_SERVER_TIMING,
+            serverTiming(timings, QueryPipeline.get(context), headersEnd[0] - start));
+      }
+    });
+    context.addBodyEndHandler(v -> {
+      timings.put(STAGE_RESPONSE, System.nanoTime() - headersEnd[0]);
+      publish(context, timings);
+    });
+    context.next();
+  }
+
+  /**
+   * Records a stage of the request, no-op if the route does not collect stage timings.
+   *
+   * @param context routing context of the request
+   * @param stage stage name
+   * @param startNanos {@link System#nanoTime()} at the start of the stage
+   */
+  public static void record(RoutingContext context, String stage, long startNanos) {
+    Map<String, Long> timings = context.get(STAGE_TIMINGS);
+    if (timings != null) {
+      timings.put(stage, System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Sets the search type the stages of the request are tagged with.
+   */
+  public static void setSearchType(RoutingContext context, String searchType) {
+    context.put(JSON_SEARCH_TYPE, searchType);
+  }
+
+  private static void publish(RoutingContext context, Map<String, Long> timings) {
+    String endpoint = endpoint(context);
+    String searchType = context.get(JSON_SEARCH_TYPE);
+    timings.forEach((stage, nanos) -> StageTimers.record(stage, endpoint, searchType, nanos));
+    QueryPipeline pipeline = QueryPipeline.get(context);
+    if (pipeline != null) {
+      pipeline.timings().forEach((stage, millis) -> StageTimers.record(stage, endpoint,
+          searchType, (long) (millis * 1_000_000)));
+    }
+  }
+
+  /**
+   * Endpoint of the request, the route path keeps path parameters as placeholders so the number
+   * of tag values stays bounded.
+   */
+  private static String endpoint(RoutingContext context) {
+    RouteMetadata routeMetadata = RouteMetadata.get(context);
+    if (routeMetadata != null) {
+      return routeMetadata.endpoint();
+    }
+    Route route = context.currentRoute();
+    return route == null ? null : route.getPath();
+  }
+
+  private static String serverTiming(Map<String, Long> timings, QueryPipeline pipeline,
+      long totalNanos) {
+    StringBuilder header = new StringBuilder();
+    timings.forEach((stage, nanos) -> append(header, stage, nanos / 1_000_000.0));
+    if (pipeline != null) {
+      pipeline.timings().forEach((stage, millis) -> append(header, stage, millis));
+    }
+    append(header, "total", totalNanos / 1_000_000.0);
+    return header.toString();
+  }
+
+  private static void append(StringBuilder header, String stage, double millis) {
+    if (header.length() > 0) {
+      header.append(", ");
+    }
+    header.append(stage).append(";dur=").append(String.format(Locale.ROOT, "%.1f", millis));
+  }
+}
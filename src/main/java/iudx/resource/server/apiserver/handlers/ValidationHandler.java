@@ -1,9 +1,6 @@
 package iudx.resource.server.apiserver.handlers;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,70 +10,51 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import iudx.resource.server.apiserver.util.RequestType;
+import iudx.resource.server.apiserver.validation.ValidationPlan;
+import iudx.resource.server.apiserver.validation.ValidationPlan.Rule;
 import iudx.resource.server.apiserver.validation.ValidatorsHandlersFactory;
-import iudx.resource.server.apiserver.validation.types.Validator;
 
 public class ValidationHandler implements Handler<RoutingContext>{
 
 
   private static final Logger LOGGER = LogManager.getLogger(ValidationHandler.class);
 
-  private RequestType requestType;
-  private Vertx vertx;
+  private final ValidationPlan plan;
 
 
   public ValidationHandler(Vertx vertx,RequestType apiRequestType) {
-    this.vertx=vertx;
-    this.requestType = apiRequestType;
+    this.plan = new ValidatorsHandlersFactory().compile(vertx, apiRequestType);
   }
 
   @Override
   public void handle(RoutingContext context) {
-    ValidatorsHandlersFactory validationFactory = new ValidatorsHandlersFactory();
+    long start = System.nanoTime();
     MultiMap parameters = context.request().params();
-    MultiMap headers = context.request().headers();
-    JsonObject body=context.getBodyAsJson();
+    JsonObject body=RequestBodyHandler.getRequestJson(context);
     Map<String,String> pathParams=context.pathParams();
     parameters.addAll(pathParams);
-    
-    List<Validator> validations = null;
-    switch (requestType) {
-      case ENTITY:
-        validations = validationFactory.build(vertx,requestType, parameters, headers,body);
-        break;
-      case TEMPORAL:
-        validations = validationFactory.build(vertx,requestType, parameters, headers,body);
-        break;
-      case LATEST:
-        validations = validationFactory.build(vertx,requestType, parameters, headers,body);
-        break;
-      case POST:
-        validations = validationFactory.build(vertx,requestType, parameters, headers,body);
-        break;
-      default:
-        break;
-    }
-    for (Validator validator : Optional.ofNullable(validations).orElse(Collections.emptyList())) {
-      LOGGER.debug("validator :" + validator.getClass().getName());
-      if (!validator.isValid()) {
-        error(context);
-        return;
-      }
+
+    Rule failed = plan.validate(parameters, body);
+    StageTimingHandler.record(context, StageTimingHandler.STAGE_REQUEST_VALIDATION, start);
+    if (failed != null) {
+      LOGGER.debug("validation failed for " + plan.requestType() + " on :" + failed);
+      error(context, failed);
+      return;
     }
     context.next();
     return;
   }
 
-  private void error(RoutingContext context) {
+  private void error(RoutingContext context, Rule failed) {
     context.response().putHeader("content-type", "application/json")
         .setStatusCode(HttpStatus.SC_BAD_REQUEST)
-        .end(getBadRequestMessage().toString());
+        .end(getBadRequestMessage(failed).toString());
   }
 
-  private JsonObject getBadRequestMessage() {
+  private JsonObject getBadRequestMessage(Rule failed) {
     return new JsonObject()
         .put("type", 400)
         .put("title", "Bad Request")
-        .put("details", "Bad query");
+        .put("details", "Bad query : invalid " + failed.name());
   }
 }
@@ -0,0 +1,228 @@
+package iudx.resource.server.apiserver.overload;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.micrometer.backends.BackendRegistries;
+import iudx.resource.server.common.InFlight;
+
+/**
+ * Sheds requests when the node is overloaded, before they queue up as pending backend calls.
+ * <p>
+ * Load is measured by the lag of the event loop handling a request (delay of a periodic probe
+ * timer) and by the calls in flight to the backends the request depends on (service addresses
+ * awaiting a reply and Elasticsearch/Redis requests, see {@link InFlight}). Each signal is divided
+ * by its configured limit and the highest ratio is the pressure seen by the request. A request is
+ * rejected when the pressure reaches the threshold of its {@link Priority}, so low priority
+ * requests are shed first and high priority ones only at the limit:
+ * </p>
+ *
+ * <pre>
+ * "overload": {
+ *   "enabled": true,
+ *   "maxEventLoopLagMillis": 200,
+ *   "lagProbeIntervalMillis": 100,
+ *   "maxInFlight": { "iudx.rs.database.service": 256, "elasticsearch": 128 },
+ *   "thresholds": { "BULK": 0.5, "TEMPORAL": 0.7, "SEARCH": 0.8, "CONTROL": 0.9 },
+ *   "largeTemporalWindowHours": 24,
+ *   "retryAfterSeconds": 2
+ * }
+ * </pre>
+ * <p>
+ * Backends without a limit are not considered. Rejections are counted in <i>iudx.rs.shed</i>
+ * (tags priority, reason) and the lag of every event loop is published as
+ * <i>iudx.rs.eventloop.lag</i> when metrics are enabled.
+ * </p>
+ */
+public final class OverloadController implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(OverloadController.class);
+
+  public static final String REASON_EVENT_LOOP_LAG = "eventLoopLag";
+
+  private static final String SHARED_MAP = "iudx.rs.overload";
+  private static final String SHARED_KEY = "overloadController";
+  private static final String SHED_METRIC = "iudx.rs.shed";
+  private static final String LAG_METRIC = "iudx.rs.eventloop.lag";
+
+  /**
+   * Priority of a request, lowest first.
+   */
+  public enum Priority {
+    /** temporal queries over a large window. */
+    BULK(0.5),
+    /** other temporal and post queries. */
+    TEMPORAL(0.7),
+    /** entity searches. */
+    SEARCH(0.8),
+    /** subscriptions, management and adapter requests. */
+    CONTROL(0.9),
+    /** latest data, shed only at the limit. */
+    CRITICAL(1.0);
+
+    private final double defaultThreshold;
+
+    Priority(double defaultThreshold) {
+      this.defaultThreshold = defaultThreshold;
+    }
+  }
+
+  private final boolean enabled;
+  private final long maxLagNanos;
+  private final long probeIntervalMillis;
+  private final long largeTemporalWindowMillis;
+  private final long retryAfterSeconds;
+  private final Map<String, Integer> maxInFlight = new HashMap<>();
+  private final Map<Priority, Double> thresholds = new EnumMap<>(Priority.class);
+  private final Map<String, AtomicLong> eventLoopLags = new ConcurrentHashMap<>();
+  private final Map<String, Counter> shedCounters = new ConcurrentHashMap<>();
+
+  private OverloadController(JsonObject config) {
+    this.enabled = config.getBoolean("enabled", false);
+    this.maxLagNanos =
+        TimeUnit.MILLISECONDS.toNanos(config.getLong("maxEventLoopLagMillis", 200L));
+    this.probeIntervalMillis = config.getLong("lagProbeIntervalMillis", 100L);
+    this.largeTemporalWindowMillis =
+        TimeUnit.HOURS.toMillis(config.getLong("largeTemporalWindowHours", 24L));
+    this.retryAfterSeconds = config.getLong("retryAfterSeconds", 2L);
+    config.getJsonObject("maxInFlight", new JsonObject())
+        .forEach(limit -> maxInFlight.put(limit.getKey(), ((Number) limit.getValue()).intValue()));
+    JsonObject thresholdsJson = config.getJsonObject("thresholds", new JsonObject());
+    for (Priority priority : Priority.values()) {
+      thresholds.put(priority,
+          thresholdsJson.getDouble(priority.name(), priority.defaultThreshold));
+    }
+  }
+
+  /**
+   * Returns the overload controller of this JVM, creating it on first use.
+   *
+   * @param vertx vertx instance
+   * @param config overload config, may be null
+   * @return shared OverloadController
+   */
+  public static OverloadController getOrCreate(Vertx vertx, JsonObject config) {
+    LocalMap<String, OverloadController> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    OverloadController controller = map.get(SHARED_KEY);
+    if (controller == null) {
+      OverloadController created =
+          new OverloadController(config == null ? new JsonObject() : config);
+      controller = map.putIfAbsent(SHARED_KEY, created);
+      if (controller == null) {
+        controller = created;
+      }
+    }
+    return controller;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long retryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  /**
+   * @return width of a temporal query window from which it is shed as {@link Priority#BULK}
+   */
+  public long largeTemporalWindowMillis() {
+    return largeTemporalWindowMillis;
+  }
+
+  /**
+   * Measures the lag of the event loop of the calling verticle, must be called from the start of
+   * a verticle bound to an event loop. The probe timer is cancelled with the verticle.
+   *
+   * @param vertx vertx instance
+   */
+  public void monitorEventLoop(Vertx vertx) {
+    if (!enabled) {
+      return;
+    }
+    String eventLoop = Thread.currentThread().getName();
+    AtomicLong lag = eventLoopLags.computeIfAbsent(eventLoop, this::lagGauge);
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+    AtomicLong expected = new AtomicLong(System.nanoTime() + intervalNanos);
+    vertx.setPeriodic(probeIntervalMillis, id -> {
+      long now = System.nanoTime();
+      lag.set(Math.max(0, now - expected.get()));
+      expected.set(now + intervalNanos);
+    });
+  }
+
+  /**
+   * Decides whether a request is shed, must be called on the event loop handling the request.
+   *
+   * @param priority priority of the request
+   * @param backends backends the request depends on
+   * @return reason the request is shed (event loop lag or the overloaded backend), null if the
+   *         request is admitted
+   */
+  public String shed(Priority priority, List<String> backends) {
+    if (!enabled) {
+      return null;
+    }
+    double threshold = thresholds.get(priority);
+    AtomicLong lag = eventLoopLags.get(Thread.currentThread().getName());
+    if (lag != null && (double) lag.get() / maxLagNanos >= threshold) {
+      return count(priority, REASON_EVENT_LOOP_LAG);
+    }
+    for (String backend : backends) {
+      Integer limit = maxInFlight.get(backend);
+      if (limit != null && (double) InFlight.get(backend) / limit >= threshold) {
+        return count(priority, backend);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return lag of every monitored event loop in milliseconds and the calls in flight per backend
+   */
+  public JsonObject stats() {
+    JsonObject lags = new JsonObject();
+    eventLoopLags.forEach((eventLoop, lag) -> lags.put(eventLoop,
+        TimeUnit.NANOSECONDS.toMillis(lag.get())));
+    JsonObject inFlight = new JsonObject();
+    InFlight.snapshot().forEach(inFlight::put);
+    return new JsonObject().put("eventLoopLagMillis", lags).put("inFlight", inFlight);
+  }
+
+  private String count(Priority priority, String reason) {
+    Counter counter = shedCounters.computeIfAbsent(priority + "|" + reason, key -> {
+      MeterRegistry registry = BackendRegistries.getDefaultNow();
+      return registry == null ? null
+          : Counter.builder(SHED_METRIC).tag("priority", priority.name()).tag("reason", reason)
+              .register(registry);
+    });
+    if (counter != null) {
+      counter.increment();
+    }
+    LOGGER.debug("shed " + priority + " request, overloaded : " + reason);
+    return reason;
+  }
+
+  private AtomicLong lagGauge(String eventLoop) {
+    AtomicLong lag = new AtomicLong();
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry != null) {
+      Gauge.builder(LAG_METRIC, lag, value -> value.get() / 1e9).tag("eventLoop", eventLoop)
+          .baseUnit("seconds").register(registry);
+    }
+    return lag;
+  }
+}
@@ -0,0 +1 @@
+package iudx.resource.server.apiserver.overload;
\ No newline at end of file
@@ -0,0 +1,236 @@
+package iudx.resource.server.apiserver.query;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.operation.valid.IsValidOp;
+import org.locationtech.jts.operation.valid.TopologyValidationError;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import io.vertx.core.json.JsonObject;
+import iudx.resource.server.database.archives.QueryPlan.Geo;
+
+/**
+ * Validates and normalizes the geometry of a geo query before it reaches Elasticsearch.
+ * <p>
+ * Coordinates must be in range and shapes must be valid and not degenerate (self-intersecting or
+ * empty polygon, zero length line, flat box, circle without radius). Rings are oriented as
+ * expected by Elasticsearch (counter-clockwise shell) and shapes with more than
+ * <i>simplifyMinVertices</i> vertices are simplified within <i>simplifyTolerance</i> degrees,
+ * keeping their topology. With <i>bboxPrefilter</i>, shapes of any relation but disjoint get a
+ * bounding box, used as a geo_bounding_box prefilter of the geo_shape query. It is off by default:
+ * the IUDX location field is a geo_shape, already searched through its BKD tree, and
+ * Elasticsearch before 7.12 rejects geo_bounding_box on a geo_shape field. It only helps when the
+ * field is a geo_point.
+ * </p>
+ *
+ * <pre>
+ * "geoQuery": {
+ *   "simplifyTolerance": 0.0001,
+ *   "simplifyMinVertices": 256,
+ *   "maxVertices": 10000,
+ *   "bboxPrefilter": false
+ * }
+ * </pre>
+ */
+public final class GeoPreprocessor {
+
+  static final GeoPreprocessor DEFAULT = new GeoPreprocessor(new JsonObject());
+
+  private static final double EARTH_RADIUS_METERS = 6371008.8;
+  private static final String DISJOINT = "disjoint";
+
+  private final GeometryFactory factory = new GeometryFactory();
+  private final double simplifyTolerance;
+  private final int simplifyMinVertices;
+  private final int maxVertices;
+  private final boolean bboxPrefilter;
+
+  /**
+   * @param config geoQuery config, may be null
+   */
+  public GeoPreprocessor(JsonObject config) {
+    JsonObject geoConfig = config == null ? new JsonObject() : config;
+    this.simplifyTolerance = geoConfig.getDouble("simplifyTolerance", 0.0001);
+    this.simplifyMinVertices = geoConfig.getInteger("simplifyMinVertices", 256);
+    this.maxVertices = geoConfig.getInteger("maxVertices", 10000);
+    this.bboxPrefilter = geoConfig.getBoolean("bboxPrefilter", false);
+  }
+
+  /**
+   * @param geo geo query as given by the client
+   * @return validated and normalized geo query
+   */
+  public Geo process(Geo geo) {
+    if (geo.rings().length == 0) {
+      throw degenerate("empty coordinates");
+    }
+    int vertices = 0;
+    for (double[][] ring : geo.rings()) {
+      if (ring.length == 0) {
+        throw degenerate("empty coordinates");
+      }
+      for (double[] point : ring) {
+        checkRange(point);
+        vertices++;
+      }
+    }
+    if (vertices > maxVertices) {
+      throw new IllegalArgumentException(
+          "Geometry has " + vertices + " vertices, at most " + maxVertices + " are allowed");
+    }
+    switch (geo.shape()) {
+      case "circle":
+        return circle(geo);
+      case "envelope":
+        return envelope(geo);
+      case "polygon":
+        return polygon(geo, vertices);
+      default:
+        return lineString(geo, vertices);
+    }
+  }
+
+  private Geo circle(Geo geo) {
+    if (!(geo.radius() > 0)) {
+      throw degenerate("circle without radius");
+    }
+    double[] center = geo.rings()[0][0];
+    double latDelta = Math.toDegrees(geo.radius() / EARTH_RADIUS_METERS);
+    double cos = Math.cos(Math.toRadians(center[1]));
+    double lonDelta = cos > 1e-9 ? latDelta / cos : 180;
+    double west = -180;
+    double east = 180;
+    if (lonDelta < 180) {
+      // a box crossing the antimeridian is wrapped, its west edge is then east of its east edge.
+      west = wrap(center[0] - lonDelta);
+      east = wrap(center[0] + lonDelta);
+    }
+    double[] bbox = {west, Math.max(-90, center[1] - latDelta), east,
+        Math.min(90, center[1] + latDelta)};
+    return new Geo(geo.shape(), geo.relation(), geo.rings(), geo.radius(), boundingBox(geo, bbox));
+  }
+
+  private Geo envelope(Geo geo) {
+    double[][] corners = geo.rings()[0];
+    if (corners.length != 2) {
+      throw new IllegalArgumentException("bbox needs top left and bottom right corners");
+    }
+    double[] topLeft = corners[0];
+    double[] bottomRight = corners[1];
+    if (!(topLeft[0] < bottomRight[0] && topLeft[1] > bottomRight[1])) {
+      throw degenerate("bbox corners must be top left and bottom right of a non empty box");
+    }
+    double[] bbox = {topLeft[0], bottomRight[1], bottomRight[0], topLeft[1]};
+    return new Geo(geo.shape(), geo.relation(), geo.rings(), 0, boundingBox(geo, bbox));
+  }
+
+  private Geo polygon(Geo geo, int vertices) {
+    double[][][] rings = geo.rings();
+    LinearRing[] holes = new LinearRing[rings.length - 1];
+    for (int i = 1; i < rings.length; i++) {
+      holes[i - 1] = ring(rings[i]);
+    }
+    Geometry polygon = factory.createPolygon(ring(rings[0]), holes);
+    TopologyValidationError error = new IsValidOp(polygon).getValidationError();
+    if (error != null) {
+      throw degenerate(error.getMessage().toLowerCase() + " at " + error.getCoordinate());
+    }
+    if (vertices > simplifyMinVertices) {
+      polygon = TopologyPreservingSimplifier.simplify(polygon, simplifyTolerance);
+    }
+    if (polygon.isEmpty() || !(polygon.getArea() > 0)) {
+      throw degenerate("polygon without area");
+    }
+    Polygon normalized = (Polygon) polygon;
+    double[][][] normalizedRings = new double[normalized.getNumInteriorRing() + 1][][];
+    normalizedRings[0] = points(normalized.getExteriorRing(), true);
+    for (int i = 0; i < normalized.getNumInteriorRing(); i++) {
+      normalizedRings[i + 1] = points(normalized.getInteriorRingN(i), false);
+    }
+    return new Geo(geo.shape(), geo.relation(), normalizedRings, 0,
+        boundingBox(geo, normalized.getEnvelopeInternal()));
+  }
+
+  private Geo lineString(Geo geo, int vertices) {
+    Geometry line;
+    try {
+      line = factory.createLineString(coordinates(geo.rings()[0]));
+    } catch (IllegalArgumentException e) {
+      throw degenerate("linestring needs at least 2 points");
+    }
+    if (vertices > simplifyMinVertices) {
+      line = TopologyPreservingSimplifier.simplify(line, simplifyTolerance);
+    }
+    if (!(line.getLength() > 0)) {
+      throw degenerate("linestring without length");
+    }
+    double[][][] rings = {points((LineString) line, null)};
+    return new Geo(geo.shape(), geo.relation(), rings, 0,
+        boundingBox(geo, line.getEnvelopeInternal()));
+  }
+
+  private LinearRing ring(double[][] points) {
+    double[] first = points[0];
+    double[] last = points[points.length - 1];
+    if (first[0] != last[0] || first[1] != last[1]) {
+      throw new IllegalArgumentException("Coordinate mismatch (Polygon)");
+    }
+    try {
+      return factory.createLinearRing(coordinates(points));
+    } catch (IllegalArgumentException e) {
+      throw degenerate("polygon ring needs at least 4 points");
+    }
+  }
+
+  private double[] boundingBox(Geo geo, Envelope envelope) {
+    return boundingBox(geo, new double[] {envelope.getMinX(), envelope.getMinY(),
+        envelope.getMaxX(), envelope.getMaxY()});
+  }
+
+  private double[] boundingBox(Geo geo, double[] bbox) {
+    return bboxPrefilter && !DISJOINT.equalsIgnoreCase(geo.relation()) ? bbox : null;
+  }
+
+  private static double wrap(double lon) {
+    return lon < -180 ? lon + 360 : lon > 180 ? lon - 360 : lon;
+  }
+
+  private static Coordinate[] coordinates(double[][] points) {
+    Coordinate[] coordinates = new Coordinate[points.length];
+    for (int i = 0; i < points.length; i++) {
+      coordinates[i] = new Coordinate(points[i][0], points[i][1]);
+    }
+    return coordinates;
+  }
+
+  /**
+   * @param counterClockwise orientation of a ring, null to keep the order of a line
+   */
+  private static double[][] points(LineString line, Boolean counterClockwise) {
+    Coordinate[] coordinates = line.getCoordinates();
+    boolean reverse = counterClockwise != null
+        && Orientation.isCCW(coordinates) != counterClockwise;
+    double[][] points = new double[coordinates.length][];
+    for (int i = 0; i < coordinates.length; i++) {
+      Coordinate coordinate = coordinates[reverse ? coordinates.length - 1 - i : i];
+      points[i] = new double[] {coordinate.x, coordinate.y};
+    }
+    return points;
+  }
+
+  private static void checkRange(double[] point) {
+    if (!(point[0] >= -180 && point[0] <= 180 && point[1] >= -90 && point[1] <= 90)) {
+      throw new IllegalArgumentException(
+          "Coordinates out of range : [" + point[0] + "," + point[1] + "]");
+    }
+  }
+
+  private static IllegalArgumentException degenerate(String reason) {
+    return new IllegalArgumentException("Invalid geometry : " + reason);
+  }
+}
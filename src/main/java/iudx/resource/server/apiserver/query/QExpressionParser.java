@@ -0,0 +1,153 @@
+package iudx.resource.server.apiserver.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import iudx.resource.server.database.archives.QueryPlan.Expression;
+import iudx.resource.server.database.archives.QueryPlan.Term;
+
+/**
+ * Parser of NGSI-LD q expressions.
+ * <p>
+ * Terms are combined with <i>;</i> (AND) and <i>|</i> (OR), AND binding tighter, and grouped with
+ * parentheses, e.g. <i>(speed&gt;30;occupancy&lt;50)|status=="stopped"</i>. A term is an
+ * attribute, an operator (&gt;, &lt;, &gt;=, &lt;=, ==, !=) and a value, range values must be
+ * numbers and an equality value may be double quoted to contain reserved characters. The whole
+ * expression is validated while it is parsed, an invalid one fails with an
+ * {@link IllegalArgumentException}.
+ * </p>
+ */
+public final class QExpressionParser {
+
+  static final int MAX_TERMS = 32;
+  static final int MAX_DEPTH = 8;
+
+  private static final List<String> OPERATORS = List.of(">", "<", ">=", "<=", "==", "!=");
+  private static final List<String> RANGE_OPERATORS = List.of(">", "<", ">=", "<=");
+  private static final String OPERATOR_CHARS = "<>=!";
+  private static final String RESERVED_CHARS = ";|()\"";
+
+  private final String q;
+  private int position;
+  private int depth;
+  private int terms;
+
+  private QExpressionParser(String q) {
+    this.q = q;
+  }
+
+  /**
+   * @param q value of the q parameter
+   * @return expression tree of q
+   */
+  public static Expression parse(String q) {
+    if (q == null || q.isBlank()) {
+      throw new IllegalArgumentException("Empty q expression");
+    }
+    QExpressionParser parser = new QExpressionParser(q);
+    Expression expression = parser.or();
+    if (parser.position != q.length()) {
+      throw parser.error("unexpected '" + q.charAt(parser.position) + "'");
+    }
+    return expression;
+  }
+
+  private Expression or() {
+    List<Expression> operands = new ArrayList<>();
+    operands.add(and());
+    while (accept('|')) {
+      operands.add(and());
+    }
+    return Expression.or(operands);
+  }
+
+  private Expression and() {
+    List<Expression> operands = new ArrayList<>();
+    operands.add(operand());
+    while (accept(';')) {
+      operands.add(operand());
+    }
+    return Expression.and(operands);
+  }
+
+  private Expression operand() {
+    if (!accept('(')) {
+      return Expression.term(term());
+    }
+    if (++depth > MAX_DEPTH) {
+      throw error("more than " + MAX_DEPTH + " nested parentheses");
+    }
+    Expression expression = or();
+    if (!accept(')')) {
+      throw error("missing ')'");
+    }
+    depth--;
+    return expression;
+  }
+
+  private Term term() {
+    if (++terms > MAX_TERMS) {
+      throw error("more than " + MAX_TERMS + " terms");
+    }
+    int start = position;
+    while (position < q.length() && isAttributeChar(q.charAt(position))) {
+      position++;
+    }
+    String attribute = q.substring(start, position);
+    start = position;
+    while (position < q.length() && OPERATOR_CHARS.indexOf(q.charAt(position)) >= 0) {
+      position++;
+    }
+    String operator = q.substring(start, position);
+    if (attribute.isEmpty() || !OPERATORS.contains(operator)) {
+      throw error("Operator not allowed.");
+    }
+    String value = value();
+    if (!RANGE_OPERATORS.contains(operator)) {
+      return new Term(attribute, operator, value);
+    }
+    try {
+      return new Term(attribute, operator, Double.valueOf(value));
+    } catch (NumberFormatException e) {
+      throw error("value of " + attribute + operator + " is not a number");
+    }
+  }
+
+  private String value() {
+    if (accept('"')) {
+      int end = q.indexOf('"', position);
+      if (end < 0) {
+        throw error("missing '\"'");
+      }
+      String value = q.substring(position, end);
+      position = end + 1;
+      return value;
+    }
+    int start = position;
+    while (position < q.length() && RESERVED_CHARS.indexOf(q.charAt(position)) < 0) {
+      if (OPERATOR_CHARS.indexOf(q.charAt(position)) >= 0) {
+        throw error("Operator not allowed.");
+      }
+      position++;
+    }
+    if (start == position) {
+      throw error("missing value");
+    }
+    return q.substring(start, position);
+  }
+
+  private boolean accept(char c) {
+    if (position < q.length() && q.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isAttributeChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException("Invalid q at " + position + " : " + message);
+  }
+}
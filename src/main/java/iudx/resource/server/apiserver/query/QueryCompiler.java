@@ -0,0 +1,335 @@
+package iudx.resource.server.apiserver.query;
+
+import static iudx.resource.server.apiserver.util.Constants.*;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import iudx.resource.server.database.archives.QueryPlan;
+import iudx.resource.server.database.archives.QueryPlan.Geo;
+import iudx.resource.server.database.archives.QueryPlan.Temporal;
+import iudx.resource.server.database.archives.QueryPlan.TimeRelation;
+
+/**
+ * Compiles the parameters of an NGSI-LD query into a {@link QueryPlan} in a single pass.
+ * <p>
+ * Parameters are read once, coordinates and times are parsed into their typed form and every
+ * check the database needs is made here, an invalid query fails with an
+ * {@link IllegalArgumentException} whose message is returned to the client. The returned builder
+ * is completed with the request context (instance, applicable filters) by the caller.
+ * </p>
+ */
+public final class QueryCompiler {
+
+  // Elasticsearch index.max_inner_result_window default.
+  static final int MAX_LAST_N = 100;
+
+  private final QueryPlan.Builder plan = QueryPlan.builder();
+  private final GeoPreprocessor geoPreprocessor;
+  private String georel;
+  private String geometry;
+  private JsonArray coordinates;
+  private String geoProperty;
+  private String timerel;
+  private String time;
+  private String endTime;
+  private String q;
+  private List<String> attrs;
+  private String options;
+  private Integer lastN;
+
+  private QueryCompiler(GeoPreprocessor geoPreprocessor) {
+    this.geoPreprocessor = geoPreprocessor;
+  }
+
+  /**
+   * Compiles the query parameters of a GET entities or temporal query.
+   *
+   * @param params query parameters
+   * @param temporal true for a temporal query, temporal parameters are rejected otherwise
+   * @param geoPreprocessor validation and normalization of geometries
+   * @return builder of the plan
+   */
+  public static QueryPlan.Builder compile(MultiMap params, boolean temporal,
+      GeoPreprocessor geoPreprocessor) {
+    QueryCompiler compiler = new QueryCompiler(geoPreprocessor);
+    for (Map.Entry<String, String> entry : params) {
+      compiler.param(entry.getKey().toLowerCase(), entry.getValue());
+    }
+    if (!temporal && (compiler.timerel != null || compiler.time != null
+        || compiler.endTime != null)) {
+      throw new IllegalArgumentException("Temporal parameters are not allowed in entities query.");
+    }
+    return compiler.compile(temporal);
+  }
+
+  /**
+   * Compiles the body of a POST entities query, it is temporal when it has a <i>temporalQ</i>.
+   *
+   * @param body request body
+   * @param geoPreprocessor validation and normalization of geometries
+   * @return builder of the plan
+   */
+  public static QueryPlan.Builder compile(JsonObject body, GeoPreprocessor geoPreprocessor) {
+    QueryCompiler compiler = new QueryCompiler(geoPreprocessor);
+    JsonArray entities = body.getJsonArray(NGSILDQUERY_ENTITIES, new JsonArray());
+    for (Object entity : entities) {
+      String id = ((JsonObject) entity).getString(NGSILDQUERY_ID);
+      if (id != null) {
+        compiler.plan.id(id);
+      }
+    }
+    JsonObject geoQ = body.getJsonObject(NGSILDQUERY_GEOQ);
+    if (geoQ != null) {
+      compiler.georel = geoQ.getString(NGSILDQUERY_GEOREL);
+      compiler.geometry = geoQ.getString(NGSILDQUERY_GEOMETRY);
+      compiler.coordinates = geoQ.getJsonArray(NGSILDQUERY_COORDINATES);
+      compiler.geoProperty = geoQ.getString(NGSILDQUERY_GEOPROPERTY);
+    }
+    JsonObject temporalQ = body.getJsonObject(NGSILDQUERY_TEMPORALQ);
+    if (temporalQ != null) {
+      compiler.timerel = temporalQ.getString(NGSILDQUERY_TIMEREL);
+      compiler.time = temporalQ.getString(NGSILDQUERY_TIME);
+      compiler.endTime = temporalQ.getString(NGSILDQUERY_ENDTIME);
+    }
+    compiler.q = body.getString(NGSILDQUERY_Q);
+    compiler.attrs(body.getString(NGSILDQUERY_ATTRIBUTE));
+    compiler.options(body.getString(IUDXQUERY_OPTIONS));
+    compiler.plan.limit(toInteger(body.getValue(NGSILDQUERY_SIZE)));
+    compiler.plan.offset(toInteger(body.getValue(NGSILDQUERY_FROM)));
+    compiler.lastN(body.getValue(JSON_LASTN));
+    return compiler.compile(temporalQ != null);
+  }
+
+  private void param(String name, String value) {
+    switch (name) {
+      case NGSILDQUERY_ID:
+        Arrays.stream(value.split(",")).forEach(plan::id);
+        break;
+      case NGSILDQUERY_ATTRIBUTE:
+        attrs(value);
+        break;
+      case NGSILDQUERY_GEOREL:
+        georel = value;
+        break;
+      case NGSILDQUERY_GEOMETRY:
+        geometry = value;
+        break;
+      case NGSILDQUERY_COORDINATES:
+        try {
+          coordinates = new JsonArray(value);
+        } catch (DecodeException e) {
+          throw new IllegalArgumentException("Invalid coordinates");
+        }
+        break;
+      case NGSILDQUERY_GEOPROPERTY:
+        geoProperty = value;
+        break;
+      case NGSILDQUERY_TIMEREL:
+        timerel = value;
+        break;
+      case NGSILDQUERY_TIME:
+        time = value;
+        break;
+      case NGSILDQUERY_ENDTIME:
+        endTime = value;
+        break;
+      case NGSILDQUERY_Q:
+        q = value;
+        break;
+      case IUDXQUERY_OPTIONS:
+        options(value);
+        break;
+      case NGSILDQUERY_SIZE:
+        plan.limit(toInteger(value));
+        break;
+      case NGSILDQUERY_FROM:
+        plan.offset(toInteger(value));
+        break;
+      case NGSILDQUERY_LASTN:
+        lastN(value);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private QueryPlan.Builder compile(boolean temporal) {
+    boolean filtered = false;
+    if (georel != null || geometry != null || coordinates != null || geoProperty != null) {
+      plan.geo(geoPreprocessor.process(geo()));
+      filtered = true;
+    }
+    if (temporal) {
+      plan.temporal(temporal());
+      filtered = true;
+    }
+    if (q != null) {
+      plan.q(QExpressionParser.parse(q));
+      filtered = true;
+    }
+    if (attrs != null) {
+      if (JSON_COUNT.equalsIgnoreCase(options)) {
+        throw new IllegalArgumentException("Count is not supported with filtering");
+      }
+      plan.attrs(attrs);
+      filtered = true;
+    }
+    if (lastN != null) {
+      if (JSON_COUNT.equalsIgnoreCase(options)) {
+        throw new IllegalArgumentException("Count is not supported with lastN");
+      }
+      plan.lastN(lastN);
+      filtered = true;
+    }
+    if (!filtered) {
+      throw new IllegalArgumentException("Invalid search request");
+    }
+    return plan;
+  }
+
+  private void attrs(String value) {
+    if (value != null) {
+      attrs = Arrays.asList(value.split(","));
+    }
+  }
+
+  private void lastN(Object value) {
+    if (value == null) {
+      return;
+    }
+    Integer count;
+    try {
+      count = toInteger(value);
+    } catch (IllegalArgumentException e) {
+      count = null;
+    }
+    if (count == null || count < 1 || count > MAX_LAST_N) {
+      throw new IllegalArgumentException("lastN must be between 1 and " + MAX_LAST_N);
+    }
+    lastN = count;
+  }
+
+  private void options(String value) {
+    options = value;
+    plan.options(value);
+  }
+
+  private Geo geo() {
+    if (georel == null || geometry == null || coordinates == null || geoProperty == null) {
+      throw new IllegalArgumentException(
+          "incomplete geo-query geoproperty, geometry, georel, coordinates all are mandatory.");
+    }
+    String[] relation = georel.split(";");
+    try {
+      if (GEOM_POINT.equalsIgnoreCase(geometry) && JSON_NEAR.equals(relation[0])) {
+        Double maxDistance = distance(relation, NGSILDQUERY_MAXDISTANCE);
+        if (maxDistance != null) {
+          // NGSI-LD points are given as [lat, lon].
+          double[] center = {coordinates.getDouble(1), coordinates.getDouble(0)};
+          return new Geo("circle", JSON_WITHIN, new double[][][] {{center}}, maxDistance);
+        }
+      } else if (GEOM_POLYGON.equalsIgnoreCase(geometry)) {
+        double[][][] rings = new double[coordinates.size()][][];
+        for (int i = 0; i < rings.length; i++) {
+          rings[i] = points(coordinates.getJsonArray(i));
+        }
+        return new Geo("polygon", relation[0], rings, 0);
+      } else if (GEOM_LINESTRING.equalsIgnoreCase(geometry)) {
+        return new Geo("linestring", relation[0], new double[][][] {points(coordinates)}, 0);
+      } else if ("bbox".equalsIgnoreCase(geometry)) {
+        return new Geo("envelope", relation[0], new double[][][] {points(coordinates)}, 0);
+      }
+    } catch (ClassCastException | IndexOutOfBoundsException | NullPointerException e) {
+      throw new IllegalArgumentException("Invalid coordinates");
+    }
+    throw new IllegalArgumentException("Missing/Invalid geo parameters");
+  }
+
+  private Temporal temporal() {
+    if (timerel == null || time == null) {
+      throw new IllegalArgumentException("Missing/Invalid temporal parameters");
+    }
+    TimeRelation relation;
+    try {
+      relation = TimeRelation.valueOf(timerel.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Missing/Invalid temporal parameters");
+    }
+    ZonedDateTime start = parseTime(time);
+    switch (relation) {
+      case DURING:
+        if (endTime == null || endTime.isBlank()) {
+          throw new IllegalArgumentException(
+              "time and endTime both are mandatory for during Query.");
+        }
+        ZonedDateTime end = parseTime(endTime);
+        if (start.isAfter(end)) {
+          throw new IllegalArgumentException("Invalid date format");
+        }
+        if (Duration.between(start, end).toDays() > VALIDATION_MAX_DAYS_INTERVAL_ALLOWED) {
+          throw new IllegalArgumentException("time interval greater than 10 days is not allowed");
+        }
+        return new Temporal(relation, millis(start), millis(end));
+      case BEFORE:
+        return new Temporal(relation, null, millis(start));
+      case AFTER:
+        return new Temporal(relation, millis(start), null);
+      default:
+        return new Temporal(relation, millis(start), millis(start));
+    }
+  }
+
+  private static Double distance(String[] georel, String name) {
+    if (georel.length == 2) {
+      String[] distance = georel[1].split("=");
+      if (distance.length == 2 && distance[0].equalsIgnoreCase(name)) {
+        try {
+          return Double.valueOf(distance[1]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("Invalid distance in georel");
+        }
+      }
+    }
+    return null;
+  }
+
+  private static double[][] points(JsonArray array) {
+    double[][] points = new double[array.size()][];
+    for (int i = 0; i < points.length; i++) {
+      JsonArray point = array.getJsonArray(i);
+      points[i] = new double[] {point.getDouble(0), point.getDouble(1)};
+    }
+    return points;
+  }
+
+  private static ZonedDateTime parseTime(String time) {
+    try {
+      return ZonedDateTime.parse(time);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid date format");
+    }
+  }
+
+  private static long millis(ZonedDateTime time) {
+    return time.toInstant().toEpochMilli();
+  }
+
+  private static Integer toInteger(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return value instanceof Number ? ((Number) value).intValue()
+          : Integer.valueOf(value.toString());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid pagination value : " + value);
+    }
+  }
+}
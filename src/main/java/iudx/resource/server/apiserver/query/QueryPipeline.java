@@ -0,0 +1,154 @@
+package iudx.resource.server.apiserver.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Stages of a query request arranged as a small DAG.
+ * <p>
+ * A stage starts as soon as all stages it depends on have succeeded, so independent stages (e.g.
+ * catalogue lookups and token introspection) run concurrently and the latency of the request is
+ * the longest path of the DAG instead of the sum of all stages. A failed stage is never followed by
+ * its dependants and {@link #completion()} fails with the first failure. Duration of every stage is
+ * recorded and available from {@link #timings()}.
+ * </p>
+ * <p>
+ * The pipeline of a request is stored in the {@link RoutingContext} under {@link #QUERY_PIPELINE}
+ * so stages started by one route handler can be joined by the following handlers.
+ * </p>
+ */
+public final class QueryPipeline {
+
+  public static final String QUERY_PIPELINE = "queryPipeline";
+
+  public static final String STAGE_CATALOGUE = "catalogue";
+  public static final String STAGE_VALIDATION = "validation";
+  public static final String STAGE_QUERY = "query";
+  public static final String STAGE_DATABASE = "database";
+
+  private final Map<String, Future<?>> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+  private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+  private final long startedAt = System.nanoTime();
+
+  private QueryPipeline() {}
+
+  public static QueryPipeline create() {
+    return new QueryPipeline();
+  }
+
+  /**
+   * Creates a pipeline and stores it in the routing context.
+   */
+  public static QueryPipeline create(RoutingContext context) {
+    QueryPipeline pipeline = create();
+    context.put(QUERY_PIPELINE, pipeline);
+    return pipeline;
+  }
+
+  /**
+   * @return pipeline of the request, null if the route does not use one
+   */
+  public static QueryPipeline get(RoutingContext context) {
+    return context.get(QUERY_PIPELINE);
+  }
+
+  /**
+   * Starts a stage without dependencies.
+   *
+   * @param name stage name
+   * @param task supplier of the asynchronous result of the stage
+   * @return future of the stage result
+   */
+  public <T> Future<T> stage(String name, Supplier<Future<T>> task) {
+    return stage(name, List.of(), task);
+  }
+
+  /**
+   * Starts a stage once all of its dependencies have succeeded, the stage fails with the cause of
+   * the first failed dependency without being run.
+   *
+   * @param name stage name
+   * @param dependsOn futures of the stages this stage depends on
+   * @param task supplier of the asynchronous result of the stage
+   * @return future of the stage result
+   */
+  @SuppressWarnings("rawtypes")
+  public <T> Future<T> stage(String name, List<Future<?>> dependsOn, Supplier<Future<T>> task) {
+    Future<T> future;
+    if (dependsOn.isEmpty()) {
+      future = run(name, task);
+    } else {
+      future = CompositeFuture.all(new ArrayList<Future>(dependsOn))
+          .compose(dependencies -> run(name, task));
+    }
+    stages.put(name, future);
+    return future;
+  }
+
+  private <T> Future<T> run(String name, Supplier<Future<T>> task) {
+    long start = System.nanoTime();
+    Future<T> future;
+    try {
+      future = task.get();
+    } catch (RuntimeException e) {
+      future = Future.failedFuture(e);
+    }
+    return future.onComplete(handler -> record(name, start));
+  }
+
+  /**
+   * @return future of a stage started earlier, null if no such stage exists
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Future<T> future(String name) {
+    return (Future<T>) stages.get(name);
+  }
+
+  /**
+   * Records duration of work done outside the pipeline (e.g. by another route handler).
+   *
+   * @param name stage name
+   * @param startNanos {@link System#nanoTime()} at the start of the work
+   */
+  public void record(String name, long startNanos) {
+    timings.put(name, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return future completed once all stages started so far have succeeded, failed on first failure
+   */
+  @SuppressWarnings("rawtypes")
+  public Future<Void> completion() {
+    List<Future> all;
+    synchronized (stages) {
+      all = new ArrayList<>(stages.values());
+    }
+    return CompositeFuture.all(all).mapEmpty();
+  }
+
+  /**
+   * @return duration in milliseconds of every finished stage, in order of completion
+   */
+  public Map<String, Double> timings() {
+    Map<String, Double> millis = new LinkedHashMap<>();
+    synchronized (timings) {
+      timings.forEach((name, nanos) -> millis.put(name, nanos / 1_000_000.0));
+    }
+    return millis;
+  }
+
+  /**
+   * @return milliseconds elapsed since the pipeline was created
+   */
+  public long elapsed() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+  }
+}
@@ -0,0 +1,257 @@
+package iudx.resource.server.apiserver.ratelimit;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+
+/**
+ * Per consumer and endpoint kind request quotas shared by all API server instances of a JVM.
+ * <p>
+ * Quotas are grouped in tiers, a consumer is assigned a tier in config (default tier otherwise)
+ * and a tier defines a bucket capacity and refill rate per {@link EndpointKind} with a
+ * <i>default</i> quota for the kinds not listed:
+ * </p>
+ *
+ * <pre>
+ * "rateLimit": {
+ *   "enabled": true,
+ *   "clustered": false,
+ *   "defaultTier": "default",
+ *   "tiers": {
+ *     "default": { "default": { "capacity": 50, "refillPerSecond": 10 },
+ *                  "TEMPORAL": { "capacity": 10, "refillPerSecond": 2 } }
+ *   },
+ *   "consumers": { "consumer@example.com": "premium" }
+ * }
+ * </pre>
+ * <p>
+ * Every JVM enforces quotas with in-memory {@link TokenBucket}s. With <i>clustered</i> enabled a
+ * request allowed locally is also counted in a fixed window (the time to refill a full bucket) in
+ * a cluster wide map, so a consumer spreading requests over several nodes gets the same quota.
+ * Cluster failures do not reject requests.
+ * </p>
+ */
+public final class RateLimiter implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(RateLimiter.class);
+
+  private static final String SHARED_MAP = "iudx.rs.ratelimit";
+  private static final String SHARED_KEY = "rateLimiter";
+  private static final String CLUSTER_MAP = "iudx.rs.ratelimit.windows";
+  private static final String DEFAULT_QUOTA = "default";
+  private static final int MAX_CLUSTER_RETRIES = 10;
+
+  private final Vertx vertx;
+  private final boolean enabled;
+  private final boolean clustered;
+  private final String defaultTier;
+  private final Map<String, Map<EndpointKind, Quota>> tiers = new HashMap<>();
+  private final Map<String, String> consumerTiers = new HashMap<>();
+  // idle buckets are full, dropping them loses nothing.
+  private final Cache<String, TokenBucket> buckets =
+      CacheBuilder.newBuilder().expireAfterAccess(10, TimeUnit.MINUTES).build();
+  private Future<AsyncMap<String, Long>> clusterWindows;
+
+  private RateLimiter(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    this.enabled = config.getBoolean("enabled", false);
+    this.clustered = config.getBoolean("clustered", false) && vertx.isClustered();
+    this.defaultTier = config.getString("defaultTier", DEFAULT_QUOTA);
+    config.getJsonObject("tiers", new JsonObject()).forEach(tier -> {
+      JsonObject tierJson = (JsonObject) tier.getValue();
+      Quota defaultQuota =
+          Quota.of(tier.getKey() + "." + DEFAULT_QUOTA, tierJson.getJsonObject(DEFAULT_QUOTA));
+      Map<EndpointKind, Quota> quotas = new EnumMap<>(EndpointKind.class);
+      for (EndpointKind kind : EndpointKind.values()) {
+        Quota quota = Quota.of(tier.getKey() + "." + kind, tierJson.getJsonObject(kind.name()));
+        if (quota != null || defaultQuota != null) {
+          quotas.put(kind, quota != null ? quota : defaultQuota);
+        }
+      }
+      tiers.put(tier.getKey(), quotas);
+    });
+    config.getJsonObject("consumers", new JsonObject())
+        .forEach(consumer -> consumerTiers.put(consumer.getKey(), (String) consumer.getValue()));
+  }
+
+  /**
+   * Returns the rate limiter of this JVM, creating it on first use.
+   *
+   * @param vertx vertx instance
+   * @param config rateLimit config, may be null
+   * @return shared RateLimiter
+   */
+  public static RateLimiter getOrCreate(Vertx vertx, JsonObject config) {
+    LocalMap<String, RateLimiter> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    RateLimiter limiter = map.get(SHARED_KEY);
+    if (limiter == null) {
+      RateLimiter created = new RateLimiter(vertx, config == null ? new JsonObject() : config);
+      limiter = map.putIfAbsent(SHARED_KEY, created);
+      if (limiter == null) {
+        limiter = created;
+      }
+    }
+    return limiter;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Takes one request of a consumer from its quota.
+   *
+   * @param consumer consumer id (or client address for anonymous requests)
+   * @param kind endpoint kind of the request
+   * @return future of the decision, null result when no quota applies
+   */
+  public Future<Decision> acquire(String consumer, EndpointKind kind) {
+    String tier = consumerTiers.getOrDefault(consumer, defaultTier);
+    Quota quota = tiers.getOrDefault(tier, Map.of()).get(kind);
+    if (!enabled || quota == null) {
+      return Future.succeededFuture();
+    }
+    String key = tier + "|" + kind + "|" + consumer;
+    TokenBucket bucket;
+    try {
+      bucket = buckets.get(key, () -> new TokenBucket(quota.capacity, quota.refillPerSecond));
+    } catch (ExecutionException e) {
+      return Future.failedFuture(e.getCause());
+    }
+    TokenBucket.Result result = bucket.tryAcquire();
+    Decision local = new Decision(result.allowed(), quota.capacity, result.remaining(),
+        result.retryAfter(), result.reset());
+    if (!local.allowed || !clustered) {
+      return Future.succeededFuture(local);
+    }
+    return acquireInCluster(key, quota).otherwise(cause -> {
+      LOGGER.warn("cluster rate limit unavailable : " + cause.getMessage());
+      return local;
+    });
+  }
+
+  private Future<Decision> acquireInCluster(String key, Quota quota) {
+    long windowMillis = Math.max(1000,
+        (long) Math.ceil(quota.capacity / quota.refillPerSecond * 1000));
+    long now = System.currentTimeMillis();
+    long window = now / windowMillis;
+    long reset = TimeUnit.MILLISECONDS.toSeconds((window + 1) * windowMillis - now) + 1;
+    String windowKey = key + "|" + window;
+    return clusterWindows().compose(map -> increment(map, windowKey, 2 * windowMillis, 0))
+        .map(count -> {
+          boolean allowed = count <= quota.capacity;
+          return new Decision(allowed, quota.capacity, Math.max(0, quota.capacity - count),
+              allowed ? 0 : reset, reset);
+        });
+  }
+
+  private synchronized Future<AsyncMap<String, Long>> clusterWindows() {
+    if (clusterWindows == null || clusterWindows.failed()) {
+      clusterWindows = vertx.sharedData().getAsyncMap(CLUSTER_MAP);
+    }
+    return clusterWindows;
+  }
+
+  /**
+   * Increments a window counter with compare-and-set on the cluster map.
+   */
+  private Future<Long> increment(AsyncMap<String, Long> map, String key, long ttl, int attempt) {
+    if (attempt >= MAX_CLUSTER_RETRIES) {
+      return Future.failedFuture("too much contention on " + key);
+    }
+    return map.putIfAbsent(key, 1L, ttl).compose(existing -> {
+      if (existing == null) {
+        return Future.succeededFuture(1L);
+      }
+      return map.replaceIfPresent(key, existing, existing + 1).compose(replaced -> replaced
+          ? Future.succeededFuture(existing + 1)
+          : increment(map, key, ttl, attempt + 1));
+    });
+  }
+
+  private static final class Quota {
+    private final long capacity;
+    private final double refillPerSecond;
+
+    private Quota(long capacity, double refillPerSecond) {
+      this.capacity = capacity;
+      this.refillPerSecond = refillPerSecond;
+    }
+
+    private static Quota of(String name, JsonObject json) {
+      if (json == null) {
+        return null;
+      }
+      for (String key : new String[] {"capacity", "refillPerSecond"}) {
+        if (!(json.getValue(key) instanceof Number)) {
+          throw new IllegalArgumentException(
+              "invalid rate limit quota " + name + " : missing or non numeric " + key);
+        }
+      }
+      long capacity = json.getLong("capacity");
+      double refillPerSecond = json.getDouble("refillPerSecond");
+      if (capacity < 1 || refillPerSecond <= 0) {
+        throw new IllegalArgumentException("invalid rate limit quota " + name + " : " + json);
+      }
+      return new Quota(capacity, refillPerSecond);
+    }
+  }
+
+  /**
+   * Rate limit decision of a request.
+   */
+  public static final class Decision {
+    private final boolean allowed;
+    private final long limit;
+    private final long remaining;
+    private final long retryAfter;
+    private final long reset;
+
+    Decision(boolean allowed, long limit, long remaining, long retryAfter, long reset) {
+      this.allowed = allowed;
+      this.limit = limit;
+      this.remaining = remaining;
+      this.retryAfter = retryAfter;
+      this.reset = reset;
+    }
+
+    public boolean allowed() {
+      return allowed;
+    }
+
+    public long limit() {
+      return limit;
+    }
+
+    public long remaining() {
+      return remaining;
+    }
+
+    /**
+     * @return seconds to wait before retrying a rejected request
+     */
+    public long retryAfter() {
+      return Math.max(1, retryAfter);
+    }
+
+    /**
+     * @return seconds until the quota is fully available again
+     */
+    public long reset() {
+      return reset;
+    }
+  }
+}
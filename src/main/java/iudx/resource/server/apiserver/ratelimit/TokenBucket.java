@@ -0,0 +1,104 @@
+package iudx.resource.server.apiserver.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * The bucket holds up to {@code capacity} tokens and is refilled continuously at
+ * {@code refillPerSecond}, a request takes one token. State (tokens, time of last refill) is an
+ * immutable value swapped with compare-and-set, so concurrent requests of a consumer from
+ * different event loops never block each other.
+ * </p>
+ */
+public final class TokenBucket {
+
+  private final long capacity;
+  private final double refillPerNano;
+  private final AtomicReference<State> state;
+
+  public TokenBucket(long capacity, double refillPerSecond) {
+    this.capacity = capacity;
+    this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return result of the attempt with the tokens left
+   */
+  public Result tryAcquire() {
+    return tryAcquire(System.nanoTime());
+  }
+
+  Result tryAcquire(long now) {
+    while (true) {
+      State current = state.get();
+      double tokens = Math.min(capacity,
+          current.tokens + Math.max(0, now - current.refilledAt) * refillPerNano);
+      boolean allowed = tokens >= 1;
+      State next = new State(allowed ? tokens - 1 : tokens, now);
+      if (state.compareAndSet(current, next)) {
+        return new Result(allowed, next.tokens);
+      }
+    }
+  }
+
+  public long capacity() {
+    return capacity;
+  }
+
+  private static final class State {
+    private final double tokens;
+    private final long refilledAt;
+
+    private State(double tokens, long refilledAt) {
+      this.tokens = tokens;
+      this.refilledAt = refilledAt;
+    }
+  }
+
+  /**
+   * Outcome of an acquire attempt.
+   */
+  public final class Result {
+    private final boolean allowed;
+    private final double tokens;
+
+    private Result(boolean allowed, double tokens) {
+      this.allowed = allowed;
+      this.tokens = tokens;
+    }
+
+    public boolean allowed() {
+      return allowed;
+    }
+
+    public long remaining() {
+      return (long) Math.floor(tokens);
+    }
+
+    /**
+     * @return seconds until a token is available, 0 if one is available now
+     */
+    public long retryAfter() {
+      return tokens >= 1 ? 0 : secondsFor(1 - tokens);
+    }
+
+    /**
+     * @return seconds until the bucket is full again
+     */
+    public long reset() {
+      return secondsFor(capacity - tokens);
+    }
+
+    private long secondsFor(double missingTokens) {
+      if (missingTokens <= 0) {
+        return 0;
+      }
+      return (long) Math.ceil(missingTokens / refillPerNano / TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+}
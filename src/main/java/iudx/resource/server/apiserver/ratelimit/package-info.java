@@ -0,0 +1 @@
+package iudx.resource.server.apiserver.ratelimit;
\ No newline at end of file
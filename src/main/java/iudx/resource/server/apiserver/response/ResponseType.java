@@ -17,7 +17,8 @@ public enum ResponseType {
   RequestEntityTooLarge(413, "HTTP input data stream is too large too many bytes"),
   UnsupportedMediaType(415, "Unsupported Media type"),
   OperationNotSupported(422, "Operation not supported"),
-  UnprocessableEntity(422, "Unprocessable Entity"), InternalError(500, "Internal error");
+  UnprocessableEntity(422, "Unprocessable Entity"), TooManyRequests(429, "Too many requests"),
+  InternalError(500, "Internal error"), ServiceUnavailable(503, "Service unavailable");
 
   private final int code;
   private final String message;
@@ -0,0 +1,209 @@
+package iudx.resource.server.apiserver.response;
+
+import static iudx.resource.server.apiserver.util.Constants.APPLICATION_JSON;
+import static iudx.resource.server.apiserver.util.Constants.CONTENT_TYPE;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Writes json response bodies without intermediate strings.
+ * <p>
+ * The body is serialized with a streaming generator straight into a pooled Netty buffer that is
+ * released once the response is written, so a result envelope is encoded once instead of being
+ * converted to a String and re-encoded to UTF-8.
+ * </p>
+ * <p>
+ * Compression is chosen by body size, the server compresses with its configured level otherwise:
+ * <ul>
+ * <li>bodies smaller than <i>compressionMinSize</i> are sent uncompressed, compressing them costs
+ * more than it saves</li>
+ * <li>bodies of at least <i>compressionLargeSize</i> on HTTP/1.x are gzipped here with the fast
+ * <i>compressionLargeLevel</i>, which bounds the event loop time of large result pages (HTTP/2
+ * always uses the server compressor)</li>
+ * </ul>
+ * </p>
+ */
+public final class ResponseWriter {
+
+  public static final int DEFAULT_MIN_SIZE = 1024;
+  public static final int DEFAULT_LARGE_SIZE = 1024 * 1024;
+  public static final int DEFAULT_LARGE_LEVEL = 1;
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int minSize;
+  private final int largeSize;
+  private final int largeLevel;
+
+  private ResponseWriter(int minSize, int largeSize, int largeLevel) {
+    this.minSize = minSize;
+    this.largeSize = largeSize;
+    this.largeLevel = largeLevel;
+  }
+
+  /**
+   * @param config API server config
+   */
+  public static ResponseWriter create(JsonObject config) {
+    return new ResponseWriter(config.getInteger("compressionMinSize", DEFAULT_MIN_SIZE),
+        config.getInteger("compressionLargeSize", DEFAULT_LARGE_SIZE),
+        config.getInteger("compressionLargeLevel", DEFAULT_LARGE_LEVEL));
+  }
+
+  /**
+   * Writes a json response.
+   *
+   * @param response response
+   * @param statusCode http status code
+   * @param body JsonObject or JsonArray
+   * @return future completed once the response is written
+   */
+  public Future<Void> write(HttpServerResponse response, int statusCode, Object body) {
+    return write(null, response, statusCode, body);
+  }
+
+  /**
+   * Writes a json response, large bodies are compressed here if the client accepts gzip.
+   *
+   * @param request request being answered
+   * @param statusCode http status code
+   * @param body JsonObject or JsonArray
+   * @return future completed once the response is written
+   */
+  public Future<Void> write(HttpServerRequest request, int statusCode, Object body) {
+    return write(request, request.response(), statusCode, body);
+  }
+
+  private Future<Void> write(HttpServerRequest request, HttpServerResponse response,
+      int statusCode, Object body) {
+    ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer(INITIAL_CAPACITY);
+    try {
+      encode(body, buf);
+      int size = buf.readableBytes();
+      response.putHeader(CONTENT_TYPE, APPLICATION_JSON).setStatusCode(statusCode);
+      if (size < minSize) {
+        // an explicit encoding makes the server compressor pass the body through.
+        response.putHeader(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.IDENTITY);
+      } else if (size >= largeSize && acceptsGzip(request)) {
+        ByteBuf compressed = gzip(buf, largeLevel);
+        buf.release();
+        buf = compressed;
+        response.putHeader(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP)
+            .putHeader(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+      }
+      // the buffer is written as an unreleasable view, it is released here once written.
+      ByteBuf written = buf;
+      return response.end(Buffer.buffer(written)).onComplete(v -> written.release());
+    } catch (IOException | RuntimeException e) {
+      if (buf.refCnt() > 0) {
+        buf.release();
+      }
+      return Future.failedFuture(e);
+    }
+  }
+
+  private static boolean acceptsGzip(HttpServerRequest request) {
+    if (request == null || request.version() == HttpVersion.HTTP_2) {
+      return false;
+    }
+    String acceptEncoding = request.getHeader(HttpHeaderNames.ACCEPT_ENCODING);
+    return acceptEncoding != null && acceptEncoding.contains(HttpHeaderValues.GZIP);
+  }
+
+  private static ByteBuf gzip(ByteBuf source, int level) throws IOException {
+    ByteBuf target = PooledByteBufAllocator.DEFAULT.buffer(source.readableBytes() / 4);
+    try (OutputStream out = new GZIPOutputStream(new ByteBufOutputStream(target)) {
+      {
+        def.setLevel(level);
+      }
+    }) {
+      source.getBytes(source.readerIndex(), out, source.readableBytes());
+    } catch (IOException | RuntimeException e) {
+      target.release();
+      throw e;
+    }
+    return target;
+  }
+
+  /**
+   * Serializes a json value into a buffer.
+   */
+  static void encode(Object body, ByteBuf buf) throws IOException {
+    try (JsonGenerator generator =
+        JSON_FACTORY.createGenerator((OutputStream) new ByteBufOutputStream(buf),
+            JsonEncoding.UTF8)) {
+      writeValue(generator, body);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof JsonObject) {
+      writeObject(generator, ((JsonObject) value).getMap());
+    } else if (value instanceof Map) {
+      writeObject(generator, (Map<String, Object>) value);
+    } else if (value instanceof JsonArray) {
+      writeArray(generator, ((JsonArray) value).getList());
+    } else if (value instanceof List) {
+      writeArray(generator, (List<Object>) value);
+    } else if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte) {
+      generator.writeNumber(((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      generator.writeNumber(((Number) value).doubleValue());
+    } else if (value instanceof BigDecimal) {
+      generator.writeNumber((BigDecimal) value);
+    } else if (value instanceof BigInteger) {
+      generator.writeNumber((BigInteger) value);
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else {
+      // other types (Instant, byte[], enums...) as encoded by vert.x.
+      generator.writeRawValue(Json.encode(value));
+    }
+  }
+
+  private static void writeObject(JsonGenerator generator, Map<String, Object> map)
+      throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      generator.writeFieldName(entry.getKey());
+      writeValue(generator, entry.getValue());
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeArray(JsonGenerator generator, List<Object> list) throws IOException {
+    generator.writeStartArray();
+    for (Object value : list) {
+      writeValue(generator, value);
+    }
+    generator.writeEndArray();
+  }
+}
@@ -1,7 +1,10 @@
 package iudx.resource.server.apiserver.service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,8 +20,10 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
-import io.vertx.ext.web.client.predicate.ResponsePredicate;
 import iudx.resource.server.authenticator.Constants;
+import iudx.resource.server.common.CatalogueIdTrie;
+import iudx.resource.server.common.CatalogueSync;
+import iudx.resource.server.common.StageTimers;
 
 /**
  * catalogue service to fetch calatogue items and groups for the purpose of cache
@@ -27,14 +32,21 @@ import iudx.resource.server.authenticator.Constants;
 public class CatalogueService {
 
   private static final Logger LOGGER = LogManager.getLogger(CatalogueService.class);
+  // snapshot and cache hits are near zero, a slow stage means on demand catalogue calls.
+  private static final String STAGE_FILTERS = "catalogue.filters";
+  private static final String STAGE_RESOLVE = "catalogue.resolve";
+  private static final int DEFAULT_MAX_RESOLVED_IDS = 100;
 
   private WebClient catWebClient;
-  private long cacheTimerid;
+  private CatalogueSync catalogueSync;
   private static String catHost;
   private static int catPort;;
   private static String catSearchPath;
   private static String catItemPath;
   private Vertx vertx;
+  private final int maxResolvedIds;
+  // rebuilt with every snapshot version, resolves idPattern and type queries.
+  private volatile CatalogueIdTrie idTrie = CatalogueIdTrie.EMPTY;
 
   private final Cache<String, List<String>> applicableFilterCache =
       CacheBuilder.newBuilder().maximumSize(1000)
@@ -50,51 +62,99 @@ public class CatalogueService {
     WebClientOptions options =
         new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
     catWebClient = WebClient.create(vertx, options);
-    populateCache();
-    cacheTimerid = vertx.setPeriodic(TimeUnit.DAYS.toMillis(1), handler -> {
-       populateCache();
+    // applicable filters of all items are kept in the shared catalogue snapshot,
+    // applicableFilterCache only holds items looked up on demand.
+    catalogueSync = CatalogueSync.getOrCreate(vertx, config);
+    maxResolvedIds = config.getInteger("maxResolvedIds", DEFAULT_MAX_RESOLVED_IDS);
+    catalogueSync.onUpdate(snapshot -> {
+      applicableFilterCache.invalidateAll();
+      idTrie = CatalogueIdTrie.of(snapshot);
     });
   }
 
   /**
-   * populate
-   * 
-   * @return
+   * Resolves the idPattern and/or type of an NGSI-LD query to the ids of the catalogue items it
+   * selects, using the id trie of the catalogue snapshot.
+   *
+   * @param idPattern regular expression of ids, may be null
+   * @param type domain type of the items, may be null
+   * @return future of matching ids, failed if there are none or more than maxResolvedIds
    */
-  private Future<Boolean> populateCache() {
-    Promise<Boolean> promise = Promise.promise();
-    catWebClient.get(catPort, catHost, catSearchPath)
-        .addQueryParam("property", "[iudxResourceAPIs]")
-        .addQueryParam("value", "[[TEMPORAL,ATTR,SPATIAL]]")
-        .addQueryParam("filter", "[iudxResourceAPIs,id]").expect(ResponsePredicate.JSON)
-        .send(handler -> {
-          if (handler.succeeded()) {
-            JsonArray response = handler.result().bodyAsJsonObject().getJsonArray("results");
-            response.forEach(json -> {
-              JsonObject res = (JsonObject) json;
-              String id = res.getString("id");
-              String[] idArray = id.split("/");
-              if (idArray.length == 4) {
-                applicableFilterCache.put(id + "/*", toList(res.getJsonArray("iudxResourceAPIs")));
-              } else {
-                applicableFilterCache.put(id, toList(res.getJsonArray("iudxResourceAPIs")));
-              }
-            });
-            promise.complete(true);
-          } else if (handler.failed()) {
-            promise.fail(handler.cause());
-          }
-        });
-    return promise.future();
+  public Future<List<String>> resolveIds(String idPattern, String type) {
+    return StageTimers.time(STAGE_RESOLVE, null, null, () -> resolve(idPattern, type));
   }
 
+  private Future<List<String>> resolve(String idPattern, String type) {
+    if (!catalogueSync.isReady()) {
+      return catalogueSync.awaitReady().compose(ready -> catalogueSync.isReady()
+          ? resolve(idPattern, type)
+          : Future.failedFuture("catalogue is not synced yet, idPattern/type unavailable"));
+    }
+    CatalogueIdTrie trie = idTrie;
+    if (trie.version() != catalogueSync.snapshot().version()) {
+      // snapshot synced before this service registered its listener.
+      trie = CatalogueIdTrie.of(catalogueSync.snapshot());
+      idTrie = trie;
+    }
+    List<String> ids;
+    try {
+      ids = trie.resolve(idPattern, type, maxResolvedIds + 1);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e.getMessage());
+    }
+    if (ids.isEmpty()) {
+      return Future.failedFuture("No entity found for idPattern/type");
+    }
+    if (ids.size() > maxResolvedIds) {
+      return Future.failedFuture(
+          "idPattern/type matches more than " + maxResolvedIds + " entities");
+    }
+    return Future.succeededFuture(ids);
+  }
 
   public Future<List<String>> getApplicableFilters(String id) {
-    Promise<List<String>> promise=Promise.promise();
+    return StageTimers.time(STAGE_FILTERS, null, null, () -> applicableFilters(id));
+  }
+
+  /**
+   * Applicable filters of a query spanning several ids. Filters are looked up for one id of every
+   * distinct group and intersected, a query may only use filters supported by all of its groups.
+   *
+   * @param ids complete ids (domain/SHA/rs/rs-group/itemId) of the query
+   * @return future of the filters common to all groups of ids
+   */
+  public Future<List<String>> getApplicableFilters(List<String> ids) {
+    Map<String, String> idPerGroup = new LinkedHashMap<>();
+    ids.forEach(id -> idPerGroup.putIfAbsent(id.substring(0, id.lastIndexOf("/")), id));
+    if (idPerGroup.size() == 1) {
+      return getApplicableFilters(ids.get(0));
+    }
+    @SuppressWarnings("rawtypes")
+    List<Future> groupFilters = idPerGroup.values().stream()
+        .map(this::getApplicableFilters).collect(Collectors.toList());
+    return CompositeFuture.all(groupFilters).map(all -> {
+      List<String> common = new ArrayList<>(all.<List<String>>resultAt(0));
+      for (int i = 1; i < all.size(); i++) {
+        common.retainAll(all.<List<String>>resultAt(i));
+      }
+      return common;
+    });
+  }
+
+  private Future<List<String>> applicableFilters(String id) {
     // Note: id should be a complete id not a group id (ex : domain/SHA/rs/rs-group/itemId)
+    // bounded cold start wait, filters missing in a not yet synced snapshot are fetched on demand.
+    return catalogueSync.awaitReady().compose(ready -> filtersOf(id));
+  }
+
+  private Future<List<String>> filtersOf(String id) {
+    Promise<List<String>> promise = Promise.promise();
     String groupId = id.substring(0, id.lastIndexOf("/"));
-    // check for item in cache.
-    List<String> filters = applicableFilterCache.getIfPresent(id);
+    // check for item in catalogue snapshot and cache.
+    List<String> filters = catalogueSync.snapshot().applicableFilters(id);
+    if (filters == null) {
+      filters = applicableFilterCache.getIfPresent(id);
+    }
     if (filters == null) {
       // check for group if not present by item key.
       filters = applicableFilterCache.getIfPresent(groupId + "/*");
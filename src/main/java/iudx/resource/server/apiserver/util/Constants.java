@@ -34,6 +34,7 @@ public class Constants {
   public static final String IUDX_MANAGEMENT_BIND_URL = IUDX_MANAGEMENT_URL + "/bind";
   public static final String IUDX_MANAGEMENT_UNBIND_URL = IUDX_MANAGEMENT_URL + "/unbind";
   public static final String IUDX_MANAGEMENT_VHOST_URL = IUDX_MANAGEMENT_URL + "/vhost";
+  public static final String IUDX_MANAGEMENT_EXPLAIN_URL = IUDX_MANAGEMENT_URL + "/explain";
   public static final String IUDX_MANAGEMENT_ADAPTER_URL = IUDX_ADAPTOR_URL + "/adapter";
 
   /** API Documentation endpoint */
@@ -44,20 +45,6 @@ public class Constants {
   public static final List<String> openEndPoints = List.of("/ngsi-ld/v1/temporal/entities",
       "/ngsi-ld/v1/entities", "/ngsi-ld/v1/entityOperations/query");
 
-  // path regex
-  public static final String ENTITITES_URL_REGEX = NGSILD_ENTITIES_URL + "(.*)";
-  public static final String TEMPORAL_URL_REGEX = NGSILD_TEMPORAL_URL + "(.*)";
-  public static final String POST_QUERY_URL_REGEX = NGSILD_POST_QUERY_PATH + "(.*)";
-  public static final String SUBSCRIPTION_URL_REGEX = NGSILD_SUBSCRIPTION_URL + "(.*)";
-  public static final String ADAPTER_URL_REGEX = IUDX_MANAGEMENT_ADAPTER_URL + "(.*)";
-  public static final String EXCHANGE_URL_REGEX = IUDX_MANAGEMENT_EXCHANGE_URL + "(.*)";
-  public static final String QUEUE_URL_REGEX = IUDX_MANAGEMENT_QUEUE_URL + "(.*)";
-  public static final String VHOST_URL_REGEX = IUDX_MANAGEMENT_VHOST_URL + "(.*)";
-  public static final String BIND_URL_REGEX = IUDX_MANAGEMENT_BIND_URL + "(.*)";
-  public static final String UNBIND_URL_REGEX = IUDX_MANAGEMENT_UNBIND_URL + "(.*)";
-
-
-
   /** Accept Headers and CORS */
   public static final String MIME_APPLICATION_JSON = "application/json";
   public static final String MIME_TEXT_HTML = "text/html";
@@ -85,6 +72,7 @@ public class Constants {
   public static final String NGSILDQUERY_TIME_PROPERTY = "timeProperty";
   public static final String NGSILDQUERY_FROM="offset";
   public static final String NGSILDQUERY_SIZE="limit";
+  public static final String NGSILDQUERY_LASTN = "lastn";
   
   // Header params
   public static final String HEADER_TOKEN = "token";
@@ -96,10 +84,30 @@ public class Constants {
   public static final String HEADER_REFERER = "Referer";
   public static final String HEADER_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
   public static final String HEADER_OPTIONS = "options";
+  public static final String HEADER_CONNECTION = "Connection";
+  public static final String HEADER_RETRY_AFTER = "Retry-After";
+  public static final String HEADER_RATE_LIMIT = "X-RateLimit-Limit";
+  public static final String HEADER_RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+  public static final String HEADER_RATE_LIMIT_RESET = "X-RateLimit-Reset";
+  public static final String HEADER_SERVER_TIMING = "Server-Timing";
 
   public static final String COUNT_HEADER = "Count";
   public static final String PUBLIC_TOKEN = "public";
 
+  // request body limits in bytes (config keys and defaults)
+  public static final String BODY_LIMIT = "requestBodyLimit";
+  public static final String QUERY_BODY_LIMIT = "postQueryBodyLimit";
+  public static final String INGEST_BODY_LIMIT = "ingestBodyLimit";
+  public static final long DEFAULT_BODY_LIMIT = 64 * 1024;
+  public static final long DEFAULT_INGEST_BODY_LIMIT = 1024 * 1024;
+
+  // http server
+  public static final int DEFAULT_IDLE_TIMEOUT = 60;
+  public static final String EVENT_LOOP_REQUESTS_METRIC = "iudx.rs.http.requests";
+  public static final long DEFAULT_HTTP2_MAX_CONCURRENT_STREAMS = 100;
+  // flow control window shared by all streams of a connection (HTTP/2 default is 64 KB)
+  public static final int DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE = 1024 * 1024;
+
   // request/response params
   public static final String CONTENT_TYPE = "content-type";
   public static final String APPLICATION_JSON = "application/json";
@@ -114,6 +122,8 @@ public class Constants {
   public static final String JSON_NAME = "name";
   public static final String JSON_ENTITIES = "entities";
   public static final String JSON_ID = "id";
+  public static final String JSON_IDPATTERN = "idPattern";
+  public static final String JSON_LASTN = "lastN";
   public static final String JSON_ATTRIBUTE_FILTER = "attrs";
   public static final String JSON_NEAR = "near";
   public static final String JSON_LAT = "lat";
@@ -201,6 +211,9 @@ public class Constants {
   public static final String MSG_SUB_TYPE_NOT_FOUND = "Subscription type not present in body";
   public static final String MSG_SUB_INVALID_TOKEN = "Invalid/no token found in header";
   public static final String MSG_BAD_QUERY="Bad query";
+  public static final String MSG_INVALID_JSON_BODY = "Invalid json in request body";
+  public static final String MSG_RATE_LIMITED = "Request quota exceeded, retry later";
+  public static final String MSG_OVERLOADED = "Server overloaded, retry later";
 
   // results
   public static final String SUCCCESS = "success";
@@ -0,0 +1,135 @@
+package iudx.resource.server.apiserver.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonObject;
+import iudx.resource.server.apiserver.util.RequestType;
+import iudx.resource.server.apiserver.validation.types.Validator;
+
+/**
+ * Immutable list of validation rules of a {@link RequestType}.
+ * <p>
+ * A plan is compiled once when the routes are built, schemas and patterns it needs are loaded at
+ * that time. Validating a request is a single pass over the rules which stops at the first failure
+ * and returns the rule that failed.
+ * </p>
+ */
+public final class ValidationPlan {
+
+  private final RequestType requestType;
+  private final List<Rule> rules;
+
+  private ValidationPlan(RequestType requestType, List<Rule> rules) {
+    this.requestType = requestType;
+    this.rules = Collections.unmodifiableList(rules);
+  }
+
+  public static Builder builder(RequestType requestType) {
+    return new Builder(requestType);
+  }
+
+  public RequestType requestType() {
+    return requestType;
+  }
+
+  public List<Rule> rules() {
+    return rules;
+  }
+
+  /**
+   * Validates a request.
+   *
+   * @param parameters query and path parameters
+   * @param body request body, may be empty
+   * @return the first rule which failed, null if the request is valid
+   */
+  public Rule validate(MultiMap parameters, JsonObject body) {
+    for (Rule rule : rules) {
+      if (!rule.validator(parameters, body).isValid()) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A check of one parameter (or of the request body).
+   */
+  public static final class Rule {
+    private final String name;
+    private final Function<String, Validator> paramValidator;
+    private final Function<MultiMap, Validator> paramsValidator;
+    private final Function<JsonObject, Validator> bodyValidator;
+
+    private Rule(String name, Function<String, Validator> paramValidator,
+        Function<MultiMap, Validator> paramsValidator,
+        Function<JsonObject, Validator> bodyValidator) {
+      this.name = name;
+      this.paramValidator = paramValidator;
+      this.paramsValidator = paramsValidator;
+      this.bodyValidator = bodyValidator;
+    }
+
+    /**
+     * @return name of the parameter checked, <i>body</i> for the request body
+     */
+    public String name() {
+      return name;
+    }
+
+    private Validator validator(MultiMap parameters, JsonObject body) {
+      if (paramValidator != null) {
+        return paramValidator.apply(parameters.get(name));
+      }
+      return paramsValidator != null ? paramsValidator.apply(parameters)
+          : bodyValidator.apply(body);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  public static final class Builder {
+    private final RequestType requestType;
+    private final List<Rule> rules = new ArrayList<>();
+
+    private Builder(RequestType requestType) {
+      this.requestType = requestType;
+    }
+
+    /**
+     * Adds a rule on a parameter, the validator is created with the parameter value (null when
+     * absent).
+     */
+    public Builder param(String name, Function<String, Validator> validator) {
+      rules.add(new Rule(name, validator, null, null));
+      return this;
+    }
+
+    /**
+     * Adds a rule on a parameter which depends on other parameters, the validator is created with
+     * all parameters.
+     */
+    public Builder params(String name, Function<MultiMap, Validator> validator) {
+      rules.add(new Rule(name, null, validator, null));
+      return this;
+    }
+
+    /**
+     * Adds a rule on the request body.
+     */
+    public Builder body(Function<JsonObject, Validator> validator) {
+      rules.add(new Rule("body", null, null, validator));
+      return this;
+    }
+
+    public ValidationPlan build() {
+      return new ValidationPlan(requestType, new ArrayList<>(rules));
+    }
+  }
+}
@@ -4,13 +4,10 @@ import static iudx.resource.server.apiserver.util.Constants.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.google.common.base.Charsets;
 import com.google.common.io.CharStreams;
-import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.json.schema.Schema;
@@ -26,6 +23,7 @@ import iudx.resource.server.apiserver.validation.types.GeoPropertyTypeValidator;
 import iudx.resource.server.apiserver.validation.types.GeoRelTypeValidator;
 import iudx.resource.server.apiserver.validation.types.GeometryTypeValidator;
 import iudx.resource.server.apiserver.validation.types.IDTypeValidator;
+import iudx.resource.server.apiserver.validation.types.IdPatternTypeValidator;
 import iudx.resource.server.apiserver.validation.types.JsonSchemaTypeValidator;
 import iudx.resource.server.apiserver.validation.types.OptionsTypeValidator;
 import iudx.resource.server.apiserver.validation.types.PaginationOffsetTypeValidator;
@@ -33,132 +31,119 @@ import iudx.resource.server.apiserver.validation.types.PaginationLimitTypeValida
 import iudx.resource.server.apiserver.validation.types.QTypeValidator;
 import iudx.resource.server.apiserver.validation.types.StringTypeValidator;
 import iudx.resource.server.apiserver.validation.types.TimeRelTypeValidator;
-import iudx.resource.server.apiserver.validation.types.Validator;
 
 public class ValidatorsHandlersFactory {
 
   private static final Logger LOGGER =
       LogManager.getLogger(ValidatorsHandlersFactory.class);
 
-  public List<Validator> build(final Vertx vertx, final RequestType requestType,
-      final MultiMap parameters,
-      final MultiMap headers, final JsonObject body) {
-    LOGGER.debug("getValidation4Context() started for :" + requestType);
-    LOGGER.debug("type :" + requestType);
-    List<Validator> validator = null;
+  private static final String POST_REQUEST_SCHEMA = "post_request_schema.json";
+
+  /**
+   * Compiles the validation plan of a request type, must be called once per route.
+   *
+   * @param vertx vertx instance
+   * @param requestType request type
+   * @return validation plan, without rules for an unknown request type
+   */
+  public ValidationPlan compile(final Vertx vertx, final RequestType requestType) {
+    LOGGER.debug("compiling validation plan for :" + requestType);
+    ValidationPlan.Builder plan = ValidationPlan.builder(requestType);
 
     switch (requestType) {
       case ENTITY:
-        validator = getEntityRequestValidations(parameters, headers);
+        addEntityRequestValidations(plan);
         break;
       case TEMPORAL:
-        validator = getTemporalRequestValidations(parameters, headers);
+        addTemporalRequestValidations(plan);
         break;
       case LATEST:
-        validator = getLatestRequestValidations(parameters, headers);
+        addLatestRequestValidations(plan);
         break;
       case POST:
-        validator = getPostRequestValidations(vertx, body);
+        addPostRequestValidations(vertx, plan);
         break;
       default:
         break;
     }
 
-    return validator;
+    return plan.build();
   }
 
 
-  private List<Validator> getEntityRequestValidations(final MultiMap parameters,
-      final MultiMap headers) {
-    List<Validator> validators = new ArrayList<>();
-
-    validators.add(new IDTypeValidator(parameters.get(NGSILDQUERY_ID), true));
-    validators.add(new AttrsTypeValidator(parameters.get(NGSILDQUERY_ATTRIBUTE), false));
-    validators.add(new GeoRelTypeValidator(parameters.get(NGSILDQUERY_GEOREL), false));
-    validators.add(new GeometryTypeValidator(parameters.get(NGSILDQUERY_GEOMETRY), false));
-    validators.add(new GeoPropertyTypeValidator(parameters.get(NGSILDQUERY_GEOPROPERTY), false));
-    validators.add(new QTypeValidator(parameters.get(NGSILDQUERY_Q), false));
-    validators.add(new DistanceTypeValidator(parameters.get(NGSILDQUERY_MAXDISTANCE), false));
-    validators.add(new DistanceTypeValidator(parameters.get("maxDistance"), false));
-    validators.add(new OptionsTypeValidator(parameters.get("options"), false));
-    validators.add(new CoordinatesTypeValidator(parameters.get(NGSILDQUERY_COORDINATES), false));
+  private void addEntityRequestValidations(final ValidationPlan.Builder plan) {
+    // id is optional when idPattern or type select the entities.
+    plan.params(NGSILDQUERY_ID, params -> new IDTypeValidator(params.get(NGSILDQUERY_ID),
+        params.get(NGSILDQUERY_IDPATTERN) == null && params.get(NGSILDQUERY_TYPE) == null))
+        .param(NGSILDQUERY_IDPATTERN, value -> new IdPatternTypeValidator(value, false))
+        .param(NGSILDQUERY_TYPE, value -> new StringTypeValidator(value, false))
+        .param(NGSILDQUERY_ATTRIBUTE, value -> new AttrsTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOREL, value -> new GeoRelTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOMETRY, value -> new GeometryTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOPROPERTY, value -> new GeoPropertyTypeValidator(value, false))
+        .param(NGSILDQUERY_Q, value -> new QTypeValidator(value, false))
+        .param(NGSILDQUERY_MAXDISTANCE, value -> new DistanceTypeValidator(value, false))
+        .param("maxDistance", value -> new DistanceTypeValidator(value, false))
+        .param("options", value -> new OptionsTypeValidator(value, false))
+        .param(NGSILDQUERY_COORDINATES, value -> new CoordinatesTypeValidator(value, false));
 
     // pagination optional fields
-    validators.add(new PaginationLimitTypeValidator(parameters.get(NGSILDQUERY_SIZE), false));
-    validators.add(new PaginationOffsetTypeValidator(parameters.get(NGSILDQUERY_FROM), false));
-
-    return validators;
-
+    plan.param(NGSILDQUERY_SIZE, value -> new PaginationLimitTypeValidator(value, false))
+        .param(NGSILDQUERY_FROM, value -> new PaginationOffsetTypeValidator(value, false));
   }
 
-  private List<Validator> getTemporalRequestValidations(final MultiMap parameters,
-      final MultiMap headers) {
-
-    List<Validator> validators = new ArrayList<>();
-
-    validators.add(new IDTypeValidator(parameters.get(NGSILDQUERY_ID), true));
-    validators.add(new AttrsTypeValidator(parameters.get(NGSILDQUERY_ATTRIBUTE), false));
-    validators.add(new GeoRelTypeValidator(parameters.get(NGSILDQUERY_GEOREL), false));
-    validators.add(new GeometryTypeValidator(parameters.get(NGSILDQUERY_GEOMETRY), false));
-    validators.add(new GeoPropertyTypeValidator(parameters.get(NGSILDQUERY_GEOPROPERTY), false));
-    validators.add(new QTypeValidator(parameters.get(NGSILDQUERY_Q), false));
-    validators.add(new DistanceTypeValidator(parameters.get(NGSILDQUERY_MAXDISTANCE), false));
-    validators.add(new DistanceTypeValidator(parameters.get("maxDistance"), false));
-    validators.add(new OptionsTypeValidator(parameters.get("options"), false));
-    validators.add(new CoordinatesTypeValidator(parameters.get(NGSILDQUERY_COORDINATES), false));
-    validators.add(new TimeRelTypeValidator(parameters.get(NGSILDQUERY_TIMEREL), true, false));
-    validators.add(new DateTypeValidator(parameters.get(NGSILDQUERY_TIME), true));
-    validators.add(new DateTypeValidator(parameters.get(NGSILDQUERY_ENDTIME), false));
+  private void addTemporalRequestValidations(final ValidationPlan.Builder plan) {
+    // id is optional when idPattern or type select the entities.
+    plan.params(NGSILDQUERY_ID, params -> new IDTypeValidator(params.get(NGSILDQUERY_ID),
+        params.get(NGSILDQUERY_IDPATTERN) == null && params.get(NGSILDQUERY_TYPE) == null))
+        .param(NGSILDQUERY_IDPATTERN, value -> new IdPatternTypeValidator(value, false))
+        .param(NGSILDQUERY_TYPE, value -> new StringTypeValidator(value, false))
+        .param(NGSILDQUERY_ATTRIBUTE, value -> new AttrsTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOREL, value -> new GeoRelTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOMETRY, value -> new GeometryTypeValidator(value, false))
+        .param(NGSILDQUERY_GEOPROPERTY, value -> new GeoPropertyTypeValidator(value, false))
+        .param(NGSILDQUERY_Q, value -> new QTypeValidator(value, false))
+        .param(NGSILDQUERY_MAXDISTANCE, value -> new DistanceTypeValidator(value, false))
+        .param("maxDistance", value -> new DistanceTypeValidator(value, false))
+        .param("options", value -> new OptionsTypeValidator(value, false))
+        .param(NGSILDQUERY_COORDINATES, value -> new CoordinatesTypeValidator(value, false))
+        .param(NGSILDQUERY_TIMEREL, value -> new TimeRelTypeValidator(value, true, false))
+        .param(NGSILDQUERY_TIME, value -> new DateTypeValidator(value, true))
+        .param(NGSILDQUERY_ENDTIME, value -> new DateTypeValidator(value, false));
 
     // pagination optional fields
-    validators.add(new PaginationLimitTypeValidator(parameters.get(NGSILDQUERY_SIZE), false));
-    validators.add(new PaginationOffsetTypeValidator(parameters.get(NGSILDQUERY_FROM), false));
-
-    return validators;
+    plan.param(NGSILDQUERY_SIZE, value -> new PaginationLimitTypeValidator(value, false))
+        .param(NGSILDQUERY_FROM, value -> new PaginationOffsetTypeValidator(value, false));
   }
 
 
-  private List<Validator> getLatestRequestValidations(final MultiMap parameters,
-      final MultiMap headers) {
-
-
-    List<Validator> validators = new ArrayList<>();
-    validators.add(new StringTypeValidator(parameters.get("domain"), true));
-    validators.add(new StringTypeValidator(parameters.get("userSha"), true));
-    validators.add(new StringTypeValidator(parameters.get("resourceServer"), true));
-    validators.add(new StringTypeValidator(parameters.get("resourceGroup"), true));
-    validators.add(new StringTypeValidator(parameters.get("resourceName"), true));
-
-    return validators;
+  private void addLatestRequestValidations(final ValidationPlan.Builder plan) {
+    plan.param("domain", value -> new StringTypeValidator(value, true))
+        .param("userSha", value -> new StringTypeValidator(value, true))
+        .param("resourceServer", value -> new StringTypeValidator(value, true))
+        .param("resourceGroup", value -> new StringTypeValidator(value, true))
+        .param("resourceName", value -> new StringTypeValidator(value, true));
   }
 
-  private List<Validator> getPostRequestValidations(Vertx vertx, JsonObject body) {
-    List<Validator> validators = new ArrayList<>();
+  private void addPostRequestValidations(Vertx vertx, final ValidationPlan.Builder plan) {
     SchemaRouter schemaRouter = SchemaRouter.create(vertx, new SchemaRouterOptions());
     SchemaParser schemaParser = SchemaParser.createOpenAPI3SchemaParser(schemaRouter);
-    String jsonSchema = null;
-
-    try {
-      jsonSchema = loadJson();
-      Schema schema = schemaParser.parse(new JsonObject(jsonSchema));
-      validators.add(new JsonSchemaTypeValidator(body, true, schema));
-    } catch (Exception ex) {
-      LOGGER.error(ex);
-    }
-    return validators;
+    // parsed once per route instead of once per request.
+    Schema schema = schemaParser.parse(new JsonObject(loadJson()));
+    plan.body(body -> new JsonSchemaTypeValidator(body, true, schema));
   }
 
 
   private String loadJson() {
-    String jsonStr = null;
     try (InputStream inputStream =
-        getClass().getClassLoader().getResourceAsStream("post_request_schema.json")) {
-      jsonStr = CharStreams.toString(new InputStreamReader(inputStream, Charsets.UTF_8));
+        getClass().getClassLoader().getResourceAsStream(POST_REQUEST_SCHEMA)) {
+      if (inputStream == null) {
+        throw new IllegalStateException(POST_REQUEST_SCHEMA + " not found");
+      }
+      return CharStreams.toString(new InputStreamReader(inputStream, Charsets.UTF_8));
     } catch (IOException e) {
-      LOGGER.error(e);
-      return jsonStr;
+      throw new IllegalStateException("cannot read " + POST_REQUEST_SCHEMA, e);
     }
-    return jsonStr;
   }
 
 }
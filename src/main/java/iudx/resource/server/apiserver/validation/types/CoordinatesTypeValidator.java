@@ -19,10 +19,10 @@ import org.apache.logging.log4j.Logger;
 public class CoordinatesTypeValidator implements Validator {
   private static final Logger LOGGER = LogManager.getLogger(CoordinatesTypeValidator.class);
 
-  private static final String LATITUDE_PATTERN =
-      "^(\\+|-)?(?:90(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-8][0-9])(?:(?:\\.[0-9]{1,6})?))$";
-  private static final String LONGITUDE_PATTERN =
-      "^(\\+|-)?(?:180(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-9][0-9]|1[0-7][0-9])(?:(?:\\.[0-9]{1,6})?))$";
+  private static final Pattern LATITUDE_PATTERN = Pattern.compile(
+      "^(\\+|-)?(?:90(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-8][0-9])(?:(?:\\.[0-9]{1,6})?))$");
+  private static final Pattern LONGITUDE_PATTERN = Pattern.compile(
+      "^(\\+|-)?(?:180(?:(?:\\.0{1,6})?)|(?:[0-9]|[1-9][0-9]|1[0-7][0-9])(?:(?:\\.[0-9]{1,6})?))$");
   private final int allowedMaxCoordinates = VALIDATION_ALLOWED_COORDINATES;
   private static final Pattern pattern = Pattern.compile("[\\w]+[^\\,]*(?:\\.*[\\w])");
 
@@ -40,7 +40,7 @@ public class CoordinatesTypeValidator implements Validator {
 
   private boolean isValidLatitude(String latitude) {
     Float latitudeValue = Float.parseFloat(latitude);
-    if (!df.format(latitudeValue).matches(LATITUDE_PATTERN)) {
+    if (!LATITUDE_PATTERN.matcher(df.format(latitudeValue)).matches()) {
       LOGGER.error("Validation error :  invalid latitude value " + latitude);
       return false;
     }
@@ -49,7 +49,7 @@ public class CoordinatesTypeValidator implements Validator {
 
   private boolean isValidLongitude(String longitude) {
     Float longitudeValue = Float.parseFloat(longitude);
-    if (!df.format(longitudeValue).matches(LONGITUDE_PATTERN)) {
+    if (!LONGITUDE_PATTERN.matcher(df.format(longitudeValue)).matches()) {
       LOGGER.error("Validation error :  invalid longitude value " + longitude);
       return false;
     }
@@ -96,7 +96,7 @@ public class CoordinatesTypeValidator implements Validator {
       LOGGER.error("Validation error :  invalid coordinate format");
       return false;
     }
-    String coordinates = value.replaceAll("\\[", "").replaceAll("\\]", "");
+    String coordinates = value.replace("[", "").replace("]", "");
     String[] coordinatesArray = coordinates.split(",");
     boolean checkLongitudeFlag = false;
     for (String coordinate : coordinatesArray) {
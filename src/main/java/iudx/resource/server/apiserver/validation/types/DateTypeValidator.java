@@ -2,11 +2,13 @@ package iudx.resource.server.apiserver.validation.types;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class DateTypeValidator implements Validator {
   private static final Logger LOGGER = LogManager.getLogger(DateTypeValidator.class);
+  private static final Pattern WHITESPACE = Pattern.compile("\\s");
 
 
   private String value;
@@ -18,7 +20,7 @@ public class DateTypeValidator implements Validator {
   }
 
   private boolean isValidDate(String value) {
-    String dateString = value.trim().replaceAll("\\s", "+");// since + is treated as space in uri
+    String dateString = WHITESPACE.matcher(value.trim()).replaceAll("+");// since + is treated as space in uri
     // params
     try {
       ZonedDateTime.parse(dateString);
@@ -0,0 +1,61 @@
+package iudx.resource.server.apiserver.validation.types;
+
+import static iudx.resource.server.apiserver.util.Constants.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Validates an NGSI-LD idPattern, it must be a regular expression.
+ */
+public class IdPatternTypeValidator implements Validator {
+  private static final Logger LOGGER = LogManager.getLogger(IdPatternTypeValidator.class);
+
+  private String value;
+  private boolean required;
+
+  public IdPatternTypeValidator(String value, boolean required) {
+    this.value = value;
+    this.required = required;
+  }
+
+  @Override
+  public boolean isValid() {
+    LOGGER.debug("value : " + value + " required : " + required);
+    if (required && (value == null || value.isBlank())) {
+      LOGGER.error("Validation error : null or blank value for required mandatory field");
+      return false;
+    } else {
+      if (value == null) {
+        return true;
+      }
+      if (value.isBlank()) {
+        LOGGER.error("Validation error :  blank value for passed");
+        return false;
+      }
+    }
+    if (value.length() > VALIDATION_ID_MAX_LEN) {
+      LOGGER.error("Validation error : Value exceed max character limit.");
+      return false;
+    }
+    try {
+      Pattern.compile(value);
+    } catch (PatternSyntaxException ex) {
+      LOGGER.error("Validation error : invalid idPattern " + ex.getDescription());
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public int failureCode() {
+    return 400;
+  }
+
+  @Override
+  public String failureMessage() {
+    return "Invalid idPattern.";
+  }
+
+}
@@ -1,25 +1,15 @@
 package iudx.resource.server.apiserver.validation.types;
 
-import static iudx.resource.server.apiserver.util.Constants.*;
-import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import io.vertx.core.json.JsonObject;
-import iudx.resource.server.apiserver.util.Constants;
+import iudx.resource.server.apiserver.query.QExpressionParser;
 
+/**
+ * Validates a q expression, see {@link QExpressionParser} for the syntax.
+ */
 public class QTypeValidator implements Validator {
   private static final Logger LOGGER = LogManager.getLogger(QTypeValidator.class);
 
-  List<String> allowedOperators = List.of(">", "=", "<", ">=", "<=", "==", "!=");
-  // TODO : put valid regex for IUDX id
-  private static final Pattern regexIDPattern =
-      Pattern.compile(
-          "^[a-zA-Z0-9.]{4,100}/{1}[a-zA-Z0-9.]{4,100}/{1}[a-zA-Z.]{4,100}/{1}[a-zA-Z-_.]{4,100}/{1}[a-zA-Z0-9-_.]{4,100}$");
-  private static final String qAttributeRegex = "^[a-zA-Z0-9_]{1,100}+$";
-
   private String value;
   private boolean required;
 
@@ -28,72 +18,6 @@ public class QTypeValidator implements Validator {
     this.required = required;
   }
 
-  private boolean isValidAttribute(String value) {
-    return true;
-  }
-
-  private boolean isValidOperator(String value) {
-    return allowedOperators.contains(value);
-  }
-
-  private boolean isValidValue(String value) {
-    try {
-      Float.parseFloat(value);
-      return true;
-    } catch (NumberFormatException ex) {
-      LOGGER.info("Passes value in q parameter in not float");
-      return false;
-    }
-  }
-
-  private boolean isValidID(JsonObject json) {
-    if (json.containsKey("id")) {
-      String id = json.getString(JSON_VALUE);
-      Matcher matcher = regexIDPattern.matcher(id);
-      return matcher.matches();
-    } else {
-      return true;
-    }
-  }
-
-  private boolean isValidAttributeValue(String value) {
-    return qAttributeRegex.matches(value);
-  }
-
-
-
-  JsonObject getQueryTerms(String queryTerms) throws Exception {
-    JsonObject json = new JsonObject();
-    int length = queryTerms.length();
-    List<Character> allowedSpecialCharacter = Arrays.asList('>', '=', '<', '!');
-    List<Character> allowedSpecialCharAttribValue = Arrays.asList('_', '-');
-    int startIndex = 0;
-    boolean specialCharFound = false;
-    for (int i = 0; i < length; i++) {
-      Character c = queryTerms.charAt(i);
-      if (!(Character.isLetter(c) || Character.isDigit(c)) && !specialCharFound) {
-        if (allowedSpecialCharacter.contains(c)) {
-          json.put(Constants.JSON_ATTRIBUTE, queryTerms.substring(startIndex, i));
-          startIndex = i;
-          specialCharFound = true;
-        } else if (allowedSpecialCharAttribValue.contains(c)) {
-          // do nothing
-        } else {
-          LOGGER.info("Ignore " + c.toString());
-          throw new Exception("Operator not allowed.");
-        }
-      } else {
-        if (specialCharFound && (Character.isLetter(c) || Character.isDigit(c))) {
-          json.put(Constants.JSON_OPERATOR, queryTerms.substring(startIndex, i));
-          json.put(Constants.JSON_VALUE, queryTerms.substring(i));
-          break;
-        }
-      }
-
-    }
-    return json;
-  }
-
   @Override
   public boolean isValid() {
     LOGGER.debug("value : " + value + " required : " + required);
@@ -113,27 +37,10 @@ public class QTypeValidator implements Validator {
       LOGGER.error("Validation error : Exceeding max length(512 characters) criteria");
       return false;
     }
-    JsonObject qJson;
     try {
-      qJson = getQueryTerms(value);
-    } catch (Exception ex) {
-      LOGGER.error("Validation error : Operator not allowed.");
-      return false;
-    }
-    if (!isValidAttribute(qJson.getString(JSON_ATTRIBUTE))) {
-      LOGGER.error("Validation error : Not a valid attribute in <<q>> query");
-      return false;
-    }
-    if (!isValidOperator(qJson.getString(JSON_OPERATOR))) {
-      LOGGER.error("Validation error : Not a valid Operator in <<q>> query");
-      return false;
-    }
-    // if (!isValidAttributeValue(qJson.getString(JSON_VALUE))) {
-    // throw ValidationException.ValidationExceptionFactory
-    // .generateNotMatchValidationException("Not a valid attribute value in <<q>> query");
-    // }
-
-    if (!isValidID(qJson)) {
+      QExpressionParser.parse(value);
+    } catch (IllegalArgumentException ex) {
+      LOGGER.error("Validation error : " + ex.getMessage());
       return false;
     }
     return true;
@@ -2,14 +2,18 @@ package iudx.resource.server.authenticator;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.apache.http.HttpStatus;
@@ -30,6 +34,8 @@ import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
 import io.vertx.ext.web.client.predicate.ResponsePredicate;
+import iudx.resource.server.common.CatalogueSnapshot;
+import iudx.resource.server.common.CatalogueSync;
 import iudx.resource.server.databroker.util.Util;
 
 /**
@@ -47,32 +53,36 @@ import iudx.resource.server.databroker.util.Util;
 public class AuthenticationServiceImpl implements AuthenticationService {
 
   private static final Logger LOGGER = LogManager.getLogger(AuthenticationServiceImpl.class);
+  private static final long DECISION_CACHE_SIZE = 10000;
 
   private final WebClient webClient;
   private final Vertx vertxObj;
   private JsonObject config;
-  private long catCacheTimerId;
-  private long catCacheResTimerid;
   private static String catHost;
   private static int catPort;;
   private static String catPath;
   private String resourceServerId;
   private WebClient catWebClient;
+  private CatalogueSync catalogueSync;
 
   /**
-   * Cache/'s will hold at-most 1000 objects and only for a duration of TIP_CACHE_TIMEOUT_AMOUNT
-   * from the last access to object
+   * Cache/'s will hold at-most 1000 objects, catalogue caches only for a duration of
+   * CACHE_TIMEOUT_AMOUNT from the last access to object
    */
-  // Cache for all token.
-  // what if token is revoked ?
-  private final Cache<String, JsonObject> tipCache = CacheBuilder.newBuilder().maximumSize(1000)
-      .expireAfterAccess(Constants.CACHE_TIMEOUT_AMOUNT, TimeUnit.MINUTES).build();
-  // resourceGroupCache will contains ACL info about all resource group in a resource server
+  // Cache for all token, an entry lives till the token expiry (capped by tipCacheMaxTtl) or till
+  // the token is revoked.
+  private final Cache<String, JsonObject> tipCache;
+  // tokens revoked before their expiry, remembered as long as they may be present in tipCache.
+  private final Cache<String, Boolean> revokedTokens;
+  // authorization decisions (allow/deny and resulting authInfo), keyed by
+  // token|ids|id|endpoint|method, each decision lives till the token expiry.
+  private final Cache<String, JsonObject> decisionCache;
+  private final long tipCacheMaxTtl;
+  // resourceGroupCache will contains ACL info about resource groups missing in catalogue snapshot
   private final Cache<String, String> resourceGroupCache =
       CacheBuilder.newBuilder().maximumSize(1000)
           .expireAfterAccess(Constants.CACHE_TIMEOUT_AMOUNT, TimeUnit.MINUTES).build();
-  // resourceIdCache will contains info about resources available(& their ACL) in resource server.
-  // what if resource id ACL is changed ?
+  // resourceIdCache will contains info about resources(& their ACL) missing in catalogue snapshot.
   private final Cache<String, String> resourceIdCache = CacheBuilder.newBuilder().maximumSize(1000)
       .expireAfterAccess(Constants.CACHE_TIMEOUT_AMOUNT, TimeUnit.MINUTES).build();
 
@@ -92,70 +102,80 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     catPort = Integer.parseInt(config.getString("catServerPort"));
     catPath = Constants.CAT_RSG_PATH;
     resourceServerId = config.getString("resourceServerId");
+    tipCacheMaxTtl =
+        config.getLong(Constants.TIP_CACHE_MAX_TTL, Constants.DEFAULT_TIP_CACHE_MAX_TTL);
+    tipCache = CacheBuilder.newBuilder().maximumSize(1000)
+        .expireAfterWrite(tipCacheMaxTtl, TimeUnit.MINUTES).build();
+    decisionCache = CacheBuilder.newBuilder().maximumSize(DECISION_CACHE_SIZE)
+        .expireAfterWrite(tipCacheMaxTtl, TimeUnit.MINUTES).build();
+    revokedTokens = CacheBuilder.newBuilder().maximumSize(10000)
+        .expireAfterWrite(tipCacheMaxTtl, TimeUnit.MINUTES).build();
 
-    WebClientOptions options =
-        new WebClientOptions().setTrustAll(true).setVerifyHost(false).setSsl(true);
+    // on demand lookups are the fallback of a stalled catalogue sync, they must not hang either.
+    int catTimeout = config.getInteger("catalogueRequestTimeout", 30);
+    WebClientOptions options = new WebClientOptions().setTrustAll(true).setVerifyHost(false)
+        .setSsl(true).setConnectTimeout((int) TimeUnit.SECONDS.toMillis(catTimeout))
+        .setIdleTimeout(catTimeout);
     catWebClient = WebClient.create(vertxObj, options);
 
-
-    Future<Boolean> groupCacheFuture = populateCatCache(client);
-    groupCacheFuture.onComplete(handler -> {
-      populateCatResourceIdCache(client);
-    });
-    catCacheTimerId = vertx.setPeriodic(TimeUnit.DAYS.toMillis(1), handler -> {
-      populateCatCache(webClient);
-    });
-    catCacheResTimerid = vertx.setPeriodic(TimeUnit.DAYS.toMillis(1), handler -> {
-      populateCatResourceIdCache(webClient);
+    // groups and resources are kept in the shared catalogue snapshot, resourceGroupCache and
+    // resourceIdCache only hold items looked up on demand and are dropped whenever a new
+    // catalogue version is synced.
+    catalogueSync = CatalogueSync.getOrCreate(vertx, config);
+    catalogueSync.onUpdate(snapshot -> {
+      resourceGroupCache.invalidateAll();
+      resourceIdCache.invalidateAll();
+      decisionCache.invalidateAll();
     });
 
+    // revoked tokens are pushed by publishing on TOKEN_REVOCATION_ADDRESS and/or polled from auth
+    // server when revocationListPath is configured.
+    vertx.eventBus().<JsonObject>consumer(Constants.TOKEN_REVOCATION_ADDRESS,
+        message -> revokeTokens(message.body()));
+    String revocationListPath = config.getString(Constants.REVOCATION_LIST_PATH);
+    if (revocationListPath != null && !revocationListPath.isBlank()) {
+      long pollInterval = config.getLong(Constants.REVOCATION_POLL_INTERVAL,
+          Constants.DEFAULT_REVOCATION_POLL_INTERVAL);
+      vertx.setPeriodic(TimeUnit.SECONDS.toMillis(pollInterval), handler -> pollRevokedTokens());
+    }
   }
 
-  // populate all resource groups available in resource server with access policy
-  private Future<Boolean> populateCatCache(WebClient client) {
-    LOGGER.debug("Info : starting populateCatCache()");
-    Promise<Boolean> promise = Promise.promise();
-    catWebClient.get(catPort, catHost, catPath).addQueryParam("property", "[resourceServer]")
-        .addQueryParam("value", resourceServerId).expect(ResponsePredicate.JSON).send(handler -> {
-          if (handler.succeeded()) {
-            JsonArray response = handler.result().bodyAsJsonObject().getJsonArray("results");
-            response.forEach(json -> {
-              JsonObject res = (JsonObject) json;
-              LOGGER.debug("cat id cat: " + res.getString("id"));
-              resourceGroupCache.put(res.getString("id"), res.getString("accessPolicy", "SECURE"));
-            });
-          } else if (handler.failed()) {
-            LOGGER.error(handler.cause());
-          }
-        });
-    promise.complete(true);
-    return promise.future();
+  /**
+   * Evicts revoked tokens from tipCache and remembers them so that they are not cached again.
+   *
+   * @param revocation json containing a <i>token</i> or an array of <i>tokens</i>/<i>results</i>
+   *        (token strings or objects with a token field)
+   */
+  private void revokeTokens(JsonObject revocation) {
+    List<String> tokens = new ArrayList<>();
+    if (revocation.containsKey("token")) {
+      tokens.add(revocation.getString("token"));
+    }
+    JsonArray revoked = revocation.getJsonArray("tokens", revocation.getJsonArray("results"));
+    if (revoked != null) {
+      revoked.forEach(entry -> tokens.add(entry instanceof JsonObject
+          ? ((JsonObject) entry).getString("token") : String.valueOf(entry)));
+    }
+    tokens.stream().filter(token -> token != null).forEach(token -> {
+      revokedTokens.put(token, true);
+      tipCache.invalidate(token);
+      // revocations are rare, the bounded cache is scanned for the decisions of the token.
+      String prefix = decisionCacheKey(token, "");
+      decisionCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    });
+    LOGGER.debug("Info: revoked tokens : " + tokens.size());
   }
 
-  // populate all resource Ids available in resource server for all resource group with access
-  // policy
-  private Future<Void> populateCatResourceIdCache(WebClient client) {
-    LOGGER.debug("Info : starting populateCatResourceIdCache()");
-    Promise<Void> promise = Promise.promise();
-    LOGGER.debug("size : " + resourceGroupCache.size());
-    // for every key call cat to get all resources and their ACL(?)/itemstatus
-    resourceGroupCache.asMap().forEach((key, value) -> {
-      catWebClient.get(catPort, catHost, catPath).addQueryParam("id", key)
-          .addQueryParam("rel", "resource").expect(ResponsePredicate.JSON).send(handler -> {
-            if (handler.succeeded()) {
-              JsonArray response = handler.result().bodyAsJsonObject().getJsonArray("results");
-              response.forEach(json -> {
-                JsonObject res = (JsonObject) json;
-                LOGGER.debug("cat id res: " + res.getString("id"));
-                resourceIdCache.put(res.getString("id"), resourceGroupCache.getIfPresent(key));
-              });
-            } else if (handler.failed()) {
-              LOGGER.error(handler.cause());
-            }
-          });
-    });
-    promise.complete();
-    return promise.future();
+  private void pollRevokedTokens() {
+    webClient.get(443, config.getString(Constants.AUTH_SERVER_HOST),
+        config.getString(Constants.REVOCATION_LIST_PATH)).expect(ResponsePredicate.JSON)
+        .send(handler -> {
+          if (handler.succeeded() && handler.result().statusCode() == HttpStatus.SC_OK) {
+            revokeTokens(handler.result().bodyAsJsonObject());
+          } else {
+            LOGGER.error("failed to poll revoked tokens");
+          }
+        });
   }
 
   /**
@@ -171,6 +191,18 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
     LOGGER.debug("Info: requested endpoint :" + requestEndpoint);
 
+    String decisionKey = getDecisionKey(request, authenticationInfo);
+    JsonObject decision = getCachedDecision(token, decisionKey);
+    if (decision != null) {
+      LOGGER.debug("Info: authorization decision cache hit");
+      if (decision.getBoolean("allowed")) {
+        handler.handle(Future.succeededFuture(decision.getJsonObject("result").copy()));
+      } else {
+        handler.handle(Future.failedFuture(decision.getString("message")));
+      }
+      return this;
+    }
+
     if (config.getString(Constants.SERVER_MODE).equalsIgnoreCase("testing")) {
       if (token.equals(Constants.PUBLIC_TOKEN)
           && Constants.OPEN_ENDPOINTS.contains(requestEndpoint)) {
@@ -206,17 +238,8 @@ public class AuthenticationServiceImpl implements AuthenticationService {
           Future<JsonObject> validateAPI =
               validateAccess(tipResponse, catResponse, authenticationInfo, request);
 
-          validateAPI.onComplete(validateAPIResponseHandler -> {
-            if (validateAPIResponseHandler.succeeded()) {
-              LOGGER.debug("Info: Success :: TIP Response is : " + tipResponse);
-              JsonObject response = validateAPIResponseHandler.result();
-              handler.handle(Future.succeededFuture(response));
-            } else if (validateAPIResponseHandler.failed()) {
-              LOGGER.debug("Info: Failure :: TIP Response is : " + tipResponse);
-              String response = validateAPIResponseHandler.cause().getMessage();
-              handler.handle(Future.failedFuture(response));
-            }
-          });
+          validateAPI.onComplete(
+              decisionHandler(token, decisionKey, tipResponse, handler));
         });
         return this;
       }
@@ -244,17 +267,8 @@ public class AuthenticationServiceImpl implements AuthenticationService {
             responseContainer.catResponse = success;
             Future<JsonObject> validateAPI = validateAccess(responseContainer.tipResponse,
                 responseContainer.catResponse, authenticationInfo, request);
-            validateAPI.onComplete(validateAPIResponseHandler -> {
-              if (validateAPIResponseHandler.succeeded()) {
-                LOGGER.debug("Info: Success :: TIP Response is : " + responseContainer.tipResponse);
-                JsonObject response = validateAPIResponseHandler.result();
-                handler.handle(Future.succeededFuture(response));
-              } else if (validateAPIResponseHandler.failed()) {
-                LOGGER.debug("Info: Failure :: TIP Response is : " + responseContainer.tipResponse);
-                String response = validateAPIResponseHandler.cause().getMessage();
-                handler.handle(Future.failedFuture(response));
-              }
-            });
+            validateAPI.onComplete(
+                decisionHandler(token, decisionKey, responseContainer.tipResponse, handler));
             /*
              * String providerID = responseContainer.tipResponse.getJsonArray("request")
              * .getJsonObject(0).getString("id"); String[] id = providerID.split("/"); String
@@ -289,17 +303,8 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
             Future<JsonObject> validateAPI =
                 validateAccess(tipResponse, catResponse, authenticationInfo, request);
-            validateAPI.onComplete(validateAPIResponseHandler -> {
-              if (validateAPIResponseHandler.succeeded()) {
-                LOGGER.debug("Info: Success :: TIP Response is : " + tipResponse);
-                JsonObject response = validateAPIResponseHandler.result();
-                handler.handle(Future.succeededFuture(response));
-              } else if (validateAPIResponseHandler.failed()) {
-                LOGGER.debug("Info: Failure :: TIP Response is : " + tipResponse);
-                String response = validateAPIResponseHandler.cause().getMessage();
-                handler.handle(Future.failedFuture(response));
-              }
-            });
+            validateAPI.onComplete(
+                decisionHandler(token, decisionKey, tipResponse, handler));
           });
           return this;
         }
@@ -308,6 +313,71 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     return this;
   }
 
+  /**
+   * Key of an authorization decision for a token, decisions of requests whose outcome depends on
+   * the request body (POST/PUT/PATCH on closed endpoints) are not cached.
+   *
+   * @return key (ids|endpoint|method) or null if decision is not cacheable
+   */
+  private String getDecisionKey(JsonObject request, JsonObject authenticationInfo) {
+    String endpoint = authenticationInfo.getString("apiEndpoint");
+    String method = authenticationInfo.getString("method");
+    if (!Constants.OPEN_ENDPOINTS.contains(endpoint) && !"GET".equalsIgnoreCase(method)
+        && !"DELETE".equalsIgnoreCase(method)) {
+      return null;
+    }
+    JsonArray ids = request.getJsonArray("ids");
+    return (ids == null ? "" : ids.encode()) + "|" + authenticationInfo.getString("id") + "|"
+        + endpoint + "|" + method;
+  }
+
+  private JsonObject getCachedDecision(String token, String decisionKey) {
+    if (decisionKey == null || revokedTokens.getIfPresent(token) != null) {
+      return null;
+    }
+    String key = decisionCacheKey(token, decisionKey);
+    JsonObject decision = decisionCache.getIfPresent(key);
+    if (decision != null
+        && !Instant.now(Clock.systemUTC()).isBefore(decision.getInstant(Constants.JSON_EXPIRY))) {
+      decisionCache.invalidate(key);
+      return null;
+    }
+    return decision;
+  }
+
+  private static String decisionCacheKey(String token, String decisionKey) {
+    return token + "|" + decisionKey;
+  }
+
+  /**
+   * Handler completing a token introspection with the result of validateAccess and caching the
+   * allow/deny decision till the expiry of the token.
+   */
+  private Handler<AsyncResult<JsonObject>> decisionHandler(String token, String decisionKey,
+      JsonObject tipResponse, Handler<AsyncResult<JsonObject>> handler) {
+    return validateAPIResponseHandler -> {
+      JsonObject decision = new JsonObject();
+      if (validateAPIResponseHandler.succeeded()) {
+        LOGGER.debug("Info: Success :: TIP Response is : " + tipResponse);
+        JsonObject response = validateAPIResponseHandler.result();
+        decision.put("allowed", true).put("result", response.copy());
+        handler.handle(Future.succeededFuture(response));
+      } else {
+        LOGGER.debug("Info: Failure :: TIP Response is : " + tipResponse);
+        String response = validateAPIResponseHandler.cause().getMessage();
+        decision.put("allowed", false).put("message", response);
+        handler.handle(Future.failedFuture(response));
+      }
+      if (decisionKey != null && revokedTokens.getIfPresent(token) == null) {
+        Instant expiry = tipResponse.containsKey(Constants.JSON_CACHE_EXPIRY)
+            ? Instant.parse(tipResponse.getString(Constants.JSON_CACHE_EXPIRY))
+            : getCacheExpiry(tipResponse);
+        decision.put(Constants.JSON_EXPIRY, expiry);
+        decisionCache.put(decisionCacheKey(token, decisionKey), decision);
+      }
+    };
+  }
+
   private class tokenInterospectionResultContainer {
     JsonObject tipResponse;
     HashMap<String, Boolean> catResponse;
@@ -346,7 +416,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
       promise.complete(Constants.JSON_PUBLIC_TIP_RESPONSE);
       return promise.future();
     }
-    JsonObject cacheResponse = tipCache.getIfPresent(token);
+    JsonObject cacheResponse = getCachedTipResponse(token);
     if (cacheResponse == null) {
       LOGGER.debug("Cache miss calling auth server");
       // cache miss
@@ -367,11 +437,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
               return;
             }
             JsonObject responseBody = response.bodyAsJsonObject();
-            String cacheExpiry = Instant.now(Clock.systemUTC())
-                .plus(Constants.CACHE_TIMEOUT_AMOUNT, Constants.TIP_CACHE_TIMEOUT_UNIT)
-                .toString();
-            responseBody.put("cache-expiry", cacheExpiry);
-            tipCache.put(token, responseBody);
+            Instant cacheExpiry = getCacheExpiry(responseBody);
+            responseBody.put(Constants.JSON_CACHE_EXPIRY, cacheExpiry.toString());
+            if (revokedTokens.getIfPresent(token) == null) {
+              tipCache.put(token, responseBody);
+            }
             promise.complete(responseBody);
           });
     } else {
@@ -381,6 +451,42 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     return promise.future();
   }
 
+  private JsonObject getCachedTipResponse(String token) {
+    if (revokedTokens.getIfPresent(token) != null) {
+      return null;
+    }
+    JsonObject cacheResponse = tipCache.getIfPresent(token);
+    if (cacheResponse != null && !Instant.now(Clock.systemUTC())
+        .isBefore(Instant.parse(cacheResponse.getString(Constants.JSON_CACHE_EXPIRY)))) {
+      LOGGER.debug("Info: token expired in cache");
+      tipCache.invalidate(token);
+      return null;
+    }
+    return cacheResponse;
+  }
+
+  /**
+   * Cache expiry of a TIP response, the token <i>expiry</i> capped by tipCacheMaxTtl. If the
+   * expiry claim is absent or unparsable the default timeout is used.
+   *
+   * @param tipResponse token introspection response
+   * @return instant till which the response can be served from cache
+   */
+  private Instant getCacheExpiry(JsonObject tipResponse) {
+    Instant now = Instant.now(Clock.systemUTC());
+    Instant maxExpiry = now.plus(tipCacheMaxTtl, Constants.TIP_CACHE_TIMEOUT_UNIT);
+    Instant tokenExpiry;
+    try {
+      String expiry = tipResponse.getString(Constants.JSON_EXPIRY);
+      tokenExpiry = expiry.endsWith("Z") ? Instant.parse(expiry)
+          : LocalDateTime.parse(expiry).toInstant(ZoneOffset.UTC);
+    } catch (RuntimeException e) {
+      LOGGER.debug("Info: no valid expiry in TIP response, using default cache timeout");
+      tokenExpiry = now.plus(Constants.CACHE_TIMEOUT_AMOUNT, Constants.TIP_CACHE_TIMEOUT_UNIT);
+    }
+    return tokenExpiry.isBefore(maxExpiry) ? tokenExpiry : maxExpiry;
+  }
+
   /**
    * The open resource validator method.
    * 
@@ -512,46 +618,55 @@ public class AuthenticationServiceImpl implements AuthenticationService {
   private Future<HashMap<String, Boolean>> isOpenResource1(JsonArray requestIDs,
       String requestEndpoint) {
     LOGGER.debug("isOpenResource1() started");
+    if (!catalogueSync.isReady()) {
+      // cold start : wait (bounded) for the first catalogue sync instead of calling catalogue for
+      // every id, ids still missing after the wait are resolved on demand.
+      return catalogueSync.awaitReady()
+          .compose(ready -> resolveOpenResources(requestIDs, requestEndpoint));
+    }
+    return resolveOpenResources(requestIDs, requestEndpoint);
+  }
+
+  private Future<HashMap<String, Boolean>> resolveOpenResources(JsonArray requestIDs,
+      String requestEndpoint) {
     Promise<HashMap<String, Boolean>> promise = Promise.promise();
     HashMap<String, Boolean> result = new HashMap<>();
-    final int requestIdSize = requestIDs.size();
-    final AtomicInteger counter = new AtomicInteger();
     if (Constants.OPEN_ENDPOINTS.contains(requestEndpoint) && requestIDs.size() > 0) {
-      Iterator<Object> itr = requestIDs.iterator();
-      while (itr.hasNext()) {
-        String rId = (String) itr.next();
-        String ACL = resourceIdCache.getIfPresent(rId);
+      List<String> cacheMiss = new ArrayList<>();
+      for (Object requestId : requestIDs) {
+        String rId = (String) requestId;
+        String ACL = getResourceAccessPolicy(rId);
         if (ACL != null) {
           LOGGER.debug("Cache Hit");
           result.put(rId, ACL.equalsIgnoreCase("OPEN"));
-          counter.getAndIncrement();
-          doComplete(promise, counter.intValue(), requestIdSize, result);
+        } else if (rId.split("/").length < 4) {
+          promise.fail("Not Found " + rId);
+          return promise.future();
         } else {
-          // cache miss
-          LOGGER.debug("Cache miss calling cat server");
-          String[] idComponents = rId.split("/");
-          if (idComponents.length < 4) {
+          cacheMiss.add(rId);
+        }
+      }
+      if (cacheMiss.isEmpty()) {
+        promise.complete(result);
+        return promise.future();
+      }
+      // resolve all cache misses with batched catalogue calls.
+      LOGGER.debug("Cache miss calling cat server for : " + cacheMiss.size() + " ids");
+      resolveAccessPolicies(cacheMiss).onSuccess(policies -> {
+        for (String rId : cacheMiss) {
+          String ACL = policies.get(rId);
+          if (ACL == null) {
+            LOGGER.error("cat response failed for Id : (" + rId + ")");
             promise.fail("Not Found " + rId);
+            return;
           }
-          String groupId = (idComponents.length == 4) ? rId
-              : String.join("/", Arrays.copyOfRange(idComponents, 0, 4));
-          // 1. check group accessPolicy.
-          // 2. check resource exist, if exist set accessPolicy to group accessPolicy. else fail
-          Future<String> groupACLFuture = getGroupAccessPolicy(groupId);
-          groupACLFuture.compose(groupACLResult -> {
-            String groupPolicy = (String) groupACLResult;
-            return isResourceExist(rId, groupPolicy);
-          }).onSuccess(handler -> {
-            result.put(rId, resourceIdCache.getIfPresent(rId).equalsIgnoreCase("OPEN"));
-            counter.getAndIncrement();
-            doComplete(promise, counter.intValue(), requestIdSize, result);
-          }).onFailure(handler -> {
-            LOGGER.error("cat response failed for Id : (" + rId + ")" + handler.getCause());
-            result.put(rId, false);
-            promise.fail("Not Found " + rId);
-          });
+          result.put(rId, ACL.equalsIgnoreCase("OPEN"));
         }
-      }
+        promise.complete(result);
+      }).onFailure(handler -> {
+        LOGGER.error("cat response failed for Ids : " + cacheMiss + " " + handler.getMessage());
+        promise.fail("Not Found " + cacheMiss.get(0));
+      });
     } else {
       // process for /adapter or /subscription
       LOGGER.debug("resource exist" + requestIDs.getString(0));
@@ -571,91 +686,92 @@ public class AuthenticationServiceImpl implements AuthenticationService {
   }
 
 
-  private <T> void doComplete(Promise<T> promise, int counter, int size, T result) {
-    if (counter == size) {
-      promise.complete(result);
+  /**
+   * Access policy of a resource from catalogue snapshot or from on demand cache.
+   *
+   * @param id resource id
+   * @return accessPolicy or null if resource is not known yet
+   */
+  private String getResourceAccessPolicy(String id) {
+    CatalogueSnapshot snapshot = catalogueSync.snapshot();
+    if (snapshot.containsResource(id)) {
+      return snapshot.accessPolicy(id);
     }
+    return resourceIdCache.getIfPresent(id);
   }
 
-  private Future<String> getGroupAccessPolicy(String groupId) {
-    LOGGER.debug("getGroupAccessPolicy() started");
-    Promise<String> promise = Promise.promise();
-    String groupACL = resourceGroupCache.getIfPresent(groupId);
-    if (groupACL != null) {
-      LOGGER.debug("Info : cache Hit");
-      promise.complete(groupACL);
-    } else {
-      LOGGER.debug("Info : cache miss");
-      catWebClient.get(catPort, catHost, catPath).addQueryParam("property", "[id]")
-          .addQueryParam("value", "[[" + groupId + "]]").addQueryParam("filter", "[accessPolicy]")
-          .expect(ResponsePredicate.JSON).send(httpResponseAsyncResult -> {
-            if (httpResponseAsyncResult.failed()) {
-              LOGGER.error(httpResponseAsyncResult.cause());
-              promise.fail("Resource not found");
-              return;
-            }
-            HttpResponse<Buffer> response = httpResponseAsyncResult.result();
-            if (response.statusCode() != HttpStatus.SC_OK) {
-              promise.fail("Resource not found");
-              return;
-            }
-            JsonObject responseBody = response.bodyAsJsonObject();
-            if (!responseBody.getString("status").equals("success")) {
-              promise.fail("Resource not found");
-              return;
-            }
-            String resourceACL = "SECURE";
-            try {
-              resourceACL =
-                  responseBody.getJsonArray("results").getJsonObject(0).getString("accessPolicy");
-              resourceGroupCache.put(groupId, resourceACL);
-              LOGGER.debug("Info: Group ID valid : Catalogue item Found");
-              promise.complete(resourceACL);
-            } catch (Exception ignored) {
-              LOGGER.error(ignored.getMessage());
-              LOGGER.debug("Info: Group ID invalid : Empty response in results from Catalogue");
-              promise.fail("Resource not found");
-            }
-          });
+  /**
+   * Resolves access policy of resources missing in cache with one catalogue search per chunk of
+   * ids (an <i>id</i> property filter with requested resources and their groups). Resolved
+   * resources and groups are added to on demand caches.
+   *
+   * @param ids resource ids (or group ids) not present in cache
+   * @return future of a map of id to accessPolicy, ids not found in catalogue are absent
+   */
+  private Future<Map<String, String>> resolveAccessPolicies(List<String> ids) {
+    Promise<Map<String, String>> promise = Promise.promise();
+    CatalogueSnapshot snapshot = catalogueSync.snapshot();
+    Map<String, String> groupIds = new HashMap<>();
+    Set<String> queryIds = new LinkedHashSet<>(ids);
+    for (String id : ids) {
+      String[] idComponents = id.split("/");
+      String groupId = (idComponents.length == 4) ? id
+          : String.join("/", Arrays.copyOfRange(idComponents, 0, 4));
+      groupIds.put(id, groupId);
+      if (!snapshot.containsGroup(groupId) && resourceGroupCache.getIfPresent(groupId) == null) {
+        queryIds.add(groupId);
+      }
     }
+    List<String> queryIdList = new ArrayList<>(queryIds);
+    Map<String, JsonObject> items = new ConcurrentHashMap<>();
+    @SuppressWarnings("rawtypes")
+    List<Future> catResponses = new ArrayList<>();
+    for (int i = 0; i < queryIdList.size(); i += Constants.CAT_BATCH_SIZE) {
+      List<String> batch =
+          queryIdList.subList(i, Math.min(i + Constants.CAT_BATCH_SIZE, queryIdList.size()));
+      catResponses.add(searchCatalogueItems(batch).onSuccess(results -> results
+          .forEach(json -> items.put(((JsonObject) json).getString("id"), (JsonObject) json))));
+    }
+    CompositeFuture.all(catResponses).onSuccess(composite -> {
+      items.values().stream().filter(item -> item.getString("id").split("/").length == 4)
+          .forEach(group -> resourceGroupCache.put(group.getString("id"),
+              group.getString("accessPolicy", "SECURE")));
+      Map<String, String> policies = new HashMap<>();
+      for (String id : ids) {
+        String groupId = groupIds.get(id);
+        String groupACL = snapshot.containsGroup(groupId) ? snapshot.accessPolicy(groupId)
+            : resourceGroupCache.getIfPresent(groupId);
+        if (items.containsKey(id) && groupACL != null) {
+          resourceIdCache.put(id, groupACL);
+          policies.put(id, groupACL);
+        }
+      }
+      promise.complete(policies);
+    }).onFailure(promise::fail);
     return promise.future();
   }
 
-  private Future<Boolean> isResourceExist(String id, String groupACL) {
-    LOGGER.debug("isResourceExist() started");
-    Promise<Boolean> promise = Promise.promise();
-    String catHost = config.getString("catServerHost");
-    int catPort = Integer.parseInt(config.getString("catServerPort"));
-    String catPath = Constants.CAT_RSG_PATH;
-    String resourceExist = resourceIdCache.getIfPresent(id);
-    if (resourceExist != null) {
-      LOGGER.debug("Info : cache Hit");
-      promise.complete(true);
-    } else {
-      LOGGER.debug("Info : Cache miss : call cat server");
-      catWebClient.get(catPort, catHost, catPath).addQueryParam("property", "[id]")
-          .addQueryParam("value", "[[" + id + "]]").addQueryParam("filter", "[id]")
-          .expect(ResponsePredicate.JSON).send(responseHandler -> {
-            if (responseHandler.failed()) {
-              promise.fail("false");
-            }
-            HttpResponse<Buffer> response = responseHandler.result();
-            JsonObject responseBody = response.bodyAsJsonObject();
-            if (response.statusCode() != HttpStatus.SC_OK) {
-              promise.fail("false");
-            } else if (!responseBody.getString("status").equals("success")) {
-              promise.fail("Not Found");
-              return;
-            } else if (responseBody.getInteger("totalHits") == 0) {
-              LOGGER.debug("Info: Resource ID invalid : Catalogue item Not Found");
-              promise.fail("Not Found");
-            } else {
-              LOGGER.debug("is Exist response : " + responseBody);
-              resourceIdCache.put(id, groupACL);
-              promise.complete(true);
-            }
-          });
-    }
+  private Future<JsonArray> searchCatalogueItems(List<String> ids) {
+    Promise<JsonArray> promise = Promise.promise();
+    catWebClient.get(catPort, catHost, catPath).addQueryParam("property", "[id]")
+        .addQueryParam("value", "[[" + String.join(",", ids) + "]]")
+        .addQueryParam("filter", "[id,accessPolicy]")
+        .addQueryParam("limit", String.valueOf(ids.size()))
+        .expect(ResponsePredicate.JSON).send(httpResponseAsyncResult -> {
+          if (httpResponseAsyncResult.failed()) {
+            LOGGER.error(httpResponseAsyncResult.cause());
+            promise.fail("Resource not found");
+            return;
+          }
+          HttpResponse<Buffer> response = httpResponseAsyncResult.result();
+          JsonObject responseBody = response.bodyAsJsonObject();
+          if (response.statusCode() != HttpStatus.SC_OK
+              || !"success".equals(responseBody.getString("status"))) {
+            promise.fail("Resource not found");
+            return;
+          }
+          promise.complete(responseBody.getJsonArray("results", new JsonArray()));
+        });
     return promise.future();
   }
 
@@ -736,8 +852,10 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         response.put("item", "Not Found");
         promise.fail(response.toString());
       } else {
-        if (catResponse.get(requestedIds.get(0))) {// getting first id since current API don't allow
-                                                   // multiple id's
+        // idPattern and type queries resolve to many ids, possibly across groups : every
+        // resolved id has to be OPEN or its group covered by the token.
+        List<String> secureGroupIds = secureGroupIds(requestedIds, catResponse);
+        if (secureGroupIds.isEmpty()) {
           LOGGER.debug("Info: Catalogue item is OPEN");
           response.put(Constants.JSON_CONSUMER, result.getString(Constants.JSON_CONSUMER));
           promise.complete(response);
@@ -763,9 +881,9 @@ public class AuthenticationServiceImpl implements AuthenticationService {
              */
             JsonArray tipResponseRequestArray = result.getJsonArray("request");
             allowedEndpoint =
-                isAllowedAPIEndpoint(requestEndpoint, tipResponseRequestArray, requestedGroupIds);
+                isAllowedAPIEndpoint(requestEndpoint, tipResponseRequestArray, secureGroupIds);
 
-            if (isAllowedId(allowedGroupIds, requestedGroupIds) && allowedEndpoint) {
+            if (isAllowedId(allowedGroupIds, secureGroupIds) && allowedEndpoint) {
               LOGGER.debug("Info: Catalogue item is SECURE and User has ACCESS");
               response.put(Constants.JSON_CONSUMER, result.getString(Constants.JSON_CONSUMER));
               promise.complete(response);
@@ -952,12 +1070,27 @@ public class AuthenticationServiceImpl implements AuthenticationService {
    * 
    * @param allowed List of allowed items
    * @param requested List of requested items
-   * @return True : even if a single entry from allowed matched with any entry in requested. False :
-   *         if there is no id found in allowed for any of requested id.
+   * @return True : if every entry of requested is found in allowed. False : if any requested entry
+   *         is not allowed.
    */
-  private boolean isAllowedId(List<String> allowed, List<String> requested) {
-    return requested.stream().anyMatch(item -> allowed.contains(item));
+  static boolean isAllowedId(List<String> allowed, List<String> requested) {
+    return requested.stream().allMatch(item -> allowed.contains(item));
+  }
 
+  /**
+   * Distinct groups of requested ids which are not OPEN in catalogue. An id missing in catResponse
+   * is treated as SECURE.
+   *
+   * @param requestedIds requested resource ids
+   * @param catResponse map of resource id to true if OPEN
+   * @return group ids the token must have access to, empty if every requested id is OPEN
+   */
+  static List<String> secureGroupIds(List<String> requestedIds, Map<String, Boolean> catResponse) {
+    return requestedIds.stream()
+        .filter(id -> !Boolean.TRUE.equals(catResponse.get(id)))
+        .map(id -> id.substring(0, id.lastIndexOf("/")))
+        .distinct()
+        .collect(Collectors.toList());
   }
 
   private boolean isAllowedAPIEndpoint(String requestedEndpoint, JsonArray tipResponseRequestArray,
@@ -12,6 +12,7 @@ import io.vertx.core.net.JksOptions;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.client.WebClientOptions;
 import io.vertx.serviceproxy.ServiceBinder;
+import iudx.resource.server.common.LocalServices;
 
 /**
  * The Authentication Verticle.
@@ -64,10 +65,12 @@ public class AuthenticationVerticle extends AbstractVerticle {
 
     consumer = binder.setAddress(AUTH_SERVICE_ADDRESS)
       .register(AuthenticationService.class, authentication);
+    LocalServices.register(vertx, AUTH_SERVICE_ADDRESS, authentication);
   }
 
   @Override
   public void stop() {
+    LocalServices.unregister(vertx, AUTH_SERVICE_ADDRESS, authentication);
 	binder.unregister(consumer);
   }
 }
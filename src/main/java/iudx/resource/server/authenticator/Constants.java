@@ -18,14 +18,24 @@ public class Constants {
   public static final List<String> CLOSED_ENDPOINTS =
       List.of("/iudx/v1/adapter", "/ngsi-ld/v1/subscription");
   public static final List<String> MANAGEMENT_ENDPOINTS =
-      List.of("/management/queue", "/management/exchange", "/management/vhost");
+      List.of("/management/queue", "/management/exchange", "/management/vhost",
+          "/management/explain");
   public static final String ADAPTER_ENDPOINT = "/iudx/v1/adapter";
   public static final String SUBSCRIPTION_ENDPOINT = "/ngsi-ld/v1/subscription";
   public static final String MANAGEMENT_ENDPOINT = "/management/*";
   public static final long CACHE_TIMEOUT_AMOUNT = 30;
   public static final ChronoUnit TIP_CACHE_TIMEOUT_UNIT = ChronoUnit.MINUTES;
+  public static final String TIP_CACHE_MAX_TTL = "tipCacheMaxTtl";
+  public static final long DEFAULT_TIP_CACHE_MAX_TTL = 24 * 60;
+  public static final String JSON_EXPIRY = "expiry";
+  public static final String JSON_CACHE_EXPIRY = "cache-expiry";
+  public static final String TOKEN_REVOCATION_ADDRESS = "iudx.rs.authentication.revoke";
+  public static final String REVOCATION_LIST_PATH = "revocationListPath";
+  public static final String REVOCATION_POLL_INTERVAL = "revocationPollInterval";
+  public static final long DEFAULT_REVOCATION_POLL_INTERVAL = 60;
   public static final String CAT_RSG_PATH = "/iudx/cat/v1/search";
   public static final String CAT_ITEM_PATH = "/iudx/cat/v1/item";
+  public static final int CAT_BATCH_SIZE = 100;
   public static final String SERVER_MODE = "serverMode";
   public static final String JSON_CONSUMER = "consumer"; 
   public static final String JSON_PROVIDER = "provider"; 
@@ -0,0 +1,263 @@
+package iudx.resource.server.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Trie of the resource ids of a {@link CatalogueSnapshot}, one level per id segment
+ * (domain/SHA/rs/group/resource).
+ * <p>
+ * NGSI-LD <i>idPattern</i> regular expressions and <i>type</i> filters are resolved against it to
+ * the concrete ids they select, without calling the catalogue. A pattern of five segments is
+ * matched segment by segment, a literal segment is a single lookup and <i>.*</i> takes every child,
+ * so only the branches the pattern can match are visited; any other pattern is matched against
+ * every id. A type selects the resources of the groups having that domain type, it may be given
+ * with or without its prefix (<i>iudx:FloodSensor</i> or <i>FloodSensor</i>).
+ * </p>
+ * <p>
+ * Patterns come from clients and are matched on the event loop, so every match has a budget of
+ * characters read, linear in the length of the id. A pattern exhausting it (catastrophic
+ * backtracking such as <i>(.*a){20}$</i>) is rejected as an invalid idPattern.
+ * </p>
+ */
+public final class CatalogueIdTrie {
+
+  public static final CatalogueIdTrie EMPTY = new CatalogueIdTrie(0L);
+
+  private static final int ID_SEGMENTS = 5;
+  private static final String ANY = ".*";
+  private static final String REGEX_CHARS = "\\.[]{}()*+?^$|";
+  private static final int MATCH_BUDGET_PER_CHAR = 64;
+  private static final int MATCH_BUDGET_BASE = 1024;
+
+  private final long version;
+  private final Node root = new Node();
+  // domain type without prefix -> resource group ids
+  private final Map<String, TreeSet<String>> groupsByType = new HashMap<>();
+  private int size;
+
+  private CatalogueIdTrie(long version) {
+    this.version = version;
+  }
+
+  /**
+   * @param snapshot catalogue snapshot
+   * @return trie of the resources of the snapshot
+   */
+  public static CatalogueIdTrie of(CatalogueSnapshot snapshot) {
+    CatalogueIdTrie trie = new CatalogueIdTrie(snapshot.version());
+    snapshot.resourceGroups().keySet().forEach(trie::put);
+    snapshot.groupPolicies().keySet().forEach(groupId -> snapshot.groupTypes(groupId)
+        .forEach(type -> trie.groupsByType.computeIfAbsent(typeKey(type), key -> new TreeSet<>())
+            .add(groupId)));
+    return trie;
+  }
+
+  /**
+   * @return version of the snapshot the trie was built from
+   */
+  public long version() {
+    return version;
+  }
+
+  /**
+   * @return number of resource ids in the trie
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Resolves an idPattern and/or a type to resource ids, in id order.
+   *
+   * @param idPattern regular expression the ids must match, null for any id
+   * @param type domain type of the group of the ids, null for any type
+   * @param limit at most limit ids are returned
+   * @return matching ids
+   * @throws IllegalArgumentException if idPattern is not a valid regular expression
+   */
+  public List<String> resolve(String idPattern, String type, int limit) {
+    Pattern pattern = idPattern == null ? null : compile(idPattern);
+    List<String> ids = new ArrayList<>();
+    if (type != null) {
+      for (String groupId : groupsByType.getOrDefault(typeKey(type), new TreeSet<>())) {
+        Node group = root.find(groupId.split("/"));
+        if (group != null) {
+          collect(group, pattern, ids, limit);
+        }
+      }
+      return ids;
+    }
+    String[] segments = idPattern == null ? new String[0] : idPattern.split("/", -1);
+    Pattern[] segmentPatterns = segments.length == ID_SEGMENTS ? compile(segments) : null;
+    if (segmentPatterns == null) {
+      collect(root, pattern, ids, limit);
+    } else {
+      walk(root, segments, segmentPatterns, 0, ids, limit);
+    }
+    return ids;
+  }
+
+  private void put(String id) {
+    String[] segments = id.split("/");
+    if (segments.length != ID_SEGMENTS) {
+      return;
+    }
+    Node node = root;
+    for (String segment : segments) {
+      node = node.children.computeIfAbsent(segment, key -> new Node());
+    }
+    if (node.id == null) {
+      node.id = id;
+      size++;
+    }
+  }
+
+  private void walk(Node node, String[] segments, Pattern[] patterns, int depth, List<String> ids,
+      int limit) {
+    if (ids.size() >= limit) {
+      return;
+    }
+    if (depth == segments.length) {
+      if (node.id != null) {
+        ids.add(node.id);
+      }
+      return;
+    }
+    if (patterns[depth] == null) {
+      Node child = node.children.get(segments[depth]);
+      if (child != null) {
+        walk(child, segments, patterns, depth + 1, ids, limit);
+      }
+      return;
+    }
+    for (Map.Entry<String, Node> child : node.children.entrySet()) {
+      if (ANY.equals(segments[depth]) || matches(patterns[depth], child.getKey())) {
+        walk(child.getValue(), segments, patterns, depth + 1, ids, limit);
+      }
+    }
+  }
+
+  private void collect(Node node, Pattern pattern, List<String> ids, int limit) {
+    if (ids.size() >= limit) {
+      return;
+    }
+    if (node.id != null && (pattern == null || matches(pattern, node.id))) {
+      ids.add(node.id);
+    }
+    for (Node child : node.children.values()) {
+      collect(child, pattern, ids, limit);
+    }
+  }
+
+  /**
+   * Compiles every segment of a pattern, null entries are literal segments.
+   *
+   * @return patterns of the segments or null if a segment is not a regular expression by itself
+   */
+  private static Pattern[] compile(String[] segments) {
+    Pattern[] patterns = new Pattern[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      if (segments[i].chars().anyMatch(c -> REGEX_CHARS.indexOf(c) >= 0)) {
+        try {
+          patterns[i] = Pattern.compile(segments[i]);
+        } catch (PatternSyntaxException e) {
+          return null;
+        }
+      }
+    }
+    return patterns;
+  }
+
+  private static Pattern compile(String idPattern) {
+    try {
+      return Pattern.compile(idPattern);
+    } catch (PatternSyntaxException e) {
+      throw new IllegalArgumentException("Invalid idPattern : " + e.getDescription());
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the match exceeds its budget
+   */
+  private static boolean matches(Pattern pattern, String value) {
+    return pattern.matcher(new BudgetedChars(value,
+        (long) MATCH_BUDGET_PER_CHAR * value.length() + MATCH_BUDGET_BASE)).matches();
+  }
+
+  private static String typeKey(String type) {
+    return type.substring(type.lastIndexOf(':') + 1);
+  }
+
+  /**
+   * Characters of a value counting the reads of the regex engine, backtracking reads the same
+   * characters again and again.
+   */
+  private static final class BudgetedChars implements CharSequence {
+    private final String value;
+    private final int offset;
+    private final int length;
+    private final long[] remaining;
+
+    private BudgetedChars(String value, long budget) {
+      this(value, 0, value.length(), new long[] {budget});
+    }
+
+    private BudgetedChars(String value, int offset, int length, long[] remaining) {
+      this.value = value;
+      this.offset = offset;
+      this.length = length;
+      this.remaining = remaining;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (--remaining[0] < 0) {
+        throw new IllegalArgumentException("Invalid idPattern : too expensive to match");
+      }
+      return value.charAt(offset + index);
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new BudgetedChars(value, offset + start, end - start, remaining);
+    }
+
+    @Override
+    public String toString() {
+      return value.substring(offset, offset + length);
+    }
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new TreeMap<>();
+    private String id;
+
+    private Node find(String[] segments) {
+      Node node = this;
+      for (String segment : segments) {
+        node = node.children.get(segment);
+        if (node == null) {
+          return null;
+        }
+      }
+      return node;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CatalogueIdTrie [version=" + version + ", size=" + size + "]";
+  }
+}
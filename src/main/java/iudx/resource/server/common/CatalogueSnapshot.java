@@ -0,0 +1,242 @@
+package iudx.resource.server.common;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Immutable, versioned view of the catalogue items served by this resource server.
+ * <p>
+ * A snapshot holds the access policy and domain types of every resource group, the group of every
+ * resource and the applicable filters (iudxResourceAPIs) of groups and resources. A new snapshot is
+ * built by {@link CatalogueSync} whenever a sync cycle observes a change; readers always see a
+ * consistent version without locking.
+ * </p>
+ */
+public final class CatalogueSnapshot {
+
+  public static final CatalogueSnapshot EMPTY = new CatalogueSnapshot(0L, Instant.EPOCH,
+      Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+      Collections.emptyMap());
+
+  private static final String RESOURCE_GROUP_TYPE = "iudx:ResourceGroup";
+
+  private final long version;
+  private final Instant syncedAt;
+  // resource group id -> accessPolicy
+  private final Map<String, String> groupPolicies;
+  // resource id -> resource group id
+  private final Map<String, String> resourceGroups;
+  // resource or group id -> iudxResourceAPIs
+  private final Map<String, List<String>> resourceApis;
+  // resource group id -> domain types (ex : iudx:FloodSensor)
+  private final Map<String, List<String>> groupTypes;
+
+  private CatalogueSnapshot(long version, Instant syncedAt, Map<String, String> groupPolicies,
+      Map<String, String> resourceGroups, Map<String, List<String>> resourceApis,
+      Map<String, List<String>> groupTypes) {
+    this.version = version;
+    this.syncedAt = syncedAt;
+    this.groupPolicies = groupPolicies;
+    this.resourceGroups = resourceGroups;
+    this.resourceApis = resourceApis;
+    this.groupTypes = groupTypes;
+  }
+
+  public long version() {
+    return version;
+  }
+
+  public Instant syncedAt() {
+    return syncedAt;
+  }
+
+  public boolean isEmpty() {
+    return groupPolicies.isEmpty() && resourceGroups.isEmpty();
+  }
+
+  public boolean containsGroup(String groupId) {
+    return groupPolicies.containsKey(groupId);
+  }
+
+  public boolean containsResource(String id) {
+    return resourceGroups.containsKey(id);
+  }
+
+  public Map<String, String> groupPolicies() {
+    return groupPolicies;
+  }
+
+  public Map<String, String> resourceGroups() {
+    return resourceGroups;
+  }
+
+  /**
+   * @param groupId resource group id
+   * @return domain types of the group, empty if it has none
+   */
+  public List<String> groupTypes(String groupId) {
+    return groupTypes.getOrDefault(groupId, Collections.emptyList());
+  }
+
+  /**
+   * Access policy of an item, for a resource the policy of its group is returned.
+   *
+   * @param id resource id or resource group id
+   * @return accessPolicy (OPEN/SECURE..) or null if item is not present in snapshot
+   */
+  public String accessPolicy(String id) {
+    String groupId = resourceGroups.get(id);
+    return groupPolicies.get(groupId != null ? groupId : id);
+  }
+
+  /**
+   * Applicable filters of a resource, falls back to the filters of its group.
+   *
+   * @param id resource id
+   * @return list of iudxResourceAPIs or null if not present in snapshot
+   */
+  public List<String> applicableFilters(String id) {
+    List<String> filters = resourceApis.get(id);
+    if (filters == null) {
+      String groupId = resourceGroups.get(id);
+      if (groupId == null && id.lastIndexOf("/") > 0) {
+        groupId = id.substring(0, id.lastIndexOf("/"));
+      }
+      filters = groupId == null ? null : resourceApis.get(groupId);
+    }
+    return filters;
+  }
+
+  Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * Copy-on-write builder used while applying a sync cycle on top of the previous snapshot.
+   */
+  static final class Builder {
+
+    private final CatalogueSnapshot previous;
+    private final Map<String, String> groupPolicies;
+    private final Map<String, String> resourceGroups;
+    private final Map<String, List<String>> resourceApis;
+    private final Map<String, List<String>> groupTypes;
+
+    private Builder(CatalogueSnapshot previous) {
+      this.previous = previous;
+      this.groupPolicies = new HashMap<>(previous.groupPolicies);
+      this.resourceGroups = new HashMap<>(previous.resourceGroups);
+      this.resourceApis = new HashMap<>(previous.resourceApis);
+      this.groupTypes = new HashMap<>(previous.groupTypes);
+    }
+
+    Builder putGroup(JsonObject item) {
+      String id = item.getString("id");
+      groupPolicies.put(id, item.getString("accessPolicy", "SECURE"));
+      putApis(id, item.getJsonArray("iudxResourceAPIs"));
+      putTypes(id, item.getJsonArray("type"));
+      return this;
+    }
+
+    Builder putResource(JsonObject item) {
+      String id = item.getString("id");
+      String groupId = item.getString("resourceGroup", id.substring(0, id.lastIndexOf("/")));
+      resourceGroups.put(id, groupId);
+      putApis(id, item.getJsonArray("iudxResourceAPIs"));
+      return this;
+    }
+
+    /**
+     * Drops all groups and their resources so that a complete listing can replace them.
+     */
+    Builder clearGroups() {
+      groupPolicies.keySet().forEach(resourceApis::remove);
+      groupPolicies.clear();
+      groupTypes.clear();
+      return this;
+    }
+
+    /**
+     * Drops resources of the given groups so that a complete listing of them can replace them.
+     */
+    Builder clearResourcesOf(Collection<String> groupIds) {
+      resourceGroups.entrySet().removeIf(entry -> {
+        if (groupIds.contains(entry.getValue())) {
+          resourceApis.remove(entry.getKey());
+          return true;
+        }
+        return false;
+      });
+      return this;
+    }
+
+    /**
+     * Drops resources whose group is no longer listed.
+     */
+    Builder retainResourcesOfKnownGroups() {
+      resourceGroups.entrySet().removeIf(entry -> {
+        if (!groupPolicies.containsKey(entry.getValue())) {
+          resourceApis.remove(entry.getKey());
+          return true;
+        }
+        return false;
+      });
+      return this;
+    }
+
+    Set<String> groupIds() {
+      return new TreeSet<>(groupPolicies.keySet());
+    }
+
+    /**
+     * Builds a new snapshot, the version is only bumped when the content changed.
+     */
+    CatalogueSnapshot build(Instant syncedAt) {
+      if (groupPolicies.equals(previous.groupPolicies)
+          && resourceGroups.equals(previous.resourceGroups)
+          && resourceApis.equals(previous.resourceApis)
+          && groupTypes.equals(previous.groupTypes)) {
+        return new CatalogueSnapshot(previous.version, syncedAt, previous.groupPolicies,
+            previous.resourceGroups, previous.resourceApis, previous.groupTypes);
+      }
+      return new CatalogueSnapshot(previous.version + 1, syncedAt,
+          Collections.unmodifiableMap(groupPolicies), Collections.unmodifiableMap(resourceGroups),
+          Collections.unmodifiableMap(resourceApis), Collections.unmodifiableMap(groupTypes));
+    }
+
+    private void putTypes(String id, JsonArray types) {
+      List<String> domainTypes = new ArrayList<>();
+      if (types != null) {
+        types.forEach(type -> {
+          if (!RESOURCE_GROUP_TYPE.equals(type)) {
+            domainTypes.add(type.toString());
+          }
+        });
+      }
+      if (domainTypes.isEmpty()) {
+        groupTypes.remove(id);
+      } else {
+        groupTypes.put(id, Collections.unmodifiableList(domainTypes));
+      }
+    }
+
+    private void putApis(String id, JsonArray apis) {
+      if (apis == null) {
+        resourceApis.remove(id);
+      } else {
+        List<String> filters = new ArrayList<>();
+        apis.forEach(api -> filters.add(api.toString()));
+        resourceApis.put(id, Collections.unmodifiableList(filters));
+      }
+    }
+  }
+}
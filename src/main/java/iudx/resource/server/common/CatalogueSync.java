@@ -0,0 +1,325 @@
+package iudx.resource.server.common;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+
+/**
+ * Incremental catalogue synchronisation shared by all verticles of a JVM.
+ * <p>
+ * Instead of a daily full crawl per cache (and one catalogue call per resource group), a single
+ * sync runs every {@code catalogueSyncInterval} seconds and maintains a versioned
+ * {@link CatalogueSnapshot}. Every listing is requested with the validators (ETag/Last-Modified)
+ * of its previous response so unchanged listings come back as 304 and are not re-applied,
+ * listings are paged with offset/limit and resources of all groups are fetched with one
+ * <i>resourceGroup</i> query per chunk of groups.
+ * </p>
+ */
+public final class CatalogueSync implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(CatalogueSync.class);
+
+  private static final String SHARED_MAP = "iudx.rs.catalogue";
+  private static final String SHARED_KEY = "catalogueSync";
+  private static final String CAT_SEARCH_PATH = "/iudx/cat/v1/search";
+  private static final String ITEM_FILTER = "[id,type,accessPolicy,resourceGroup,iudxResourceAPIs]";
+  private static final long DEFAULT_SYNC_INTERVAL = 300;
+  private static final long DEFAULT_REQUEST_TIMEOUT = 30;
+  private static final long DEFAULT_READY_TIMEOUT = 10;
+  private static final int DEFAULT_PAGE_SIZE = 1000;
+  private static final int GROUP_CHUNK_SIZE = 50;
+
+  private final Vertx vertx;
+  private final String catHost;
+  private final int catPort;
+  private final String resourceServerId;
+  private final long syncInterval;
+  private final long requestTimeout;
+  private final long readyTimeout;
+  private final int pageSize;
+
+  private final AtomicReference<CatalogueSnapshot> snapshot =
+      new AtomicReference<>(CatalogueSnapshot.EMPTY);
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private final Promise<Void> ready = Promise.promise();
+  private final List<Handler<CatalogueSnapshot>> listeners = new CopyOnWriteArrayList<>();
+  // listing key -> ETag/Last-Modified of its last complete response
+  private final Map<String, String> etags = new ConcurrentHashMap<>();
+  private final Map<String, String> lastModified = new ConcurrentHashMap<>();
+  private WebClient catWebClient;
+  private Future<CatalogueSnapshot> inflight;
+
+  private CatalogueSync(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    this.catHost = config.getString("catServerHost");
+    this.catPort = Integer.parseInt(config.getString("catServerPort"));
+    this.resourceServerId = config.getString("resourceServerId");
+    this.syncInterval = config.getLong("catalogueSyncInterval", DEFAULT_SYNC_INTERVAL);
+    this.requestTimeout = config.getLong("catalogueRequestTimeout", DEFAULT_REQUEST_TIMEOUT);
+    this.readyTimeout = config.getLong("catalogueReadyTimeout", DEFAULT_READY_TIMEOUT);
+    this.pageSize = config.getInteger("catalogueSyncPageSize", DEFAULT_PAGE_SIZE);
+  }
+
+  /**
+   * Returns the catalogue sync of this JVM, creating and starting it on first use.
+   *
+   * @param vertx vertx instance
+   * @param config module config containing catServerHost, catServerPort and resourceServerId
+   * @return shared CatalogueSync
+   */
+  public static CatalogueSync getOrCreate(Vertx vertx, JsonObject config) {
+    LocalMap<String, CatalogueSync> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    CatalogueSync sync = map.get(SHARED_KEY);
+    if (sync == null) {
+      CatalogueSync created = new CatalogueSync(vertx, config);
+      sync = map.putIfAbsent(SHARED_KEY, created);
+      if (sync == null) {
+        sync = created;
+      }
+    }
+    sync.start();
+    return sync;
+  }
+
+  private void start() {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    // a catalogue accepting connections but never answering must not stall the first sync.
+    WebClientOptions options = new WebClientOptions().setTrustAll(true).setVerifyHost(false)
+        .setSsl(true).setConnectTimeout((int) TimeUnit.SECONDS.toMillis(requestTimeout))
+        .setIdleTimeout((int) requestTimeout);
+    catWebClient = WebClient.create(vertx, options);
+    sync().onComplete(handler -> ready.tryComplete());
+    vertx.setPeriodic(TimeUnit.SECONDS.toMillis(syncInterval), handler -> sync());
+  }
+
+  public CatalogueSnapshot snapshot() {
+    return snapshot.get();
+  }
+
+  /**
+   * @return true once the first sync cycle has finished (successfully or not)
+   */
+  public boolean isReady() {
+    return ready.future().isComplete();
+  }
+
+  /**
+   * A future completed once the first sync cycle has finished, lookups arriving during cold start
+   * wait on it instead of calling the catalogue for every id.
+   */
+  public Future<Void> ready() {
+    return ready.future();
+  }
+
+  /**
+   * A future completed once the first sync cycle has finished or {@code catalogueReadyTimeout}
+   * seconds have passed, whichever comes first. Callers check {@link #isReady()} afterwards and
+   * fall back to on demand catalogue calls when the first sync is still running.
+   */
+  public Future<Void> awaitReady() {
+    if (isReady()) {
+      return Future.succeededFuture();
+    }
+    Promise<Void> promise = Promise.promise();
+    long timer = vertx.setTimer(TimeUnit.SECONDS.toMillis(readyTimeout), handler -> {
+      LOGGER.warn("catalogue not synced after " + readyTimeout + "s, using on demand lookups");
+      promise.tryComplete();
+    });
+    ready.future().onComplete(handler -> {
+      vertx.cancelTimer(timer);
+      promise.tryComplete();
+    });
+    return promise.future();
+  }
+
+  /**
+   * Registers a handler called with every new snapshot version.
+   */
+  public void onUpdate(Handler<CatalogueSnapshot> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Runs one sync cycle, concurrent callers share the cycle in progress.
+   *
+   * @return future of the snapshot after the cycle
+   */
+  public synchronized Future<CatalogueSnapshot> sync() {
+    if (inflight != null) {
+      return inflight;
+    }
+    long start = System.currentTimeMillis();
+    // validators of the listings of this cycle, kept only once its snapshot is swapped in.
+    Map<String, Validators> validators = new ConcurrentHashMap<>();
+    inflight = runSync(validators).onComplete(handler -> {
+      synchronized (this) {
+        inflight = null;
+      }
+      if (handler.succeeded()) {
+        CatalogueSnapshot previous = snapshot.getAndSet(handler.result());
+        validators.forEach((key, validator) -> {
+          remember(etags, key, validator.etag);
+          remember(lastModified, key, validator.lastModified);
+        });
+        LOGGER.debug("Info: catalogue sync completed in " + (System.currentTimeMillis() - start)
+            + "ms, version : " + handler.result().version());
+        if (previous.version() != handler.result().version()) {
+          listeners.forEach(listener -> listener.handle(handler.result()));
+        }
+      } else {
+        LOGGER.error("catalogue sync failed : " + handler.cause().getMessage());
+      }
+    });
+    return inflight;
+  }
+
+  private Future<CatalogueSnapshot> runSync(Map<String, Validators> validators) {
+    CatalogueSnapshot.Builder builder = snapshot.get().toBuilder();
+    return fetch(groupProperty(), groupValue(), validators).compose(groups -> {
+      if (groups != null) {
+        builder.clearGroups();
+        groups.forEach(json -> {
+          JsonObject item = (JsonObject) json;
+          if (item.getString("id", "").split("/").length == 4) {
+            builder.putGroup(item);
+          }
+        });
+        builder.retainResourcesOfKnownGroups();
+      }
+      List<String> groupIds = new ArrayList<>(builder.groupIds());
+      @SuppressWarnings("rawtypes")
+      List<Future> chunks = new ArrayList<>();
+      for (int i = 0; i < groupIds.size(); i += GROUP_CHUNK_SIZE) {
+        List<String> chunk = groupIds.subList(i, Math.min(i + GROUP_CHUNK_SIZE, groupIds.size()));
+        chunks.add(fetch("[resourceGroup]", "[[" + String.join(",", chunk) + "]]", validators)
+            .onSuccess(resources -> {
+              if (resources != null) {
+                builder.clearResourcesOf(chunk);
+                resources.forEach(json -> builder.putResource((JsonObject) json));
+              }
+            }));
+      }
+      return CompositeFuture.all(chunks).map(composite -> builder.build(Instant.now()));
+    });
+  }
+
+  private String groupProperty() {
+    return isBlank(resourceServerId) ? "[iudxResourceAPIs]" : "[resourceServer]";
+  }
+
+  private String groupValue() {
+    return isBlank(resourceServerId) ? "[[TEMPORAL,ATTR,SPATIAL]]" : "[[" + resourceServerId + "]]";
+  }
+
+  /**
+   * Fetches a complete (paged) listing.
+   *
+   * @param validators validators of the complete listings of the cycle, by listing
+   * @return future of all results, or of null when the listing is not modified since last sync
+   */
+  private Future<JsonArray> fetch(String property, String value,
+      Map<String, Validators> validators) {
+    Promise<JsonArray> promise = Promise.promise();
+    fetchPage(property + "=" + value, property, value, 0, new JsonArray(), null, validators,
+        promise);
+    return promise.future();
+  }
+
+  private void fetchPage(String key, String property, String value, int offset,
+      JsonArray results, HttpResponse<Buffer> firstPage, Map<String, Validators> validators,
+      Promise<JsonArray> promise) {
+    HttpRequest<Buffer> request = catWebClient.get(catPort, catHost, CAT_SEARCH_PATH)
+        .addQueryParam("property", property)
+        .addQueryParam("value", value)
+        .addQueryParam("filter", ITEM_FILTER)
+        .addQueryParam("offset", String.valueOf(offset))
+        .addQueryParam("limit", String.valueOf(pageSize))
+        .timeout(TimeUnit.SECONDS.toMillis(requestTimeout));
+    if (offset == 0) {
+      if (etags.containsKey(key)) {
+        request.putHeader(HttpHeaders.IF_NONE_MATCH.toString(), etags.get(key));
+      }
+      if (lastModified.containsKey(key)) {
+        request.putHeader(HttpHeaders.IF_MODIFIED_SINCE.toString(), lastModified.get(key));
+      }
+    }
+    request.send(handler -> {
+      if (handler.failed()) {
+        promise.fail(handler.cause());
+        return;
+      }
+      HttpResponse<Buffer> response = handler.result();
+      if (response.statusCode() == 304) {
+        promise.complete(null);
+        return;
+      }
+      if (response.statusCode() != 200) {
+        promise.fail("catalogue listing " + key + " failed with status " + response.statusCode());
+        return;
+      }
+      JsonObject body = response.bodyAsJsonObject();
+      JsonArray page = body.getJsonArray("results", new JsonArray());
+      results.addAll(page);
+      HttpResponse<Buffer> first = offset == 0 ? response : firstPage;
+      if (!page.isEmpty() && results.size() < body.getInteger("totalHits", results.size())) {
+        fetchPage(key, property, value, offset + page.size(), results, first, validators,
+            promise);
+        return;
+      }
+      // validators of a complete listing, remembered if the whole cycle succeeds.
+      validators.put(key, new Validators(first.getHeader(HttpHeaders.ETAG.toString()),
+          first.getHeader(HttpHeaders.LAST_MODIFIED.toString())));
+      promise.complete(results);
+    });
+  }
+
+  private void remember(Map<String, String> validators, String key, String validator) {
+    if (validator == null) {
+      validators.remove(key);
+    } else {
+      validators.put(key, validator);
+    }
+  }
+
+  private boolean isBlank(String value) {
+    return value == null || value.isBlank();
+  }
+
+  /**
+   * ETag and Last-Modified of a listing, null when the catalogue sent none.
+   */
+  private static final class Validators {
+    private final String etag;
+    private final String lastModified;
+
+    private Validators(String etag, String lastModified) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package iudx.resource.server.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+/**
+ * Requests in flight per backend of this JVM.
+ * <p>
+ * A backend is a service address (calls waiting for a reply, see {@link LocalServices}) or a
+ * client of an external system (<i>elasticsearch</i>, <i>redis</i>). Every call started with
+ * {@link #begin(String)} is counted until the returned callback is run, the counts are read by the
+ * overload controller of the API server and published as <i>iudx.rs.inflight</i> gauges (tag
+ * backend) when metrics are enabled.
+ * </p>
+ */
+public final class InFlight {
+
+  public static final String METRIC_NAME = "iudx.rs.inflight";
+  public static final String ELASTICSEARCH = "elasticsearch";
+  public static final String REDIS = "redis";
+
+  private static final Map<String, AtomicInteger> COUNTS = new ConcurrentHashMap<>();
+
+  private InFlight() {}
+
+  /**
+   * Counts a call to a backend.
+   *
+   * @param backend service address or backend name
+   * @return callback to run once the call completes, running it more than once has no effect
+   */
+  public static Runnable begin(String backend) {
+    AtomicInteger count = COUNTS.computeIfAbsent(backend, InFlight::counter);
+    count.incrementAndGet();
+    AtomicBoolean done = new AtomicBoolean();
+    return () -> {
+      if (done.compareAndSet(false, true)) {
+        count.decrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * @return calls in flight to a backend
+   */
+  public static int get(String backend) {
+    AtomicInteger count = COUNTS.get(backend);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * @return calls in flight per backend, sorted by backend
+   */
+  public static Map<String, Integer> snapshot() {
+    Map<String, Integer> snapshot = new TreeMap<>();
+    COUNTS.forEach((backend, count) -> snapshot.put(backend, count.get()));
+    return snapshot;
+  }
+
+  private static AtomicInteger counter(String backend) {
+    AtomicInteger count = new AtomicInteger();
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry != null) {
+      Gauge.builder(METRIC_NAME, count, AtomicInteger::get).tag("backend", backend)
+          .register(registry);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,327 @@
+package iudx.resource.server.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.micrometer.backends.BackendRegistries;
+import iudx.resource.server.common.tracing.Tracer;
+
+/**
+ * Local-first invocation of event bus services.
+ * <p>
+ * Service verticles register their implementation against the service address, a proxy created
+ * with {@link #createProxy(Vertx, Class, String, Object)} invokes a registered implementation of
+ * the same JVM directly on the context of the verticle that registered it, and falls back to the
+ * clustered event bus proxy only when no implementation is deployed in-process. Local calls skip
+ * the encoding/decoding of the json, json arguments are copied as the local event bus codec would
+ * and results are handed over as is. As on the event bus, the caller gets a failure when the
+ * service throws and a timeout failure when it does not reply within the send timeout of the
+ * {@link DeliveryOptions}.
+ * </p>
+ * <p>
+ * Number of calls taken on each path is available from {@link #stats(Vertx)} and as
+ * <i>iudx.rs.service.calls</i> counters (tags address, path) when metrics are enabled. Calls
+ * waiting for their reply are counted per address in {@link InFlight}.
+ * </p>
+ */
+public final class LocalServices implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(LocalServices.class);
+
+  private static final String SHARED_MAP = "iudx.rs.services";
+  private static final String SHARED_KEY = "localServices";
+  private static final String METRIC_NAME = "iudx.rs.service.calls";
+
+  private final Map<String, List<Registration>> registrations = new ConcurrentHashMap<>();
+  private final Map<String, CallCounts> callCounts = new ConcurrentHashMap<>();
+
+  private LocalServices() {}
+
+  private static LocalServices get(Vertx vertx) {
+    Map<String, LocalServices> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    LocalServices services = map.get(SHARED_KEY);
+    if (services == null) {
+      LocalServices created = new LocalServices();
+      services = map.putIfAbsent(SHARED_KEY, created);
+      if (services == null) {
+        services = created;
+      }
+    }
+    return services;
+  }
+
+  /**
+   * Registers a service implementation for local invocation, must be called from the start of the
+   * verticle which binds the implementation on the event bus.
+   *
+   * @param vertx vertx instance
+   * @param address service address
+   * @param service service implementation
+   */
+  public static <T> void register(Vertx vertx, String address, T service) {
+    get(vertx).registrations.computeIfAbsent(address, key -> new CopyOnWriteArrayList<>())
+        .add(new Registration(service, vertx.getOrCreateContext()));
+    LOGGER.debug("Info: local service registered for address : " + address);
+  }
+
+  /**
+   * Removes a service implementation registered with {@link #register(Vertx, String, Object)}.
+   */
+  public static <T> void unregister(Vertx vertx, String address, T service) {
+    List<Registration> services = get(vertx).registrations.get(address);
+    if (services != null) {
+      services.removeIf(registration -> registration.service == service);
+    }
+  }
+
+  /**
+   * Creates a local-first proxy of a service.
+   *
+   * @param vertx vertx instance
+   * @param type service interface
+   * @param address service address
+   * @param remote event bus proxy used when the service is not deployed in this JVM
+   * @return proxy implementing the service interface
+   */
+  public static <T> T createProxy(Vertx vertx, Class<T> type, String address, T remote) {
+    return createProxy(vertx, type, address, remote, new DeliveryOptions());
+  }
+
+  /**
+   * Creates a local-first proxy of a service.
+   *
+   * @param vertx vertx instance
+   * @param type service interface
+   * @param address service address
+   * @param remote event bus proxy used when the service is not deployed in this JVM
+   * @param options delivery options of the remote proxy, local calls use its send timeout
+   * @return proxy implementing the service interface
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T createProxy(Vertx vertx, Class<T> type, String address, T remote,
+      DeliveryOptions options) {
+    LocalServices services = get(vertx);
+    CallCounts counts = services.callCounts.computeIfAbsent(address, CallCounts::new);
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        new LocalFirstHandler(vertx, services, address, remote, counts,
+            options.getSendTimeout()));
+  }
+
+  /**
+   * @return number of local and remote calls per service address
+   */
+  public static JsonObject stats(Vertx vertx) {
+    JsonObject stats = new JsonObject();
+    get(vertx).callCounts.forEach((address, counts) -> stats.put(address, new JsonObject()
+        .put("local", counts.local.sum()).put("remote", counts.remote.sum())));
+    return stats;
+  }
+
+  private static final class Registration {
+    private final Object service;
+    private final Context context;
+
+    private Registration(Object service, Context context) {
+      this.service = service;
+      this.context = context;
+    }
+  }
+
+  private static final class CallCounts {
+    private final LongAdder local = new LongAdder();
+    private final LongAdder remote = new LongAdder();
+
+    private CallCounts(String address) {
+      MeterRegistry registry = BackendRegistries.getDefaultNow();
+      if (registry != null) {
+        FunctionCounter.builder(METRIC_NAME, local, LongAdder::doubleValue)
+            .tag("address", address).tag("path", "local").register(registry);
+        FunctionCounter.builder(METRIC_NAME, remote, LongAdder::doubleValue)
+            .tag("address", address).tag("path", "remote").register(registry);
+      }
+    }
+  }
+
+  private static final class LocalFirstHandler implements InvocationHandler {
+
+    private final Vertx vertx;
+    private final LocalServices services;
+    private final String address;
+    private final Object remote;
+    private final CallCounts counts;
+    private final long timeout;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private LocalFirstHandler(Vertx vertx, LocalServices services, String address, Object remote,
+        CallCounts counts, long timeout) {
+      this.vertx = vertx;
+      this.services = services;
+      this.address = address;
+      this.remote = remote;
+      this.counts = counts;
+      this.timeout = timeout;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        return method.invoke(this, args);
+      }
+      Runnable replied = InFlight.begin(address);
+      Object[] trackedArgs = onReply(args, replied);
+      List<Registration> locals = services.registrations.get(address);
+      if (locals == null || locals.isEmpty()) {
+        counts.remote.increment();
+        try {
+          method.invoke(remote, trackedArgs);
+        } catch (InvocationTargetException e) {
+          replied.run();
+          throw e.getCause();
+        }
+        return fluentResult(proxy, method);
+      }
+      counts.local.increment();
+      Registration local = locals.get(Math.floorMod(next.getAndIncrement(), locals.size()));
+      Object[] localArgs = onCallerContext(copyJson(trackedArgs));
+      Handler<AsyncResult<Object>> reply = onceWithTimeout(localArgs);
+      // no event bus hop to carry the trace, the call runs within the span of the caller.
+      Tracer.propagate(local.context).runOnContext(v -> {
+        try {
+          method.invoke(local.service, localArgs);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+          Throwable cause = e.getCause() != null ? e.getCause() : e;
+          LOGGER.error("local invocation of " + address + "." + method.getName() + " failed",
+              cause);
+          if (reply == null) {
+            replied.run();
+          } else {
+            reply.handle(Future.failedFuture(cause));
+          }
+        }
+      });
+      return fluentResult(proxy, method);
+    }
+
+    /**
+     * Copies json arguments, the service may modify its arguments and runs on another context.
+     */
+    private Object[] copyJson(Object[] args) {
+      if (args == null) {
+        return null;
+      }
+      Object[] copies = args.clone();
+      for (int i = 0; i < copies.length; i++) {
+        if (copies[i] instanceof JsonObject) {
+          copies[i] = ((JsonObject) copies[i]).copy();
+        } else if (copies[i] instanceof JsonArray) {
+          copies[i] = ((JsonArray) copies[i]).copy();
+        }
+      }
+      return copies;
+    }
+
+    /**
+     * Replaces the trailing result handler by one handling the first result only, failed with a
+     * timeout when the service does not reply within the send timeout.
+     *
+     * @return the replaced handler, null if the method takes no result handler
+     */
+    @SuppressWarnings("unchecked")
+    private Handler<AsyncResult<Object>> onceWithTimeout(Object[] args) {
+      int last = args == null ? -1 : args.length - 1;
+      if (last < 0 || !(args[last] instanceof Handler)) {
+        return null;
+      }
+      Handler<AsyncResult<Object>> handler = (Handler<AsyncResult<Object>>) args[last];
+      AtomicBoolean done = new AtomicBoolean();
+      AtomicLong timer = new AtomicLong(-1);
+      Handler<AsyncResult<Object>> once = result -> {
+        if (done.compareAndSet(false, true)) {
+          vertx.cancelTimer(timer.get());
+          handler.handle(result);
+        }
+      };
+      timer.set(vertx.setTimer(timeout, id -> once.handle(Future.failedFuture(
+          new ReplyException(ReplyFailure.TIMEOUT, "Timed out after waiting " + timeout
+              + "(ms) for a reply. address: " + address)))));
+      args[last] = once;
+      return once;
+    }
+
+    /**
+     * Wraps result handlers so that the call is counted in flight until its reply is received.
+     */
+    @SuppressWarnings("unchecked")
+    private Object[] onReply(Object[] args, Runnable replied) {
+      if (args == null) {
+        replied.run();
+        return null;
+      }
+      Object[] wrapped = args.clone();
+      boolean awaitsReply = false;
+      for (int i = 0; i < wrapped.length; i++) {
+        if (wrapped[i] instanceof Handler) {
+          Handler<AsyncResult<Object>> handler = (Handler<AsyncResult<Object>>) wrapped[i];
+          wrapped[i] = (Handler<AsyncResult<Object>>) result -> {
+            replied.run();
+            handler.handle(result);
+          };
+          awaitsReply = true;
+        }
+      }
+      if (!awaitsReply) {
+        replied.run();
+      }
+      return wrapped;
+    }
+
+    /**
+     * Wraps result handlers so that results are delivered on the context of the caller, the same
+     * as an event bus reply.
+     */
+    @SuppressWarnings("unchecked")
+    private Object[] onCallerContext(Object[] args) {
+      Context caller = Vertx.currentContext();
+      if (args == null || caller == null) {
+        return args;
+      }
+      Object[] wrapped = args.clone();
+      for (int i = 0; i < wrapped.length; i++) {
+        if (wrapped[i] instanceof Handler) {
+          Handler<AsyncResult<Object>> handler = (Handler<AsyncResult<Object>>) wrapped[i];
+          wrapped[i] = (Handler<AsyncResult<Object>>) result -> caller
+              .runOnContext(v -> handler.handle(result));
+        }
+      }
+      return wrapped;
+    }
+
+    private Object fluentResult(Object proxy, Method method) {
+      return method.getReturnType().isInstance(proxy) ? proxy : null;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package iudx.resource.server.common;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Future;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+/**
+ * Latency of the stages of a request.
+ * <p>
+ * Every stage is recorded in the <i>iudx.rs.stage</i> timer (tags stage, endpoint, searchType)
+ * with 50th, 95th and 99th percentiles and a percentile histogram, so the Prometheus endpoint
+ * shows where a slow request spent its time. Stages recorded by the API server are tagged with
+ * the endpoint of the request, stages recorded inside a service (e.g. the Elasticsearch call of
+ * the database service) only know the search type and use {@link #UNTAGGED} for the endpoint.
+ * </p>
+ * <p>
+ * Recording is a no-op when metrics are disabled.
+ * </p>
+ */
+public final class StageTimers {
+
+  public static final String STAGE_TIMER = "iudx.rs.stage";
+  public static final String UNTAGGED = "none";
+
+  private StageTimers() {}
+
+  /**
+   * Records the duration of a stage.
+   *
+   * @param stage stage name
+   * @param endpoint endpoint of the request, null if not known
+   * @param searchType search type of the request, null if not known
+   * @param nanos duration in nanoseconds
+   */
+  public static void record(String stage, String endpoint, String searchType, long nanos) {
+    MeterRegistry registry = BackendRegistries.getDefaultNow();
+    if (registry == null) {
+      return;
+    }
+    Timer.builder(STAGE_TIMER)
+        .tag("stage", stage)
+        .tag("endpoint", endpoint == null ? UNTAGGED : endpoint)
+        .tag("searchType", searchType == null ? UNTAGGED : searchType)
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofMillis(1))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Runs an asynchronous stage and records its duration once it completes, successfully or not.
+   *
+   * @param stage stage name
+   * @param endpoint endpoint of the request, null if not known
+   * @param searchType search type of the request, null if not known
+   * @param task supplier of the asynchronous result of the stage
+   * @return future of the stage result
+   */
+  public static <T> Future<T> time(String stage, String endpoint, String searchType,
+      Supplier<Future<T>> task) {
+    long start = System.nanoTime();
+    return task.get().onComplete(
+        handler -> record(stage, endpoint, searchType, System.nanoTime() - start));
+  }
+}
@@ -0,0 +1,107 @@
+package iudx.resource.server.common.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Queues sampled spans and exports them in batches from a dedicated thread, event loops only
+ * enqueue. Spans are dropped (and counted) when the queue is full, tracing never slows requests
+ * down.
+ */
+final class BatchSpanProcessor {
+
+  private static final Logger LOGGER = LogManager.getLogger(BatchSpanProcessor.class);
+
+  private static final String SCOPE_NAME = "iudx.resource.server";
+
+  private final SpanExporter exporter;
+  private final JsonObject resource;
+  private final BlockingQueue<Span> queue;
+  private final int batchSize;
+  private final long exportIntervalMillis;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread worker;
+  private volatile boolean running = true;
+
+  BatchSpanProcessor(SpanExporter exporter, String serviceName, int maxQueueSize, int batchSize,
+      long exportIntervalMillis) {
+    this.exporter = exporter;
+    this.resource = new JsonObject().put("attributes",
+        new JsonArray().add(Span.attribute("service.name", serviceName)));
+    this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+    this.batchSize = batchSize;
+    this.exportIntervalMillis = exportIntervalMillis;
+    this.worker = new Thread(this::run, "iudx-span-exporter");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  void add(Span span) {
+    if (!queue.offer(span)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Exports queued spans and stops the export thread.
+   */
+  void shutdown() {
+    running = false;
+    worker.interrupt();
+    try {
+      worker.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    exporter.close();
+  }
+
+  private void run() {
+    List<Span> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(exportIntervalMillis);
+        while (batch.size() < batchSize && running) {
+          Span span = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (span == null) {
+            break;
+          }
+          batch.add(span);
+        }
+      } catch (InterruptedException e) {
+        // shutting down, export what is queued.
+      }
+      queue.drainTo(batch, batchSize - batch.size());
+      if (!batch.isEmpty()) {
+        export(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void export(List<Span> batch) {
+    long droppedSpans = dropped.getAndSet(0);
+    if (droppedSpans > 0) {
+      LOGGER.warn("span queue full, dropped " + droppedSpans + " spans");
+    }
+    JsonArray spans = new JsonArray();
+    batch.forEach(span -> spans.add(span.toOtlpJson()));
+    JsonObject request = new JsonObject().put("resourceSpans", new JsonArray()
+        .add(new JsonObject().put("resource", resource).put("scopeSpans", new JsonArray()
+            .add(new JsonObject().put("scope", new JsonObject().put("name", SCOPE_NAME))
+                .put("spans", spans)))));
+    try {
+      exporter.export(request);
+    } catch (Exception e) {
+      LOGGER.warn("could not export " + batch.size() + " spans : " + e.getMessage());
+    }
+  }
+}
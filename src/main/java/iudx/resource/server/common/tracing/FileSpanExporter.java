@@ -0,0 +1,32 @@
+package iudx.resource.server.common.tracing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Appends every batch as one line of OTLP/JSON to a local file, the file can be replayed to a
+ * collector (e.g. the OpenTelemetry collector <i>otlpjsonfile</i> receiver) or searched with jq.
+ */
+public final class FileSpanExporter implements SpanExporter {
+
+  private final Path file;
+
+  public FileSpanExporter(String file) throws IOException {
+    this.file = Paths.get(file);
+    Path parent = this.file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+  }
+
+  @Override
+  public void export(JsonObject request) throws IOException {
+    Files.write(file, (request.encode() + "\n").getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+}
@@ -0,0 +1,42 @@
+package iudx.resource.server.common.tracing;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Sends batches to an OTLP/HTTP collector (e.g. <code>http://collector:4318/v1/traces</code>) with
+ * JSON encoding.
+ * <p>
+ * Uses the JDK http client, requests of the exporter are not traced themselves.
+ * </p>
+ */
+public final class OtlpHttpSpanExporter implements SpanExporter {
+
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  private final URI endpoint;
+  private final HttpClient client;
+
+  public OtlpHttpSpanExporter(String endpoint) {
+    this.endpoint = URI.create(endpoint);
+    this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+  }
+
+  @Override
+  public void export(JsonObject request) throws IOException, InterruptedException {
+    HttpRequest httpRequest = HttpRequest.newBuilder(endpoint).timeout(TIMEOUT)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(request.encode())).build();
+    HttpResponse<String> response =
+        client.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() >= 300) {
+      throw new IOException("collector responded " + response.statusCode() + " : "
+          + response.body());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package iudx.resource.server.common.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A timed operation of a trace, serialized in the OTLP/JSON span format.
+ * <p>
+ * A span is ended once, by the thread completing the operation, attributes must be set before it
+ * is ended.
+ * </p>
+ */
+public final class Span {
+
+  /**
+   * OTLP span kinds, the ordinal is the OTLP enum value.
+   */
+  public enum Kind {
+    UNSPECIFIED, INTERNAL, SERVER, CLIENT, PRODUCER, CONSUMER
+  }
+
+  // epoch time of span starts, System.nanoTime() only measures durations.
+  private static final long EPOCH_OFFSET_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+  private final Tracer tracer;
+  private final String name;
+  private final Kind kind;
+  private final TraceContext context;
+  private final String parentSpanId;
+  private final long startNanos = System.nanoTime();
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+  private final AtomicBoolean ended = new AtomicBoolean();
+  private long endNanos;
+  private String error;
+
+  Span(Tracer tracer, String name, Kind kind, TraceContext context, String parentSpanId) {
+    this.tracer = tracer;
+    this.name = name;
+    this.kind = kind;
+    this.context = context;
+    this.parentSpanId = parentSpanId;
+  }
+
+  public TraceContext context() {
+    return context;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public Span setAttribute(String key, String value) {
+    if (value != null) {
+      attributes.put(key, value);
+    }
+    return this;
+  }
+
+  /**
+   * Ends the span and hands it to the exporter if sampled, later calls are ignored.
+   *
+   * @param failure failure of the operation, null on success
+   */
+  public void end(Throwable failure) {
+    if (!ended.compareAndSet(false, true)) {
+      return;
+    }
+    endNanos = System.nanoTime();
+    if (failure != null) {
+      error = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+    }
+    tracer.onEnd(this);
+  }
+
+  /**
+   * Marks the span failed without ending it (e.g. an error status of a response).
+   */
+  public void setError(String message) {
+    this.error = message;
+  }
+
+  /**
+   * @return duration in nanoseconds, 0 if not ended
+   */
+  public long duration() {
+    return ended.get() ? endNanos - startNanos : 0;
+  }
+
+  JsonObject toOtlpJson() {
+    JsonArray otlpAttributes = new JsonArray();
+    attributes.forEach((key, value) -> otlpAttributes.add(attribute(key, value)));
+    JsonObject json = new JsonObject()
+        .put("traceId", context.traceId())
+        .put("spanId", context.spanId())
+        .put("name", name)
+        .put("kind", kind.ordinal())
+        .put("startTimeUnixNano", String.valueOf(EPOCH_OFFSET_NANOS + startNanos))
+        .put("endTimeUnixNano", String.valueOf(EPOCH_OFFSET_NANOS + endNanos))
+        .put("attributes", otlpAttributes);
+    if (parentSpanId != null) {
+      json.put("parentSpanId", parentSpanId);
+    }
+    // status codes : 0 unset, 2 error
+    json.put("status", error == null ? new JsonObject().put("code", 0)
+        : new JsonObject().put("code", 2).put("message", error));
+    return json;
+  }
+
+  static JsonObject attribute(String key, String value) {
+    return new JsonObject().put("key", key)
+        .put("value", new JsonObject().put("stringValue", value));
+  }
+
+  @Override
+  public String toString() {
+    return name + " " + context;
+  }
+}
@@ -0,0 +1,22 @@
+package iudx.resource.server.common.tracing;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Destination of finished spans.
+ * <p>
+ * Exporters are called from the export thread of the {@link BatchSpanProcessor} and may block.
+ * </p>
+ */
+public interface SpanExporter {
+
+  /**
+   * Exports a batch of spans.
+   *
+   * @param request OTLP/JSON <i>ExportTraceServiceRequest</i> of the batch
+   * @throws Exception if the batch could not be exported, the batch is dropped
+   */
+  void export(JsonObject request) throws Exception;
+
+  default void close() {}
+}
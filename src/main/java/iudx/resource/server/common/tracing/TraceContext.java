@@ -0,0 +1,107 @@
+package iudx.resource.server.common.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * W3C trace context (<i>traceparent</i> header) of a span.
+ * <p>
+ * Format: <code>00-&lt;32 hex trace id&gt;-&lt;16 hex span id&gt;-&lt;2 hex flags&gt;</code>,
+ * only the sampled flag is used.
+ * </p>
+ */
+public final class TraceContext {
+
+  public static final String TRACEPARENT = "traceparent";
+
+  private static final String VERSION = "00";
+  private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+
+  private final String traceId;
+  private final String spanId;
+  private final boolean sampled;
+
+  TraceContext(String traceId, String spanId, boolean sampled) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.sampled = sampled;
+  }
+
+  /**
+   * Context of the first span of a new trace.
+   */
+  static TraceContext root(boolean sampled) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new TraceContext(hex(random.nextLong()) + hex(random.nextLong()),
+        hex(random.nextLong()), sampled);
+  }
+
+  /**
+   * Context of a child span, same trace and sampling decision with a new span id.
+   */
+  TraceContext child() {
+    return new TraceContext(traceId, hex(ThreadLocalRandom.current().nextLong()), sampled);
+  }
+
+  /**
+   * Parses a traceparent header.
+   *
+   * @param traceparent header value, may be null
+   * @return trace context, null if the header is missing or malformed
+   */
+  public static TraceContext parse(String traceparent) {
+    if (traceparent == null || traceparent.length() < 55) {
+      return null;
+    }
+    String[] parts = traceparent.trim().split("-");
+    if (parts.length < 4 || parts[0].length() != 2 || "ff".equals(parts[0])
+        || !isHex(parts[1], 32) || !isHex(parts[2], 16) || !isHex(parts[3], 2)
+        || INVALID_TRACE_ID.equals(parts[1]) || INVALID_SPAN_ID.equals(parts[2])) {
+      return null;
+    }
+    boolean sampled = (Integer.parseInt(parts[3], 16) & 1) == 1;
+    return new TraceContext(parts[1], parts[2], sampled);
+  }
+
+  public String traceId() {
+    return traceId;
+  }
+
+  public String spanId() {
+    return spanId;
+  }
+
+  public boolean sampled() {
+    return sampled;
+  }
+
+  /**
+   * @return traceparent header value
+   */
+  public String toTraceparent() {
+    return VERSION + "-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+  }
+
+  @Override
+  public String toString() {
+    return toTraceparent();
+  }
+
+  private static String hex(long value) {
+    String hex = Long.toHexString(value);
+    return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  private static boolean isHex(String value, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
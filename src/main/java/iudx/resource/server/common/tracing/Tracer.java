@@ -0,0 +1,281 @@
+package iudx.resource.server.common.tracing;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.tracing.SpanKind;
+import io.vertx.core.spi.tracing.TagExtractor;
+import io.vertx.core.spi.tracing.VertxTracer;
+import io.vertx.core.tracing.TracingOptions;
+import io.vertx.core.tracing.TracingPolicy;
+
+/**
+ * W3C trace context propagation and sampled span export for Vert.x.
+ * <p>
+ * Vert.x calls the tracer for HTTP server requests, HTTP client requests (WebClient) and event bus
+ * messages (service proxies): a received request continues the trace of its <i>traceparent</i>
+ * header or starts a new one, the span is kept in the local data of the request context and every
+ * request sent while handling it is a child span whose context is sent in the traceparent header
+ * (HTTP header or event bus message header). Clients not integrated with Vert.x (Elasticsearch,
+ * Redis, RabbitMQ) start child spans with {@link #startSpan(String, Span.Kind)} and send the
+ * context with {@link #inject(Span, BiConsumer)}.
+ * </p>
+ * <p>
+ * A new trace is sampled with probability <i>sampleRatio</i>, the decision travels with the trace
+ * so a trace is either complete or absent. Sampled spans are exported in batches to a local file
+ * or an OTLP/HTTP collector, configured in the top level <i>tracing</i> section of the config:
+ * </p>
+ *
+ * <pre>
+ * "tracing": {
+ *   "enabled": true,
+ *   "serviceName": "iudx-resource-server",
+ *   "sampleRatio": 0.01,
+ *   "exporter": "file",                  // or "otlp"
+ *   "file": "./traces/spans.jsonl",
+ *   "otlpEndpoint": "http://localhost:4318/v1/traces"
+ * }
+ * </pre>
+ */
+public final class Tracer implements VertxTracer<Span, Span> {
+
+  private static final Logger LOGGER = LogManager.getLogger(Tracer.class);
+
+  public static final String ACTIVE_SPAN = "iudx.rs.activeSpan";
+
+  private static final String DEFAULT_FILE = "./traces/spans.jsonl";
+  private static final String DEFAULT_OTLP_ENDPOINT = "http://localhost:4318/v1/traces";
+
+  private static volatile Tracer current;
+
+  private final double sampleRatio;
+  private final BatchSpanProcessor processor;
+
+  private Tracer(JsonObject config, SpanExporter exporter) {
+    this.sampleRatio = config.getDouble("sampleRatio", 0.01);
+    this.processor = new BatchSpanProcessor(exporter,
+        config.getString("serviceName", "iudx-resource-server"),
+        config.getInteger("maxQueueSize", 2048), config.getInteger("batchSize", 512),
+        config.getLong("exportIntervalMillis", 5000L));
+  }
+
+  /**
+   * Tracing options of the Vert.x instance.
+   *
+   * @param config tracing config, may be null
+   * @return tracing options, null when tracing is disabled
+   */
+  public static TracingOptions options(JsonObject config) {
+    if (config == null || !config.getBoolean("enabled", false)) {
+      return null;
+    }
+    return new TracingOptions().setFactory(options -> create(config));
+  }
+
+  static Tracer create(JsonObject config) {
+    SpanExporter exporter;
+    String type = config.getString("exporter", "file");
+    if ("otlp".equals(type)) {
+      String endpoint = config.getString("otlpEndpoint", DEFAULT_OTLP_ENDPOINT);
+      exporter = new OtlpHttpSpanExporter(endpoint);
+      LOGGER.info("Exporting sampled spans to " + endpoint);
+    } else {
+      String file = config.getString("file", DEFAULT_FILE);
+      try {
+        exporter = new FileSpanExporter(file);
+      } catch (IOException e) {
+        throw new IllegalStateException("cannot write spans to " + file, e);
+      }
+      LOGGER.info("Exporting sampled spans to " + file);
+    }
+    return create(config, exporter);
+  }
+
+  static Tracer create(JsonObject config, SpanExporter exporter) {
+    Tracer tracer = new Tracer(config, exporter);
+    current = tracer;
+    return tracer;
+  }
+
+  @Override
+  public <R> Span receiveRequest(Context context, SpanKind kind, TracingPolicy policy, R request,
+      String operation, Iterable<Map.Entry<String, String>> headers,
+      TagExtractor<R> tagExtractor) {
+    if (policy == TracingPolicy.IGNORE || context == null) {
+      return null;
+    }
+    TraceContext parent = null;
+    for (Map.Entry<String, String> header : headers) {
+      if (TraceContext.TRACEPARENT.equalsIgnoreCase(header.getKey())) {
+        parent = TraceContext.parse(header.getValue());
+        break;
+      }
+    }
+    if (parent == null && policy == TracingPolicy.PROPAGATE) {
+      return null;
+    }
+    Map<String, String> tags = tagExtractor.extract(request);
+    Span span = new Span(this, spanName(operation, tags),
+        kind == SpanKind.RPC ? Span.Kind.SERVER : Span.Kind.CONSUMER,
+        parent == null ? TraceContext.root(sample()) : parent.child(),
+        parent == null ? null : parent.spanId());
+    tags.forEach(span::setAttribute);
+    context.putLocal(ACTIVE_SPAN, span);
+    return span;
+  }
+
+  @Override
+  public <R> void sendResponse(Context context, R response, Span span, Throwable failure,
+      TagExtractor<R> tagExtractor) {
+    if (span == null) {
+      return;
+    }
+    if (response != null) {
+      setResponseTags(span, tagExtractor.extract(response));
+    }
+    if (context != null && context.getLocal(ACTIVE_SPAN) == span) {
+      context.removeLocal(ACTIVE_SPAN);
+    }
+    span.end(failure);
+  }
+
+  @Override
+  public <R> Span sendRequest(Context context, SpanKind kind, TracingPolicy policy, R request,
+      String operation, BiConsumer<String, String> headers, TagExtractor<R> tagExtractor) {
+    if (policy == TracingPolicy.IGNORE) {
+      return null;
+    }
+    Span parent = context == null ? null : context.getLocal(ACTIVE_SPAN);
+    if (parent == null && policy != TracingPolicy.ALWAYS) {
+      return null;
+    }
+    Map<String, String> tags = tagExtractor.extract(request);
+    Span span = new Span(this, spanName(operation, tags),
+        kind == SpanKind.RPC ? Span.Kind.CLIENT : Span.Kind.PRODUCER,
+        parent == null ? TraceContext.root(sample()) : parent.context().child(),
+        parent == null ? null : parent.context().spanId());
+    tags.forEach(span::setAttribute);
+    headers.accept(TraceContext.TRACEPARENT, span.context().toTraceparent());
+    return span;
+  }
+
+  @Override
+  public <R> void receiveResponse(Context context, R response, Span span, Throwable failure,
+      TagExtractor<R> tagExtractor) {
+    if (span == null) {
+      return;
+    }
+    if (response != null) {
+      setResponseTags(span, tagExtractor.extract(response));
+    }
+    span.end(failure);
+  }
+
+  @Override
+  public void close() {
+    if (current == this) {
+      current = null;
+    }
+    processor.shutdown();
+  }
+
+  void onEnd(Span span) {
+    if (span.context().sampled()) {
+      processor.add(span);
+    }
+  }
+
+  private boolean sample() {
+    return sampleRatio >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRatio;
+  }
+
+  /**
+   * Span of the request handled on the current context, null if none or tracing is disabled.
+   */
+  public static Span activeSpan() {
+    Context context = Vertx.currentContext();
+    return context == null ? null : context.getLocal(ACTIVE_SPAN);
+  }
+
+  /**
+   * Starts a child span of the active span for a call made without Vert.x clients, the span must
+   * be ended by the caller.
+   *
+   * @param name span name
+   * @param kind span kind
+   * @return span, null if there is no active span
+   */
+  public static Span startSpan(String name, Span.Kind kind) {
+    Tracer tracer = current;
+    Span parent = tracer == null ? null : activeSpan();
+    if (parent == null) {
+      return null;
+    }
+    return new Span(tracer, name, kind, parent.context().child(), parent.context().spanId());
+  }
+
+  /**
+   * Adds the traceparent header of a span to an outgoing request, no-op for a null span.
+   */
+  public static void inject(Span span, BiConsumer<String, String> headers) {
+    if (span != null) {
+      headers.accept(TraceContext.TRACEPARENT, span.context().toTraceparent());
+    }
+  }
+
+  /**
+   * Ends a span, no-op for a null span.
+   */
+  public static void end(Span span, Throwable failure) {
+    if (span != null) {
+      span.end(failure);
+    }
+  }
+
+  /**
+   * Context to run a call on the target context within the active span of the caller, used for
+   * in-process calls that do not go through the event bus.
+   *
+   * @param target context the call is run on
+   * @return a duplicate of the target context carrying the active span, the target itself if
+   *         there is no active span
+   */
+  public static Context propagate(Context target) {
+    Span span = activeSpan();
+    if (span == null || !(target instanceof ContextInternal)) {
+      return target;
+    }
+    Context duplicate = ((ContextInternal) target).duplicate();
+    duplicate.putLocal(ACTIVE_SPAN, span);
+    return duplicate;
+  }
+
+  private static String spanName(String operation, Map<String, String> tags) {
+    String url = tags.get("http.url");
+    if (url == null) {
+      return operation;
+    }
+    try {
+      String path = URI.create(url).getPath();
+      return path == null || path.isEmpty() ? operation : operation + " " + path;
+    } catch (IllegalArgumentException e) {
+      return operation;
+    }
+  }
+
+  private static void setResponseTags(Span span, Map<String, String> tags) {
+    tags.forEach(span::setAttribute);
+    String status = tags.get("http.status_code");
+    if (status != null && status.startsWith("5")) {
+      span.setError("HTTP " + status);
+    }
+  }
+}
@@ -0,0 +1 @@
+package iudx.resource.server.common.tracing;
\ No newline at end of file
@@ -15,6 +15,9 @@ public class Constants {
   public static final String GEO_RELATION_KEY = "relation";
   public static final String TYPE_KEY = "type";
   public static final String GEO_SHAPE_KEY = "geo_shape";
+  public static final String GEO_BOUNDING_BOX_KEY = "geo_bounding_box";
+  public static final String TOP_LEFT = "top_left";
+  public static final String BOTTOM_RIGHT = "bottom_right";
   public static final String GEO_RADIUS = "radius";
   public static final String SHAPE_KEY = "shape";
   public static final String QUERY_KEY = "query";
@@ -30,13 +33,26 @@ public class Constants {
   public static final String FILTER_PATH = "filter_path";
   public static final String FILTER_PATH_VAL = "took,hits.hits._source";
   public static final String FILTER_PATH_VAL_LATEST = "docs._source";
+  public static final String FILTER_PATH_VAL_LAST_N =
+      "took,hits.hits.inner_hits.lastN.hits.hits._source";
   public static final String SIZE_KEY = "size";
+  public static final String SORT_KEY = "sort";
+  public static final String ASC = "asc";
+  public static final String DESC = "desc";
+  public static final String COLLAPSE_KEY = "collapse";
+  public static final String FIELD_KEY = "field";
+  public static final String INNER_HITS_KEY = "inner_hits";
+  public static final String NAME_KEY = "name";
+  public static final String LAST_N_HITS = "lastN";
   public static final String GREATER_THAN = "gt";
   public static final String LESS_THAN = "lt";
   public static final String GREATER_THAN_EQ = "gte";
   public static final String LESS_THAN_EQ = "lte";
   public static final String MUST_NOT = "must_not";
+  public static final String SHOULD_KEY = "should";
+  public static final String MINIMUM_SHOULD_MATCH = "minimum_should_match";
   public static final String REQUEST_GET = "GET";
+  public static final String REQUEST_POST = "POST";
   public static final String HITS = "hits";
   public static final String SEARCH_KEY = "search";
   public static final String ERROR = "Error";
@@ -158,4 +174,16 @@ public class Constants {
   public static final int DEFAULT_SIZE_VALUE = 5000;
   public static final int DEFAULT_FROM_VALUE = 0;
   public static final String COUNT_MATCH_ALL_QUERY="{\"query\": { \"match_all\": {} }}";
+
+  // index stats
+  public static final String AGGREGATIONS_KEY = "aggregations";
+  public static final String MSEARCH_REQ_PARAM = "/_msearch";
+  public static final String RESPONSES_KEY = "responses";
+  public static final String ERROR_KEY = "error";
+  public static final String INDEX_KEY = "index";
+  public static final String ALIAS_KEY = "alias";
+  public static final String GROUP_SEPARATOR = "__";
+  public static final String DOCS_COUNT = "docs.count";
+  public static final String MIN_KEY = "min";
+  public static final String MAX_KEY = "max";
 }
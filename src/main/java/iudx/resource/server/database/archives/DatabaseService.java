@@ -49,6 +49,18 @@ public interface DatabaseService {
   @Fluent
   DatabaseService countQuery(JsonObject request, Handler<AsyncResult<JsonObject>> handler);
 
+  /**
+   * The explainQuery returns the ElasticSearch query of a request, the indices it targets and an
+   * estimate of its cost without executing it.
+   * 
+   * @param request which is a JsonObject
+   * @param handler which is a Request Handler
+   * @return DatabaseService which is a Service
+   */
+
+  @Fluent
+  DatabaseService explainQuery(JsonObject request, Handler<AsyncResult<JsonObject>> handler);
+
   /**
    * The create implements the count operation with the database.
    * @param client RestClient to perform ES queries.
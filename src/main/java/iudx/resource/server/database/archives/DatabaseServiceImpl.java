@@ -2,15 +2,19 @@ package iudx.resource.server.database.archives;
 
 
 import static iudx.resource.server.database.archives.Constants.*;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import iudx.resource.server.common.StageTimers;
 
 /**
  * The Database Service Implementation.
@@ -27,15 +31,44 @@ import io.vertx.core.json.JsonObject;
 public class DatabaseServiceImpl implements DatabaseService {
 
   private static final Logger LOGGER = LogManager.getLogger(DatabaseServiceImpl.class);
+  private static final String STAGE_COUNT = "es.count";
+  private static final String STAGE_SEARCH = "es.search";
   private final ElasticClient client;
-  private JsonObject query;
   private QueryDecoder queryDecoder = new QueryDecoder();
   private ResponseBuilder responseBuilder;
   private String timeLimit;
+  private final IndexStatsCache indexStats;
+  private final IndexRouter indexRouter;
+  private final DefaultWindow defaultWindow;
+  private SlowQueryLog slowQueryLog;
 
   public DatabaseServiceImpl(ElasticClient client, String timeLimit) {
+    this(client, timeLimit, null, null, null);
+  }
+
+  /**
+   * @param client elastic client
+   * @param timeLimit time limit of the instance, see {@link QueryDecoder#queryDecoder(JsonObject)}
+   * @param indexStats stats of the indices, null to always query Elasticsearch
+   * @param indexRouter router to time partitions, null to query the group indices
+   * @param defaultWindow default window per group, null for the days of the time limit
+   */
+  public DatabaseServiceImpl(ElasticClient client, String timeLimit, IndexStatsCache indexStats,
+      IndexRouter indexRouter, DefaultWindow defaultWindow) {
     this.client = client;
     this.timeLimit = timeLimit;
+    this.indexStats = indexStats;
+    this.indexRouter = indexRouter;
+    this.defaultWindow = defaultWindow;
+  }
+
+  /**
+   * @param slowQueryLog log of the slow queries, null for none
+   * @return this service
+   */
+  public DatabaseServiceImpl setSlowQueryLog(SlowQueryLog slowQueryLog) {
+    this.slowQueryLog = slowQueryLog;
+    return this;
   }
 
   /**
@@ -58,7 +91,7 @@ public class DatabaseServiceImpl implements DatabaseService {
     if (!request.containsKey(ID)) {
       LOGGER.debug("Info: " + ID_NOT_FOUND);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(ID_NOT_FOUND);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
@@ -66,7 +99,7 @@ public class DatabaseServiceImpl implements DatabaseService {
       LOGGER.debug("Info: " + EMPTY_RESOURCE_ID);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
           .setMessage(EMPTY_RESOURCE_ID);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
@@ -74,62 +107,100 @@ public class DatabaseServiceImpl implements DatabaseService {
       LOGGER.debug("Info: " + SEARCHTYPE_NOT_FOUND);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
           .setMessage(SEARCHTYPE_NOT_FOUND);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
-    if (request.getJsonArray(ID).getString(0).split("/").length != 5) {
-      LOGGER.error("Malformed ID: " + request.getJsonArray(ID).getString(0));
+    List<String> indexNames = indices(request.getJsonArray(ID));
+    if (indexNames == null) {
+      LOGGER.error("Malformed ID: " + request.getJsonArray(ID));
       responseBuilder =
           new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(MALFORMED_ID + request.getJsonArray(ID));
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
-    List<String> splitId = new LinkedList<>(Arrays.asList(request.getJsonArray(ID)
-        .getString(0).split("/")));
-    splitId.remove(splitId.size() - 1);
-    final String searchIndex = String.join("__", splitId).concat(SEARCH_REQ_PARAM);
-    // searchIndex = searchIndex.concat(SEARCH_REQ_PARAM);
-    LOGGER.debug("Index name: " + searchIndex);
+    String searchType = request.getString(SEARCH_TYPE);
+    boolean latest = LATEST_SEARCH.equalsIgnoreCase(searchType);
+    QueryPlan plan = QueryPlan.isPlan(request) ? QueryPlan.fromJson(request) : null;
+    Long[] window = timeWindow(plan, indexNames);
+    List<String> routed = latest ? indexNames : route(plan, window, indexNames);
+    IndexStats stats = latest ? null : indexStats(plan, routed);
+    if (routed.isEmpty() || isEmpty(window, stats)) {
+      LOGGER.debug("Info: no data in the time window of the query, stats : " + stats);
+      responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(204).setMessage(EMPTY_RESPONSE);
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
+      return null;
+    }
 
-    query = queryDecoder.queryDecoder(request);
+    // local to the request, the service serves concurrent requests.
+    JsonObject query = decode(request, plan, window, stats);
     if (query.containsKey(ERROR)) {
       LOGGER.error("Fail: Query returned with an error: " + query.getString(ERROR));
       responseBuilder =
           new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(query.getString(ERROR));
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
+    String indices = String.join(",", routed);
+    final String searchIndex = indices.concat(SEARCH_REQ_PARAM);
+    LOGGER.debug("Index name: " + searchIndex);
+
     LOGGER.debug("Info: Query constructed: " + query.toString());
-    if (LATEST_SEARCH.equalsIgnoreCase(request.getString(SEARCH_TYPE))) {
+    if (latest) {
+      long searchStart = System.nanoTime();
       client.searchAsync(LATEST_RESOURCE_INDEX, FILTER_PATH_VAL_LATEST, query.toString(),
           searchRes -> {
+            long searchNanos = recordStage(STAGE_SEARCH, searchType, searchStart);
+            logSlowQuery(SlowQueryLog.LATEST, request, LATEST_RESOURCE_INDEX, query, 0,
+                searchNanos, hits(searchRes), null);
             if (searchRes.succeeded()) {
               LOGGER.debug("Success: Successful DB request");
               handler.handle(Future.succeededFuture(searchRes.result()));
             } else {
               LOGGER.error("Fail: DB Request;" + searchRes.cause().getMessage());
-              handler.handle(Future.failedFuture(searchRes.cause().getMessage()));
+              handler.handle(Future.failedFuture(searchRes.cause()));
             }
           });
+    } else if (query.containsKey(COLLAPSE_KEY)) {
+      // lastN query, the number of entities is known and no count is needed.
+      long searchStart = System.nanoTime();
+      client.searchAsync(searchIndex, FILTER_PATH_VAL_LAST_N, query.toString(), searchRes -> {
+        long searchNanos = recordStage(STAGE_SEARCH, searchType, searchStart);
+        logSlowQuery(SlowQueryLog.SEARCH, request, indices, query, 0, searchNanos,
+            hits(searchRes), hits(searchRes));
+        if (searchRes.succeeded()) {
+          LOGGER.debug("Success: Successful DB request");
+          JsonObject result = searchRes.result();
+          handler.handle(Future.succeededFuture(result.put("totalHits",
+              result.getJsonArray("results", new JsonArray()).size())));
+        } else {
+          LOGGER.error("Fail: DB Request;" + searchRes.cause().getMessage());
+          handler.handle(Future.failedFuture(searchRes.cause()));
+        }
+      });
     } else {
-      String countIndex = String.join("__", splitId);
-      countIndex = countIndex.concat(COUNT_REQ_PARAM);
+      String countIndex = indices.concat(COUNT_REQ_PARAM);
       JsonObject countQuery=query.copy();
       countQuery.remove(SOURCE_FILTER_KEY);
+      long countStart = System.nanoTime();
       client.countAsync(countIndex, countQuery.toString(), countHandler -> {
+        long countNanos = recordStage(STAGE_COUNT, searchType, countStart);
         if (countHandler.succeeded()) {
           query.put(SIZE_KEY, getOrDefault(request, PARAM_SIZE, DEFAULT_SIZE_VALUE));
           query.put(FROM_KEY, getOrDefault(request, PARAM_FROM, DEFAULT_FROM_VALUE));
           JsonObject countJson = countHandler.result();
           LOGGER.debug("count json : " + countJson);
           int count = countJson.getJsonArray("results").getJsonObject(0).getInteger("count");
+          long searchStart = System.nanoTime();
           client.searchAsync(searchIndex, FILTER_PATH_VAL, query.toString(),
               searchRes -> {
+                long searchNanos = recordStage(STAGE_SEARCH, searchType, searchStart);
+                logSlowQuery(SlowQueryLog.SEARCH, request, indices, query, countNanos,
+                    searchNanos, hits(searchRes), count);
                 if (searchRes.succeeded()) {
                   LOGGER.debug("Success: Successful DB request");
                   handler.handle(Future.succeededFuture(searchRes.result()
@@ -138,12 +209,14 @@ public class DatabaseServiceImpl implements DatabaseService {
                       .put("totalHits", count)));
                 } else {
                   LOGGER.error("Fail: DB Request;" + searchRes.cause().getMessage());
-                  handler.handle(Future.failedFuture(searchRes.cause().getMessage()));
+                  handler.handle(Future.failedFuture(searchRes.cause()));
                 }
               });
         } else {
           LOGGER.error("Fail: DB Request;" + countHandler.cause().getMessage());
-          handler.handle(Future.failedFuture(countHandler.cause().getMessage()));
+          logSlowQuery(SlowQueryLog.SEARCH, request, indices, countQuery, countNanos, 0, null,
+              null);
+          handler.handle(Future.failedFuture(countHandler.cause()));
         }
       });
 
@@ -170,7 +243,7 @@ public class DatabaseServiceImpl implements DatabaseService {
     if (!request.containsKey(ID)) {
       LOGGER.debug("Info: " + ID_NOT_FOUND);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(ID_NOT_FOUND);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
@@ -178,7 +251,7 @@ public class DatabaseServiceImpl implements DatabaseService {
       LOGGER.debug("Info: " + EMPTY_RESOURCE_ID);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
           .setMessage(EMPTY_RESOURCE_ID);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
@@ -186,55 +259,228 @@ public class DatabaseServiceImpl implements DatabaseService {
       LOGGER.debug("Info: " + SEARCHTYPE_NOT_FOUND);
       responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
           .setMessage(SEARCHTYPE_NOT_FOUND);
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
-    if (request.getJsonArray(ID).getString(0).split("/").length != 5) {
-      LOGGER.error("Malformed ID: " + request.getJsonArray(ID).getString(0));
+    List<String> indexNames = indices(request.getJsonArray(ID));
+    if (indexNames == null) {
+      LOGGER.error("Malformed ID: " + request.getJsonArray(ID));
       responseBuilder =
           new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(MALFORMED_ID + request.getJsonArray(ID));
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
-    List<String> splitId = new LinkedList<>(Arrays.asList(request.getJsonArray(ID)
-        .getString(0).split("/")));
-    splitId.remove(splitId.size() - 1);
-    String index = String.join("__", splitId);
-    index = index.concat(COUNT_REQ_PARAM);
+    QueryPlan plan = QueryPlan.isPlan(request) ? QueryPlan.fromJson(request) : null;
+    Long[] window = timeWindow(plan, indexNames);
+    List<String> routed = route(plan, window, indexNames);
+    String index = String.join(",", routed).concat(COUNT_REQ_PARAM);
     LOGGER.debug("Index name: " + index);
 
-    query = queryDecoder.queryDecoder(request);
+    IndexStats stats = indexStats(plan, routed);
+    if (routed.isEmpty() || isEmpty(window, stats)) {
+      LOGGER.debug("Info: no data in the time window of the query, stats : " + stats);
+      responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(204).setMessage(EMPTY_RESPONSE);
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
+      return null;
+    }
+
+    JsonObject query = decode(request, plan, window, stats);
     if (query.containsKey(ERROR)) {
       LOGGER.error("Fail: Query returned with an error: " + query.getString(ERROR));
       responseBuilder =
           new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(query.getString(ERROR));
-      handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
       return null;
     }
 
     LOGGER.debug("Info: Query constructed: " + query.toString());
 
+    String searchType = request.getString(SEARCH_TYPE);
+    long countStart = System.nanoTime();
     client.countAsync(index, query.toString(), countRes -> {
+      long countNanos = recordStage(STAGE_COUNT, searchType, countStart);
+      Integer count = countRes.succeeded() ? countRes.result().getJsonArray(RESULTS)
+          .getJsonObject(0).getInteger(COUNT) : null;
+      logSlowQuery(SlowQueryLog.COUNT, request, String.join(",", routed), query, countNanos,
+          0, count, count);
       if (countRes.succeeded()) {
         LOGGER.debug("Success: Successful DB request");
         handler.handle(Future.succeededFuture(countRes.result()));
       } else {
         LOGGER.error("Fail: DB Request;" + countRes.cause().getMessage());
-        handler.handle(Future.failedFuture(countRes.cause().getMessage()));
+        handler.handle(Future.failedFuture(countRes.cause()));
       }
     });
     return this;
   }
 
+  /**
+   * Decodes a query plan as {@link #searchQuery(JsonObject, Handler)} or
+   * {@link #countQuery(JsonObject, Handler)} would, without calling ElasticSearch.
+   * 
+   * @param request query plan received from the ApiServerVerticle
+   * @param handler Handler to return the query, the indices and the cost estimate
+   */
+  @Override
+  public DatabaseService explainQuery(JsonObject request,
+      Handler<AsyncResult<JsonObject>> handler) {
+
+    LOGGER.debug("Info: explainQuery;" + request.toString());
+
+    List<String> indexNames =
+        request.getValue(ID) instanceof JsonArray ? indices(request.getJsonArray(ID)) : null;
+    if (!QueryPlan.isPlan(request) || indexNames == null || indexNames.isEmpty()) {
+      LOGGER.error("Malformed ID: " + request.getValue(ID));
+      responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
+          .setMessage(MALFORMED_ID + request.getValue(ID));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
+      return null;
+    }
+
+    QueryPlan plan = QueryPlan.fromJson(request);
+    boolean latest = LATEST_SEARCH.equalsIgnoreCase(plan.searchType());
+    Long[] window = timeWindow(plan, indexNames);
+    List<String> routed = latest ? List.of(LATEST_RESOURCE_INDEX)
+        : route(plan, window, indexNames);
+    IndexStats stats = latest ? null : indexStats(plan, routed);
+    JsonObject explainQuery = queryDecoder.decode(plan, window, stats);
+    if (explainQuery.containsKey(ERROR)) {
+      LOGGER.error("Fail: Query returned with an error: " + explainQuery.getString(ERROR));
+      responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
+          .setMessage(explainQuery.getString(ERROR));
+      handler.handle(Future.failedFuture(responseBuilder.toFailure()));
+      return null;
+    }
+    boolean count = !latest && COUNT.equalsIgnoreCase(plan.options());
+    int requests = count || latest || explainQuery.containsKey(COLLAPSE_KEY) ? 1 : 2;
+
+    JsonObject estimate = new JsonObject().put("indices", routed.size())
+        .put("partitioned", !routed.equals(indexNames)).put("requests", requests)
+        .put("filters", explainQuery.getJsonObject(QUERY_KEY).getJsonObject(BOOL_KEY)
+            .getJsonArray(FILTER_KEY).size());
+    if (stats != null) {
+      estimate.put("docs", stats.docCount()).put("windowDocs", window == null
+          ? stats.docCount() : stats.estimateDocs(window[0], window[1]));
+    }
+    JsonObject explain = new JsonObject().put("operation",
+        latest ? SlowQueryLog.LATEST : count ? SlowQueryLog.COUNT : SlowQueryLog.SEARCH)
+        .put("indices", new JsonArray(new ArrayList<>(routed)))
+        .put("empty", routed.isEmpty() || isEmpty(window, stats))
+        .put("query", explainQuery).put("estimate", estimate);
+    if (window != null) {
+      explain.put("window", new JsonObject().put(GREATER_THAN_EQ, window[0])
+          .put(LESS_THAN_EQ, window[1]));
+    }
+    responseBuilder = new ResponseBuilder(SUCCESS).setTypeAndTitle(200)
+        .setMessage(new JsonArray().add(explain));
+    handler.handle(Future.succeededFuture(responseBuilder.getResponse()));
+    return this;
+  }
+
+  /**
+   * Decodes a compiled {@link QueryPlan}, or a legacy query json for callers not sending a plan.
+   */
+  private JsonObject decode(JsonObject request, QueryPlan plan, Long[] window, IndexStats stats) {
+    if (plan != null) {
+      return queryDecoder.decode(plan, window, stats);
+    }
+    return queryDecoder.queryDecoder(request);
+  }
+
+  /**
+   * @return time window of a plan with the default window of its groups, null for legacy queries
+   */
+  private Long[] timeWindow(QueryPlan plan, List<String> indexNames) {
+    if (plan == null) {
+      return null;
+    }
+    Integer defaultDays = defaultWindow == null ? null : defaultWindow.days(indexNames);
+    return queryDecoder.timeWindow(plan, timeLimit, defaultDays);
+  }
+
+  /**
+   * @return time partitions of the indices in the time window of a plan, the indices for legacy
+   *         queries
+   */
+  private List<String> route(QueryPlan plan, Long[] window, List<String> indexNames) {
+    if (indexRouter == null || plan == null) {
+      return indexNames;
+    }
+    return window == null ? indexRouter.route(indexNames, null, null)
+        : indexRouter.route(indexNames, window[0], window[1]);
+  }
+
+  /**
+   * @return stats of the indices of a plan, null for legacy queries or if stats are not known
+   */
+  private IndexStats indexStats(QueryPlan plan, List<String> indexNames) {
+    if (indexStats == null || plan == null) {
+      return null;
+    }
+    return indexStats.stats(indexNames);
+  }
+
+  /**
+   * @return true if the indices can not hold any document in the time window of the query
+   */
+  private boolean isEmpty(Long[] window, IndexStats stats) {
+    return stats != null && window != null && !stats.mayHaveData(window[0], window[1]);
+  }
+
+  /**
+   * Indices of the requested ids, one per resource group, searched together in a single multi
+   * index query.
+   *
+   * @param ids resource ids
+   * @return index names or null if an id is malformed
+   */
+  private List<String> indices(JsonArray ids) {
+    Set<String> indices = new LinkedHashSet<>();
+    for (Object id : ids) {
+      String[] splitId = id.toString().split("/");
+      if (splitId.length != 5) {
+        return null;
+      }
+      indices.add(String.join("__", Arrays.copyOf(splitId, 4)));
+    }
+    return new ArrayList<>(indices);
+  }
+
+  /**
+   * @return duration of the stage in nanoseconds
+   */
+  private long recordStage(String stage, String searchType, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    StageTimers.record(stage, null, searchType, nanos);
+    return nanos;
+  }
+
+  private void logSlowQuery(String operation, JsonObject request, String indices,
+      JsonObject query, long countNanos, long searchNanos, Integer hits, Integer totalHits) {
+    if (slowQueryLog != null) {
+      slowQueryLog.record(operation, request, indices, query, countNanos, searchNanos, hits,
+          totalHits);
+    }
+  }
+
+  /**
+   * @return number of hits of a search, null if it failed
+   */
+  private static Integer hits(AsyncResult<JsonObject> searchRes) {
+    return searchRes.succeeded()
+        ? searchRes.result().getJsonArray(RESULTS, new JsonArray()).size()
+        : null;
+  }
+
   public int getOrDefault(JsonObject json, String key, int def) {
-    if (json.containsKey(key)) {
-      int value = Integer.parseInt(json.getString(key));
-      return value;
+    Object value = json.getValue(key);
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
     }
-    return def;
+    return value == null ? def : Integer.parseInt(value.toString());
   }
 }
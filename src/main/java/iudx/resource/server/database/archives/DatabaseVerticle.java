@@ -4,6 +4,7 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
+import iudx.resource.server.common.LocalServices;
 
 /**
  * The Database Verticle.
@@ -49,16 +50,35 @@ public class DatabaseVerticle extends AbstractVerticle {
 
     client = new ElasticClient(databaseIP, databasePort, user, password); 
     binder = new ServiceBinder(vertx);
-    database = new DatabaseServiceImpl(client, timeLimit);
+    JsonObject indexStatsConfig = config().getJsonObject("indexStats", new JsonObject());
+    IndexStatsCache indexStats = indexStatsConfig.getBoolean("enabled", false)
+        ? IndexStatsCache.getOrCreate(vertx, client, indexStatsConfig)
+        : null;
+    JsonObject indexRoutingConfig = config().getJsonObject("indexRouting", new JsonObject());
+    IndexRouter indexRouter = indexRoutingConfig.getBoolean("enabled", false)
+        ? IndexRouter.getOrCreate(vertx, client, indexRoutingConfig)
+        : null;
+    JsonObject defaultWindowConfig = config().getJsonObject("defaultWindow", new JsonObject());
+    DefaultWindow defaultWindow = defaultWindowConfig.getBoolean("enabled", false)
+        ? new DefaultWindow(indexStats, defaultWindowConfig)
+        : null;
+    JsonObject slowQueryLogConfig = config().getJsonObject("slowQueryLog", new JsonObject());
+    SlowQueryLog slowQueryLog = slowQueryLogConfig.getBoolean("enabled", false)
+        ? new SlowQueryLog(client, slowQueryLogConfig)
+        : null;
+    database = new DatabaseServiceImpl(client, timeLimit, indexStats, indexRouter, defaultWindow)
+        .setSlowQueryLog(slowQueryLog);
 
     consumer =
         binder.setAddress(DATABASE_SERVICE_ADDRESS)
         .register(DatabaseService.class, database);
+    LocalServices.register(vertx, DATABASE_SERVICE_ADDRESS, database);
   }
 
 
   @Override
   public void stop() {
+    LocalServices.unregister(vertx, DATABASE_SERVICE_ADDRESS, database);
 	binder.unregister(consumer);
   }
 }
@@ -0,0 +1,79 @@
+package iudx.resource.server.database.archives;
+
+import static iudx.resource.server.database.archives.Constants.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Days of the default time window of queries without a temporal part, per resource group.
+ * <p>
+ * Instead of the single <i>timeLimit</i> window of the instance, a group gets the number of days
+ * in which it ingests about {@code targetDocs} documents, from the ingest rate of its
+ * {@link IndexStats}, within {@code minDays} and {@code maxDays}. High rate groups so get a short
+ * window and sparse groups a long one. {@code overrides} sets the days of a group by its id.
+ * Groups with neither stats nor override keep the days of the timeLimit.
+ * </p>
+ */
+public final class DefaultWindow {
+
+  private static final long DEFAULT_TARGET_DOCS = 100000;
+  private static final int DEFAULT_MIN_DAYS = 1;
+  private static final int DEFAULT_MAX_DAYS = 30;
+
+  private final IndexStatsCache indexStats;
+  private final long targetDocs;
+  private final int minDays;
+  private final int maxDays;
+  // group index name -> days
+  private final Map<String, Integer> overrides = new HashMap<>();
+
+  /**
+   * @param indexStats stats of the indices, null to use the overrides only
+   * @param config defaultWindow config block
+   */
+  public DefaultWindow(IndexStatsCache indexStats, JsonObject config) {
+    this.indexStats = indexStats;
+    this.targetDocs = config.getLong("targetDocs", DEFAULT_TARGET_DOCS);
+    this.minDays = config.getInteger("minDays", DEFAULT_MIN_DAYS);
+    this.maxDays = config.getInteger("maxDays", DEFAULT_MAX_DAYS);
+    config.getJsonObject("overrides", new JsonObject()).forEach(override -> overrides
+        .put(override.getKey().replace("/", GROUP_SEPARATOR), ((Number) override.getValue())
+            .intValue()));
+  }
+
+  /**
+   * @param groupIndices group index names (domain__SHA__rs__group) of a query
+   * @return days of the default window, the shortest of the groups, null if no group is known
+   */
+  public Integer days(Collection<String> groupIndices) {
+    Integer days = null;
+    for (String group : groupIndices) {
+      Integer groupDays = overrides.get(group);
+      if (groupDays == null && indexStats != null) {
+        IndexStats stats = indexStats.groupStats(List.of(group));
+        groupDays = stats == null ? null : days(stats.ingestRate());
+      }
+      if (groupDays != null && (days == null || groupDays < days)) {
+        days = groupDays;
+      }
+    }
+    return days;
+  }
+
+  /**
+   * @param ingestRate documents per day, null if unknown
+   * @return days to ingest targetDocs documents within minDays and maxDays
+   */
+  Integer days(Double ingestRate) {
+    if (ingestRate == null) {
+      return null;
+    }
+    if (ingestRate * maxDays <= targetDocs) {
+      return maxDays;
+    }
+    return (int) Math.max(minDays, Math.min(maxDays, Math.floor(targetDocs / ingestRate)));
+  }
+}
@@ -8,6 +8,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import static iudx.resource.server.database.archives.Constants.*;
 import java.io.IOException;
+import java.util.Map;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -17,9 +18,13 @@ import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
+import iudx.resource.server.common.InFlight;
+import iudx.resource.server.common.tracing.Span;
+import iudx.resource.server.common.tracing.Tracer;
 
 public class ElasticClient {
 
@@ -53,10 +58,14 @@ public class ElasticClient {
     Request queryRequest = new Request(REQUEST_GET, index);
     queryRequest.addParameter(FILTER_PATH, filterPathValue);
     queryRequest.setJsonEntity(query);
+    Span span = startSpan(queryRequest, "elasticsearch.search", index);
+    Runnable done = InFlight.begin(InFlight.ELASTICSEARCH);
 
     client.performRequestAsync(queryRequest, new ResponseListener() {
       @Override
       public void onSuccess(Response response) {
+        done.run();
+        Tracer.end(span, null);
         JsonArray dbResponse = new JsonArray();
         JsonObject jsonTemp;
         try {
@@ -64,7 +73,7 @@ public class ElasticClient {
           if (!responseJson.containsKey(HITS) && !responseJson.containsKey(DOCS_KEY)) {
             responseBuilder =
                 new ResponseBuilder(FAILED).setTypeAndTitle(204).setMessage(EMPTY_RESPONSE);
-            searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return;
           }
           responseBuilder = new ResponseBuilder(SUCCESS).setTypeAndTitle(200);
@@ -76,7 +85,17 @@ public class ElasticClient {
           }
           for (Object json : responseHits) {
             jsonTemp = (JsonObject) json;
-            dbResponse.add(jsonTemp.getJsonObject(SOURCE_FILTER_KEY));
+            if (jsonTemp.containsKey(INNER_HITS_KEY)) {
+              // collapsed hit, its observations are the inner hits.
+              JsonObject innerHits = jsonTemp.getJsonObject(INNER_HITS_KEY);
+              for (String name : innerHits.fieldNames()) {
+                innerHits.getJsonObject(name).getJsonObject(HITS).getJsonArray(HITS)
+                    .forEach(innerHit -> dbResponse
+                        .add(((JsonObject) innerHit).getJsonObject(SOURCE_FILTER_KEY)));
+              }
+            } else {
+              dbResponse.add(jsonTemp.getJsonObject(SOURCE_FILTER_KEY));
+            }
           }
           responseBuilder.setMessage(dbResponse);
           searchHandler.handle(Future.succeededFuture(responseBuilder.getResponse()));
@@ -84,24 +103,26 @@ public class ElasticClient {
           LOGGER.error("IO Execption from Database: " + e.getMessage());
           JsonObject ioError = new JsonObject(e.getMessage());
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(ioError);
-          searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         }
       }
 
       @Override
       public void onFailure(Exception e) {
+        done.run();
+        Tracer.end(span, e);
         LOGGER.error(e.getLocalizedMessage());
         try {
           String error = e.getMessage().substring(e.getMessage().indexOf("{"),
               e.getMessage().lastIndexOf("}") + 1);
           JsonObject dbError = new JsonObject(error);
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(dbError);
-          searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         } catch (DecodeException jsonError) {
           LOGGER.error("Json parsing exception: " + jsonError);
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(BAD_PARAMETERS);
-          searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         }
       }
     });
@@ -120,18 +141,21 @@ public class ElasticClient {
 
     Request queryRequest = new Request(REQUEST_GET, index);
     queryRequest.setJsonEntity(query);
+    Span span = startSpan(queryRequest, "elasticsearch.count", index);
+    Runnable done = InFlight.begin(InFlight.ELASTICSEARCH);
 
     client.performRequestAsync(queryRequest, new ResponseListener() {
       @Override
       public void onSuccess(Response response) {
+        done.run();
+        Tracer.end(span, null);
 
         try {
           int statusCode = response.getStatusLine().getStatusCode();
           if (statusCode != 200 && statusCode != 204) {
-            countHandler.handle(Future.failedFuture(DB_ERROR_2XX));
             responseBuilder =
                 new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(DB_ERROR_2XX);
-            countHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            countHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return;
           }
 
@@ -139,7 +163,7 @@ public class ElasticClient {
           if (responseJson.getInteger(COUNT) == 0) {
             responseBuilder =
                 new ResponseBuilder(FAILED).setTypeAndTitle(204).setMessage(EMPTY_RESPONSE);
-            countHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            countHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return;
           }
           responseBuilder =
@@ -150,27 +174,89 @@ public class ElasticClient {
           LOGGER.error("IO Execption from Database: " + e.getMessage());
           JsonObject ioError = new JsonObject(e.getMessage());
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(ioError);
-          countHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          countHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         }
       }
 
       @Override
       public void onFailure(Exception e) {
+        done.run();
+        Tracer.end(span, e);
         LOGGER.error(e.getLocalizedMessage());
         try {
           String error = e.getMessage().substring(e.getMessage().indexOf("{"),
               e.getMessage().lastIndexOf("}") + 1);
           JsonObject dbError = new JsonObject(error);
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(dbError);
-          countHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          countHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         } catch (DecodeException jsonError) {
           LOGGER.error("Json parsing exception: " + jsonError);
           responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
               .setMessage(BAD_PARAMETERS);
-          countHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+          countHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
         }
       }
     });
     return this;
   }
+
+  /**
+   * requestAsync - Wrapper around any other elasticsearch request, the raw response body is
+   * returned to the caller.
+   *
+   * @param method http method
+   * @param endpoint endpoint of the request
+   * @param params query parameters
+   * @param body json body, null for none
+   * @param handler response body {@link AsyncResult}
+   */
+  public ElasticClient requestAsync(String method, String endpoint, Map<String, String> params,
+      String body, Handler<AsyncResult<String>> handler) {
+
+    Request request = new Request(method, endpoint);
+    request.addParameters(params);
+    if (body != null) {
+      request.setJsonEntity(body);
+    }
+    Span span = startSpan(request, "elasticsearch.request", endpoint);
+    Runnable done = InFlight.begin(InFlight.ELASTICSEARCH);
+
+    client.performRequestAsync(request, new ResponseListener() {
+      @Override
+      public void onSuccess(Response response) {
+        done.run();
+        Tracer.end(span, null);
+        try {
+          handler.handle(Future.succeededFuture(EntityUtils.toString(response.getEntity())));
+        } catch (IOException e) {
+          LOGGER.error("IO Execption from Database: " + e.getMessage());
+          handler.handle(Future.failedFuture(e));
+        }
+      }
+
+      @Override
+      public void onFailure(Exception e) {
+        done.run();
+        Tracer.end(span, e);
+        LOGGER.error(e.getLocalizedMessage());
+        handler.handle(Future.failedFuture(e));
+      }
+    });
+    return this;
+  }
+
+  /**
+   * Starts a client span of the request and sends its trace context in the traceparent header so
+   * the request can be correlated on the Elasticsearch side.
+   */
+  private Span startSpan(Request request, String operation, String index) {
+    Span span = Tracer.startSpan(operation, Span.Kind.CLIENT);
+    if (span != null) {
+      span.setAttribute("db.system", "elasticsearch").setAttribute("db.name", index);
+      RequestOptions.Builder options = request.getOptions().toBuilder();
+      Tracer.inject(span, options::addHeader);
+      request.setOptions(options);
+    }
+    return span;
+  }
 }
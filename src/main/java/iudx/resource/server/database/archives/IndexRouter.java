@@ -0,0 +1,250 @@
+package iudx.resource.server.database.archives;
+
+import static iudx.resource.server.database.archives.Constants.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Routes queries on time partitioned resource group indices to the partitions of their time
+ * window, shared by all database verticles of a JVM.
+ * <p>
+ * A partitioned group is an alias named after the group index (<i>domain__SHA__rs__group</i>)
+ * whose indices are all named <i>&lt;alias&gt;__&lt;yyyy-MM&gt;</i> (monthly) or
+ * <i>&lt;alias&gt;__&lt;yyyy-MM-dd&gt;</i> (daily) after the UTC observationDateTime of their
+ * documents. The aliases are listed every {@code refreshInterval} seconds and a query is sent to
+ * the partitions overlapping its time window only instead of every shard of the group. Partitions
+ * newer than the last listing are queried with a wildcard, which matches nothing until they are
+ * created. Groups that are not aliases of partitions, and windows spanning more than
+ * {@code maxIndices} partitions, are queried on the group name as before.
+ * </p>
+ */
+public final class IndexRouter implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(IndexRouter.class);
+
+  private static final String SHARED_MAP = "iudx.rs.database";
+  private static final String SHARED_KEY = "indexRouter";
+  private static final long DEFAULT_REFRESH_INTERVAL = 300;
+  private static final String DEFAULT_ALIAS_PATTERN = "*__*";
+  private static final int DEFAULT_MAX_INDICES = 64;
+
+  private final Vertx vertx;
+  private final ElasticClient client;
+  private final long refreshInterval;
+  private final String aliasPattern;
+  private final int maxIndices;
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private volatile Map<String, Partitions> groups;
+
+  private IndexRouter(Vertx vertx, ElasticClient client, JsonObject config) {
+    this.vertx = vertx;
+    this.client = client;
+    this.refreshInterval = config.getLong("refreshInterval", DEFAULT_REFRESH_INTERVAL);
+    this.aliasPattern = config.getString("aliasPattern", DEFAULT_ALIAS_PATTERN);
+    this.maxIndices = config.getInteger("maxIndices", DEFAULT_MAX_INDICES);
+  }
+
+  /**
+   * Returns the index router of this JVM, creating and starting it on first use.
+   *
+   * @param vertx vertx instance
+   * @param client elastic client used for the listings
+   * @param config indexRouting config block
+   * @return shared IndexRouter
+   */
+  public static IndexRouter getOrCreate(Vertx vertx, ElasticClient client, JsonObject config) {
+    LocalMap<String, IndexRouter> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    IndexRouter router = map.get(SHARED_KEY);
+    if (router == null) {
+      IndexRouter created = new IndexRouter(vertx, client, config);
+      router = map.putIfAbsent(SHARED_KEY, created);
+      if (router == null) {
+        router = created;
+      }
+    }
+    router.start();
+    return router;
+  }
+
+  private void start() {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    refresh();
+    vertx.setPeriodic(TimeUnit.SECONDS.toMillis(refreshInterval), handler -> refresh());
+  }
+
+  /**
+   * Lists the aliases and their indices, the current partitions are kept on failure.
+   */
+  public Future<Void> refresh() {
+    Promise<String> listing = Promise.promise();
+    client.requestAsync(REQUEST_GET, "/_cat/aliases/" + aliasPattern,
+        Map.of("format", "json", "h", "alias,index"), null, listing);
+    return listing.future().map(response -> {
+      groups = parse(new JsonArray(response));
+      LOGGER.debug("Info: index partitions refreshed, partitioned groups : " + groups.size());
+      return (Void) null;
+    }).onFailure(failure -> LOGGER.error("index partitions refresh failed : "
+        + failure.getMessage()));
+  }
+
+  /**
+   * @param indices group indices of a query
+   * @param gte start of the time window (epoch millis), null if open
+   * @param lte end of the time window (epoch millis), null if open
+   * @return indices to query, empty if no partition can hold the window
+   */
+  public List<String> route(Collection<String> indices, Long gte, Long lte) {
+    Map<String, Partitions> current = groups;
+    if (current == null) {
+      return new ArrayList<>(indices);
+    }
+    return route(current, indices, gte, lte, System.currentTimeMillis(), maxIndices);
+  }
+
+  static List<String> route(Map<String, Partitions> groups, Collection<String> indices, Long gte,
+      Long lte, long now, int maxIndices) {
+    List<String> routed = new ArrayList<>();
+    for (String index : indices) {
+      Partitions partitions = groups.get(index);
+      List<String> names = partitions == null ? null : partitions.route(gte, lte, now, maxIndices);
+      if (names == null) {
+        routed.add(index);
+      } else {
+        routed.addAll(names);
+      }
+    }
+    return routed;
+  }
+
+  /**
+   * @param aliases _cat/aliases response, one entry per alias and index
+   * @return partitions per alias, for aliases whose indices are all partitions
+   */
+  static Map<String, Partitions> parse(JsonArray aliases) {
+    Map<String, Partitions> groups = new HashMap<>();
+    List<String> unpartitioned = new ArrayList<>();
+    for (Object entry : aliases) {
+      JsonObject json = (JsonObject) entry;
+      String alias = json.getString(ALIAS_KEY);
+      String index = json.getString(INDEX_KEY);
+      String prefix = alias + GROUP_SEPARATOR;
+      String suffix = index.startsWith(prefix) ? index.substring(prefix.length()) : "";
+      Granularity granularity = Granularity.of(suffix);
+      LocalDate start = granularity == null ? null : granularity.parse(suffix);
+      Partitions partitions = groups.get(alias);
+      if (start == null || (partitions != null && partitions.granularity != granularity)) {
+        unpartitioned.add(alias);
+      } else {
+        groups.computeIfAbsent(alias, key -> new Partitions(key, granularity)).starts.put(start,
+            index);
+      }
+    }
+    unpartitioned.forEach(groups::remove);
+    return groups;
+  }
+
+  enum Granularity {
+    DAY, MONTH;
+
+    static Granularity of(String suffix) {
+      return suffix.length() == 10 ? DAY : suffix.length() == 7 ? MONTH : null;
+    }
+
+    /**
+     * @return start of the partition of a suffix, null if the suffix is not a date
+     */
+    LocalDate parse(String suffix) {
+      try {
+        return this == DAY ? LocalDate.parse(suffix) : YearMonth.parse(suffix).atDay(1);
+      } catch (DateTimeParseException e) {
+        return null;
+      }
+    }
+
+    LocalDate start(long millis) {
+      LocalDate date = Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC).toLocalDate();
+      return this == DAY ? date : date.withDayOfMonth(1);
+    }
+
+    LocalDate next(LocalDate start) {
+      return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+    }
+
+    String suffix(LocalDate start) {
+      return this == DAY ? start.toString() : YearMonth.from(start).toString();
+    }
+  }
+
+  /**
+   * Partitions of a group alias by the start of their period.
+   */
+  static final class Partitions {
+    private final String alias;
+    private final Granularity granularity;
+    private final NavigableMap<LocalDate, String> starts = new TreeMap<>();
+
+    private Partitions(String alias, Granularity granularity) {
+      this.alias = alias;
+      this.granularity = granularity;
+    }
+
+    /**
+     * @return partitions overlapping the window, null if there are more than maxIndices
+     */
+    List<String> route(Long gte, Long lte, long now, int maxIndices) {
+      LocalDate last = starts.lastKey();
+      LocalDate from = gte == null ? starts.firstKey() : granularity.start(gte);
+      LocalDate to = granularity.start(lte == null ? now : lte);
+      LocalDate latest = granularity.start(now);
+      if (latest.isBefore(last)) {
+        latest = last;
+      }
+      if (to.isAfter(latest)) {
+        // documents are not expected after the current partition.
+        to = latest;
+      }
+      if (from.isAfter(to)) {
+        return new ArrayList<>();
+      }
+      List<String> names = new ArrayList<>(starts.subMap(from, true, to, true).values());
+      LocalDate start = granularity.next(last);
+      if (start.isBefore(from)) {
+        start = from;
+      }
+      for (; !start.isAfter(to) && names.size() <= maxIndices; start = granularity.next(start)) {
+        // created since the last listing
+        names.add(alias + GROUP_SEPARATOR + granularity.suffix(start) + "*");
+      }
+      return names.size() > maxIndices ? null : names;
+    }
+  }
+
+  @Override
+  public String toString() {
+    Map<String, Partitions> current = groups;
+    return "IndexRouter [groups=" + (current == null ? null : current.size()) + "]";
+  }
+}
@@ -0,0 +1,149 @@
+package iudx.resource.server.database.archives;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of the observations held by one or more indices, as of the last refresh of the
+ * {@link IndexStatsCache}.
+ * <p>
+ * Observations are assumed to be ingested at most <i>maxIngestDelay</i> after their
+ * observationDateTime, so data ingested since the refresh is in <i>[liveFrom, now]</i> where
+ * liveFrom is the refresh time minus that delay. A time window missing both this live range and
+ * the observed range [minTime, maxTime] can not match any document.
+ * </p>
+ */
+public final class IndexStats {
+
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private final boolean exists;
+  private final long docCount;
+  private final Long minTime;
+  private final Long maxTime;
+  private final long liveFrom;
+
+  /**
+   * @param exists true if the index exists
+   * @param docCount number of documents
+   * @param minTime minimum observationDateTime (epoch millis), null if unknown
+   * @param maxTime maximum observationDateTime (epoch millis), null if unknown
+   * @param liveFrom observationDateTime from which documents may have been ingested since refresh
+   */
+  public IndexStats(boolean exists, long docCount, Long minTime, Long maxTime, long liveFrom) {
+    this.exists = exists;
+    this.docCount = docCount;
+    this.minTime = minTime;
+    this.maxTime = maxTime;
+    this.liveFrom = liveFrom;
+  }
+
+  public boolean exists() {
+    return exists;
+  }
+
+  public long docCount() {
+    return docCount;
+  }
+
+  public Long minTime() {
+    return minTime;
+  }
+
+  public Long maxTime() {
+    return maxTime;
+  }
+
+  public long liveFrom() {
+    return liveFrom;
+  }
+
+  /**
+   * @param gte start of the window (epoch millis), null if open
+   * @param lte end of the window (epoch millis), null if open
+   * @return false if no document can be in the window
+   */
+  public boolean mayHaveData(Long gte, Long lte) {
+    if (lte == null || lte >= liveFrom) {
+      return true;
+    }
+    if (docCount == 0) {
+      return false;
+    }
+    if (minTime == null || maxTime == null) {
+      // documents without observationDateTime, bounds are unknown.
+      return true;
+    }
+    return lte >= minTime && (gte == null || gte <= maxTime);
+  }
+
+  /**
+   * @return smallest observationDateTime a document may have, null if unknown
+   */
+  public Long lowerBound() {
+    if (docCount == 0) {
+      return liveFrom;
+    }
+    return minTime == null ? null : Math.min(minTime, liveFrom);
+  }
+
+  /**
+   * @return documents per day over [minTime, maxTime] (at least a day), null if unknown
+   */
+  public Double ingestRate() {
+    if (docCount == 0) {
+      return 0d;
+    }
+    if (minTime == null || maxTime == null) {
+      return null;
+    }
+    return docCount * (double) DAY_MILLIS / Math.max(maxTime - minTime, DAY_MILLIS);
+  }
+
+  /**
+   * Estimates the documents in a window, assuming documents are spread evenly over
+   * [minTime, maxTime].
+   *
+   * @param gte start of the window (epoch millis), null if open
+   * @param lte end of the window (epoch millis), null if open
+   * @return estimated number of documents in the window
+   */
+  public long estimateDocs(Long gte, Long lte) {
+    if (docCount == 0 || minTime == null || maxTime == null) {
+      return docCount;
+    }
+    long start = gte == null ? minTime : Math.max(gte, minTime);
+    long end = lte == null ? maxTime : Math.min(lte, maxTime);
+    if (start > end) {
+      return 0;
+    }
+    if (maxTime.equals(minTime)) {
+      return docCount;
+    }
+    return Math.round(docCount * (double) (end - start) / (maxTime - minTime));
+  }
+
+  /**
+   * Stats of several indices searched together.
+   */
+  public IndexStats merge(IndexStats other) {
+    boolean unknown = (docCount > 0 && minTime == null) || (other.docCount > 0
+        && other.minTime == null);
+    return new IndexStats(exists || other.exists, docCount + other.docCount,
+        unknown ? null : min(minTime, other.minTime), unknown ? null : max(maxTime, other.maxTime),
+        Math.min(liveFrom, other.liveFrom));
+  }
+
+  private static Long min(Long a, Long b) {
+    return a == null ? b : b == null ? a : Long.valueOf(Math.min(a, b));
+  }
+
+  private static Long max(Long a, Long b) {
+    return a == null ? b : b == null ? a : Long.valueOf(Math.max(a, b));
+  }
+
+  @Override
+  public String toString() {
+    return "IndexStats [exists=" + exists + ", docCount=" + docCount + ", minTime=" + minTime
+        + ", maxTime=" + maxTime + ", liveFrom=" + liveFrom + "]";
+  }
+}
@@ -0,0 +1,298 @@
+package iudx.resource.server.database.archives;
+
+import static iudx.resource.server.database.archives.Constants.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * {@link IndexStats} of the resource group indices shared by all database verticles of a JVM.
+ * <p>
+ * Every {@code refreshInterval} seconds the existing indices matching {@code indexPattern} are
+ * listed with their document count. The observationDateTime range is fetched again only for
+ * indices whose count changed since the previous refresh, with top level min/max aggregations
+ * (answered from the points index instead of reading doc values) batched in {@code _msearch}
+ * requests. Queries whose time window can not match any document of their indices are answered
+ * without calling Elasticsearch and open ended time ranges are bounded to the data that exists.
+ * Documents ingested after a refresh are covered by {@code maxIngestDelay}, the maximum delay in
+ * seconds between the observationDateTime of a document and its ingestion.
+ * </p>
+ */
+public final class IndexStatsCache implements Shareable {
+
+  private static final Logger LOGGER = LogManager.getLogger(IndexStatsCache.class);
+
+  private static final String SHARED_MAP = "iudx.rs.database";
+  private static final String SHARED_KEY = "indexStats";
+  private static final long DEFAULT_REFRESH_INTERVAL = 300;
+  private static final long DEFAULT_MAX_INGEST_DELAY = 3600;
+  private static final String DEFAULT_INDEX_PATTERN = "*__*";
+  private static final int MSEARCH_CHUNK_SIZE = 100;
+
+  private final Vertx vertx;
+  private final ElasticClient client;
+  private final long refreshInterval;
+  private final long maxIngestDelay;
+  private final String indexPattern;
+  private final AtomicBoolean started = new AtomicBoolean(false);
+  private volatile Map<String, IndexStats> indices;
+  private volatile Map<String, IndexStats> groups;
+
+  private IndexStatsCache(Vertx vertx, ElasticClient client, JsonObject config) {
+    this.vertx = vertx;
+    this.client = client;
+    this.refreshInterval = config.getLong("refreshInterval", DEFAULT_REFRESH_INTERVAL);
+    this.maxIngestDelay =
+        TimeUnit.SECONDS.toMillis(config.getLong("maxIngestDelay", DEFAULT_MAX_INGEST_DELAY));
+    this.indexPattern = config.getString("indexPattern", DEFAULT_INDEX_PATTERN);
+  }
+
+  /**
+   * Returns the index stats cache of this JVM, creating and starting it on first use.
+   *
+   * @param vertx vertx instance
+   * @param client elastic client used for the refreshes
+   * @param config indexStats config block
+   * @return shared IndexStatsCache
+   */
+  public static IndexStatsCache getOrCreate(Vertx vertx, ElasticClient client, JsonObject config) {
+    LocalMap<String, IndexStatsCache> map = vertx.sharedData().getLocalMap(SHARED_MAP);
+    IndexStatsCache cache = map.get(SHARED_KEY);
+    if (cache == null) {
+      IndexStatsCache created = new IndexStatsCache(vertx, client, config);
+      cache = map.putIfAbsent(SHARED_KEY, created);
+      if (cache == null) {
+        cache = created;
+      }
+    }
+    cache.start();
+    return cache;
+  }
+
+  private void start() {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    refresh();
+    vertx.setPeriodic(TimeUnit.SECONDS.toMillis(refreshInterval), handler -> refresh());
+  }
+
+  /**
+   * @param indices indices searched together
+   * @return merged stats of the indices, null until the first refresh has completed or if an
+   *         index is not known (an alias, a wildcard or an index created since the refresh)
+   */
+  public IndexStats stats(Collection<String> indices) {
+    Map<String, IndexStats> current = this.indices;
+    if (current == null || indices.isEmpty()) {
+      return null;
+    }
+    IndexStats merged = null;
+    for (String index : indices) {
+      IndexStats stats = current.get(index);
+      if (stats == null) {
+        return null;
+      }
+      merged = merged == null ? stats : merged.merge(stats);
+    }
+    return merged;
+  }
+
+  /**
+   * Stats of resource groups, whether stored in one index or in time partitions.
+   *
+   * @param groupIndices group index names (domain__SHA__rs__group)
+   * @return merged stats of all indices of the groups, null until the first refresh has completed
+   *         or if a group has no index
+   */
+  public IndexStats groupStats(Collection<String> groupIndices) {
+    Map<String, IndexStats> current = groups;
+    if (current == null || groupIndices.isEmpty()) {
+      return null;
+    }
+    IndexStats merged = null;
+    for (String group : groupIndices) {
+      IndexStats stats = current.get(group);
+      if (stats == null) {
+        return null;
+      }
+      merged = merged == null ? stats : merged.merge(stats);
+    }
+    return merged;
+  }
+
+  /**
+   * Lists the indices and fetches the time ranges of the changed ones, the current stats are kept
+   * on failure.
+   */
+  public Future<Void> refresh() {
+    long liveFrom = System.currentTimeMillis() - maxIngestDelay;
+    Map<String, IndexStats> previous = indices == null ? Map.of() : indices;
+    return request(REQUEST_GET, "/_cat/indices/" + indexPattern,
+        Map.of("format", "json", "h", "index,docs.count"), null).compose(body -> {
+          JsonArray listing = new JsonArray(body);
+          return ranges(changed(listing, previous), 0, new HashMap<>())
+              .map(ranges -> parse(listing, previous, ranges, liveFrom));
+        }).map(refreshed -> {
+          indices = refreshed;
+          groups = groups(refreshed);
+          LOGGER.debug("Info: index stats refreshed, indices : " + refreshed.size());
+          return (Void) null;
+        }).onFailure(
+            failure -> LOGGER.error("index stats refresh failed : " + failure.getMessage()));
+  }
+
+  private Future<String> request(String method, String endpoint, Map<String, String> params,
+      String body) {
+    Promise<String> promise = Promise.promise();
+    client.requestAsync(method, endpoint, params, body, promise);
+    return promise.future();
+  }
+
+  /**
+   * Fetches the time ranges of the indices one {@code _msearch} chunk after the other.
+   *
+   * @return search response per index
+   */
+  private Future<Map<String, JsonObject>> ranges(List<String> names, int from,
+      Map<String, JsonObject> ranges) {
+    if (from >= names.size()) {
+      return Future.succeededFuture(ranges);
+    }
+    List<String> chunk = names.subList(from, Math.min(from + MSEARCH_CHUNK_SIZE, names.size()));
+    return request(REQUEST_POST, MSEARCH_REQ_PARAM, Map.of(), rangeQuery(chunk))
+        .compose(body -> {
+          ranges.putAll(responses(chunk, new JsonObject(body)));
+          return ranges(names, from + chunk.size(), ranges);
+        });
+  }
+
+  /**
+   * @param listing _cat/indices response, one entry per existing index
+   * @param previous stats of the previous refresh
+   * @return indices holding documents whose count changed or whose range is unknown
+   */
+  static List<String> changed(JsonArray listing, Map<String, IndexStats> previous) {
+    List<String> changed = new ArrayList<>();
+    for (Object entry : listing) {
+      JsonObject index = (JsonObject) entry;
+      long docCount = docCount(index);
+      IndexStats stats = previous.get(index.getString(INDEX_KEY));
+      if (docCount > 0 && (stats == null || stats.docCount() != docCount
+          || stats.minTime() == null)) {
+        changed.add(index.getString(INDEX_KEY));
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * @return _msearch body with a top level min/max of observationDateTime per index
+   */
+  static String rangeQuery(List<String> names) {
+    JsonObject timeField = new JsonObject().put(FIELD_KEY, TIME_FIELD_DB);
+    JsonObject search = new JsonObject().put(SIZE_KEY, 0).put(AGGREGATIONS_KEY,
+        new JsonObject().put(MIN_KEY, new JsonObject().put(MIN_KEY, timeField))
+            .put(MAX_KEY, new JsonObject().put(MAX_KEY, timeField)));
+    StringBuilder body = new StringBuilder();
+    for (String name : names) {
+      body.append(new JsonObject().put(INDEX_KEY, name).put("ignore_unavailable", true).encode())
+          .append('\n').append(search.encode()).append('\n');
+    }
+    return body.toString();
+  }
+
+  /**
+   * @param names indices of an _msearch request, in request order
+   * @param msearch _msearch response
+   * @return search response per index, failed searches are left out
+   */
+  static Map<String, JsonObject> responses(List<String> names, JsonObject msearch) {
+    Map<String, JsonObject> responses = new HashMap<>();
+    JsonArray items = msearch.getJsonArray(RESPONSES_KEY, new JsonArray());
+    for (int i = 0; i < Math.min(names.size(), items.size()); i++) {
+      JsonObject item = items.getJsonObject(i);
+      if (!item.containsKey(ERROR_KEY)) {
+        responses.put(names.get(i), item);
+      }
+    }
+    return responses;
+  }
+
+  /**
+   * @param listing _cat/indices response, one entry per existing index
+   * @param previous stats of the previous refresh, reused for indices whose range is not fetched
+   * @param ranges search response of {@link #rangeQuery(List)} per fetched index
+   * @param liveFrom observationDateTime of the documents that may be ingested after the refresh
+   * @return stats per index name
+   */
+  static Map<String, IndexStats> parse(JsonArray listing, Map<String, IndexStats> previous,
+      Map<String, JsonObject> ranges, long liveFrom) {
+    Map<String, IndexStats> indices = new HashMap<>();
+    for (Object entry : listing) {
+      JsonObject index = (JsonObject) entry;
+      String name = index.getString(INDEX_KEY);
+      long docCount = docCount(index);
+      Long minTime = null;
+      Long maxTime = null;
+      JsonObject range = ranges.get(name);
+      IndexStats stats = previous.get(name);
+      if (range != null) {
+        JsonObject aggregations = range.getJsonObject(AGGREGATIONS_KEY, new JsonObject());
+        minTime = value(aggregations.getJsonObject(MIN_KEY));
+        maxTime = value(aggregations.getJsonObject(MAX_KEY));
+      } else if (stats != null && stats.docCount() == docCount) {
+        minTime = stats.minTime();
+        maxTime = stats.maxTime();
+      }
+      indices.put(name, new IndexStats(true, docCount, minTime, maxTime, liveFrom));
+    }
+    return indices;
+  }
+
+  private static long docCount(JsonObject index) {
+    String docCount = index.getString(DOCS_COUNT);
+    return docCount == null ? 0 : Long.parseLong(docCount);
+  }
+
+  /**
+   * @return stats of the indices merged by group, the first four segments of their name
+   */
+  static Map<String, IndexStats> groups(Map<String, IndexStats> indices) {
+    Map<String, IndexStats> groups = new HashMap<>();
+    indices.forEach((index, stats) -> {
+      String[] segments = index.split(GROUP_SEPARATOR);
+      if (segments.length >= 4) {
+        String group = String.join(GROUP_SEPARATOR, Arrays.copyOf(segments, 4));
+        groups.merge(group, stats, IndexStats::merge);
+      }
+    });
+    return groups;
+  }
+
+  private static Long value(JsonObject aggregation) {
+    Number value = aggregation == null ? null : aggregation.getNumber(VALUE);
+    return value == null ? null : value.longValue();
+  }
+
+  @Override
+  public String toString() {
+    Map<String, IndexStats> current = indices;
+    return "IndexStatsCache [indices=" + (current == null ? null : current.size()) + "]";
+  }
+}
@@ -5,9 +5,18 @@ import io.vertx.core.json.JsonObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import static iudx.resource.server.database.archives.Constants.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.codec.digest.DigestUtils;
+import iudx.resource.server.database.archives.QueryPlan.Expression;
+import iudx.resource.server.database.archives.QueryPlan.Geo;
+import iudx.resource.server.database.archives.QueryPlan.SearchKind;
+import iudx.resource.server.database.archives.QueryPlan.Temporal;
+import iudx.resource.server.database.archives.QueryPlan.Term;
 
 public class QueryDecoder {
 
@@ -367,4 +376,209 @@ public class QueryDecoder {
       return elasticQuery.put(QUERY_KEY, boolObject);
     }
   }
+
+  /**
+   * Constructs the ElasticSearch Search/Count query of a compiled {@link QueryPlan}. The plan is
+   * already validated, its typed values are copied into the query without any parsing.
+   *
+   * @param plan compiled query plan
+   * @param timeLimit time limit of the instance, see {@link #queryDecoder(JsonObject)}
+   * @return JsonObject which contains fully formed ElasticSearch query.
+   */
+  public JsonObject decode(QueryPlan plan, String timeLimit) {
+    return decode(plan, timeWindow(plan, timeLimit), null);
+  }
+
+  /**
+   * Constructs the ElasticSearch query of a plan, its time range is bounded below to the oldest
+   * observation the searched indices may hold.
+   *
+   * @param plan compiled query plan
+   * @param window time window of the plan, see {@link #timeWindow(QueryPlan, String, Integer)}
+   * @param stats stats of the searched indices, null if not known
+   * @return JsonObject which contains fully formed ElasticSearch query.
+   */
+  public JsonObject decode(QueryPlan plan, Long[] window, IndexStats stats) {
+    JsonArray filterQuery = new JsonArray().add(new JsonObject().put(TERMS_KEY,
+        new JsonObject().put(RESOURCE_ID_KEY, new JsonArray(new ArrayList<>(plan.ids())))));
+    JsonObject bool = new JsonObject().put(FILTER_KEY, filterQuery);
+    JsonObject elasticQuery = new JsonObject().put(QUERY_KEY, new JsonObject().put(BOOL_KEY, bool));
+
+    if (plan.is(SearchKind.GEO)) {
+      Geo geo = plan.geo();
+      JsonObject shape = new JsonObject().put(TYPE_KEY, geo.shape())
+          .put(COORDINATES_KEY, geo.coordinates());
+      if (GEO_CIRCLE.equals(geo.shape())) {
+        shape.put(GEO_RADIUS, geo.radius() + "m");
+      }
+      double[] bbox = geo.boundingBox();
+      if (bbox != null) {
+        // cheap prefilter, the shape is only tested on documents within its bounding box.
+        filterQuery.add(new JsonObject().put(GEO_BOUNDING_BOX_KEY, new JsonObject().put(GEO_KEY,
+            new JsonObject().put(TOP_LEFT, new JsonObject().put(LAT, bbox[3]).put(LON, bbox[0]))
+                .put(BOTTOM_RIGHT, new JsonObject().put(LAT, bbox[1]).put(LON, bbox[2])))));
+      }
+      filterQuery.add(new JsonObject().put(GEO_SHAPE_KEY, new JsonObject().put(GEO_KEY,
+          new JsonObject().put(SHAPE_KEY, shape).put(GEO_RELATION_KEY, geo.relation()))));
+    }
+
+    if (window != null) {
+      Long gte = window[0];
+      Long lowerBound = stats == null ? null : stats.lowerBound();
+      if (lowerBound != null && (gte == null || gte < lowerBound)) {
+        gte = lowerBound;
+      }
+      filterQuery.add(range(TIME_FIELD_DB, gte, window[1]));
+    }
+
+    if (plan.is(SearchKind.ATTRIBUTE)) {
+      Expression q = plan.q();
+      if (q.type() == Expression.Type.AND) {
+        q.operands().forEach(operand -> filterQuery.add(toQuery(operand)));
+      } else {
+        filterQuery.add(toQuery(q));
+      }
+    }
+
+    if (plan.is(SearchKind.RESPONSE_FILTER)) {
+      elasticQuery.put(SOURCE_FILTER_KEY, new JsonArray(new ArrayList<>(plan.attrs())));
+    }
+
+    if (plan.lastN() != null) {
+      lastN(elasticQuery, plan);
+    }
+    return elasticQuery;
+  }
+
+  /**
+   * Collapses the hits on id, one hit per entity whose inner hits are the lastN latest
+   * observations of the entity, so that every entity gets exactly lastN observations (or all it
+   * has in the time window) in a single search.
+   */
+  private void lastN(JsonObject elasticQuery, QueryPlan plan) {
+    JsonObject innerHits = new JsonObject().put(NAME_KEY, LAST_N_HITS).put(SIZE_KEY, plan.lastN())
+        .put(SORT_KEY, new JsonArray().add(new JsonObject().put(TIME_FIELD_DB, DESC)));
+    if (plan.is(SearchKind.RESPONSE_FILTER)) {
+      innerHits.put(SOURCE_FILTER_KEY, elasticQuery.getValue(SOURCE_FILTER_KEY));
+    }
+    elasticQuery.put(SOURCE_FILTER_KEY, false)
+        .put(COLLAPSE_KEY,
+            new JsonObject().put(FIELD_KEY, RESOURCE_ID_KEY).put(INNER_HITS_KEY, innerHits))
+        .put(SORT_KEY, new JsonArray().add(new JsonObject().put(RESOURCE_ID_KEY, ASC)))
+        .put(SIZE_KEY, plan.ids().size()).put(FROM_KEY, 0);
+  }
+
+  /**
+   * Compiles a q expression, AND to a bool filter, OR to a bool should of which one must match and
+   * != to a bool must_not.
+   */
+  private JsonObject toQuery(Expression expression) {
+    if (expression.type() != Expression.Type.TERM) {
+      JsonArray clauses = new JsonArray();
+      expression.operands().forEach(operand -> clauses.add(toQuery(operand)));
+      JsonObject bool = expression.type() == Expression.Type.AND
+          ? new JsonObject().put(FILTER_KEY, clauses)
+          : new JsonObject().put(SHOULD_KEY, clauses).put(MINIMUM_SHOULD_MATCH, 1);
+      return new JsonObject().put(BOOL_KEY, bool);
+    }
+    Term term = expression.term();
+    String rangeOperator;
+    switch (term.operator()) {
+      case GREATER_THAN_OP:
+        rangeOperator = GREATER_THAN;
+        break;
+      case LESS_THAN_OP:
+        rangeOperator = LESS_THAN;
+        break;
+      case GREATER_THAN_EQ_OP:
+        rangeOperator = GREATER_THAN_EQ;
+        break;
+      case LESS_THAN_EQ_OP:
+        rangeOperator = LESS_THAN_EQ;
+        break;
+      default:
+        JsonObject termQuery = new JsonObject().put(TERM_KEY,
+            new JsonObject().put(term.attribute(), term.value()));
+        return NOT_EQUAL_OP.equals(term.operator()) ? new JsonObject().put(BOOL_KEY,
+            new JsonObject().put(MUST_NOT, new JsonArray().add(termQuery))) : termQuery;
+    }
+    return new JsonObject().put(RANGE_KEY, new JsonObject().put(term.attribute(),
+        new JsonObject().put(rangeOperator, term.value())));
+  }
+
+  /**
+   * Time window of the observationDateTime range of a plan, the range of a temporal query or the
+   * default window of the instance for other queries.
+   *
+   * @param plan compiled query plan
+   * @param timeLimit time limit of the instance, see {@link #queryDecoder(JsonObject)}
+   * @return {gte, lte} in epoch millis, an open end is null; null if the query has no time range
+   */
+  public Long[] timeWindow(QueryPlan plan, String timeLimit) {
+    return timeWindow(plan, timeLimit, null);
+  }
+
+  /**
+   * Time window of a plan whose default window, if any, spans defaultDays instead of the days of
+   * the time limit.
+   *
+   * @param plan compiled query plan
+   * @param timeLimit time limit of the instance, see {@link #queryDecoder(JsonObject)}
+   * @param defaultDays days of the default window of the searched groups, null for the time limit
+   * @return {gte, lte} in epoch millis, an open end is null; null if the query has no time range
+   */
+  public Long[] timeWindow(QueryPlan plan, String timeLimit, Integer defaultDays) {
+    String[] limit = timeLimit == null ? new String[0] : timeLimit.split(",");
+    if (plan.is(SearchKind.TEMPORAL)) {
+      return timeRange(plan.temporal(), limit);
+    } else if (plan.applicableFilters().contains("TEMPORAL") && limit.length == 3) {
+      // default window of non temporal queries, see queryDecoder.
+      if (PROD_INSTANCE.equalsIgnoreCase(limit[0])) {
+        // now-<days>d/d
+        int days = defaultDays == null ? Integer.parseInt(limit[1]) : defaultDays;
+        long start = LocalDate.now(ZoneOffset.UTC).minusDays(days).atStartOfDay(ZoneOffset.UTC)
+            .toInstant().toEpochMilli();
+        return new Long[] {start, null};
+      } else if (TEST_INSTANCE.equalsIgnoreCase(limit[0])) {
+        long end = ZonedDateTime.parse(limit[1]).toInstant().toEpochMilli();
+        return new Long[] {end - (defaultDays == null ? windowMillis(limit)
+            : TimeUnit.DAYS.toMillis(defaultDays)), end};
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Range of a temporal query, open ends of before/after are bounded by the days of the time
+   * limit and after never goes past now.
+   */
+  private Long[] timeRange(Temporal temporal, String[] limit) {
+    switch (temporal.relation()) {
+      case BEFORE:
+        long end = temporal.endMillis();
+        return new Long[] {limit.length == 3 ? end - windowMillis(limit) : null, end};
+      case AFTER:
+        long start = temporal.startMillis();
+        long now = System.currentTimeMillis();
+        return new Long[] {start,
+            limit.length == 3 ? Math.min(start + windowMillis(limit), now) : now};
+      default:
+        return new Long[] {temporal.startMillis(), temporal.endMillis()};
+    }
+  }
+
+  private JsonObject range(String field, Long gte, Long lte) {
+    JsonObject range = new JsonObject().put("format", "epoch_millis");
+    if (gte != null) {
+      range.put(GREATER_THAN_EQ, gte);
+    }
+    if (lte != null) {
+      range.put(LESS_THAN_EQ, lte);
+    }
+    return new JsonObject().put(RANGE_KEY, new JsonObject().put(field, range));
+  }
+
+  private long windowMillis(String[] limit) {
+    return TimeUnit.DAYS.toMillis(Integer.parseInt(limit[2]));
+  }
 }
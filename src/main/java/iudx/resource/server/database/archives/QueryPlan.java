@@ -0,0 +1,580 @@
+package iudx.resource.server.database.archives;
+
+import static iudx.resource.server.database.archives.Constants.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Immutable, typed form of an NGSI-LD query.
+ * <p>
+ * A plan is compiled once from the request parameters by the API server, every field is already
+ * validated and parsed: geometries are coordinate arrays, times are epoch milliseconds and the
+ * kinds of search are an enum set. It crosses the event bus as the json of {@link #toJson()}, the
+ * database service reads it back with {@link #fromJson(JsonObject)} which only copies values and
+ * never parses or validates them again.
+ * </p>
+ */
+public final class QueryPlan {
+
+  public static final String SEARCH_KINDS = "searchKinds";
+  public static final String GEO_QUERY = "geo";
+  public static final String TEMPORAL_QUERY = "temporal";
+  public static final String Q_EXPRESSION = "q";
+  public static final String SHAPE = "shape";
+  public static final String RELATION = "relation";
+  public static final String START = "start";
+  public static final String END = "end";
+  public static final String INSTANCE_ID = "instanceID";
+  public static final String APPLICABLE_FILTERS = "applicableFilters";
+  public static final String LAST_N = "lastN";
+
+  /**
+   * Kinds of search of a query, the label is the legacy <i>searchType</i> fragment.
+   */
+  public enum SearchKind {
+    TEMPORAL("temporalSearch_"),
+    LATEST("latestSearch_"),
+    GEO("geoSearch_"),
+    RESPONSE_FILTER("responseFilter_"),
+    ATTRIBUTE("attributeSearch_");
+
+    private final String label;
+
+    SearchKind(String label) {
+      this.label = label;
+    }
+  }
+
+  public enum TimeRelation {
+    DURING, BEFORE, AFTER, TEQUALS
+  }
+
+  /**
+   * Geo query, coordinates are [lon, lat] pairs. A circle has its center as only point, an
+   * envelope its top left and bottom right corners and a polygon one array of points per ring.
+   * The bounding box, when set, is used as a cheap prefilter of the shape.
+   */
+  public static final class Geo {
+    private final String shape;
+    private final String relation;
+    private final double[][][] rings;
+    private final double radius;
+    private final double[] boundingBox;
+
+    public Geo(String shape, String relation, double[][][] rings, double radius) {
+      this(shape, relation, rings, radius, null);
+    }
+
+    /**
+     * @param boundingBox [minLon, minLat, maxLon, maxLat] of the shape, may be null
+     */
+    public Geo(String shape, String relation, double[][][] rings, double radius,
+        double[] boundingBox) {
+      this.shape = shape;
+      this.relation = relation;
+      this.rings = rings;
+      this.radius = radius;
+      this.boundingBox = boundingBox;
+    }
+
+    /**
+     * @return Elasticsearch shape type : circle, envelope, linestring or polygon
+     */
+    public String shape() {
+      return shape;
+    }
+
+    public String relation() {
+      return relation;
+    }
+
+    public double[][][] rings() {
+      return rings;
+    }
+
+    /**
+     * @return radius of a circle in meters
+     */
+    public double radius() {
+      return radius;
+    }
+
+    /**
+     * @return [minLon, minLat, maxLon, maxLat] of the shape, null without prefilter
+     */
+    public double[] boundingBox() {
+      return boundingBox;
+    }
+
+    /**
+     * @return coordinates in the GeoJSON layout of the shape
+     */
+    public JsonArray coordinates() {
+      if (GEO_CIRCLE.equals(shape)) {
+        return point(rings[0][0]);
+      }
+      JsonArray polygon = new JsonArray();
+      for (double[][] ring : rings) {
+        JsonArray points = new JsonArray();
+        for (double[] point : ring) {
+          points.add(point(point));
+        }
+        polygon.add(points);
+      }
+      return POLYGON.equals(shape) ? polygon : polygon.getJsonArray(0);
+    }
+
+    private JsonObject toJson() {
+      JsonObject json = new JsonObject().put(SHAPE, shape).put(RELATION, relation)
+          .put(COORDINATES_KEY, coordinates());
+      if (boundingBox != null) {
+        json.put(BBOX, new JsonArray().add(boundingBox[0]).add(boundingBox[1])
+            .add(boundingBox[2]).add(boundingBox[3]));
+      }
+      return GEO_CIRCLE.equals(shape) ? json.put(GEO_RADIUS, radius) : json;
+    }
+
+    private static Geo fromJson(JsonObject json) {
+      String shape = json.getString(SHAPE);
+      JsonArray coordinates = json.getJsonArray(COORDINATES_KEY);
+      double[][][] rings;
+      if (GEO_CIRCLE.equals(shape)) {
+        rings = new double[][][] {{point(coordinates)}};
+      } else if (POLYGON.equals(shape)) {
+        rings = new double[coordinates.size()][][];
+        for (int i = 0; i < rings.length; i++) {
+          rings[i] = points(coordinates.getJsonArray(i));
+        }
+      } else {
+        rings = new double[][][] {points(coordinates)};
+      }
+      JsonArray bbox = json.getJsonArray(BBOX);
+      double[] boundingBox = bbox == null ? null
+          : new double[] {bbox.getDouble(0), bbox.getDouble(1), bbox.getDouble(2),
+              bbox.getDouble(3)};
+      return new Geo(shape, json.getString(RELATION), rings, json.getDouble(GEO_RADIUS, 0d),
+          boundingBox);
+    }
+
+    private static JsonArray point(double[] point) {
+      return new JsonArray().add(point[0]).add(point[1]);
+    }
+
+    private static double[] point(JsonArray point) {
+      return new double[] {point.getDouble(0), point.getDouble(1)};
+    }
+
+    private static double[][] points(JsonArray array) {
+      double[][] points = new double[array.size()][];
+      for (int i = 0; i < points.length; i++) {
+        points[i] = point(array.getJsonArray(i));
+      }
+      return points;
+    }
+  }
+
+  /**
+   * Temporal query, a bound not given by the relation is null (open end of before/after).
+   */
+  public static final class Temporal {
+    private final TimeRelation relation;
+    private final Long startMillis;
+    private final Long endMillis;
+
+    public Temporal(TimeRelation relation, Long startMillis, Long endMillis) {
+      this.relation = relation;
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+    }
+
+    public TimeRelation relation() {
+      return relation;
+    }
+
+    public Long startMillis() {
+      return startMillis;
+    }
+
+    public Long endMillis() {
+      return endMillis;
+    }
+
+    private JsonObject toJson() {
+      return new JsonObject().put(RELATION, relation.name()).put(START, startMillis)
+          .put(END, endMillis);
+    }
+
+    private static Temporal fromJson(JsonObject json) {
+      return new Temporal(TimeRelation.valueOf(json.getString(RELATION)), json.getLong(START),
+          json.getLong(END));
+    }
+  }
+
+  /**
+   * Attribute condition of a q term, range values are numbers and equality values strings.
+   */
+  public static final class Term {
+    private final String attribute;
+    private final String operator;
+    private final Object value;
+
+    public Term(String attribute, String operator, Object value) {
+      this.attribute = attribute;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    public String attribute() {
+      return attribute;
+    }
+
+    public String operator() {
+      return operator;
+    }
+
+    public Object value() {
+      return value;
+    }
+
+    private JsonObject toJson() {
+      return new JsonObject().put(ATTRIBUTE_KEY, attribute).put(OPERATOR, operator)
+          .put(VALUE, value);
+    }
+
+    private static Term fromJson(JsonObject json) {
+      return new Term(json.getString(ATTRIBUTE_KEY), json.getString(OPERATOR),
+          json.getValue(VALUE));
+    }
+  }
+
+  /**
+   * Expression tree of a q query, inner nodes are AND/OR of their operands and leaves are terms.
+   */
+  public static final class Expression {
+
+    public enum Type {
+      AND, OR, TERM
+    }
+
+    private final Type type;
+    private final List<Expression> operands;
+    private final Term term;
+
+    private Expression(Type type, List<Expression> operands, Term term) {
+      this.type = type;
+      this.operands = operands;
+      this.term = term;
+    }
+
+    public static Expression term(Term term) {
+      return new Expression(Type.TERM, List.of(), term);
+    }
+
+    /**
+     * @return AND of the operands, the operand itself when there is only one
+     */
+    public static Expression and(List<Expression> operands) {
+      return operands.size() == 1 ? operands.get(0)
+          : new Expression(Type.AND, List.copyOf(operands), null);
+    }
+
+    /**
+     * @return OR of the operands, the operand itself when there is only one
+     */
+    public static Expression or(List<Expression> operands) {
+      return operands.size() == 1 ? operands.get(0)
+          : new Expression(Type.OR, List.copyOf(operands), null);
+    }
+
+    public Type type() {
+      return type;
+    }
+
+    public List<Expression> operands() {
+      return operands;
+    }
+
+    /**
+     * @return term of a leaf, null for AND/OR
+     */
+    public Term term() {
+      return term;
+    }
+
+    private Object toJson() {
+      if (type == Type.TERM) {
+        return term.toJson();
+      }
+      JsonArray json = new JsonArray();
+      operands.forEach(operand -> json.add(operand.toJson()));
+      return new JsonObject().put(type.name().toLowerCase(), json);
+    }
+
+    private static Expression fromJson(JsonObject json) {
+      for (Type type : List.of(Type.AND, Type.OR)) {
+        JsonArray operands = json.getJsonArray(type.name().toLowerCase());
+        if (operands != null) {
+          List<Expression> expressions = new ArrayList<>(operands.size());
+          operands.forEach(operand -> expressions.add(fromJson((JsonObject) operand)));
+          return new Expression(type, List.copyOf(expressions), null);
+        }
+      }
+      return term(Term.fromJson(json));
+    }
+  }
+
+  private final List<String> ids;
+  private final Set<SearchKind> searchKinds;
+  private final Geo geo;
+  private final Temporal temporal;
+  private final List<String> attrs;
+  private final Expression q;
+  private final String options;
+  private final Integer limit;
+  private final Integer offset;
+  private final Integer lastN;
+  private final String instanceId;
+  private final List<String> applicableFilters;
+
+  private QueryPlan(Builder builder) {
+    this.ids = Collections.unmodifiableList(new ArrayList<>(builder.ids));
+    this.geo = builder.geo;
+    this.temporal = builder.temporal;
+    this.attrs = builder.attrs == null ? null
+        : Collections.unmodifiableList(new ArrayList<>(builder.attrs));
+    this.q = builder.q;
+    this.options = builder.options;
+    this.limit = builder.limit;
+    this.offset = builder.offset;
+    this.lastN = builder.lastN;
+    this.instanceId = builder.instanceId;
+    this.applicableFilters = builder.applicableFilters == null ? List.of()
+        : Collections.unmodifiableList(new ArrayList<>(builder.applicableFilters));
+    EnumSet<SearchKind> kinds = EnumSet.of(temporal != null ? SearchKind.TEMPORAL
+        : SearchKind.LATEST);
+    if (geo != null) {
+      kinds.add(SearchKind.GEO);
+    }
+    if (attrs != null) {
+      kinds.add(SearchKind.RESPONSE_FILTER);
+    }
+    if (q != null) {
+      kinds.add(SearchKind.ATTRIBUTE);
+    }
+    this.searchKinds = Collections.unmodifiableSet(kinds);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return true if the request json carries a query plan
+   */
+  public static boolean isPlan(JsonObject json) {
+    return json.containsKey(SEARCH_KINDS);
+  }
+
+  public List<String> ids() {
+    return ids;
+  }
+
+  public Set<SearchKind> searchKinds() {
+    return searchKinds;
+  }
+
+  public boolean is(SearchKind kind) {
+    return searchKinds.contains(kind);
+  }
+
+  public Geo geo() {
+    return geo;
+  }
+
+  public Temporal temporal() {
+    return temporal;
+  }
+
+  /**
+   * @return attributes of the response filter, null without response filter
+   */
+  public List<String> attrs() {
+    return attrs;
+  }
+
+  /**
+   * @return q expression, null without attribute search
+   */
+  public Expression q() {
+    return q;
+  }
+
+  public String options() {
+    return options;
+  }
+
+  public Integer limit() {
+    return limit;
+  }
+
+  public Integer offset() {
+    return offset;
+  }
+
+  /**
+   * @return number of latest observations returned per entity, null to return all observations
+   */
+  public Integer lastN() {
+    return lastN;
+  }
+
+  public String instanceId() {
+    return instanceId;
+  }
+
+  public List<String> applicableFilters() {
+    return applicableFilters;
+  }
+
+  /**
+   * @return the legacy searchType string of the plan, e.g. <i>temporalSearch_geoSearch</i>
+   */
+  public String searchType() {
+    StringBuilder searchType = new StringBuilder();
+    searchKinds.forEach(kind -> searchType.append(kind.label));
+    return searchType.substring(0, searchType.length() - 1);
+  }
+
+  public JsonObject toJson() {
+    JsonArray kinds = new JsonArray();
+    searchKinds.forEach(kind -> kinds.add(kind.name()));
+    JsonObject json = new JsonObject().put(ID, new JsonArray(new ArrayList<>(ids)))
+        .put(SEARCH_KINDS, kinds).put(SEARCH_TYPE, searchType());
+    if (geo != null) {
+      json.put(GEO_QUERY, geo.toJson());
+    }
+    if (temporal != null) {
+      json.put(TEMPORAL_QUERY, temporal.toJson());
+    }
+    if (attrs != null) {
+      json.put(RESPONSE_ATTRS, new JsonArray(new ArrayList<>(attrs)));
+    }
+    if (q != null) {
+      json.put(Q_EXPRESSION, q.toJson());
+    }
+    json.put(OPTIONS, options).put(PARAM_SIZE, limit)
+        .put(PARAM_FROM, offset).put(LAST_N, lastN).put(INSTANCE_ID, instanceId)
+        .put(APPLICABLE_FILTERS, new JsonArray(new ArrayList<>(applicableFilters)));
+    return json;
+  }
+
+  public static QueryPlan fromJson(JsonObject json) {
+    Builder builder = builder().options(json.getString(OPTIONS))
+        .limit(json.getInteger(PARAM_SIZE)).offset(json.getInteger(PARAM_FROM))
+        .lastN(json.getInteger(LAST_N)).instanceId(json.getString(INSTANCE_ID));
+    json.getJsonArray(ID, new JsonArray()).forEach(id -> builder.id((String) id));
+    if (json.containsKey(GEO_QUERY)) {
+      builder.geo(Geo.fromJson(json.getJsonObject(GEO_QUERY)));
+    }
+    if (json.containsKey(TEMPORAL_QUERY)) {
+      builder.temporal(Temporal.fromJson(json.getJsonObject(TEMPORAL_QUERY)));
+    }
+    if (json.containsKey(RESPONSE_ATTRS)) {
+      List<String> attrs = new ArrayList<>();
+      json.getJsonArray(RESPONSE_ATTRS).forEach(attr -> attrs.add((String) attr));
+      builder.attrs(attrs);
+    }
+    if (json.containsKey(Q_EXPRESSION)) {
+      builder.q(Expression.fromJson(json.getJsonObject(Q_EXPRESSION)));
+    }
+    List<String> filters = new ArrayList<>();
+    json.getJsonArray(APPLICABLE_FILTERS, new JsonArray())
+        .forEach(filter -> filters.add((String) filter));
+    return builder.applicableFilters(filters).build();
+  }
+
+  @Override
+  public String toString() {
+    return toJson().encode();
+  }
+
+  public static final class Builder {
+    private final List<String> ids = new ArrayList<>();
+    private Geo geo;
+    private Temporal temporal;
+    private Expression q;
+    private List<String> attrs;
+    private String options;
+    private Integer limit;
+    private Integer offset;
+    private Integer lastN;
+    private String instanceId;
+    private List<String> applicableFilters;
+
+    private Builder() {}
+
+    public Builder id(String id) {
+      ids.add(id);
+      return this;
+    }
+
+    public Builder geo(Geo geo) {
+      this.geo = geo;
+      return this;
+    }
+
+    public Builder temporal(Temporal temporal) {
+      this.temporal = temporal;
+      return this;
+    }
+
+    public Builder attrs(List<String> attrs) {
+      this.attrs = attrs;
+      return this;
+    }
+
+    public Builder q(Expression q) {
+      this.q = q;
+      return this;
+    }
+
+    public Builder options(String options) {
+      this.options = options;
+      return this;
+    }
+
+    public Builder limit(Integer limit) {
+      this.limit = limit;
+      return this;
+    }
+
+    public Builder offset(Integer offset) {
+      this.offset = offset;
+      return this;
+    }
+
+    public Builder lastN(Integer lastN) {
+      this.lastN = lastN;
+      return this;
+    }
+
+    public Builder instanceId(String instanceId) {
+      this.instanceId = instanceId;
+      return this;
+    }
+
+    public Builder applicableFilters(List<String> applicableFilters) {
+      this.applicableFilters = applicableFilters;
+      return this;
+    }
+
+    public QueryPlan build() {
+      return new QueryPlan(this);
+    }
+  }
+}
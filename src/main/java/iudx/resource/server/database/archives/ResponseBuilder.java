@@ -3,6 +3,7 @@ package iudx.resource.server.database.archives;
 import static iudx.resource.server.database.archives.Constants.*;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceException;
 
 public class ResponseBuilder {
 
@@ -71,4 +72,13 @@ public class ResponseBuilder {
   public JsonObject getResponse() {
     return response;
   }
+
+  /**
+   * Failure of a database request, the failure code is the http status and the response is
+   * available as debug info so callers need not parse the message.
+   */
+  public ServiceException toFailure() {
+    return new ServiceException(response.getInteger(ERROR_TYPE), response.getString(DETAIL),
+        response);
+  }
 }
@@ -0,0 +1,117 @@
+package iudx.resource.server.database.archives;
+
+import static iudx.resource.server.database.archives.Constants.*;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Log of the database queries slower than a threshold.
+ * <p>
+ * A search taking more than {@code searchThreshold} ms (count and search requests together) or a
+ * count taking more than {@code countThreshold} ms is logged at WARN as one json line with the
+ * decoded request, the indices, the Elasticsearch query, the timings and the hit counts. Only
+ * {@code sampleRatio} of the slow queries are logged. {@code profileRatio} of the logged queries
+ * are run again with {@code profile: true} and the Elasticsearch profile is logged in a second
+ * line with the same id, the rerun adds load to the cluster and is off by default. Latest lookups
+ * are multi gets on the latest index, they are logged against {@code searchThreshold} but never
+ * profiled.
+ * </p>
+ */
+public final class SlowQueryLog {
+
+  private static final Logger LOGGER = LogManager.getLogger(SlowQueryLog.class);
+
+  public static final String SEARCH = "search";
+  public static final String COUNT = "count";
+  public static final String LATEST = "latest";
+
+  private static final long DEFAULT_SEARCH_THRESHOLD = 1000;
+  private static final long DEFAULT_COUNT_THRESHOLD = 500;
+
+  private final ElasticClient client;
+  private final long searchThreshold;
+  private final long countThreshold;
+  private final double sampleRatio;
+  private final double profileRatio;
+
+  /**
+   * @param client elastic client used to profile queries
+   * @param config slowQueryLog config block
+   */
+  public SlowQueryLog(ElasticClient client, JsonObject config) {
+    this.client = client;
+    this.searchThreshold = config.getLong("searchThreshold", DEFAULT_SEARCH_THRESHOLD);
+    this.countThreshold = config.getLong("countThreshold", DEFAULT_COUNT_THRESHOLD);
+    this.sampleRatio = config.getDouble("sampleRatio", 1d);
+    this.profileRatio = config.getDouble("profileRatio", 0d);
+  }
+
+  /**
+   * Logs a query if it is slow and sampled.
+   *
+   * @param operation {@link #SEARCH}, {@link #COUNT} or {@link #LATEST}
+   * @param request decoded request (query plan) received by the database service
+   * @param indices indices queried, comma separated
+   * @param query Elasticsearch query
+   * @param countNanos duration of the count request, 0 if none
+   * @param searchNanos duration of the search request, 0 if none
+   * @param hits hits returned, null if the query failed
+   * @param totalHits total hits of the query, null if not known
+   */
+  public void record(String operation, JsonObject request, String indices, JsonObject query,
+      long countNanos, long searchNanos, Integer hits, Integer totalHits) {
+    long totalMillis = TimeUnit.NANOSECONDS.toMillis(countNanos + searchNanos);
+    long threshold = COUNT.equals(operation) ? countThreshold : searchThreshold;
+    if (totalMillis < threshold || !sampled(sampleRatio)) {
+      return;
+    }
+    String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    JsonObject entry = new JsonObject().put("slowQuery", id).put("operation", operation)
+        .put("searchType", request.getString(SEARCH_TYPE)).put("indices", indices)
+        .put("request", request).put("query", query)
+        .put("countMs", TimeUnit.NANOSECONDS.toMillis(countNanos))
+        .put("searchMs", TimeUnit.NANOSECONDS.toMillis(searchNanos))
+        .put("totalMs", totalMillis).put("hits", hits).put("totalHits", totalHits)
+        .put("failed", hits == null);
+    LOGGER.warn(entry.encode());
+    if (!LATEST.equals(operation) && sampled(profileRatio)) {
+      profile(id, indices, query);
+    }
+  }
+
+  /**
+   * Runs the query again with profiling, without hits, and logs the profile.
+   */
+  private void profile(String id, String indices, JsonObject query) {
+    client.requestAsync(REQUEST_GET, indices + SEARCH_REQ_PARAM,
+        Map.of(FILTER_PATH, "took,profile"), profileQuery(query).encode(), handler -> {
+          if (handler.succeeded()) {
+            LOGGER.warn(new JsonObject().put("slowQuery", id)
+                .put("profile", new JsonObject(handler.result())).encode());
+          } else {
+            LOGGER.error("slow query profile failed : " + handler.cause().getMessage());
+          }
+        });
+  }
+
+  /**
+   * @return the query with profiling, without hits unless it collapses them
+   */
+  static JsonObject profileQuery(JsonObject query) {
+    JsonObject profiled = query.copy().put("profile", true);
+    // a lastN query is profiled with its own size (one hit per entity), the collapse and inner
+    // hits are what it costs.
+    if (!profiled.containsKey(COLLAPSE_KEY)) {
+      profiled.put(SIZE_KEY, 0).remove(FROM_KEY);
+    }
+    return profiled;
+  }
+
+  private static boolean sampled(double ratio) {
+    return ratio >= 1d || (ratio > 0d && ThreadLocalRandom.current().nextDouble() < ratio);
+  }
+}
@@ -62,7 +62,7 @@ public class LatestDataServiceImpl implements LatestDataService{
         if (!request.containsKey(ID)) {
             LOGGER.debug("Info: " + ID_NOT_FOUND);
             responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(ID_NOT_FOUND);
-            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return null;
         }
 
@@ -70,14 +70,14 @@ public class LatestDataServiceImpl implements LatestDataService{
             LOGGER.debug("Info: " + EMPTY_RESOURCE_ID);
             responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
                     .setMessage(EMPTY_RESOURCE_ID);
-            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return null;
         }
 
 //        if (!request.containsKey(OPTIONS)) {
 //            LOGGER.debug("Info: " + OPTIONS_NOT_FOUND);
 //            responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400).setMessage(OPTIONS_NOT_FOUND);
-//            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+//            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
 //            return null;
 //        }
 //
@@ -85,7 +85,7 @@ public class LatestDataServiceImpl implements LatestDataService{
 //            LOGGER.debug("Info: " + EMPTY_OPTIONS);
 //            responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
 //                    .setMessage(EMPTY_OPTIONS);
-//            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+//            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
 //            return null;
 //        }
 
@@ -95,7 +95,7 @@ public class LatestDataServiceImpl implements LatestDataService{
 //            LOGGER.debug("Info: " + EMPTY_OPTIONS);
 //            responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(400)
 //                    .setMessage(INVALID_OPTIONS);
-//            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+//            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
 //            return null;
 //        }
 
@@ -112,7 +112,7 @@ public class LatestDataServiceImpl implements LatestDataService{
             responseBuilder =
                     new ResponseBuilder(FAILED).setTypeAndTitle(400)
                             .setMessage(query.getString(ERROR));
-            handler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+            handler.handle(Future.failedFuture(responseBuilder.toFailure()));
             return null;
         }
 
@@ -123,7 +123,7 @@ public class LatestDataServiceImpl implements LatestDataService{
                 handler.handle(Future.succeededFuture(searchRes.result()));
             } else {
                 LOGGER.error("Fail: Redis Cache Request;" + searchRes.cause().getMessage());
-                handler.handle(Future.failedFuture(searchRes.cause().getMessage()));
+                handler.handle(Future.failedFuture(searchRes.cause()));
             }
         });
 
@@ -5,6 +5,7 @@ import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.json.JsonObject;
 import io.vertx.serviceproxy.ServiceBinder;
 import iudx.resource.server.database.archives.Constants;
+import iudx.resource.server.common.LocalServices;
 
 public class LatestVerticle extends AbstractVerticle {
 
@@ -66,10 +67,12 @@ public class LatestVerticle extends AbstractVerticle {
             consumer =
                     binder.setAddress(Constants.LATEST_DATA_SERVICE_ADDRESS)
                             .register(LatestDataService.class, latestData);
+            LocalServices.register(vertx, Constants.LATEST_DATA_SERVICE_ADDRESS, latestData);
         }
 
         @Override
         public void stop() {
+            LocalServices.unregister(vertx, Constants.LATEST_DATA_SERVICE_ADDRESS, latestData);
             binder.unregister(consumer);
         }
 }
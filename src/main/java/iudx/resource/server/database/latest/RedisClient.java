@@ -13,12 +13,17 @@ import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import iudx.resource.server.common.InFlight;
+import iudx.resource.server.common.StageTimers;
+import iudx.resource.server.common.tracing.Span;
+import iudx.resource.server.common.tracing.Tracer;
 import iudx.resource.server.database.archives.ResponseBuilder;
 
 public class RedisClient {
     // private Redis redisClient;
     private ResponseBuilder responseBuilder;
     private static final Logger LOGGER = LogManager.getLogger(RedisClient.class);
+    private static final String STAGE_GET = "redis.get";
     private Vertx vertx;
     private JReJSON client;
 
@@ -67,7 +72,7 @@ public class RedisClient {
                 resultRedis.cause().printStackTrace();
                 responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(204)
                         .setMessage(resultRedis.cause().getLocalizedMessage());
-                searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+                searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
             }
         });
 
@@ -91,7 +96,7 @@ public class RedisClient {
 //                LOGGER.error("Redis Error: " + responseAsyncResult.toString());
 //                responseBuilder = new ResponseBuilder(FAILED).setTypeAndTitle(500)
 //                        .setMessage(REDIS_ERROR);
-//                searchHandler.handle(Future.failedFuture(responseBuilder.getResponse().toString()));
+//                searchHandler.handle(Future.failedFuture(responseBuilder.toFailure()));
 //            }
 //
 //
@@ -198,6 +203,12 @@ public class RedisClient {
 
     public Future<JsonObject> get(String key, String path) {
         Promise<JsonObject> promise = Promise.promise();
+        long start = System.nanoTime();
+        Span span = Tracer.startSpan("redis.get", Span.Kind.CLIENT);
+        if (span != null) {
+            span.setAttribute("db.system", "redis");
+        }
+        Runnable done = InFlight.begin(InFlight.REDIS);
         vertx.executeBlocking(getFromRedisHandler -> {
             JsonObject json = getFromRedis(key, path);
             if (json == null) {
@@ -206,6 +217,10 @@ public class RedisClient {
                 getFromRedisHandler.complete(json);
             }
         }, resultHandler -> {
+            // includes the wait for a worker thread, which is part of the latency seen by a request
+            done.run();
+            StageTimers.record(STAGE_GET, null, LATEST_SEARCH, System.nanoTime() - start);
+            Tracer.end(span, resultHandler.cause());
             if (resultHandler.succeeded()) {
                 promise.complete((JsonObject) resultHandler.result());
             } else {
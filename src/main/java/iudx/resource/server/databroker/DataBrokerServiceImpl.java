@@ -10,7 +10,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import io.vertx.rabbitmq.RabbitMQClient;
 import iudx.resource.server.databroker.util.Util;
+import java.util.HashMap;
 import java.util.Map;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BasicProperties;
+import iudx.resource.server.common.tracing.Span;
+import iudx.resource.server.common.tracing.Tracer;
 import org.apache.http.HttpStatus;
 import static iudx.resource.server.databroker.util.Constants.*;
 
@@ -713,8 +718,15 @@ public class DataBrokerServiceImpl implements DataBrokerService {
         LOGGER.debug("Info : resourceGroupId  " + resourceGroupId);
         LOGGER.debug("Info : routingKey  " + routingKey);
         Buffer buffer=Buffer.buffer(json.toString());
-        webClient.getRabbitMQClient().basicPublish(resourceGroupId, routingKey, buffer,
+        // trace context of the ingestion request travels in the message headers.
+        Span span = Tracer.startSpan("rabbitmq.publish", Span.Kind.PRODUCER);
+        Map<String, Object> headers = new HashMap<>();
+        Tracer.inject(span, headers::put);
+        BasicProperties properties =
+            new AMQP.BasicProperties.Builder().headers(headers.isEmpty() ? null : headers).build();
+        webClient.getRabbitMQClient().basicPublish(resourceGroupId, routingKey, properties, buffer,
             resultHandler -> {
+          Tracer.end(span, resultHandler.cause());
           if (resultHandler.succeeded()) {
             finalResponse.put(STATUS, HttpStatus.SC_OK);
             LOGGER.info("Success : Message published to queue");
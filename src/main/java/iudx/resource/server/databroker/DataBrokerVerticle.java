@@ -13,6 +13,7 @@ import io.vertx.rabbitmq.RabbitMQClient;
 import io.vertx.rabbitmq.RabbitMQOptions;
 import io.vertx.serviceproxy.ServiceBinder;
 import io.vertx.sqlclient.PoolOptions;
+import iudx.resource.server.common.LocalServices;
 
 /**
  * The Data Broker Verticle.
@@ -166,12 +167,14 @@ public class DataBrokerVerticle extends AbstractVerticle {
     consumer =
         binder.setAddress(BROKER_SERVICE_ADDRESS)
       .register(DataBrokerService.class, databroker);
+    LocalServices.register(vertx, BROKER_SERVICE_ADDRESS, databroker);
 
   }
 
 
   @Override
   public void stop() {
+    LocalServices.unregister(vertx, BROKER_SERVICE_ADDRESS, databroker);
     binder.unregister(consumer);
   }
 }
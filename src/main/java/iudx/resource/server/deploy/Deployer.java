@@ -16,6 +16,7 @@ import io.vertx.core.cli.CLI;
 import io.vertx.core.cli.Option;
 import io.vertx.core.cli.CommandLine;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.tracing.TracingPolicy;
 import io.vertx.core.DeploymentOptions;
 
 import java.util.Arrays;
@@ -33,6 +34,7 @@ import io.vertx.micrometer.MicrometerMetricsOptions;
 import io.vertx.micrometer.Label;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.micrometer.backends.BackendRegistries;
+import iudx.resource.server.common.tracing.Tracer;
 // JVM metrics imports
 import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
 import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
@@ -55,7 +57,7 @@ public class Deployer {
     }
     JsonObject config = configs.getJsonArray("modules").getJsonObject(i);
     String moduleName = config.getString("id");
-    int numInstances = config.getInteger("verticleInstances");
+    int numInstances = getNumInstances(config);
     vertx.deployVerticle(moduleName,
                            new DeploymentOptions()
                                   .setInstances(numInstances)
@@ -70,6 +72,15 @@ public class Deployer {
     });
   }
 
+  /**
+   * Number of instances of a module, one when not configured. Zero deploys one instance per event
+   * loop, instances of a verticle listening on the same port share it.
+   */
+  public static int getNumInstances(JsonObject config) {
+    int numInstances = config.getInteger("verticleInstances", 1);
+    return numInstances > 0 ? numInstances : VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE;
+  }
+
   public static ClusterManager getClusterManager(String host,
                                                   List<String> zookeepers,
                                                   String clusterID) {
@@ -95,13 +106,26 @@ public class Deployer {
     return new MicrometerMetricsOptions()
         .setPrometheusOptions(
             new VertxPrometheusOptions().setEnabled(true).setStartEmbeddedServer(true)
-                .setEmbeddedServerOptions(new HttpServerOptions().setPort(9000)))
-        // .setPublishQuantiles(true))
+                .setEmbeddedServerOptions(new HttpServerOptions().setPort(9000)
+                    .setTracingPolicy(TracingPolicy.IGNORE))
+                .setPublishQuantiles(true))
         .setLabels(EnumSet.of(Label.EB_ADDRESS, Label.EB_FAILURE, Label.HTTP_CODE,
             Label.HTTP_METHOD, Label.HTTP_PATH))
         .setEnabled(true);
   }
 
+  /**
+   * Logs the transport in use, native transport needs the netty epoll jar (native-transport maven
+   * profile) on a linux host.
+   */
+  public static void logTransport(Vertx vertx, VertxOptions options) {
+    if (vertx.isNativeTransportEnabled()) {
+      LOGGER.info("Using native transport");
+    } else if (options.getPreferNativeTransport()) {
+      LOGGER.warn("Native transport preferred but not available, using NIO transport");
+    }
+  }
+
   public static void setJVMmetrics() {
     MeterRegistry registry = BackendRegistries.getDefaultNow();
     new JvmMemoryMetrics().bindTo(registry);
@@ -129,11 +153,14 @@ public class Deployer {
     mgr = getClusterManager(host, zookeepers, clusterId);
     EventBusOptions ebOptions = new EventBusOptions().setClusterPublicHost(host);
     VertxOptions options = new VertxOptions().setClusterManager(mgr).setEventBusOptions(ebOptions)
-        .setMetricsOptions(getMetricsOptions());
+        .setMetricsOptions(getMetricsOptions())
+        .setTracingOptions(Tracer.options(configuration.getJsonObject("tracing")))
+        .setPreferNativeTransport(configuration.getBoolean("preferNativeTransport", false));
 
     Vertx.clusteredVertx(options, res -> {
       if (res.succeeded()) {
         vertx = res.result();
+        logTransport(vertx, options);
         setJVMmetrics();
         recursiveDeploy(vertx, configuration, 0);
       } else {
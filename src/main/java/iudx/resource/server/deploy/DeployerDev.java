@@ -10,6 +10,7 @@ import io.vertx.core.cli.Option;
 import io.vertx.core.cli.CommandLine;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.DeploymentOptions;
+import iudx.resource.server.common.tracing.Tracer;
 
 
 import java.util.Arrays;
@@ -34,7 +35,7 @@ public class DeployerDev {
     }
     JsonObject config = configs.getJsonArray("modules").getJsonObject(i);
     String moduleName = config.getString("id");
-    int numInstances = config.getInteger("verticleInstances");
+    int numInstances = Deployer.getNumInstances(config);
     vertx.deployVerticle(moduleName,
                           new DeploymentOptions()
                             .setInstances(numInstances)
@@ -65,7 +66,10 @@ public class DeployerDev {
       return;
     }
     JsonObject configuration = new JsonObject(config);
+    options.setPreferNativeTransport(configuration.getBoolean("preferNativeTransport", false));
+    options.setTracingOptions(Tracer.options(configuration.getJsonObject("tracing")));
     Vertx vertx = Vertx.vertx(options);
+    Deployer.logTransport(vertx, options);
     recursiveDeploy(vertx, configuration, 0);
   }
 
@@ -0,0 +1,101 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.IdSource;
+import iudx.resource.server.authenticator.AuthenticationService;
+
+@ExtendWith(VertxExtension.class)
+public class AuthHandlerTest {
+
+  private static final int PORT = 18097;
+  private static final String ADAPTER_URL = "/iudx/v1/adapter";
+  private static final String SUBSCRIPTION_URL = "/ngsi-ld/v1/subscription";
+  private static final String ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/pune-env-flood/FWR055";
+
+  private WebClient client;
+
+  /**
+   * Answers the introspection with the request it received, as the access checks see it.
+   */
+  private static final class EchoAuthenticator implements AuthenticationService {
+    @Override
+    public AuthenticationService tokenInterospect(JsonObject request,
+        JsonObject authenticationInfo, Handler<AsyncResult<JsonObject>> handler) {
+      handler.handle(Future.succeededFuture(request));
+      return this;
+    }
+  }
+
+  @BeforeEach
+  public void setup(Vertx vertx, VertxTestContext testContext) {
+    AuthenticationService authenticator = new EchoAuthenticator();
+    Router router = Router.router(vertx);
+    router.post(ADAPTER_URL + "/register").handler(RequestBodyHandler.buffered(1024))
+        .handler(AuthHandler.create(authenticator,
+            RouteMetadata.of(EndpointKind.ADAPTER, ADAPTER_URL, IdSource.PATH)))
+        .handler(this::respond);
+    router.post(SUBSCRIPTION_URL).handler(RequestBodyHandler.buffered(1024))
+        .handler(AuthHandler.create(authenticator,
+            RouteMetadata.of(EndpointKind.SUBSCRIPTION, SUBSCRIPTION_URL, IdSource.PATH)))
+        .handler(this::respond);
+    client = WebClient.create(vertx);
+    vertx.createHttpServer().requestHandler(router).listen(PORT, testContext.succeeding(
+        server -> testContext.completeNow()));
+  }
+
+  private void respond(RoutingContext context) {
+    JsonObject introspected = context.get("authInfo");
+    JsonObject body = RequestBodyHandler.getRequestJson(context);
+    context.response().end(new JsonObject().put("introspected", introspected)
+        .put("body", body).toString());
+  }
+
+  @Test
+  @DisplayName("adapter register introspection receives the resource group of the body")
+  public void testAdapterRegisterBody(Vertx vertx, VertxTestContext testContext) {
+    JsonObject body = new JsonObject().put("resourceGroup", "pune-env-flood")
+        .put("resourceServer", "rs.iudx.io");
+    client.post(PORT, "localhost", ADAPTER_URL + "/register").sendJsonObject(body, handler -> {
+      assertEquals(200, handler.result().statusCode());
+      JsonObject response = handler.result().bodyAsJsonObject();
+      JsonObject introspected = response.getJsonObject("introspected");
+      assertEquals("pune-env-flood", introspected.getString("resourceGroup"));
+      assertEquals("rs.iudx.io", introspected.getString("resourceServer"));
+      assertTrue(introspected.containsKey("ids"));
+      // the shared body is not modified.
+      assertEquals(body, response.getJsonObject("body"));
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("subscription introspection receives the entities of the body")
+  public void testSubscriptionBody(Vertx vertx, VertxTestContext testContext) {
+    JsonObject body = new JsonObject().put("name", "flood")
+        .put("entities", new JsonArray().add(ID));
+    client.post(PORT, "localhost", SUBSCRIPTION_URL).sendJsonObject(body, handler -> {
+      assertEquals(200, handler.result().statusCode());
+      JsonObject introspected = handler.result().bodyAsJsonObject()
+          .getJsonObject("introspected");
+      assertEquals(ID, introspected.getJsonArray("entities").getString(0));
+      testContext.completeNow();
+    });
+  }
+}
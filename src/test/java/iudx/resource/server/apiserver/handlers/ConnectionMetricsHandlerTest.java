@@ -0,0 +1,81 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class ConnectionMetricsHandlerTest {
+
+  private static final int PORT = 18090;
+
+  @Test
+  @DisplayName("h2c requests are counted as streams of one connection")
+  public void testHttp2Streams(Vertx vertx, VertxTestContext testContext) {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    Router router = Router.router(vertx);
+    router.route().handler(ConnectionMetricsHandler.create(registry, "test"));
+    router.get("/ping").handler(ctx -> ctx.response().end("pong"));
+    HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+        .setProtocolVersion(HttpVersion.HTTP_2).setHttp2ClearTextUpgrade(false));
+
+    vertx.createHttpServer().requestHandler(router).listen(PORT, testContext.succeeding(
+        server -> client.request(HttpMethod.GET, PORT, "localhost", "/ping")
+            .compose(request -> request.send())
+            .compose(first -> client.request(HttpMethod.GET, PORT, "localhost", "/ping"))
+            .compose(request -> request.send())
+            .onComplete(testContext.succeeding(second -> {
+              assertEquals(HttpVersion.HTTP_2, second.version());
+              assertEquals(1.0,
+                  registry.get("iudx.rs.http.connections").tag("version", "h2").counter().count());
+              assertEquals(2.0,
+                  registry.get("iudx.rs.http.streams").tag("version", "h2").counter().count());
+              assertEquals(1.0, registry.get("iudx.rs.http.connections.active")
+                  .tag("version", "h2").gauge().value());
+              testContext.completeNow();
+            }))));
+  }
+
+  @Test
+  @DisplayName("closed connections are tracked alongside application close handlers")
+  public void testConnectionClosed(Vertx vertx, VertxTestContext testContext) {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    Router router = Router.router(vertx);
+    router.route().handler(ConnectionMetricsHandler.create(registry, "closed"));
+    // an instance on the same event loop shares the meters.
+    ConnectionMetricsHandler.create(registry, "closed");
+    assertEquals(1, registry.find("iudx.rs.http.connections.active").tag("version", "h2")
+        .tag("eventLoop", "closed").gauges().size());
+    AtomicBoolean closed = new AtomicBoolean();
+    router.get("/ping").handler(ctx -> {
+      ctx.request().connection().closeHandler(v -> closed.set(true));
+      ctx.response().end("pong");
+    });
+    HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+        .setProtocolVersion(HttpVersion.HTTP_2).setHttp2ClearTextUpgrade(false));
+
+    vertx.createHttpServer().requestHandler(router).listen(PORT + 10, testContext.succeeding(
+        server -> client.request(HttpMethod.GET, PORT + 10, "localhost", "/ping")
+            .compose(request -> request.send())
+            .onComplete(testContext.succeeding(response -> client.close(v -> vertx.setTimer(200,
+                timer -> testContext.verify(() -> {
+                  assertTrue(closed.get());
+                  assertEquals(1.0, registry.get("iudx.rs.http.connections")
+                      .tag("version", "h2").tag("eventLoop", "closed").counter().count());
+                  assertEquals(0.0, registry.get("iudx.rs.http.connections.active")
+                      .tag("version", "h2").tag("eventLoop", "closed").gauge().value());
+                  testContext.completeNow();
+                })))))));
+  }
+}
@@ -0,0 +1,72 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+import iudx.resource.server.apiserver.overload.OverloadController;
+import iudx.resource.server.common.InFlight;
+
+@ExtendWith(VertxExtension.class)
+public class LoadSheddingHandlerTest {
+
+  private static final int PORT = 18096;
+  private static final String BACKEND = "test.shedding.backend";
+
+  @Test
+  @DisplayName("large temporal queries are shed first, latest is kept")
+  public void testPriorityShedding(Vertx vertx, VertxTestContext testContext) {
+    OverloadController controller = OverloadController.getOrCreate(vertx, new JsonObject()
+        .put("enabled", true).put("maxInFlight", new JsonObject().put(BACKEND, 10)));
+    Router router = Router.router(vertx);
+    router.get("/temporal")
+        .handler(LoadSheddingHandler.create(controller, EndpointKind.TEMPORAL, List.of(BACKEND)))
+        .handler(ctx -> ctx.response().end("ok"));
+    router.get("/latest")
+        .handler(LoadSheddingHandler.create(controller, EndpointKind.LATEST, List.of(BACKEND)))
+        .handler(ctx -> ctx.response().end("ok"));
+    // 60% of the backend limit: above the BULK threshold, below the others.
+    List<Runnable> calls = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      calls.add(InFlight.begin(BACKEND));
+    }
+    HttpClient client = vertx.createHttpClient();
+
+    vertx.createHttpServer().requestHandler(router).listen(PORT, testContext.succeeding(
+        server -> get(client, "/temporal?timerel=between&time=2021-01-01T00:00:00Z"
+            + "&endtime=2021-01-10T00:00:00Z")
+            .compose(large -> {
+              assertEquals(503, large.statusCode());
+              assertEquals("2", large.getHeader("Retry-After"));
+              return get(client, "/temporal?timerel=between&time=2021-01-01T00:00:00Z"
+                  + "&endtime=2021-01-01T06:00:00Z");
+            })
+            .compose(small -> {
+              assertEquals(200, small.statusCode());
+              return get(client, "/latest");
+            })
+            .onComplete(testContext.succeeding(latest -> testContext.verify(() -> {
+              assertEquals(200, latest.statusCode());
+              calls.forEach(Runnable::run);
+              assertEquals(0, InFlight.get(BACKEND));
+              testContext.completeNow();
+            })))));
+  }
+
+  private Future<HttpClientResponse> get(HttpClient client, String uri) {
+    return client.request(HttpMethod.GET, PORT, "localhost", uri)
+        .compose(request -> request.send());
+  }
+}
@@ -0,0 +1,91 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class RequestBodyHandlerTest {
+
+  private static final int PORT = 18089;
+  private static final long LIMIT = 64;
+
+  private WebClient client;
+
+  @BeforeEach
+  public void setup(Vertx vertx, VertxTestContext testContext) {
+    Router router = Router.router(vertx);
+    router.post("/buffered").handler(RequestBodyHandler.buffered(LIMIT)).handler(ctx -> ctx
+        .response().end(RequestBodyHandler.getRequestJson(ctx).put("raw", ctx.getBody().length())
+            .toString()));
+    router.post("/streaming").handler(RequestBodyHandler.streaming(LIMIT)).handler(ctx -> ctx
+        .response().end(RequestBodyHandler.getRequestJson(ctx).toString()));
+    client = WebClient.create(vertx);
+    vertx.createHttpServer().requestHandler(router).listen(PORT, testContext.succeeding(
+        server -> testContext.completeNow()));
+  }
+
+  @Test
+  @DisplayName("body is parsed once and shared in context")
+  public void testParsedBody(Vertx vertx, VertxTestContext testContext) {
+    JsonObject body = new JsonObject().put("id", "a/b/c");
+    client.post(PORT, "localhost", "/buffered").sendJsonObject(body, buffered -> {
+      assertEquals(200, buffered.result().statusCode());
+      assertEquals("a/b/c", buffered.result().bodyAsJsonObject().getString("id"));
+      client.post(PORT, "localhost", "/streaming").sendJsonObject(body, streaming -> {
+        assertEquals(200, streaming.result().statusCode());
+        assertEquals(body, streaming.result().bodyAsJsonObject());
+        testContext.completeNow();
+      });
+    });
+  }
+
+  @Test
+  @DisplayName("declared content length above limit is rejected with 413")
+  public void testContentLengthLimit(Vertx vertx, VertxTestContext testContext) {
+    JsonObject body = new JsonObject().put("id", "x".repeat(100));
+    client.post(PORT, "localhost", "/buffered").sendJsonObject(body, handler -> {
+      assertEquals(413, handler.result().statusCode());
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("chunked body crossing limit is rejected with 413")
+  public void testStreamingLimit(Vertx vertx, VertxTestContext testContext) {
+    HttpClient httpClient = vertx.createHttpClient();
+    httpClient.request(new RequestOptions().setMethod(HttpMethod.POST).setPort(PORT)
+        .setHost("localhost").setURI("/streaming"), request -> {
+          request.result().setChunked(true).response(response -> {
+            assertEquals(413, response.result().statusCode());
+            testContext.completeNow();
+          });
+          request.result().write("{\"id\":\"");
+          for (int i = 0; i < 8; i++) {
+            request.result().write(Buffer.buffer("x".repeat(16)));
+          }
+        });
+  }
+
+  @Test
+  @DisplayName("malformed json is rejected with 400")
+  public void testMalformedJson(Vertx vertx, VertxTestContext testContext) {
+    client.post(PORT, "localhost", "/streaming").sendBuffer(Buffer.buffer("{\"id\":]"),
+        handler -> {
+          assertEquals(400, handler.result().statusCode());
+          testContext.completeNow();
+        });
+  }
+}
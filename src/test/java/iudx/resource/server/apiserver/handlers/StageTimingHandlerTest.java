@@ -0,0 +1,61 @@
+package iudx.resource.server.apiserver.handlers;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.apiserver.query.QueryPipeline;
+
+@ExtendWith(VertxExtension.class)
+public class StageTimingHandlerTest {
+
+  private static final int PORT = 18091;
+  private static final int DISABLED_PORT = 18092;
+
+  @Test
+  @DisplayName("route and pipeline stages are returned in Server-Timing")
+  public void testServerTiming(Vertx vertx, VertxTestContext testContext) {
+    Router router = Router.router(vertx);
+    router.route().handler(StageTimingHandler.create(true));
+    router.get("/query").handler(ctx -> {
+      StageTimingHandler.record(ctx, StageTimingHandler.STAGE_AUTH, System.nanoTime());
+      QueryPipeline.create(ctx)
+          .stage(QueryPipeline.STAGE_DATABASE, () -> Future.succeededFuture("{}"))
+          .onSuccess(result -> ctx.response().end(result));
+    });
+
+    vertx.createHttpServer().requestHandler(router).listen(PORT, testContext.succeeding(
+        server -> vertx.createHttpClient().request(HttpMethod.GET, PORT, "localhost", "/query")
+            .compose(request -> request.send())
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+              String header = response.getHeader("Server-Timing");
+              assertNotNull(header);
+              assertTrue(header.matches("auth;dur=\\d+\\.\\d, database;dur=\\d+\\.\\d, "
+                  + "total;dur=\\d+\\.\\d"), header);
+              testContext.completeNow();
+            })))));
+  }
+
+  @Test
+  @DisplayName("Server-Timing is not returned unless enabled")
+  public void testServerTimingDisabled(Vertx vertx, VertxTestContext testContext) {
+    Router router = Router.router(vertx);
+    router.route().handler(StageTimingHandler.create(false));
+    router.get("/query").handler(ctx -> ctx.response().end());
+
+    vertx.createHttpServer().requestHandler(router).listen(DISABLED_PORT, testContext.succeeding(
+        server -> vertx.createHttpClient()
+            .request(HttpMethod.GET, DISABLED_PORT, "localhost", "/query")
+            .compose(request -> request.send())
+            .onComplete(testContext.succeeding(response -> testContext.verify(() -> {
+              assertNull(response.getHeader("Server-Timing"));
+              testContext.completeNow();
+            })))));
+  }
+}
@@ -0,0 +1,98 @@
+package iudx.resource.server.apiserver.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.QueryDecoder;
+import iudx.resource.server.database.archives.QueryPlan;
+import iudx.resource.server.database.archives.QueryPlan.Geo;
+
+@ExtendWith(VertxExtension.class)
+public class GeoPreprocessorTest {
+
+  private static final String ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/"
+          + "surat-itms-realtime-information/surat-itms-live-eta";
+
+  @Test
+  @DisplayName("large polygons are simplified, oriented and prefiltered by their bounding box")
+  public void testPolygon(Vertx vertx, VertxTestContext testContext) {
+    GeoPreprocessor preprocessor = new GeoPreprocessor(
+        new JsonObject().put("simplifyTolerance", 0.001).put("simplifyMinVertices", 16)
+            .put("bboxPrefilter", true));
+    // clockwise circle of 1000 vertices around (72.8, 21.1).
+    int vertices = 1000;
+    double[][] ring = new double[vertices + 1][];
+    for (int i = 0; i < vertices; i++) {
+      double angle = -2 * Math.PI * i / vertices;
+      ring[i] = new double[] {72.8 + 0.1 * Math.cos(angle), 21.1 + 0.1 * Math.sin(angle)};
+    }
+    ring[vertices] = ring[0];
+    Geo geo = preprocessor.process(new Geo("polygon", "within", new double[][][] {ring}, 0));
+
+    double[][] simplified = geo.rings()[0];
+    assertTrue(simplified.length < 100, "vertices " + simplified.length);
+    double area = 0;
+    for (int i = 0; i < simplified.length - 1; i++) {
+      area += simplified[i][0] * simplified[i + 1][1] - simplified[i + 1][0] * simplified[i][1];
+    }
+    assertTrue(area > 0, "shell must be counter-clockwise");
+    assertArrayEquals(new double[] {72.7, 21.0, 72.9, 21.2}, geo.boundingBox(), 1e-6);
+
+    JsonArray filter = new QueryDecoder()
+        .decode(QueryPlan.builder().id(ID).geo(geo).build(), null).getJsonObject("query")
+        .getJsonObject("bool").getJsonArray("filter");
+    JsonObject bbox = filter.getJsonObject(1).getJsonObject("geo_bounding_box")
+        .getJsonObject("location");
+    assertEquals(21.2, bbox.getJsonObject("top_left").getDouble("lat"), 1e-6);
+    assertEquals(72.9, bbox.getJsonObject("bottom_right").getDouble("lon"), 1e-6);
+    assertTrue(filter.getJsonObject(2).containsKey("geo_shape"));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("degenerate and invalid shapes are rejected")
+  public void testRejected(Vertx vertx, VertxTestContext testContext) {
+    GeoPreprocessor preprocessor = GeoPreprocessor.DEFAULT;
+    double[][] bowtie = {{0, 0}, {1, 1}, {1, 0}, {0, 1}, {0, 0}};
+    double[][] flat = {{0, 0}, {1, 1}, {2, 2}, {0, 0}};
+    double[][] point = {{72.8, 21.1}, {72.8, 21.1}};
+    double[][] outOfRange = {{200, 21.1}, {72.8, 21.1}};
+    double[][] flatBox = {{72.8, 21.1}, {72.9, 21.1}};
+    for (Geo geo : new Geo[] {new Geo("polygon", "within", new double[][][] {bowtie}, 0),
+        new Geo("polygon", "within", new double[][][] {flat}, 0),
+        new Geo("linestring", "intersects", new double[][][] {point}, 0),
+        new Geo("linestring", "intersects", new double[][][] {outOfRange}, 0),
+        new Geo("envelope", "within", new double[][][] {flatBox}, 0),
+        new Geo("circle", "within", new double[][][] {{{72.8, 21.1}}}, 0)}) {
+      assertThrows(IllegalArgumentException.class, () -> preprocessor.process(geo),
+          geo.shape());
+    }
+    Geo disjoint = preprocessor.process(new Geo("circle", "disjoint",
+        new double[][][] {{{72.8, 21.1}}}, 100));
+    assertNull(disjoint.boundingBox());
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("bounding box prefilter is off by default and wraps across the antimeridian")
+  public void testCircleBoundingBox(Vertx vertx, VertxTestContext testContext) {
+    Geo circle = new Geo("circle", "intersects", new double[][][] {{{179.9, 0}}}, 50000);
+    assertNull(GeoPreprocessor.DEFAULT.process(circle).boundingBox());
+
+    double[] bbox = new GeoPreprocessor(new JsonObject().put("bboxPrefilter", true))
+        .process(circle).boundingBox();
+    // about 0.45 degrees each side of the center, west edge east of the east edge.
+    assertEquals(179.45, bbox[0], 0.01);
+    assertEquals(-179.65, bbox[2], 0.01);
+    assertEquals(-0.45, bbox[1], 0.01);
+    assertEquals(0.45, bbox[3], 0.01);
+    testContext.completeNow();
+  }
+}
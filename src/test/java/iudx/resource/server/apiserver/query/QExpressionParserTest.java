@@ -0,0 +1,76 @@
+package iudx.resource.server.apiserver.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.QueryDecoder;
+import iudx.resource.server.database.archives.QueryPlan;
+import iudx.resource.server.database.archives.QueryPlan.Expression;
+
+@ExtendWith(VertxExtension.class)
+public class QExpressionParserTest {
+
+  private static final String ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/"
+          + "surat-itms-realtime-information/surat-itms-live-eta";
+
+  @Test
+  @DisplayName("AND binds tighter than OR and parentheses group terms")
+  public void testParse(Vertx vertx, VertxTestContext testContext) {
+    Expression expression =
+        QExpressionParser.parse("speed>30;(occupancy<50|status==\"a;b\")|id!=x-1");
+    assertEquals(Expression.Type.OR, expression.type());
+    Expression and = expression.operands().get(0);
+    assertEquals(Expression.Type.AND, and.type());
+    assertEquals(30d, and.operands().get(0).term().value());
+    Expression group = and.operands().get(1);
+    assertEquals(Expression.Type.OR, group.type());
+    assertEquals("a;b", group.operands().get(1).term().value());
+    assertEquals("!=", expression.operands().get(1).term().operator());
+
+    assertEquals(Expression.Type.TERM, QExpressionParser.parse("referenceLevel>15.0").type());
+    assertEquals("iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/pune/FWR055",
+        QExpressionParser.parse("id==iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/"
+            + "rs.iudx.io/pune/FWR055").term().value());
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("invalid expressions are rejected")
+  public void testInvalid(Vertx vertx, VertxTestContext testContext) {
+    for (String q : List.of("referenceLevel<>15.0", "referenceLevel===15.0",
+        "referenceLevel+15.0", "reference$Level>15.0", "referenceLevel!<15.0", "speed>fast",
+        "(speed>30", "speed>30;", "speed>30)", "speed>30||x<1", "status==\"open")) {
+      assertThrows(IllegalArgumentException.class, () -> QExpressionParser.parse(q), q);
+    }
+    String tooMany = "a>1" + ";a>1".repeat(QExpressionParser.MAX_TERMS);
+    assertThrows(IllegalArgumentException.class, () -> QExpressionParser.parse(tooMany));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("compound q is compiled into one bool query")
+  public void testDecode(Vertx vertx, VertxTestContext testContext) {
+    QueryPlan plan = QueryPlan.builder().id(ID)
+        .q(QExpressionParser.parse("speed>30;(occupancy<50|status!=stopped)")).build();
+    QueryPlan received = QueryPlan.fromJson(new JsonObject(plan.toJson().encode()));
+    JsonArray filter = new QueryDecoder().decode(received, null).getJsonObject("query")
+        .getJsonObject("bool").getJsonArray("filter");
+
+    assertEquals(3, filter.size());
+    assertEquals(30d, filter.getJsonObject(1).getJsonObject("range").getJsonObject("speed")
+        .getDouble("gt"));
+    JsonObject or = filter.getJsonObject(2).getJsonObject("bool");
+    assertEquals(1, or.getInteger("minimum_should_match"));
+    assertEquals("stopped", or.getJsonArray("should").getJsonObject(1).getJsonObject("bool")
+        .getJsonArray("must_not").getJsonObject(0).getJsonObject("term").getString("status"));
+    testContext.completeNow();
+  }
+}
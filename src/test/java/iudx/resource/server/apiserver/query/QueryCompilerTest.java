@@ -0,0 +1,113 @@
+package iudx.resource.server.apiserver.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.QueryDecoder;
+import iudx.resource.server.database.archives.QueryPlan;
+import iudx.resource.server.database.archives.QueryPlan.SearchKind;
+import iudx.resource.server.database.archives.QueryPlan.TimeRelation;
+
+@ExtendWith(VertxExtension.class)
+public class QueryCompilerTest {
+
+  private static final String ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/"
+          + "surat-itms-realtime-information/surat-itms-live-eta";
+
+  @Test
+  @DisplayName("temporal geo query is compiled to typed values and survives the event bus")
+  public void testCompileTemporalGeo(Vertx vertx, VertxTestContext testContext) {
+    MultiMap params = MultiMap.caseInsensitiveMultiMap().add("id", ID).add("timerel", "during")
+        .add("time", "2020-10-18T14:20:00Z").add("endtime", "2020-10-19T14:20:00Z")
+        .add("georel", "near;maxDistance=1000").add("geometry", "Point")
+        .add("coordinates", "[21.178,72.834]").add("geoproperty", "location")
+        .add("q", "speed>30").add("attrs", "speed,id").add("limit", "100");
+    QueryPlan plan = QueryCompiler.compile(params, true, GeoPreprocessor.DEFAULT)
+        .instanceId("localhost").applicableFilters(List.of("TEMPORAL")).build();
+
+    assertEquals(List.of(ID), plan.ids());
+    assertTrue(plan.is(SearchKind.TEMPORAL) && plan.is(SearchKind.GEO)
+        && plan.is(SearchKind.ATTRIBUTE) && plan.is(SearchKind.RESPONSE_FILTER));
+    assertEquals("temporalSearch_geoSearch_responseFilter_attributeSearch", plan.searchType());
+    assertEquals("circle", plan.geo().shape());
+    assertArrayEquals(new double[] {72.834, 21.178}, plan.geo().rings()[0][0]);
+    assertEquals(1000d, plan.geo().radius());
+    assertEquals(TimeRelation.DURING, plan.temporal().relation());
+    assertEquals(ZonedDateTime.parse("2020-10-18T14:20:00Z").toInstant().toEpochMilli(),
+        plan.temporal().startMillis());
+    assertEquals(30d, plan.q().term().value());
+    assertEquals(100, plan.limit());
+
+    QueryPlan received = QueryPlan.fromJson(new JsonObject(plan.toJson().encode()));
+    assertEquals(plan.toJson(), received.toJson());
+
+    JsonObject query = new QueryDecoder().decode(received, "test,2020-10-20T00:00:00Z,10");
+    JsonArray filter = query.getJsonObject("query").getJsonObject("bool").getJsonArray("filter");
+    // id, geo_shape, time range and attribute, no bounding box prefilter by default.
+    assertEquals(4, filter.size());
+    assertEquals(new JsonArray().add("speed").add("id"), query.getJsonArray("_source"));
+    assertEquals(plan.temporal().endMillis(), filter.getJsonObject(2).getJsonObject("range")
+        .getJsonObject("observationDateTime").getLong("lte"));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("lastN query collapses hits on id with the latest observations as inner hits")
+  public void testCompileLastN(Vertx vertx, VertxTestContext testContext) {
+    String other = ID.substring(0, ID.lastIndexOf('/')) + "/surat-itms-live-eta-2";
+    MultiMap params = MultiMap.caseInsensitiveMultiMap().add("id", ID + "," + other)
+        .add("lastN", "10").add("attrs", "speed");
+    QueryPlan plan = QueryCompiler.compile(params, false, GeoPreprocessor.DEFAULT).build();
+    assertEquals(10, QueryPlan.fromJson(plan.toJson()).lastN());
+
+    JsonObject query = new QueryDecoder().decode(plan, null);
+    JsonObject innerHits = query.getJsonObject("collapse").getJsonObject("inner_hits");
+    assertEquals("id", query.getJsonObject("collapse").getString("field"));
+    assertEquals(10, innerHits.getInteger("size"));
+    assertEquals("desc", innerHits.getJsonArray("sort").getJsonObject(0)
+        .getString("observationDateTime"));
+    assertEquals(new JsonArray().add("speed"), innerHits.getJsonArray("_source"));
+    assertEquals(2, query.getInteger("size"));
+
+    params.set("lastN", "101");
+    assertThrows(IllegalArgumentException.class,
+        () -> QueryCompiler.compile(params, false, GeoPreprocessor.DEFAULT));
+    params.set("lastN", "5").remove("attrs");
+    params.add("options", "count");
+    assertThrows(IllegalArgumentException.class,
+        () -> QueryCompiler.compile(params, false, GeoPreprocessor.DEFAULT));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("invalid queries fail at compilation")
+  public void testCompileFailures(Vertx vertx, VertxTestContext testContext) {
+    MultiMap temporalInEntities = MultiMap.caseInsensitiveMultiMap().add("id", ID)
+        .add("timerel", "after").add("time", "2020-10-18T14:20:00Z");
+    assertThrows(IllegalArgumentException.class,
+        () -> QueryCompiler.compile(temporalInEntities, false, GeoPreprocessor.DEFAULT));
+
+    MultiMap openPolygon = MultiMap.caseInsensitiveMultiMap().add("id", ID)
+        .add("georel", "within").add("geometry", "polygon").add("geoproperty", "location")
+        .add("coordinates", "[[[72.7,21.1],[72.8,21.2],[72.9,21.1]]]");
+    assertEquals("Coordinate mismatch (Polygon)", assertThrows(IllegalArgumentException.class,
+        () -> QueryCompiler.compile(openPolygon, false, GeoPreprocessor.DEFAULT)).getMessage());
+
+    JsonObject countWithAttrs = new JsonObject().put("type", "Query").put("attrs", "speed")
+        .put("options", "count")
+        .put("entities", new JsonArray().add(new JsonObject().put("id", ID)));
+    assertThrows(IllegalArgumentException.class,
+        () -> QueryCompiler.compile(countWithAttrs, GeoPreprocessor.DEFAULT));
+    testContext.completeNow();
+  }
+}
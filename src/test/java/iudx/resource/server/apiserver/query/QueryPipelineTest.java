@@ -0,0 +1,77 @@
+package iudx.resource.server.apiserver.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class QueryPipelineTest {
+
+  private Future<String> delayed(Vertx vertx, long delay, String value) {
+    Promise<String> promise = Promise.promise();
+    vertx.setTimer(delay, timer -> promise.complete(value));
+    return promise.future();
+  }
+
+  @Test
+  @DisplayName("independent stages run concurrently")
+  public void testConcurrentStages(Vertx vertx, VertxTestContext testContext) {
+    QueryPipeline pipeline = QueryPipeline.create();
+    Future<String> first = pipeline.stage("first", () -> delayed(vertx, 200, "a"));
+    Future<String> second = pipeline.stage("second", () -> delayed(vertx, 200, "b"));
+    pipeline.stage("joined", List.of(first, second),
+        () -> Future.succeededFuture(first.result() + second.result()));
+
+    pipeline.completion().onComplete(handler -> {
+      assertTrue(handler.succeeded());
+      assertEquals("ab", pipeline.<String>future("joined").result());
+      assertTrue(pipeline.elapsed() < 380, "stages were run one after another");
+      assertTrue(pipeline.timings().keySet().containsAll(List.of("first", "second", "joined")));
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("dependants of a failed stage are not run")
+  public void testShortCircuit(Vertx vertx, VertxTestContext testContext) {
+    QueryPipeline pipeline = QueryPipeline.create();
+    AtomicBoolean dependantRun = new AtomicBoolean(false);
+    Future<String> failed = pipeline.stage("failed", () -> Future.failedFuture("bad query"));
+    pipeline.stage("dependant", List.of(failed), () -> {
+      dependantRun.set(true);
+      return Future.succeededFuture("never");
+    });
+    pipeline.stage("slow", () -> delayed(vertx, 1000, "slow"));
+
+    pipeline.completion().onComplete(handler -> {
+      assertTrue(handler.failed());
+      assertEquals("bad query", handler.cause().getMessage());
+      assertFalse(dependantRun.get());
+      assertTrue(pipeline.future("dependant").failed());
+      assertTrue(pipeline.elapsed() < 1000);
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("exception thrown by a stage fails the stage")
+  public void testStageException(Vertx vertx, VertxTestContext testContext) {
+    QueryPipeline pipeline = QueryPipeline.create();
+    pipeline.<String>stage("mapping", () -> {
+      throw new IllegalArgumentException("invalid temporal params");
+    }).onComplete(handler -> {
+      assertTrue(handler.failed());
+      assertEquals("invalid temporal params", handler.cause().getMessage());
+      assertTrue(pipeline.timings().containsKey("mapping"));
+      testContext.completeNow();
+    });
+  }
+}
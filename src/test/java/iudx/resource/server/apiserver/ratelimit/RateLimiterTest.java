@@ -0,0 +1,84 @@
+package iudx.resource.server.apiserver.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.apiserver.handlers.RouteMetadata.EndpointKind;
+
+@ExtendWith(VertxExtension.class)
+public class RateLimiterTest {
+
+  private JsonObject quota(long capacity, double refillPerSecond) {
+    return new JsonObject().put("capacity", capacity).put("refillPerSecond", refillPerSecond);
+  }
+
+  @Test
+  @DisplayName("bucket refills at configured rate up to capacity")
+  public void testTokenBucket(VertxTestContext testContext) {
+    TokenBucket bucket = new TokenBucket(2, 1);
+    long now = System.nanoTime();
+    assertTrue(bucket.tryAcquire(now).allowed());
+    assertTrue(bucket.tryAcquire(now).allowed());
+    TokenBucket.Result rejected = bucket.tryAcquire(now);
+    assertFalse(rejected.allowed());
+    assertEquals(1, rejected.retryAfter());
+    assertEquals(2, rejected.reset());
+    assertTrue(bucket.tryAcquire(now + TimeUnit.SECONDS.toNanos(1)).allowed());
+    assertEquals(1,
+        bucket.tryAcquire(now + TimeUnit.SECONDS.toNanos(100)).remaining());
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("quota of consumer tier and endpoint kind is applied")
+  public void testTiers(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("enabled", true)
+        .put("tiers", new JsonObject()
+            .put("default", new JsonObject().put("default", quota(5, 1))
+                .put("TEMPORAL", quota(1, 0.1)))
+            .put("premium", new JsonObject().put("default", quota(100, 10))))
+        .put("consumers", new JsonObject().put("premium@example.com", "premium"));
+    RateLimiter limiter = RateLimiter.getOrCreate(vertx, config);
+
+    limiter.acquire("user@example.com", EndpointKind.TEMPORAL)
+        .compose(first -> {
+          assertTrue(first.allowed());
+          assertEquals(1, first.limit());
+          return limiter.acquire("user@example.com", EndpointKind.TEMPORAL);
+        }).compose(second -> {
+          assertFalse(second.allowed());
+          assertEquals(10, second.retryAfter());
+          return limiter.acquire("user@example.com", EndpointKind.ENTITIES);
+        }).compose(entities -> {
+          assertTrue(entities.allowed());
+          assertEquals(5, entities.limit());
+          return limiter.acquire("premium@example.com", EndpointKind.TEMPORAL);
+        }).onComplete(testContext.succeeding(premium -> {
+          assertTrue(premium.allowed());
+          assertEquals(100, premium.limit());
+          assertEquals(99, premium.remaining());
+          testContext.completeNow();
+        }));
+  }
+
+  @Test
+  @DisplayName("quota missing a key fails with a config error naming it")
+  public void testQuotaMissingKey(VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("enabled", true)
+        .put("tiers", new JsonObject()
+            .put("default", new JsonObject().put("TEMPORAL", new JsonObject().put("capacity", 5))));
+    // fresh instance, the limiter is shared per vertx.
+    Vertx vertx = Vertx.vertx();
+    IllegalArgumentException failure =
+        assertThrows(IllegalArgumentException.class, () -> RateLimiter.getOrCreate(vertx, config));
+    assertTrue(failure.getMessage().contains("default.TEMPORAL"));
+    assertTrue(failure.getMessage().contains("refillPerSecond"));
+    vertx.close(testContext.succeedingThenComplete());
+  }
+}
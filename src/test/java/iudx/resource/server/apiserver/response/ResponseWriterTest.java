@@ -0,0 +1,89 @@
+package iudx.resource.server.apiserver.response;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class ResponseWriterTest {
+
+  private static final int PORT = 18095;
+
+  @Test
+  @DisplayName("streaming encoding matches JsonObject.encode")
+  public void testEncode(VertxTestContext testContext) throws IOException {
+    JsonObject json = new JsonObject().put("type", 200).put("title", "success \"ok\"")
+        .put("results", new JsonArray().add(new JsonObject().put("id", "a/b/c").put("v", 1.5))
+            .add(new JsonArray().add(true).addNull()))
+        .put("big", new BigDecimal("12345678901234567890.5")).put("long", Long.MAX_VALUE)
+        .put("time", Instant.parse("2021-01-01T00:00:00Z")).putNull("none");
+    ByteBuf buf = Unpooled.buffer();
+    ResponseWriter.encode(json, buf);
+    assertEquals(json.encode(), buf.toString(StandardCharsets.UTF_8));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("small bodies are not compressed, large bodies are gzipped")
+  public void testAdaptiveCompression(Vertx vertx, VertxTestContext testContext) {
+    ResponseWriter writer = ResponseWriter.create(new JsonObject().put("compressionMinSize", 64)
+        .put("compressionLargeSize", 4096));
+    JsonArray results = new JsonArray();
+    for (int i = 0; i < 200; i++) {
+      results.add(new JsonObject().put("id", "item-" + i).put("value", i));
+    }
+    JsonObject large = new JsonObject().put("type", 200).put("results", results);
+    vertx.createHttpServer(new HttpServerOptions().setCompressionSupported(true))
+        .requestHandler(request -> {
+          if (request.path().equals("/small")) {
+            writer.write(request, 200, new JsonObject().put("type", 200));
+          } else {
+            writer.write(request, 200, large);
+          }
+        })
+        .listen(PORT, testContext.succeeding(server -> {
+          RequestOptions small = new RequestOptions().setMethod(HttpMethod.GET).setPort(PORT)
+              .setHost("localhost").setURI("/small").addHeader("Accept-Encoding", "gzip");
+          RequestOptions big = new RequestOptions(small).setURI("/large");
+          vertx.createHttpClient().request(small).compose(request -> request.send())
+              .compose(response -> {
+                assertEquals("identity", response.getHeader("Content-Encoding"));
+                return response.body();
+              })
+              .compose(body -> {
+                assertEquals(new JsonObject().put("type", 200), body.toJsonObject());
+                return vertx.createHttpClient().request(big);
+              })
+              .compose(request -> request.send())
+              .compose(response -> {
+                assertEquals("gzip", response.getHeader("Content-Encoding"));
+                return response.body();
+              })
+              .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+                try (GZIPInputStream in =
+                    new GZIPInputStream(new ByteArrayInputStream(body.getBytes()))) {
+                  assertEquals(large, new JsonObject(new String(in.readAllBytes(),
+                      StandardCharsets.UTF_8)));
+                }
+                testContext.completeNow();
+              })));
+        }));
+  }
+}
@@ -0,0 +1,53 @@
+package iudx.resource.server.apiserver.validation;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.apiserver.util.RequestType;
+
+@ExtendWith(VertxExtension.class)
+public class ValidationPlanTest {
+
+  private static final String ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/"
+          + "surat-itms-realtime-information/surat-itms-live-eta";
+
+  @Test
+  @DisplayName("temporal plan reports the first failing parameter")
+  public void testTemporalPlan(Vertx vertx, VertxTestContext testContext) {
+    ValidationPlan plan = new ValidatorsHandlersFactory().compile(vertx, RequestType.TEMPORAL);
+    MultiMap params = MultiMap.caseInsensitiveMultiMap().add("id", ID).add("timerel", "during")
+        .add("time", "2020-10-18T14:20:00Z").add("endtime", "2020-10-19T14:20:00Z");
+    assertNull(plan.validate(params, new JsonObject()));
+
+    params.set("timerel", "sometime");
+    assertEquals("timerel", plan.validate(params, new JsonObject()).name());
+    params.remove("id");
+    assertEquals("id", plan.validate(params, new JsonObject()).name());
+    params.set("idPattern", "pune-(env");
+    assertEquals("idpattern", plan.validate(params, new JsonObject()).name());
+    params.set("idPattern", ".*/surat-itms-live-eta").set("timerel", "during");
+    assertNull(plan.validate(params, new JsonObject()));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("post plan validates the body with the schema loaded once")
+  public void testPostPlan(Vertx vertx, VertxTestContext testContext) {
+    ValidationPlan plan = new ValidatorsHandlersFactory().compile(vertx, RequestType.POST);
+    MultiMap params = MultiMap.caseInsensitiveMultiMap();
+    JsonObject valid = new JsonObject().put("type", "Query")
+        .put("entities", new JsonArray().add(new JsonObject().put("id", ID)));
+    assertNull(plan.validate(params, valid));
+    assertNull(plan.validate(params, valid.copy()));
+    assertEquals("body", plan.validate(params, valid.copy().put("type", "Other")).name());
+    testContext.completeNow();
+  }
+}
@@ -13,7 +13,12 @@ import io.vertx.ext.web.client.predicate.ResponsePredicate;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import iudx.resource.server.configuration.Configuration;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -374,4 +379,34 @@ public class AuthenticationServiceTest {
         });
   }
 
+
+  @Test
+  @DisplayName("Test every id of a mixed open/secure resolution is authorized")
+  public void testMixedOpenSecureResolution(VertxTestContext testContext) {
+    String prefix = "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/";
+    String open = prefix + "pune-env-flood/FWR055";
+    String secureA = prefix + "surat-itms-realtime-information/surat-itms-live-eta";
+    String secureB = prefix + "pune-env-aqm/AQM001";
+    Map<String, Boolean> catResponse = new HashMap<>();
+    catResponse.put(open, true);
+    catResponse.put(secureA, false);
+    catResponse.put(secureB, false);
+
+    assertTrue(AuthenticationServiceImpl.secureGroupIds(List.of(open), catResponse).isEmpty());
+    // open first id does not unlock the secure ids resolved alongside it.
+    List<String> secureGroups =
+        AuthenticationServiceImpl.secureGroupIds(List.of(open, secureA, secureB), catResponse);
+    assertEquals(List.of(prefix + "surat-itms-realtime-information", prefix + "pune-env-aqm"),
+        secureGroups);
+    // a token for one group does not unlock the other groups.
+    assertFalse(AuthenticationServiceImpl
+        .isAllowedId(List.of(prefix + "surat-itms-realtime-information"), secureGroups));
+    assertTrue(AuthenticationServiceImpl.isAllowedId(
+        List.of(prefix + "surat-itms-realtime-information", prefix + "pune-env-aqm"),
+        secureGroups));
+    // ids unknown to catalogue are treated as secure.
+    assertEquals(List.of(prefix + "unknown"), AuthenticationServiceImpl
+        .secureGroupIds(List.of(open, prefix + "unknown/item"), catResponse));
+    testContext.completeNow();
+  }
 }
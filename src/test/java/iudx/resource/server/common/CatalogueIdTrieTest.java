@@ -0,0 +1,78 @@
+package iudx.resource.server.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class CatalogueIdTrieTest {
+
+  private static final String PREFIX =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/";
+  private static final String FLOOD_GROUP = PREFIX + "pune-env-flood";
+  private static final String AQM_GROUP = PREFIX + "pune-env-aqm";
+
+  private static final CatalogueIdTrie trie = trie();
+
+  private static CatalogueIdTrie trie() {
+    CatalogueSnapshot snapshot = CatalogueSnapshot.EMPTY.toBuilder()
+        .putGroup(group(FLOOD_GROUP, "iudx:FloodSensor"))
+        .putGroup(group(AQM_GROUP, "iudx:AirQualityMonitoring"))
+        .putResource(resource(FLOOD_GROUP, "FWR055")).putResource(resource(FLOOD_GROUP, "FWR056"))
+        .putResource(resource(AQM_GROUP, "AQM001")).build(Instant.now());
+    return CatalogueIdTrie.of(snapshot);
+  }
+
+  private static JsonObject group(String id, String type) {
+    return new JsonObject().put("id", id).put("accessPolicy", "OPEN")
+        .put("type", new JsonArray().add("iudx:ResourceGroup").add(type));
+  }
+
+  private static JsonObject resource(String groupId, String name) {
+    return new JsonObject().put("id", groupId + "/" + name).put("resourceGroup", groupId);
+  }
+
+  @Test
+  @DisplayName("idPattern is resolved segment by segment or against full ids")
+  public void testResolveIdPattern(VertxTestContext testContext) {
+    assertEquals(3, trie.size());
+    assertEquals(List.of(FLOOD_GROUP + "/FWR055", FLOOD_GROUP + "/FWR056"),
+        trie.resolve(FLOOD_GROUP + "/.*", null, 10));
+    assertEquals(List.of(FLOOD_GROUP + "/FWR056"),
+        trie.resolve(PREFIX + "pune-env-.*/FWR05[6-9]", null, 10));
+    assertEquals(List.of(AQM_GROUP + "/AQM001"), trie.resolve(".*AQM.*", null, 10));
+    assertEquals(2, trie.resolve(".*", null, 2).size());
+    assertTrue(trie.resolve(PREFIX + "unknown/.*", null, 10).isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> trie.resolve("pune-(env", null, 10));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("idPattern backtracking catastrophically is rejected")
+  public void testResolveBacktrackingPattern(VertxTestContext testContext) {
+    // every split of an id in 20 parts is tried before failing on X.
+    IllegalArgumentException rejected = assertThrows(IllegalArgumentException.class,
+        () -> trie.resolve("(.*.){20}X", null, 10));
+    assertTrue(rejected.getMessage().startsWith("Invalid idPattern"));
+    assertThrows(IllegalArgumentException.class,
+        () -> trie.resolve("(.*.){20}X", "FloodSensor", 10));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("type selects resources of the groups of that type")
+  public void testResolveType(VertxTestContext testContext) {
+    assertEquals(List.of(FLOOD_GROUP + "/FWR055", FLOOD_GROUP + "/FWR056"),
+        trie.resolve(null, "iudx:FloodSensor", 10));
+    assertEquals(List.of(FLOOD_GROUP + "/FWR055"), trie.resolve(".*055", "FloodSensor", 10));
+    assertTrue(trie.resolve(null, "iudx:ResourceGroup", 10).isEmpty());
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,72 @@
+package iudx.resource.server.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class CatalogueSnapshotTest {
+
+  private static final String GROUP_ID =
+      "iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/pune-env-flood";
+  private static final String RESOURCE_ID = GROUP_ID + "/FWR055";
+
+  private JsonObject group(String accessPolicy) {
+    return new JsonObject().put("id", GROUP_ID).put("accessPolicy", accessPolicy)
+        .put("iudxResourceAPIs", new JsonArray().add("TEMPORAL").add("SPATIAL"));
+  }
+
+  private JsonObject resource() {
+    return new JsonObject().put("id", RESOURCE_ID).put("resourceGroup", GROUP_ID);
+  }
+
+  @Test
+  @DisplayName("resource inherits access policy and filters of its group")
+  public void testResourceLookup(VertxTestContext testContext) {
+    CatalogueSnapshot snapshot = CatalogueSnapshot.EMPTY.toBuilder().putGroup(group("OPEN"))
+        .putResource(resource()).build(Instant.now());
+
+    assertEquals(1, snapshot.version());
+    assertTrue(snapshot.containsResource(RESOURCE_ID));
+    assertEquals("OPEN", snapshot.accessPolicy(RESOURCE_ID));
+    assertEquals(List.of("TEMPORAL", "SPATIAL"), snapshot.applicableFilters(RESOURCE_ID));
+    assertNull(snapshot.accessPolicy(GROUP_ID + "/unknown"));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("version is bumped only when content changes")
+  public void testVersioning(VertxTestContext testContext) {
+    CatalogueSnapshot first = CatalogueSnapshot.EMPTY.toBuilder().putGroup(group("OPEN"))
+        .putResource(resource()).build(Instant.now());
+    CatalogueSnapshot unchanged = first.toBuilder().putGroup(group("OPEN")).build(Instant.now());
+    CatalogueSnapshot changed = first.toBuilder().putGroup(group("SECURE")).build(Instant.now());
+
+    assertEquals(first.version(), unchanged.version());
+    assertEquals(first.version() + 1, changed.version());
+    assertEquals("SECURE", changed.accessPolicy(RESOURCE_ID));
+    assertEquals("OPEN", first.accessPolicy(RESOURCE_ID));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("resources of removed groups are dropped")
+  public void testGroupRemoval(VertxTestContext testContext) {
+    CatalogueSnapshot first = CatalogueSnapshot.EMPTY.toBuilder().putGroup(group("OPEN"))
+        .putResource(resource()).build(Instant.now());
+    CatalogueSnapshot removed =
+        first.toBuilder().clearGroups().retainResourcesOfKnownGroups().build(Instant.now());
+
+    assertTrue(removed.isEmpty());
+    assertFalse(removed.containsResource(RESOURCE_ID));
+    assertNull(removed.applicableFilters(RESOURCE_ID));
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,35 @@
+package iudx.resource.server.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class CatalogueSyncTest {
+
+  @Test
+  @DisplayName("cold start wait is bounded when the catalogue never answers")
+  public void testAwaitReadyTimeout(VertxTestContext testContext) {
+    // fresh instance, the sync is shared per vertx.
+    Vertx vertx = Vertx.vertx();
+    // accepts connections and never answers.
+    vertx.createNetServer().connectHandler(socket -> {
+    }).listen(18101, listening -> {
+      JsonObject config = new JsonObject().put("catServerHost", "localhost")
+          .put("catServerPort", "18101").put("catalogueReadyTimeout", 1)
+          .put("catalogueRequestTimeout", 60);
+      CatalogueSync sync = CatalogueSync.getOrCreate(vertx, config);
+      long start = System.currentTimeMillis();
+      sync.awaitReady().onComplete(testContext.succeeding(ready -> testContext.verify(() -> {
+        assertFalse(sync.isReady());
+        assertTrue(System.currentTimeMillis() - start < 10_000);
+        vertx.close(testContext.succeedingThenComplete());
+      })));
+    });
+  }
+}
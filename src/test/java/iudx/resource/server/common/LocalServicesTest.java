@@ -0,0 +1,135 @@
+package iudx.resource.server.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.DatabaseService;
+
+@ExtendWith(VertxExtension.class)
+public class LocalServicesTest {
+
+  private static class EchoService implements DatabaseService {
+    private final String path;
+
+    EchoService(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public DatabaseService searchQuery(JsonObject request,
+        Handler<AsyncResult<JsonObject>> handler) {
+      handler.handle(Future.succeededFuture(request.put("path", path)));
+      return this;
+    }
+
+    @Override
+    public DatabaseService countQuery(JsonObject request,
+        Handler<AsyncResult<JsonObject>> handler) {
+      handler.handle(Future.failedFuture("count failed"));
+      return this;
+    }
+
+    @Override
+    public DatabaseService explainQuery(JsonObject request,
+        Handler<AsyncResult<JsonObject>> handler) {
+      if ("silent".equals(path)) {
+        // never replies.
+        return this;
+      }
+      throw new IllegalStateException("explain failed");
+    }
+  }
+
+  @Test
+  @DisplayName("registered service is invoked locally")
+  public void testLocalInvocation(Vertx vertx, VertxTestContext testContext) {
+    String address = "test.local.service";
+    EchoService local = new EchoService("local");
+    LocalServices.register(vertx, address, local);
+    DatabaseService proxy = LocalServices.createProxy(vertx, DatabaseService.class, address,
+        new EchoService("remote"));
+
+    JsonObject request = new JsonObject().put("id", "1");
+    proxy.searchQuery(request, handler -> {
+      assertTrue(handler.succeeded());
+      assertEquals("local", handler.result().getString("path"));
+      // the service modifies a copy of the request.
+      assertFalse(request.containsKey("path"));
+      assertEquals(1L,
+          LocalServices.stats(vertx).getJsonObject(address).getLong("local").longValue());
+      LocalServices.unregister(vertx, address, local);
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("remote proxy is used when service is not deployed in-process")
+  public void testRemoteFallback(Vertx vertx, VertxTestContext testContext) {
+    String address = "test.remote.service";
+    DatabaseService proxy = LocalServices.createProxy(vertx, DatabaseService.class, address,
+        new EchoService("remote"));
+
+    proxy.searchQuery(new JsonObject(), handler -> {
+      assertEquals("remote", handler.result().getString("path"));
+      assertEquals(1L,
+          LocalServices.stats(vertx).getJsonObject(address).getLong("remote").longValue());
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("failures of local service are delivered to caller")
+  public void testLocalFailure(Vertx vertx, VertxTestContext testContext) {
+    String address = "test.local.failure";
+    EchoService local = new EchoService("local");
+    LocalServices.register(vertx, address, local);
+    DatabaseService proxy = LocalServices.createProxy(vertx, DatabaseService.class, address,
+        new EchoService("remote"));
+
+    proxy.countQuery(new JsonObject(), handler -> {
+      assertTrue(handler.failed());
+      assertEquals("count failed", handler.cause().getMessage());
+      LocalServices.unregister(vertx, address, local);
+      testContext.completeNow();
+    });
+  }
+
+  @Test
+  @DisplayName("exceptions and missing replies of local service fail the caller")
+  public void testLocalExceptionAndTimeout(Vertx vertx, VertxTestContext testContext) {
+    String address = "test.local.exception";
+    String silentAddress = "test.local.timeout";
+    EchoService local = new EchoService("local");
+    EchoService silent = new EchoService("silent");
+    LocalServices.register(vertx, address, local);
+    LocalServices.register(vertx, silentAddress, silent);
+    DatabaseService proxy = LocalServices.createProxy(vertx, DatabaseService.class, address,
+        new EchoService("remote"));
+    DatabaseService silentProxy = LocalServices.createProxy(vertx, DatabaseService.class,
+        silentAddress, new EchoService("remote"), new DeliveryOptions().setSendTimeout(100));
+
+    proxy.explainQuery(new JsonObject(), handler -> {
+      assertTrue(handler.failed());
+      assertEquals("explain failed", handler.cause().getMessage());
+      silentProxy.explainQuery(new JsonObject(), timeout -> {
+        assertTrue(timeout.failed());
+        assertEquals(ReplyFailure.TIMEOUT,
+            ((ReplyException) timeout.cause()).failureType());
+        LocalServices.unregister(vertx, address, local);
+        LocalServices.unregister(vertx, silentAddress, silent);
+        testContext.completeNow();
+      });
+    });
+  }
+}
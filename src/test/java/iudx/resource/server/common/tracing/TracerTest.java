@@ -0,0 +1,93 @@
+package iudx.resource.server.common.tracing;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.tracing.TracingOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class TracerTest {
+
+  private static final int PORT = 18093;
+  private static final String TRACE_1 = "0af7651916cd43dd8448eb211c80319c";
+  private static final String TRACE_2 = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  @Test
+  @DisplayName("traceparent header is parsed and formatted")
+  public void testTraceparent(VertxTestContext testContext) {
+    TraceContext context = TraceContext.parse("00-" + TRACE_1 + "-b7ad6b7169203331-01");
+    assertEquals(TRACE_1, context.traceId());
+    assertEquals("b7ad6b7169203331", context.spanId());
+    assertTrue(context.sampled());
+    assertEquals("00-" + TRACE_1 + "-b7ad6b7169203331-01", context.toTraceparent());
+    assertEquals(TRACE_1, context.child().traceId());
+    assertNotEquals(context.spanId(), context.child().spanId());
+    assertFalse(TraceContext.parse("00-" + TRACE_1 + "-b7ad6b7169203331-00").sampled());
+    assertNull(TraceContext.parse("00-" + TRACE_1 + "-0000000000000000-01"));
+    assertNull(TraceContext.parse("00-" + TRACE_1.toUpperCase() + "-b7ad6b7169203331-01"));
+    assertNull(TraceContext.parse("garbage"));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("trace continues over http and event bus for concurrent requests")
+  public void testPropagation(VertxTestContext testContext) {
+    List<JsonObject> exported = new CopyOnWriteArrayList<>();
+    JsonObject config = new JsonObject().put("sampleRatio", 1.0).put("exportIntervalMillis", 50);
+    Vertx vertx = Vertx.vertx(new VertxOptions().setTracingOptions(
+        new TracingOptions().setFactory(options -> Tracer.create(config, exported::add))));
+
+    vertx.eventBus().<String>consumer("tracer.test", message -> {
+      Span span = Tracer.activeSpan();
+      // reply later so both requests are in flight on the same event loop.
+      vertx.setTimer(50, id -> message.reply(span.context().traceId()));
+    });
+    HttpClient client = vertx.createHttpClient();
+    vertx.createHttpServer().requestHandler(request -> vertx.eventBus()
+        .<String>request("tracer.test", "ping")
+        .onSuccess(reply -> request.response().end(reply.body())))
+        .listen(PORT, testContext.succeeding(server -> CompositeFuture
+            .all(send(client, TRACE_1), send(client, TRACE_2))
+            .onComplete(testContext.succeeding(responses -> testContext.verify(() -> {
+              assertEquals(TRACE_1, responses.<String>resultAt(0));
+              assertEquals(TRACE_2, responses.<String>resultAt(1));
+              vertx.setTimer(300, id -> testContext.verify(() -> {
+                List<JsonObject> spans = exported.stream()
+                    .flatMap(request -> request.getJsonArray("resourceSpans").stream())
+                    .flatMap(resource -> ((JsonObject) resource).getJsonArray("scopeSpans")
+                        .stream())
+                    .flatMap(scope -> ((JsonObject) scope).getJsonArray("spans").stream())
+                    .map(JsonObject.class::cast).collect(Collectors.toList());
+                // server, producer and consumer span per request
+                assertEquals(6, spans.size());
+                assertEquals(3, spans.stream()
+                    .filter(span -> TRACE_1.equals(span.getString("traceId"))).count());
+                vertx.close(testContext.succeedingThenComplete());
+              }));
+            })))));
+  }
+
+  private Future<String> send(HttpClient client, String traceId) {
+    return client.request(new RequestOptions().setMethod(HttpMethod.GET).setPort(PORT)
+        .setHost("localhost").setURI("/").addHeader(TraceContext.TRACEPARENT,
+            "00-" + traceId + "-b7ad6b7169203331-01"))
+        .compose(request -> request.send())
+        .compose(HttpClientResponse::body)
+        .map(body -> body.toString());
+  }
+}
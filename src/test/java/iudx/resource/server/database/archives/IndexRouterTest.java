@@ -0,0 +1,71 @@
+package iudx.resource.server.database.archives;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.IndexRouter.Partitions;
+
+@ExtendWith(VertxExtension.class)
+public class IndexRouterTest {
+
+  private static final String ITMS =
+      "iisc.ac.in__89a36273d77dac4cf38114fca1bbe64392547f86__rs.iudx.io__surat-itms-realtime-info";
+  private static final String FLOOD =
+      "iisc.ac.in__89a36273d77dac4cf38114fca1bbe64392547f86__rs.iudx.io__pune-env-flood";
+  private static final String AQM =
+      "iisc.ac.in__89a36273d77dac4cf38114fca1bbe64392547f86__rs.iudx.io__pune-env-aqm";
+  private static final long NOW = millis("2021-06-18T14:20:00Z");
+
+  private static final Map<String, Partitions> groups = IndexRouter.parse(new JsonArray()
+      .add(alias(ITMS, ITMS + "__2021-03")).add(alias(ITMS, ITMS + "__2021-04"))
+      .add(alias(ITMS, ITMS + "__2021-05")).add(alias(FLOOD, FLOOD + "__2021-06-17"))
+      .add(alias(AQM, AQM + "__2021-06")).add(alias(AQM, AQM + "-v2")));
+
+  private static JsonObject alias(String alias, String index) {
+    return new JsonObject().put("alias", alias).put("index", index);
+  }
+
+  private static long millis(String time) {
+    return ZonedDateTime.parse(time).toInstant().toEpochMilli();
+  }
+
+  private static List<String> route(String index, String gte, String lte) {
+    return IndexRouter.route(groups, List.of(index), gte == null ? null : millis(gte),
+        lte == null ? null : millis(lte), NOW, 5);
+  }
+
+  @Test
+  @DisplayName("time windows are routed to the partitions they overlap")
+  public void testRoutePartitions(VertxTestContext testContext) {
+    assertEquals(2, groups.size());
+    assertEquals(List.of(ITMS + "__2021-04", ITMS + "__2021-05"),
+        route(ITMS, "2021-04-10T00:00:00Z", "2021-05-02T00:00:00Z"));
+    assertEquals(List.of(ITMS + "__2021-03"), route(ITMS, null, "2021-03-31T23:59:59Z"));
+    assertTrue(route(ITMS, "2020-01-01T00:00:00Z", "2020-12-31T00:00:00Z").isEmpty());
+    assertTrue(route(FLOOD, "2021-01-01T00:00:00Z", "2021-06-10T00:00:00Z").isEmpty());
+    // the partition of the current month is created after the listing.
+    assertEquals(List.of(ITMS + "__2021-05", ITMS + "__2021-06*"),
+        route(ITMS, "2021-05-20T00:00:00Z", null));
+    assertEquals(List.of(FLOOD + "__2021-06-17", FLOOD + "__2021-06-18*"),
+        route(FLOOD, "2021-06-01T00:00:00Z", null));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("groups that are not partitioned and wide windows query the group alias")
+  public void testRouteGroup(VertxTestContext testContext) {
+    assertEquals(List.of(AQM), route(AQM, "2021-06-01T00:00:00Z", null));
+    // 11 daily partitions since the listing, more than maxIndices.
+    assertEquals(List.of(FLOOD), IndexRouter.route(groups, List.of(FLOOD), null, null,
+        millis("2021-06-28T00:00:00Z"), 5));
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,152 @@
+package iudx.resource.server.database.archives;
+
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import iudx.resource.server.database.archives.QueryPlan.Temporal;
+import iudx.resource.server.database.archives.QueryPlan.TimeRelation;
+
+@ExtendWith(VertxExtension.class)
+public class IndexStatsTest {
+
+  private static final String GROUP =
+      "iisc.ac.in__89a36273d77dac4cf38114fca1bbe64392547f86__rs.iudx.io__pune-env-flood";
+  private static final String EMPTY_GROUP =
+      "iisc.ac.in__89a36273d77dac4cf38114fca1bbe64392547f86__rs.iudx.io__pune-env-aqm";
+  private static final long MIN = 1600000000000L;
+  private static final long MAX = 1610000000000L;
+  private static final long LIVE_FROM = 1620000000000L;
+
+  private static JsonArray listing(String docCount) {
+    return new JsonArray()
+        .add(new JsonObject().put("index", GROUP).put("docs.count", docCount))
+        .add(new JsonObject().put("index", EMPTY_GROUP).put("docs.count", "0"));
+  }
+
+  private static Map<String, IndexStats> parse() {
+    JsonObject range = new JsonObject().put("aggregations", new JsonObject()
+        .put("min", new JsonObject().put("value", (double) MIN))
+        .put("max", new JsonObject().put("value", (double) MAX)));
+    JsonObject msearch = new JsonObject().put("responses", new JsonArray().add(range));
+    return IndexStatsCache.parse(listing("42"), Map.of(),
+        IndexStatsCache.responses(List.of(GROUP), msearch), LIVE_FROM);
+  }
+
+  @Test
+  @DisplayName("time windows missing the data of an index and its live range have no data")
+  public void testMayHaveData(VertxTestContext testContext) {
+    Map<String, IndexStats> indices = parse();
+    IndexStats group = indices.get(GROUP);
+    IndexStats empty = indices.get(EMPTY_GROUP);
+
+    assertEquals(42, group.docCount());
+    assertEquals(MIN, group.minTime());
+    assertTrue(group.mayHaveData(MIN - 10, MIN));
+    assertTrue(group.mayHaveData(MAX + 10, null));
+    assertTrue(group.mayHaveData(null, LIVE_FROM));
+    assertFalse(group.mayHaveData(null, MIN - 1));
+    assertFalse(group.mayHaveData(MAX + 1, LIVE_FROM - 1));
+    assertFalse(empty.mayHaveData(MIN, MAX));
+    assertTrue(empty.exists());
+
+    IndexStats merged = group.merge(empty);
+    assertEquals(42, merged.docCount());
+    assertEquals(MIN, merged.lowerBound());
+    assertFalse(merged.mayHaveData(MAX + 1, LIVE_FROM - 1));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("documents of a time window are estimated from its overlap with the index range")
+  public void testEstimateDocs(VertxTestContext testContext) {
+    IndexStats group = parse().get(GROUP);
+    long middle = MIN + (MAX - MIN) / 2;
+    assertEquals(42, group.estimateDocs(null, null));
+    assertEquals(42, group.estimateDocs(MIN - 10, LIVE_FROM));
+    assertEquals(21, group.estimateDocs(middle, null));
+    assertEquals(21, group.estimateDocs(null, middle));
+    assertEquals(0, group.estimateDocs(MAX + 1, LIVE_FROM));
+    assertEquals(0, parse().get(EMPTY_GROUP).estimateDocs(MIN, MAX));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("open ended time ranges are bounded below to the oldest observation")
+  public void testDecodeLowerBound(VertxTestContext testContext) {
+    QueryPlan plan = QueryPlan.builder()
+        .id("iisc.ac.in/89a36273d77dac4cf38114fca1bbe64392547f86/rs.iudx.io/pune-env-flood/FWR055")
+        .temporal(new Temporal(TimeRelation.BEFORE, null, LIVE_FROM - 1))
+        .applicableFilters(List.of("TEMPORAL")).build();
+
+    QueryDecoder decoder = new QueryDecoder();
+    assertArrayEquals(new Long[] {null, plan.temporal().endMillis()},
+        decoder.timeWindow(plan, null));
+    JsonObject query = decoder.decode(plan, decoder.timeWindow(plan, null), parse().get(GROUP));
+    JsonObject range = query.getJsonObject("query").getJsonObject("bool").getJsonArray("filter")
+        .getJsonObject(1).getJsonObject("range").getJsonObject("observationDateTime");
+    assertEquals(MIN, range.getLong("gte"));
+    assertEquals(plan.temporal().endMillis(), range.getLong("lte"));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("default window spans the days in which a group ingests the target documents")
+  public void testDefaultWindow(VertxTestContext testContext) {
+    Map<String, IndexStats> groups = IndexStatsCache.groups(Map.of(GROUP + "__2021-01",
+        new IndexStats(true, 100, MIN, MIN + 1000, LIVE_FROM), GROUP + "__2021-02",
+        new IndexStats(true, 200, MIN + 2000, MIN + TimeUnit.DAYS.toMillis(10), LIVE_FROM)));
+    assertEquals(300, groups.get(GROUP).docCount());
+    assertEquals(30d, groups.get(GROUP).ingestRate());
+
+    JsonObject overrides = new JsonObject().put(EMPTY_GROUP.replace("__", "/"), 2);
+    DefaultWindow window = new DefaultWindow(null, new JsonObject().put("targetDocs", 90)
+        .put("maxDays", 7).put("overrides", overrides));
+    assertEquals(3, window.days(30d));
+    assertEquals(1, window.days(1000d));
+    assertEquals(7, window.days(0d));
+    assertNull(window.days((Double) null));
+    assertEquals(2, window.days(List.of(GROUP, EMPTY_GROUP)));
+    assertNull(window.days(List.of(GROUP)));
+    testContext.completeNow();
+  }
+
+  @Test
+  @DisplayName("ranges are fetched again only for indices whose document count changed")
+  public void testIncrementalRefresh(VertxTestContext testContext) {
+    Map<String, IndexStats> previous = parse();
+    assertEquals(List.of(GROUP), IndexStatsCache.changed(listing("42"), Map.of()));
+    assertEquals(List.of(), IndexStatsCache.changed(listing("42"), previous));
+    assertEquals(List.of(GROUP), IndexStatsCache.changed(listing("43"), previous));
+
+    Map<String, IndexStats> unchanged =
+        IndexStatsCache.parse(listing("42"), previous, Map.of(), LIVE_FROM + 1);
+    assertEquals(MIN, unchanged.get(GROUP).minTime());
+    assertEquals(MAX, unchanged.get(GROUP).maxTime());
+    assertEquals(LIVE_FROM + 1, unchanged.get(GROUP).liveFrom());
+    // a failed range search leaves the bounds unknown and is retried on the next refresh.
+    JsonObject failed = new JsonObject().put("responses",
+        new JsonArray().add(new JsonObject().put("error", new JsonObject())));
+    Map<String, IndexStats> retried = IndexStatsCache.parse(listing("43"), previous,
+        IndexStatsCache.responses(List.of(GROUP), failed), LIVE_FROM);
+    assertNull(retried.get(GROUP).minTime());
+    assertEquals(List.of(GROUP), IndexStatsCache.changed(listing("43"), retried));
+
+    String body = IndexStatsCache.rangeQuery(List.of(GROUP, EMPTY_GROUP));
+    String[] lines = body.split("\n");
+    assertEquals(4, lines.length);
+    assertEquals(GROUP, new JsonObject(lines[0]).getString("index"));
+    JsonObject search = new JsonObject(lines[1]);
+    assertEquals(0, search.getInteger("size"));
+    assertTrue(search.getJsonObject("aggregations").containsKey("min"));
+    assertFalse(search.containsKey("query"));
+    testContext.completeNow();
+  }
+}
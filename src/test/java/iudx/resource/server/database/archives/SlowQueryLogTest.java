@@ -0,0 +1,34 @@
+package iudx.resource.server.database.archives;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+@ExtendWith(VertxExtension.class)
+public class SlowQueryLogTest {
+
+  private static final JsonObject QUERY = new JsonObject().put("query", new JsonObject()
+      .put("bool", new JsonObject())).put("size", 5000).put("from", 100);
+
+  @Test
+  @DisplayName("profiled searches return no hits, lastN queries keep their collapse and size")
+  public void testProfileQuery(VertxTestContext testContext) {
+    JsonObject search = SlowQueryLog.profileQuery(QUERY);
+    assertTrue(search.getBoolean("profile"));
+    assertEquals(0, search.getInteger("size"));
+    assertFalse(search.containsKey("from"));
+    assertEquals(5000, QUERY.getInteger("size"));
+
+    JsonObject collapse = new JsonObject().put("field", "id.keyword");
+    JsonObject lastN = SlowQueryLog.profileQuery(new JsonObject().put("query", new JsonObject())
+        .put("size", 3).put("collapse", collapse));
+    assertTrue(lastN.getBoolean("profile"));
+    assertEquals(3, lastN.getInteger("size"));
+    assertTrue(lastN.containsKey("collapse"));
+    testContext.completeNow();
+  }
+}